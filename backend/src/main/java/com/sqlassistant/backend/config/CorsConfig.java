@@ -29,6 +29,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://localhost:3000", "http://localhost:3001")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders("ETag")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
@@ -51,6 +52,9 @@ public class CorsConfig implements WebMvcConfigurer {
         // Set allowed headers
         configuration.setAllowedHeaders(Arrays.asList("*"));
         
+        // Let the schema viewer read ETags for conditional schema fetches
+        configuration.setExposedHeaders(Arrays.asList("ETag"));
+        
         // Enable credentials
         configuration.setAllowCredentials(true);
         
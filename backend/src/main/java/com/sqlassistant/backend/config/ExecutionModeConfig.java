@@ -0,0 +1,78 @@
+package com.sqlassistant.backend.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reports which thread model serves the blocking JDBC endpoints.
+ *
+ * With {@code spring.threads.virtual.enabled=true} on Java 21, Spring Boot runs Tomcat request
+ * handling on virtual threads, so slow customer databases no longer exhaust the request pool.
+ * On older runtimes the switch is silently ignored by Spring Boot, which is why it is logged here.
+ *
+ * Endpoints that return a {@code Mono} hand their JDBC work to {@link #jdbcScheduler()} instead of
+ * a request thread, so the same switch also moves that work onto virtual threads.
+ */
+@Configuration
+public class ExecutionModeConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    /**
+     * Scheduler for blocking JDBC calls made from reactive endpoints. With virtual threads enabled
+     * on Java 21 every task gets its own virtual thread; otherwise this is Reactor's bounded
+     * elastic pool, which caps concurrent JDBC calls at ten per core.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler() {
+        if (!virtualThreadsEnabled || Runtime.version().feature() < 21) {
+            return Schedulers.boundedElastic();
+        }
+
+        try {
+            // Looked up reflectively so the default Java 17 build still compiles
+            ExecutorService executor = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+            return Schedulers.fromExecutorService(executor, "jdbc-virtual");
+        } catch (ReflectiveOperationException e) {
+            log.warn("Could not create a virtual-thread executor; JDBC calls stay on bounded elastic", e);
+            return Schedulers.boundedElastic();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportExecutionMode() {
+        int javaVersion = Runtime.version().feature();
+
+        if (!virtualThreadsEnabled) {
+            log.info("Serving requests on platform threads (Java {})", javaVersion);
+            return;
+        }
+
+        if (javaVersion < 21) {
+            log.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads; " +
+                     "falling back to platform threads. Build and run with Java 21 (-Pjava21).", javaVersion);
+            return;
+        }
+
+        log.info("Serving requests on virtual threads (Java {})", javaVersion);
+        // mysql-connector-java 8.0.x guards socket I/O with synchronized blocks, which pins the
+        // carrier thread for the whole round-trip. See README "Virtual threads" for the driver audit.
+        log.info("MySQL connections pin carrier threads on Connector/J 8.0.x; " +
+                 "run with -Djdk.tracePinnedThreads=short to audit pinning");
+    }
+}
@@ -1,31 +1,57 @@
 package com.sqlassistant.backend.controller;
 
 import com.sqlassistant.backend.dto.DatabaseConnectionDto;
-import com.sqlassistant.backend.model.DatabaseSchema;
+import com.sqlassistant.backend.model.SchemaDelta;
+import com.sqlassistant.backend.service.ConnectionRegistry;
 import com.sqlassistant.backend.service.DatabaseService;
+import com.sqlassistant.backend.service.PipelineEvents;
+import com.sqlassistant.backend.service.SchemaSearchIndex;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/database")
 public class DatabaseController {
     
+    private static final List<String> SEARCH_KINDS = List.of(
+        SchemaSearchIndex.KIND_TABLE, SchemaSearchIndex.KIND_VIEW, SchemaSearchIndex.KIND_COLUMN
+    );
+    private static final int MAX_SEARCH_LIMIT = 200;
+    /** Deepest page served; past it a narrower query is more useful than another page. */
+    private static final int MAX_SEARCH_OFFSET = 10_000;
+    
     private final DatabaseService databaseService;
+    private final ConnectionRegistry connectionRegistry;
     
-    public DatabaseController(DatabaseService databaseService) {
+    public DatabaseController(DatabaseService databaseService, ConnectionRegistry connectionRegistry) {
         this.databaseService = databaseService;
+        this.connectionRegistry = connectionRegistry;
     }
     
+    /**
+     * Tests and registers the connection; the returned id is all later calls need to send.
+     */
     @PostMapping("/test-connection")
     public ResponseEntity<?> testConnection(@Valid @RequestBody DatabaseConnectionDto connectionDto) {
+        return registerConnection(connectionDto);
+    }
+    
+    @PostMapping("/connections")
+    public ResponseEntity<?> registerConnection(@Valid @RequestBody DatabaseConnectionDto connectionDto) {
         try {
-            String connectionId = databaseService.testConnection(connectionDto);
+            ConnectionRegistry.RegisteredConnection registered = connectionRegistry.register(connectionDto);
             return ResponseEntity.ok(Map.of(
-                "connectionId", connectionId,
+                "connectionId", registered.id(),
+                "connection", registered.describe(),
                 "status", "SUCCESS",
                 "message", "Connection established successfully"
             ));
@@ -35,6 +61,11 @@ public class DatabaseController {
                 "message", "Connection failed: " + e.getMessage(),
                 "error", e.getSQLState()
             ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Invalid connection parameters: " + e.getMessage()
+            ));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(Map.of(
                 "status", "ERROR",
@@ -43,21 +74,76 @@ public class DatabaseController {
         }
     }
     
+    @GetMapping("/connections/{connectionId}")
+    public ResponseEntity<?> getConnection(@PathVariable String connectionId) {
+        return connectionRegistry.get(connectionId)
+            .<ResponseEntity<?>>map(registered -> ResponseEntity.ok(Map.of(
+                "connection", registered.describe(),
+                "status", "SUCCESS"
+            )))
+            .orElseGet(() -> unknownConnection(connectionId));
+    }
+    
+    @DeleteMapping("/connections/{connectionId}")
+    public ResponseEntity<?> unregisterConnection(@PathVariable String connectionId) {
+        if (!connectionRegistry.unregister(connectionId)) {
+            return unknownConnection(connectionId);
+        }
+        
+        return ResponseEntity.ok(Map.of(
+            "connectionId", connectionId,
+            "status", "SUCCESS",
+            "message", "Connection removed"
+        ));
+    }
+    
+    /**
+     * Registered connections only need the id; a body without an id registers the connection
+     * first, and a body with an unregistered id is the pre-registration client behaviour.
+     */
     @PostMapping("/schema")
+    @SuppressWarnings("try")
     public ResponseEntity<?> getSchema(
-            @Valid @RequestBody DatabaseConnectionDto connectionDto,
-            @RequestParam(required = false) String connectionId) {
+            @Valid @RequestBody(required = false) DatabaseConnectionDto connectionDto,
+            @RequestParam(value = "connectionId", required = false) String requestedConnectionId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = "X-Request-Id", required = false) String requestId) {
         
         try {
-            if (connectionId == null) {
-                connectionId = databaseService.testConnection(connectionDto);
+            if (requestedConnectionId == null) {
+                if (connectionDto == null) {
+                    return ResponseEntity.badRequest().body(Map.of(
+                        "status", "ERROR",
+                        "message", "connectionId or connection details are required"
+                    ));
+                }
+                requestedConnectionId = connectionRegistry.register(connectionDto).id();
+            }
+            
+            Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, connectionDto);
+            if (resolved.isEmpty()) {
+                return unknownConnection(requestedConnectionId);
             }
+            String connectionId = resolved.get().id();
             
-            DatabaseSchema schema = databaseService.getSchema(connectionId, connectionDto);
+            DatabaseService.VersionedSchema versioned;
+            try (PipelineEvents.Scope scope = PipelineEvents.bind(connectionId, requestId)) {
+                versioned = databaseService.getVersionedSchema(connectionId, resolved.get().connection());
+            }
             
-            return ResponseEntity.ok(Map.of(
+            // The fingerprint version identifies the schema, so a matching client copy needs no body
+            if (versioned.version() != null && eTagMatches(ifNoneMatch, versioned.version())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag(versioned.version())).build();
+            }
+            
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (versioned.version() != null) {
+                response.eTag(eTag(versioned.version()));
+            }
+            
+            return response.body(Map.of(
                 "connectionId", connectionId,
-                "schema", schema,
+                "schema", versioned.schema(),
                 "status", "SUCCESS"
             ));
             
@@ -67,6 +153,11 @@ public class DatabaseController {
                 "message", "Failed to retrieve schema: " + e.getMessage(),
                 "error", e.getSQLState()
             ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Invalid connection parameters: " + e.getMessage()
+            ));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(Map.of(
                 "status", "ERROR", 
@@ -75,6 +166,101 @@ public class DatabaseController {
         }
     }
     
+    @PostMapping("/schema/delta")
+    public ResponseEntity<?> getSchemaDelta(
+            @Valid @RequestBody(required = false) DatabaseConnectionDto connectionDto,
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestParam String since) {
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, connectionDto);
+        if (resolved.isEmpty()) {
+            return unknownConnection(requestedConnectionId);
+        }
+        String connectionId = resolved.get().id();
+        
+        try {
+            SchemaDelta delta = databaseService.getSchemaDelta(connectionId, resolved.get().connection(), stripETag(since));
+            
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (delta.version() != null) {
+                response.eTag(eTag(delta.version()));
+            }
+            
+            return response.body(Map.of(
+                "connectionId", connectionId,
+                "delta", delta,
+                "status", "SUCCESS"
+            ));
+            
+        } catch (SQLException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Failed to retrieve schema delta: " + e.getMessage(),
+                "error", e.getSQLState()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "ERROR",
+                "message", "Unexpected error: " + e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Server-side search for catalogs too large to filter in the browser. {@code kind} restricts
+     * results to TABLE, VIEW or COLUMN.
+     */
+    @GetMapping("/schema/search")
+    public ResponseEntity<?> searchSchema(
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestParam String q,
+            @RequestParam(required = false) String kind,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "50") int limit) {
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, null);
+        if (resolved.isEmpty()) {
+            return unknownConnection(requestedConnectionId);
+        }
+        String connectionId = resolved.get().id();
+        
+        String normalizedKind = kind != null && !kind.isBlank() ? kind.trim().toUpperCase(Locale.ROOT) : null;
+        if (normalizedKind != null && !SEARCH_KINDS.contains(normalizedKind)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "kind must be one of " + SEARCH_KINDS
+            ));
+        }
+        
+        try {
+            SchemaSearchIndex.SearchResult result = databaseService.searchSchema(
+                connectionId, resolved.get().connection(), q, normalizedKind,
+                Math.max(0, Math.min(offset, MAX_SEARCH_OFFSET)), Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT))
+            );
+            
+            return ResponseEntity.ok(Map.of(
+                "connectionId", connectionId,
+                "hits", result.hits(),
+                "total", result.total(),
+                "offset", result.offset(),
+                "limit", result.limit(),
+                "status", "SUCCESS"
+            ));
+            
+        } catch (SQLException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Failed to retrieve schema: " + e.getMessage(),
+                "error", e.getSQLState()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "ERROR",
+                "message", "Unexpected error: " + e.getMessage()
+            ));
+        }
+    }
+    
     @GetMapping("/supported-types")
     public ResponseEntity<?> getSupportedDatabaseTypes() {
         return ResponseEntity.ok(Map.of(
@@ -112,4 +298,41 @@ public class DatabaseController {
             ));
         }
     }
-}
\ No newline at end of file
+    
+    private ResponseEntity<?> unknownConnection(String connectionId) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+            "status", "ERROR",
+            "message", "Unknown or expired connection " + connectionId + "; register it again",
+            "error", "UNKNOWN_CONNECTION"
+        ));
+    }
+    
+    // Weak tags: the same version can serialize with tables in a different order after an incremental refresh
+    private String eTag(String version) {
+        return "W/\"" + version + "\"";
+    }
+    
+    private String stripETag(String tag) {
+        String value = tag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+    
+    private boolean eTagMatches(String ifNoneMatch, String version) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || stripETag(tag).equals(version)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
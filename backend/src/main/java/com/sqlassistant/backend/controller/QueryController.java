@@ -1,70 +1,149 @@
 package com.sqlassistant.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sqlassistant.backend.dto.DatabaseConnectionDto;
 import com.sqlassistant.backend.dto.QueryDto;
 import com.sqlassistant.backend.model.DatabaseSchema;
-import com.sqlassistant.backend.service.AiService;
+import com.sqlassistant.backend.service.ConnectionRegistry;
 import com.sqlassistant.backend.service.DatabaseService;
+import com.sqlassistant.backend.service.InFlightOperationRegistry;
+import com.sqlassistant.backend.service.JdbcConnectionPools;
+import com.sqlassistant.backend.service.LlmProviderGuard;
+import com.sqlassistant.backend.service.PipelineEvents;
+import com.sqlassistant.backend.service.QueryExplanationService;
+import com.sqlassistant.backend.service.QueryGenerationService;
+import com.sqlassistant.backend.service.QueryHistoryStore;
+import com.sqlassistant.backend.service.QueryShapeStats;
 import com.sqlassistant.backend.service.QueryValidationService;
+import com.sqlassistant.backend.service.ResultExporter;
+import com.sqlassistant.backend.service.ResultSnapshotStore;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/query")
 public class QueryController {
     
-    private final AiService aiService;
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+    
+    private final QueryExplanationService explanationService;
     private final DatabaseService databaseService;
+    private final ConnectionRegistry connectionRegistry;
     private final QueryValidationService validationService;
+    private final QueryHistoryStore historyStore;
+    private final QueryGenerationService generationService;
+    private final InFlightOperationRegistry operations;
+    private final JdbcConnectionPools connectionPools;
+    private final ResultExporter resultExporter;
+    private final QueryShapeStats shapeStats;
+    private final ResultSnapshotStore resultSnapshots;
+    private final ObjectMapper objectMapper;
+    private final Scheduler jdbcScheduler;
+    
+    @Value("${query.execution.batch.max-queries:50}")
+    private int maxBatchQueries;
     
-    public QueryController(AiService aiService, DatabaseService databaseService, 
-                          QueryValidationService validationService) {
-        this.aiService = aiService;
+    public QueryController(QueryExplanationService explanationService, DatabaseService databaseService, ConnectionRegistry connectionRegistry,
+                          QueryValidationService validationService, QueryHistoryStore historyStore,
+                          QueryGenerationService generationService, InFlightOperationRegistry operations,
+                          JdbcConnectionPools connectionPools, ResultExporter resultExporter,
+                          QueryShapeStats shapeStats, ResultSnapshotStore resultSnapshots, ObjectMapper objectMapper,
+                          Scheduler jdbcScheduler) {
+        this.explanationService = explanationService;
         this.databaseService = databaseService;
+        this.connectionRegistry = connectionRegistry;
         this.validationService = validationService;
+        this.historyStore = historyStore;
+        this.generationService = generationService;
+        this.operations = operations;
+        this.connectionPools = connectionPools;
+        this.resultExporter = resultExporter;
+        this.shapeStats = shapeStats;
+        this.resultSnapshots = resultSnapshots;
+        this.objectMapper = objectMapper;
+        this.jdbcScheduler = jdbcScheduler;
     }
     
     @PostMapping("/generate")
     public Mono<ResponseEntity<Map<String, Object>>> generateQuery(
             @Valid @RequestBody QueryDto.QueryRequest request,
-            @RequestParam String connectionId
-            // @RequestBody DatabaseConnectionDto connectionDto
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId
     ) {
         
-        try {
-            // Get database schema first
-            DatabaseSchema schema = databaseService.getSchema(connectionId, request.connectionDto());
-            
-            // Generate SQL using AI
-            return Mono.just(ResponseEntity.ok(Map.of(
-                    "query", aiService.generateSqlQuery(
-                            request.naturalLanguageQuery(),
-                            schema,
-                            request.context()
-                    ),
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return Mono.just(unknownConnection(requestedConnectionId));
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        InFlightOperationRegistry.Operation operation = operations.register(requestId, "GENERATE", connectionId);
+        if (operation == null) {
+            return Mono.just(duplicateRequest(requestId));
+        }
+        
+        // Schema introspection runs off the request thread; the LLM call is a cancellable WebClient exchange
+        Mono<ResponseEntity<Map<String, Object>>> response = databaseService.getSchemaAsync(connectionId, connection)
+            .flatMap(schema -> generationService.generate(
+                    connectionId,
+                    request.naturalLanguageQuery(),
+                    schema,
+                    request.context()
+            ))
+            .doOnNext(generated -> historyStore.record(
+                connectionId, "GENERATE", request.naturalLanguageQuery(), generated.query().generatedSql(),
+                generated.query().isExecutable() ? "SUCCESS" : "ERROR", null, null, null
+            ))
+            .map(generated -> ResponseEntity.ok(Map.<String, Object>of(
+                    "query", generated.query(),
+                    "source", generated.source(),
+                    "requestId", operation.requestId(),
                     "status", "SUCCESS"
-            )));
-
-        } catch (SQLException e) {
-            return Mono.just(ResponseEntity.badRequest().body(Map.of(
+            )))
+            .onErrorResume(LlmProviderGuard.ProviderUnavailableException.class, e -> Mono.just(providerUnavailable(e)))
+            .onErrorResume(SQLException.class, e -> Mono.just(ResponseEntity.badRequest().body(Map.of(
                 "status", "ERROR",
                 "message", "Database connection error: " + e.getMessage()
-            )));
-        } catch (Exception e) {
-            return Mono.just(ResponseEntity.internalServerError().body(Map.of(
+            ))))
+            .onErrorResume(e -> !(e instanceof SQLException), e -> Mono.just(ResponseEntity.internalServerError().body(Map.of(
                 "status", "ERROR",
                 "message", "Unexpected error: " + e.getMessage()
-            )));
-        }
+            ))));
+        
+        return tracked(operation, response);
     }
     
+    /**
+     * With a {@code connectionId} whose schema has been loaded, performance suggestions are
+     * checked against the real indexes; {@code indexAware} reports whether that happened.
+     */
     @PostMapping("/validate")
-    public ResponseEntity<?> validateQuery(@Valid @RequestBody Map<String, String> request) {
+    public ResponseEntity<?> validateQuery(
+            @Valid @RequestBody Map<String, String> request,
+            @RequestParam(required = false) String connectionId) {
         String sql = request.get("sql");
         
         if (sql == null || sql.trim().isEmpty()) {
@@ -74,50 +153,442 @@ public class QueryController {
             ));
         }
         
-        QueryDto.QueryValidationResponse validation = validationService.validateQuery(sql);
+        DatabaseSchema schema = null;
+        if (connectionId != null) {
+            if (connectionRegistry.get(connectionId).isEmpty()) {
+                return unknownConnection(connectionId);
+            }
+            schema = databaseService.cachedSchema(connectionId).orElse(null);
+        }
+        
+        QueryDto.QueryValidationResponse validation = validationService.validateQuery(sql, schema);
         
         return ResponseEntity.ok(Map.of(
             "validation", validation,
+            "indexAware", schema != null,
             "status", "SUCCESS"
         ));
     }
     
     @PostMapping("/execute")
-    public ResponseEntity<?> executeQuery(
+    @SuppressWarnings("try")
+    public Mono<ResponseEntity<Map<String, Object>>> executeQuery(
             @Valid @RequestBody QueryDto.QueryExecutionRequest request,
-            @RequestParam String connectionId
-            //@RequestBody DatabaseConnectionDto connectionDto
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId
     ) {
         
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return Mono.just(unknownConnection(requestedConnectionId));
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        InFlightOperationRegistry.Operation operation = operations.register(requestId, "EXECUTE", connectionId);
+        if (operation == null) {
+            return Mono.just(duplicateRequest(requestId));
+        }
+        
+        // JDBC blocks, so run it off the request thread; cancelling the operation cancels the statement
+        Mono<ResponseEntity<Map<String, Object>>> response = Mono.fromCallable(() -> {
+                try (PipelineEvents.Scope scope = PipelineEvents.bind(connectionId, operation.requestId())) {
+                    return databaseService.executeQuery(connectionId, connection, request, operation);
+                }
+            })
+            .subscribeOn(jdbcScheduler)
+            .doOnNext(execution -> historyStore.record(
+                connectionId, "EXECUTE", null, request.sql(), execution.status(),
+                execution.executionTimeMs(), execution.rowCount(), null
+            ))
+            .map(execution -> ResponseEntity.ok(Map.<String, Object>of(
+                "execution", execution,
+                "requestId", operation.requestId(),
+                "status", "SUCCESS"
+            )))
+            .onErrorResume(SQLException.class, e -> Mono.just(ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Query execution failed: " + e.getMessage(),
+                "error", e.getSQLState()
+            ))))
+            .onErrorResume(e -> !(e instanceof SQLException), e -> Mono.just(ResponseEntity.internalServerError().body(Map.of(
+                "status", "ERROR",
+                "message", "Unexpected error: " + e.getMessage()
+            ))));
+        
+        return tracked(operation, response);
+    }
+    
+    /**
+     * Runs a dashboard's queries concurrently, at most the connection pool's size at a time, and
+     * streams one NDJSON line per query as it completes (tagged with its index, so lines arrive
+     * in completion order) followed by a COMPLETE summary line. Every query is validated first;
+     * if any is invalid nothing runs and the single line lists the failures.
+     */
+    @PostMapping(value = "/execute/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @SuppressWarnings("try")
+    public ResponseEntity<Flux<Map<String, Object>>> executeBatch(
+            @Valid @RequestBody QueryDto.QueryBatchRequest request,
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId) {
+        
+        List<QueryDto.QueryExecutionRequest> queries = request.queries();
+        if (queries.size() > maxBatchQueries) {
+            return batchError(HttpStatus.BAD_REQUEST, Map.of(
+                "status", "ERROR",
+                "message", "At most " + maxBatchQueries + " queries per batch"
+            ));
+        }
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return batchError(HttpStatus.NOT_FOUND, unknownConnection(requestedConnectionId).getBody());
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        List<Map<String, Object>> invalid = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            QueryDto.QueryValidationResponse validation = validationService.validateQuery(queries.get(i).sql());
+            if (!validation.isValid()) {
+                invalid.add(Map.of("index", i, "validation", validation));
+            }
+        }
+        if (!invalid.isEmpty()) {
+            return batchError(HttpStatus.BAD_REQUEST, Map.of(
+                "invalid", invalid,
+                "status", "ERROR",
+                "message", "Query validation failed"
+            ));
+        }
+        
+        InFlightOperationRegistry.Operation operation = operations.register(requestId, "BATCH", connectionId);
+        if (operation == null) {
+            return batchError(HttpStatus.CONFLICT, duplicateRequest(requestId).getBody());
+        }
+        
+        long batchStart = System.nanoTime();
+        
+        // The pool size is the per-connection cap; flatMap keeps this batch from queueing more than that
+        Flux<Map<String, Object>> results = Flux.range(0, queries.size())
+            .flatMap(index -> Mono.fromCallable(() -> {
+                    long started = System.nanoTime();
+                    QueryDto.QueryExecutionRequest query = queries.get(index);
+                    QueryDto.QueryExecutionResponse execution;
+                    try (PipelineEvents.Scope scope = PipelineEvents.bind(connectionId, operation.requestId())) {
+                        execution = databaseService.executePooled(connectionId, connection, query, operation);
+                    }
+                    historyStore.record(
+                        connectionId, "EXECUTE", null, query.sql(), execution.status(),
+                        execution.executionTimeMs(), execution.rowCount(), null
+                    );
+                    return Map.<String, Object>of(
+                        "index", index,
+                        "execution", execution,
+                        "startedAtMs", (started - batchStart) / 1_000_000,
+                        "elapsedMs", (System.nanoTime() - started) / 1_000_000,
+                        "status", execution.status()
+                    );
+                })
+                .subscribeOn(jdbcScheduler)
+                .onErrorResume(e -> Mono.just(Map.<String, Object>of(
+                    "index", index,
+                    "status", "ERROR",
+                    "message", "Query execution failed: " + e.getMessage()
+                ))),
+                connectionPools.maxPerConnection())
+            .concatWith(Mono.fromSupplier(() -> Map.<String, Object>of(
+                "requestId", operation.requestId(),
+                "queries", queries.size(),
+                "elapsedMs", (System.nanoTime() - batchStart) / 1_000_000,
+                "status", "COMPLETE"
+            )))
+            .takeUntilOther(operation.whenCancelled())
+            .doOnCancel(operation::cancel)
+            .doFinally(signal -> operations.complete(operation));
+        
+        return ResponseEntity.ok().body(results);
+    }
+    
+    @PostMapping(value = "/execute/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> streamQuery(
+            @Valid @RequestBody QueryDto.QueryExecutionRequest request,
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId) {
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired connection " + requestedConnectionId));
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        InFlightOperationRegistry.Operation operation = operations.register(requestId, "STREAM", connectionId);
+        if (operation == null) {
+            return Flux.error(new IllegalStateException("Request " + requestId + " is already in flight"));
+        }
+        
+        // Cancelling the stream closes the JDBC cursor or releases the R2DBC connection
+        return databaseService.streamQuery(connectionId, connection, request)
+            .takeUntilOther(operation.whenCancelled())
+            .doOnCancel(operation::cancel)
+            .doFinally(signal -> operations.complete(operation));
+    }
+    
+    @PostMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportQuery(
+            @Valid @RequestBody QueryDto.QueryExecutionRequest request,
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        
+        Optional<ResultExporter.Format> exportFormat = ResultExporter.Format.parse(format);
+        if (exportFormat.isEmpty()) {
+            return jsonError(HttpStatus.BAD_REQUEST, "Unsupported export format: " + format + " (use csv or arrow)");
+        }
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return jsonError(HttpStatus.NOT_FOUND, "Unknown or expired connection " + requestedConnectionId + "; register it again");
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        // Validate before streaming starts; once bytes are written the status can't change
+        QueryDto.QueryValidationResponse validation = validationService.validateQuery(request.sql());
+        if (!validation.isValid()) {
+            return jsonError(HttpStatus.BAD_REQUEST, "Query validation failed: " + String.join("; ", validation.errors()));
+        }
+        
+        String fileName = "export-" + System.currentTimeMillis() + exportFormat.get().getExtension() + (gzip ? ".gz" : "");
+        ResultExporter.ExportBody body = exportBody(connectionId, connection, request, exportFormat.get(), null);
+        StreamingResponseBody stream = out -> resultExporter.stream(out, gzip, body);
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.get().getContentType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+            .body(stream);
+    }
+    
+    /**
+     * Starts a background export; the response carries its {@code exportId} and the
+     * {@code requestId} that /query/cancel stops it with.
+     */
+    @PostMapping("/export/spool")
+    public ResponseEntity<?> spoolExport(
+            @Valid @RequestBody QueryDto.QueryExecutionRequest request,
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId) {
+        
+        Optional<ResultExporter.Format> exportFormat = ResultExporter.Format.parse(format);
+        if (exportFormat.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Unsupported export format: " + format + " (use csv or arrow)"
+            ));
+        }
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return unknownConnection(requestedConnectionId);
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        QueryDto.QueryValidationResponse validation = validationService.validateQuery(request.sql());
+        if (!validation.isValid()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "validation", validation,
+                "status", "ERROR",
+                "message", "Query validation failed"
+            ));
+        }
+        
+        InFlightOperationRegistry.Operation operation = operations.register(requestId, "EXPORT", connectionId);
+        if (operation == null) {
+            return duplicateRequest(requestId);
+        }
+        
         try {
-            QueryDto.QueryExecutionResponse response = databaseService.executeQuery(
-                connectionId, request.connectionDto(), request
+            ResultExporter.SpoolStatus spool = resultExporter.spool(
+                connectionId, operation, exportFormat.get(), gzip,
+                exportBody(connectionId, connection, request, exportFormat.get(), operation)
             );
             
-            return ResponseEntity.ok(Map.of(
-                "execution", response,
+            return ResponseEntity.accepted().body(Map.of(
+                "export", spool,
                 "status", "SUCCESS"
             ));
             
-        } catch (SQLException e) {
-            return ResponseEntity.badRequest().body(Map.of(
+        } catch (ResultExporter.SpoolLimitException e) {
+            operations.complete(operation);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of(
                 "status", "ERROR",
-                "message", "Query execution failed: " + e.getMessage(),
-                "error", e.getSQLState()
+                "message", e.getMessage()
             ));
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().body(Map.of(
+        } catch (IOException e) {
+            operations.complete(operation);
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(Map.of(
                 "status", "ERROR",
-                "message", "Unexpected error: " + e.getMessage()
+                "message", "Could not spool export: " + e.getMessage()
+            ));
+        }
+    }
+    
+    @GetMapping("/export/{exportId}")
+    public ResponseEntity<?> getExport(@PathVariable String exportId) {
+        Optional<ResultExporter.SpoolStatus> spool = resultExporter.spoolStatus(exportId);
+        if (spool.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "ERROR",
+                "message", "Unknown or expired export " + exportId
+            ));
+        }
+        
+        ResultExporter.SpoolStatus status = spool.get();
+        return switch (status.state()) {
+            case "RUNNING" -> ResponseEntity.accepted().body(Map.of(
+                "export", status,
+                "status", "SUCCESS"
+            ));
+            case "CANCELLED" -> ResponseEntity.ok(Map.of(
+                "export", status,
+                "status", "CANCELLED",
+                "message", "Export was cancelled"
+            ));
+            case "FAILED" -> ResponseEntity.internalServerError().body(Map.of(
+                "export", status,
+                "status", "ERROR",
+                "message", "Export failed: " + status.error()
+            ));
+            default -> {
+                Path file = resultExporter.spoolFile(status);
+                yield ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(status.gzip() ? "application/gzip" : status.format().getContentType()))
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                    .body(new FileSystemResource(file));
+            }
+        };
+    }
+    
+    /**
+     * Runs the query once and keeps its full result in a disk snapshot; pages are then read with
+     * GET /query/snapshot/{snapshotId} without touching the database again. The first page is
+     * returned right away.
+     */
+    @PostMapping("/snapshot")
+    @SuppressWarnings("try")
+    public Mono<ResponseEntity<Map<String, Object>>> createSnapshot(
+            @Valid @RequestBody QueryDto.QueryExecutionRequest request,
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestParam(defaultValue = "100") int pageSize,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId) {
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, request.connectionDto());
+        if (resolved.isEmpty()) {
+            return Mono.just(unknownConnection(requestedConnectionId));
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        return Mono.fromCallable(() -> {
+                try (PipelineEvents.Scope scope = PipelineEvents.bind(connectionId, requestId)) {
+                    return databaseService.snapshotQuery(connectionId, connection, request);
+                }
+            })
+            .subscribeOn(jdbcScheduler)
+            .doOnNext(snapshot -> historyStore.record(
+                connectionId, "EXECUTE", null, request.sql(), "SUCCESS",
+                null, (int) Math.min(snapshot.rowCount(), Integer.MAX_VALUE), null
+            ))
+            .map(snapshot -> ResponseEntity.ok(Map.<String, Object>of(
+                "snapshot", snapshot,
+                "page", resultSnapshots.page(snapshot.snapshotId(), 0, clampPageSize(pageSize)).orElseThrow(),
+                "status", "SUCCESS"
+            )))
+            .onErrorResume(SQLException.class, e -> Mono.just(ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "Query execution failed: " + e.getMessage()
+            ))))
+            .onErrorResume(IOException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(Map.of(
+                "status", "ERROR",
+                "message", "Could not write result snapshot: " + e.getMessage()
+            ))))
+            .onErrorResume(e -> !(e instanceof SQLException) && !(e instanceof IOException), e -> Mono.just(
+                ResponseEntity.internalServerError().body(Map.of(
+                    "status", "ERROR",
+                    "message", "Unexpected error: " + e.getMessage()
+                ))));
+    }
+    
+    @GetMapping("/snapshot/{snapshotId}")
+    public ResponseEntity<?> getSnapshotPage(
+            @PathVariable String snapshotId,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "100") int limit) {
+        
+        Optional<ResultSnapshotStore.Snapshot> snapshot = resultSnapshots.get(snapshotId);
+        Optional<ResultSnapshotStore.Page> page = snapshot.flatMap(
+            found -> resultSnapshots.page(snapshotId, offset, clampPageSize(limit))
+        );
+        if (page.isEmpty()) {
+            return unknownSnapshot(snapshotId);
+        }
+        
+        return ResponseEntity.ok(Map.of(
+            "snapshot", snapshot.get(),
+            "page", page.get(),
+            "status", "SUCCESS"
+        ));
+    }
+    
+    @DeleteMapping("/snapshot/{snapshotId}")
+    public ResponseEntity<?> deleteSnapshot(@PathVariable String snapshotId) {
+        if (!resultSnapshots.delete(snapshotId)) {
+            return unknownSnapshot(snapshotId);
+        }
+        
+        return ResponseEntity.ok(Map.of(
+            "status", "SUCCESS",
+            "message", "Snapshot deleted"
+        ));
+    }
+    
+    /**
+     * Cancels a request started on the same connection. A request id in flight on another
+     * connection gets the same 404 as an unknown one.
+     */
+    @PostMapping("/cancel")
+    public ResponseEntity<?> cancelQuery(
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestParam String requestId) {
+        
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, null);
+        if (resolved.isEmpty()) {
+            return unknownConnection(requestedConnectionId);
+        }
+        if (!operations.cancel(resolved.get().id(), requestId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "ERROR",
+                "message", "No in-flight request with id " + requestId
             ));
         }
+        
+        return ResponseEntity.ok(Map.of(
+            "requestId", requestId,
+            "status", "SUCCESS",
+            "message", "Cancellation requested"
+        ));
     }
     
     @PostMapping("/explain")
-    public Mono<ResponseEntity<Map<String, String>>> explainQuery(
+    public Mono<ResponseEntity<Map<String, Object>>> explainQuery(
             @RequestBody Map<String, String> request,
-            @RequestParam String connectionId,
-            @RequestBody DatabaseConnectionDto connectionDto) {
+            @RequestParam("connectionId") String requestedConnectionId,
+            @RequestHeader(value = REQUEST_ID_HEADER, required = false) String requestId) {
         
         String sql = request.get("sql");
         
@@ -128,51 +599,212 @@ public class QueryController {
             )));
         }
         
-        try {
-            // Get database schema for context
-            DatabaseSchema schema = databaseService.getSchema(connectionId, connectionDto);
-            
-            return aiService.explainQuery(sql, schema)
-                .map(explanation -> ResponseEntity.ok(Map.of(
-                    "explanation", explanation,
-                    "status", "SUCCESS"
-                )))
-                .onErrorResume(error -> Mono.just(ResponseEntity.internalServerError().body(Map.of(
-                    "status", "ERROR",
-                    "message", "Failed to generate explanation"
-                ))));
-                
-        } catch (SQLException e) {
-            return Mono.just(ResponseEntity.badRequest().body(Map.of(
+        Optional<ConnectionRegistry.ResolvedConnection> resolved = connectionRegistry.resolve(requestedConnectionId, null);
+        if (resolved.isEmpty()) {
+            return Mono.just(unknownConnection(requestedConnectionId));
+        }
+        String connectionId = resolved.get().id();
+        DatabaseConnectionDto connection = resolved.get().connection();
+        
+        InFlightOperationRegistry.Operation operation = operations.register(requestId, "EXPLAIN", connectionId);
+        if (operation == null) {
+            return Mono.just(duplicateRequest(requestId));
+        }
+        
+        // The schema is only loaded if the query needs the LLM; local explanations don't wait for introspection
+        Mono<ResponseEntity<Map<String, Object>>> response = explanationService
+            .explain(sql, databaseService.getSchemaAsync(connectionId, connection))
+            .map(explanation -> ResponseEntity.ok(Map.<String, Object>of(
+                "explanation", explanation.explanation(),
+                "source", explanation.source(),
+                "fingerprint", explanation.fingerprint(),
+                "status", "SUCCESS"
+            )))
+            .onErrorResume(LlmProviderGuard.ProviderUnavailableException.class, e -> Mono.just(providerUnavailable(e)))
+            .onErrorResume(SQLException.class, e -> Mono.just(ResponseEntity.badRequest().body(Map.of(
                 "status", "ERROR",
                 "message", "Database connection error: " + e.getMessage()
-            )));
-        } catch (Exception e) {
-            return Mono.just(ResponseEntity.internalServerError().body(Map.of(
+            ))))
+            .onErrorResume(e -> !(e instanceof SQLException), e -> Mono.just(ResponseEntity.internalServerError().body(Map.of(
                 "status", "ERROR",
                 "message", "Unexpected error: " + e.getMessage()
-            )));
-        }
+            ))));
+        
+        return tracked(operation, response);
     }
     
     @GetMapping("/history")
-    public ResponseEntity<?> getQueryHistory(@RequestParam String connectionId) {
-        // This would be implemented with a proper query history storage system
-        // For now, return empty history
+    public ResponseEntity<?> getQueryHistory(
+            @RequestParam String connectionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String kind,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "50") int limit) {
+        
+        QueryDto.QueryHistoryPage page = historyStore.query(
+            connectionId, from, to, prefix, kind, Math.max(offset, 0), Math.min(Math.max(limit, 1), 500)
+        );
+        
+        return ResponseEntity.ok(Map.of(
+            "history", page.entries(),
+            "offset", page.offset(),
+            "limit", page.limit(),
+            "hasMore", page.hasMore(),
+            "status", "SUCCESS"
+        ));
+    }
+    
+    /**
+     * Query shapes (literals stripped) ranked by {@code orderBy}: total, mean, max, p99, count or rows.
+     */
+    @GetMapping("/stats/slow")
+    public ResponseEntity<?> getSlowQueryShapes(
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(defaultValue = "total") String orderBy) {
+        
+        if (!QueryShapeStats.ORDERINGS.contains(orderBy)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "orderBy must be one of " + String.join(", ", QueryShapeStats.ORDERINGS)
+            ));
+        }
+        
+        return ResponseEntity.ok(Map.of(
+            "shapes", shapeStats.topShapes(Math.min(Math.max(limit, 1), 500), orderBy),
+            "orderBy", orderBy,
+            "trackedShapes", shapeStats.trackedShapes(),
+            "untrackedExecutions", shapeStats.untrackedExecutions(),
+            "status", "SUCCESS"
+        ));
+    }
+    
+    @DeleteMapping("/stats")
+    public ResponseEntity<?> resetQueryStats() {
+        shapeStats.reset();
         return ResponseEntity.ok(Map.of(
-            "history", java.util.Collections.emptyList(),
             "status", "SUCCESS",
-            "message", "Query history feature not yet implemented"
+            "message", "Query statistics reset"
         ));
     }
     
     @PostMapping("/save")
     public ResponseEntity<?> saveQuery(@RequestBody Map<String, Object> request) {
-        // This would be implemented with a proper query storage system
-        // For now, just acknowledge the request
+        Object connectionId = request.get("connectionId");
+        Object sql = request.get("sql");
+        
+        if (connectionId == null || sql == null || sql.toString().isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "ERROR",
+                "message", "connectionId and sql are required"
+            ));
+        }
+        
+        Object name = request.get("name");
+        Object naturalLanguageQuery = request.get("naturalLanguageQuery");
+        historyStore.record(
+            connectionId.toString(), "SAVED",
+            naturalLanguageQuery != null ? naturalLanguageQuery.toString() : null,
+            sql.toString(), "SAVED", null, null,
+            name != null ? name.toString() : null
+        );
+        
         return ResponseEntity.ok(Map.of(
             "status", "SUCCESS",
-            "message", "Query save feature not yet implemented"
+            "message", "Query saved"
         ));
     }
-}
\ No newline at end of file
+    
+    /**
+     * Ties a response pipeline to its in-flight registration: /query/cancel stops the pipeline
+     * (disposing WebClient calls and running statement cancel hooks), and a client disconnect
+     * cancels the subscription, which cancels the operation.
+     */
+    private Mono<ResponseEntity<Map<String, Object>>> tracked(
+            InFlightOperationRegistry.Operation operation, Mono<ResponseEntity<Map<String, Object>>> response) {
+        
+        return response
+            .contextWrite(PipelineEvents.context(operation.connectionId(), operation.requestId()))
+            .takeUntilOther(operation.whenCancelled())
+            .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.ok(Map.<String, Object>of(
+                "requestId", operation.requestId(),
+                "status", "CANCELLED",
+                "message", "Request was cancelled"
+            ))))
+            .doOnCancel(operation::cancel)
+            .doFinally(signal -> operations.complete(operation));
+    }
+    
+    private ResponseEntity<Map<String, Object>> unknownConnection(String connectionId) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+            "status", "ERROR",
+            "message", "Unknown or expired connection " + connectionId + "; register it again",
+            "error", "UNKNOWN_CONNECTION"
+        ));
+    }
+    
+    private ResponseEntity<Map<String, Object>> unknownSnapshot(String snapshotId) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+            "status", "ERROR",
+            "message", "Unknown or expired snapshot " + snapshotId,
+            "error", "UNKNOWN_SNAPSHOT"
+        ));
+    }
+    
+    /** Snapshot pages follow the same 1000-row ceiling as /query/execute. */
+    private static int clampPageSize(int pageSize) {
+        return Math.min(Math.max(pageSize, 1), 1000);
+    }
+    
+    /** 503 with Retry-After so clients back off instead of queueing behind a throttled or failing provider. */
+    private ResponseEntity<Map<String, Object>> providerUnavailable(LlmProviderGuard.ProviderUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (e.getRetryAfterMs() + 999) / 1000)))
+            .body(Map.of(
+                "status", "ERROR",
+                "message", e.getMessage(),
+                "error", e.getReason()
+            ));
+    }
+    
+    private ResponseEntity<Map<String, Object>> duplicateRequest(String requestId) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+            "status", "ERROR",
+            "message", "Request " + requestId + " is already in flight"
+        ));
+    }
+    
+    @SuppressWarnings("try")
+    private ResultExporter.ExportBody exportBody(
+            String connectionId, DatabaseConnectionDto connectionDto,
+            QueryDto.QueryExecutionRequest request, ResultExporter.Format format,
+            InFlightOperationRegistry.Operation operation) {
+        
+        return out -> {
+            long rows;
+            try (PipelineEvents.Scope scope = PipelineEvents.bind(connectionId, operation != null ? operation.requestId() : null)) {
+                rows = databaseService.exportQuery(connectionDto, request, format, out, operation);
+            }
+            historyStore.record(
+                connectionId, "EXPORT", null, request.sql(), "SUCCESS",
+                null, (int) Math.min(rows, Integer.MAX_VALUE), null
+            );
+            return rows;
+        };
+    }
+    
+    private ResponseEntity<Flux<Map<String, Object>>> batchError(HttpStatus status, Map<String, Object> body) {
+        return ResponseEntity.status(status).body(Flux.just(body));
+    }
+    
+    private ResponseEntity<StreamingResponseBody> jsonError(HttpStatus status, String message) {
+        Map<String, Object> body = Map.of(
+            "status", "ERROR",
+            "message", message
+        );
+        return ResponseEntity.status(status)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(out -> objectMapper.writeValue(out, body));
+    }
+}
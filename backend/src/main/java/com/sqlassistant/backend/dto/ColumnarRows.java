@@ -0,0 +1,423 @@
+package com.sqlassistant.backend.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.sqlassistant.backend.service.PipelineEvents;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Query results held column by column. Each column's reader is picked once from the
+ * {@link ResultSetMetaData} and reads with the typed getter ({@code getLong}, {@code getDouble},
+ * ...) plus {@code wasNull()} into a primitive buffer, so numeric cells are never boxed.
+ *
+ * Serializes to the same JSON as the list of row maps it replaces, writing primitives straight
+ * from the buffers. Java callers still see a {@code List<Map<String, Object>>}; rows are only
+ * built as maps when accessed.
+ */
+@JsonSerialize(using = ColumnarRows.Serializer.class)
+public final class ColumnarRows extends AbstractList<Map<String, Object>> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final String[] names;
+    private final Column[] columns;
+    /** Columns visible in a row map: the last column per name, in first-occurrence order (LinkedHashMap semantics). */
+    private final int[] visible;
+    private int rowCount;
+    /** Ids for the serialization event, which fires on the response thread rather than the query's. */
+    private PipelineEvents.Trace trace;
+
+    private ColumnarRows(String[] names, Column[] columns) {
+        this.names = names;
+        this.columns = columns;
+
+        Map<String, Integer> lastByName = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            lastByName.put(names[i], i);
+        }
+        this.visible = lastByName.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param dynamicTyping true for engines where declared column types don't bind stored values
+     *                      (SQLite); every column is then read with {@code getObject}
+     */
+    public static ColumnarRows forResultSet(ResultSetMetaData metaData, int maxRows, boolean dynamicTyping) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        int capacity = Math.max(1, Math.min(maxRows, INITIAL_CAPACITY));
+
+        String[] names = new String[columnCount];
+        Column[] columns = new Column[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            names[i - 1] = metaData.getColumnName(i);
+            columns[i - 1] = dynamicTyping ? new ObjectColumn(capacity) : columnFor(metaData, i, capacity);
+        }
+        return new ColumnarRows(names, columns);
+    }
+
+    /** Reads the current row of the result set into the column buffers. */
+    public void readRow(ResultSet resultSet) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(resultSet, i + 1, rowCount);
+        }
+        rowCount++;
+    }
+
+    public void traceAs(PipelineEvents.Trace trace) {
+        this.trace = trace;
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public Map<String, Object> get(int row) {
+        Objects.checkIndex(row, rowCount);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int column : visible) {
+            values.put(names[column], columns[column].get(row));
+        }
+        return values;
+    }
+
+    private static Column columnFor(ResultSetMetaData metaData, int index, int capacity) throws SQLException {
+        int type = metaData.getColumnType(index);
+        String typeName = metaData.getColumnTypeName(index);
+        boolean unsigned = typeName != null && typeName.toUpperCase(Locale.ROOT).contains("UNSIGNED");
+
+        return switch (type) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> new LongColumn(capacity);
+            // BIGINT UNSIGNED doesn't fit a long
+            case Types.BIGINT -> unsigned ? new ObjectColumn(capacity) : new LongColumn(capacity);
+            case Types.DOUBLE, Types.FLOAT -> new DoubleColumn(capacity, false);
+            case Types.REAL -> new DoubleColumn(capacity, true);
+            case Types.BOOLEAN -> new BooleanColumn();
+            // PostgreSQL reports bool as BIT; wider MySQL BIT(n) columns are bit strings
+            case Types.BIT -> metaData.getPrecision(index) <= 1 ? new BooleanColumn() : new ObjectColumn(capacity);
+            case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR,
+                 Types.LONGNVARCHAR, Types.CLOB, Types.NCLOB -> new StringColumn(capacity);
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> new BytesColumn(capacity);
+            // Connector/J returns DATETIME as LocalDateTime; converting it to Timestamp would shift it by the JVM zone
+            case Types.TIMESTAMP -> LocalDateTime.class.getName().equals(metaData.getColumnClassName(index))
+                ? new LocalDateTimeColumn(capacity)
+                : new TimestampColumn(capacity);
+            default -> new ObjectColumn(capacity);
+        };
+    }
+
+    /**
+     * A typed buffer plus the reader that fills it. Buffers grow by doubling, so a result
+     * capped at N rows allocates O(N) per column rather than one map per row.
+     */
+    private abstract static class Column {
+
+        abstract void read(ResultSet resultSet, int index, int row) throws SQLException;
+
+        abstract Object get(int row);
+
+        abstract void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException;
+    }
+
+    private static final class LongColumn extends Column {
+        private long[] values;
+        private final BitSet nulls = new BitSet();
+
+        LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            long value = resultSet.getLong(index);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+            if (row == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            if (nulls.get(row)) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(values[row]);
+            }
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private double[] values;
+        private final BitSet nulls = new BitSet();
+        private final boolean singlePrecision;
+
+        DoubleColumn(int capacity, boolean singlePrecision) {
+            this.values = new double[capacity];
+            this.singlePrecision = singlePrecision;
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            double value = singlePrecision ? resultSet.getFloat(index) : resultSet.getDouble(index);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+            if (row == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            return singlePrecision ? (Object) (float) values[row] : (Object) values[row];
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            if (nulls.get(row)) {
+                gen.writeNull();
+            } else if (singlePrecision) {
+                // Written as float so 0.1f stays "0.1" rather than its widened double digits
+                gen.writeNumber((float) values[row]);
+            } else {
+                gen.writeNumber(values[row]);
+            }
+        }
+    }
+
+    private static final class BooleanColumn extends Column {
+        private final BitSet values = new BitSet();
+        private final BitSet nulls = new BitSet();
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            boolean value = resultSet.getBoolean(index);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            } else if (value) {
+                values.set(row);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values.get(row);
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            if (nulls.get(row)) {
+                gen.writeNull();
+            } else {
+                gen.writeBoolean(values.get(row));
+            }
+        }
+    }
+
+    /** Epoch millis, serialized through Jackson's date settings exactly as a java.sql.Timestamp would be. */
+    private static final class TimestampColumn extends Column {
+        private long[] millis;
+        private final BitSet nulls = new BitSet();
+
+        TimestampColumn(int capacity) {
+            millis = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            Timestamp value = resultSet.getTimestamp(index);
+            if (row == millis.length) {
+                millis = Arrays.copyOf(millis, millis.length * 2);
+            }
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                millis[row] = value.getTime();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : new Timestamp(millis[row]);
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            if (nulls.get(row)) {
+                gen.writeNull();
+            } else {
+                provider.defaultSerializeDateValue(millis[row], gen);
+            }
+        }
+    }
+
+    /** Wall-clock values as UTC epoch seconds and nanos, serialized as the LocalDateTime {@code getObject} returned. */
+    private static final class LocalDateTimeColumn extends Column {
+        private long[] seconds;
+        private int[] nanos;
+        private final BitSet nulls = new BitSet();
+
+        LocalDateTimeColumn(int capacity) {
+            seconds = new long[capacity];
+            nanos = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            LocalDateTime value = resultSet.getObject(index, LocalDateTime.class);
+            if (row == seconds.length) {
+                seconds = Arrays.copyOf(seconds, seconds.length * 2);
+                nanos = Arrays.copyOf(nanos, nanos.length * 2);
+            }
+            if (value == null) {
+                nulls.set(row);
+            } else {
+                seconds[row] = value.toEpochSecond(ZoneOffset.UTC);
+                nanos[row] = value.getNano();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : LocalDateTime.ofEpochSecond(seconds[row], nanos[row], ZoneOffset.UTC);
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            if (nulls.get(row)) {
+                gen.writeNull();
+            } else {
+                provider.defaultSerializeValue(get(row), gen);
+            }
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        protected Object[] values;
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            store(row, resultSet.getObject(index));
+        }
+
+        protected void store(int row, Object value) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            provider.defaultSerializeValue(values[row], gen);
+        }
+    }
+
+    private static final class StringColumn extends ObjectColumn {
+
+        StringColumn(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            store(row, resultSet.getString(index));
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            String value = (String) values[row];
+            if (value == null) {
+                gen.writeNull();
+            } else {
+                gen.writeString(value);
+            }
+        }
+    }
+
+    private static final class BytesColumn extends ObjectColumn {
+
+        BytesColumn(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            store(row, resultSet.getBytes(index));
+        }
+
+        @Override
+        void write(JsonGenerator gen, SerializerProvider provider, int row) throws IOException {
+            byte[] value = (byte[]) values[row];
+            if (value == null) {
+                gen.writeNull();
+            } else {
+                gen.writeBinary(provider.getConfig().getBase64Variant(), value, 0, value.length);
+            }
+        }
+    }
+
+    public static final class Serializer extends StdSerializer<ColumnarRows> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(ColumnarRows.class);
+        }
+
+        @Override
+        public void serialize(ColumnarRows rows, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            PipelineEvents.Serialization event = new PipelineEvents.Serialization();
+            event.begin();
+
+            gen.writeStartArray(rows, rows.rowCount);
+            for (int row = 0; row < rows.rowCount; row++) {
+                gen.writeStartObject();
+                for (int column : rows.visible) {
+                    gen.writeFieldName(rows.names[column]);
+                    rows.columns[column].write(gen, provider, row);
+                }
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+
+            event.format = "JSON";
+            event.rows = rows.rowCount;
+            event.columns = rows.visible.length;
+            event.commit(rows.trace != null ? rows.trace : PipelineEvents.current());
+        }
+    }
+}
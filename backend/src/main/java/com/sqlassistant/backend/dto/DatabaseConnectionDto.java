@@ -19,8 +19,22 @@ public record DatabaseConnectionDto(
     
     String password,
     
-    String connectionString
+    String connectionString,
+    
+    ExecutionOptions execution
 ) {
+    /**
+     * Optional per-connection overrides of the dialect's execution profile; null fields keep
+     * the profile default.
+     */
+    public record ExecutionOptions(
+        Integer fetchSize,
+        Boolean cursorFetch,
+        Boolean readOnly,
+        String isolation,
+        Integer queryTimeoutSeconds
+    ) {}
+    
     public enum DatabaseType {
         MYSQL("com.mysql.cj.jdbc.Driver", "jdbc:mysql://", 3306),
         POSTGRESQL("org.postgresql.Driver", "jdbc:postgresql://", 5432),
@@ -1,6 +1,8 @@
 package com.sqlassistant.backend.dto;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +42,17 @@ public class QueryDto {
         boolean dryRun
     ) {}
     
+    /**
+     * Queries for /query/execute/batch, all against the request's connectionId; per-query
+     * connectionId and connectionDto fields are ignored.
+     */
+    public record QueryBatchRequest(
+        @NotEmpty
+        List<@Valid QueryExecutionRequest> queries,
+        
+        DatabaseConnectionDto connectionDto
+    ) {}
+    
     public record QueryExecutionResponse(
         List<Map<String, Object>> results,
         List<String> columnNames,
@@ -58,7 +71,34 @@ public class QueryDto {
         boolean hasSubqueries,
         boolean hasAggregations,
         String complexity,
-        LocalDateTime timestamp
+        LocalDateTime timestamp,
+        PlanSummary plan
+    ) {
+        public QueryMetadata(
+            String queryType,
+            List<String> tablesInvolved,
+            boolean hasJoins,
+            boolean hasSubqueries,
+            boolean hasAggregations,
+            String complexity,
+            LocalDateTime timestamp) {
+            this(queryType, tablesInvolved, hasJoins, hasSubqueries, hasAggregations, complexity, timestamp, null);
+        }
+        
+        public QueryMetadata withPlan(PlanSummary plan) {
+            return new QueryMetadata(
+                queryType, tablesInvolved, hasJoins, hasSubqueries, hasAggregations, complexity, timestamp, plan
+            );
+        }
+    }
+    
+    public record PlanSummary(
+        String dialect,
+        Double estimatedCost,
+        Long estimatedRows,
+        List<String> fullScans,
+        String verdict,
+        List<String> warnings
     ) {}
     
     public record QueryValidationResponse(
@@ -68,4 +108,24 @@ public class QueryDto {
         List<String> suggestions,
         String sanitizedQuery
     ) {}
-}
\ No newline at end of file
+    
+    public record QueryHistoryEntry(
+        long id,
+        String connectionId,
+        String kind,
+        String naturalLanguageQuery,
+        String sql,
+        String status,
+        Long executionTimeMs,
+        Integer rowCount,
+        String name,
+        LocalDateTime timestamp
+    ) {}
+    
+    public record QueryHistoryPage(
+        List<QueryHistoryEntry> entries,
+        int offset,
+        int limit,
+        boolean hasMore
+    ) {}
+}
@@ -0,0 +1,23 @@
+package com.sqlassistant.backend.model;
+
+import java.util.List;
+
+/**
+ * Changes between two schema versions, keyed by {@link SchemaFingerprint#tableKey(String, String)}.
+ *
+ * @param since      the version the client already has
+ * @param version    the current version
+ * @param fullReload true when {@code since} is unknown (expired or from another server); the
+ *                   client must fetch the full schema instead of applying the lists
+ * @param dropped    keys of tables and views that no longer exist
+ */
+public record SchemaDelta(
+    String since,
+    String version,
+    boolean fullReload,
+    List<DatabaseSchema.TableInfo> addedTables,
+    List<DatabaseSchema.TableInfo> changedTables,
+    List<DatabaseSchema.ViewInfo> addedViews,
+    List<DatabaseSchema.ViewInfo> changedViews,
+    List<String> dropped
+) {}
@@ -0,0 +1,21 @@
+package com.sqlassistant.backend.model;
+
+import java.util.Map;
+
+/**
+ * Cheap structural fingerprint of a database schema.
+ *
+ * @param version    digest over all table fingerprints; equal versions mean no DDL changes
+ * @param quickToken dialect counter that changes on any DDL (SQLite {@code PRAGMA schema_version}), or null
+ * @param tables     per-table fingerprints keyed by {@link #tableKey(String, String)}
+ */
+public record SchemaFingerprint(
+    String version,
+    String quickToken,
+    Map<String, String> tables
+) {
+
+    public static String tableKey(String schema, String tableName) {
+        return schema == null || schema.isEmpty() ? tableName : schema + "." + tableName;
+    }
+}
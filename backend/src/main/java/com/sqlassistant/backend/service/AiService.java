@@ -5,23 +5,30 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sqlassistant.backend.dto.QueryDto;
 import com.sqlassistant.backend.model.DatabaseSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
 @Service
 public class AiService {
     
+    private static final Logger log = LoggerFactory.getLogger(AiService.class);
+    
+    /** Returned by {@link #explainQuery} when the provider failed or answered with nothing usable. */
+    public static final String EXPLANATION_UNAVAILABLE = "Unable to generate explanation";
+    
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
     
@@ -34,80 +41,146 @@ public class AiService {
     @Value("${openai.api.model}")
     private String model;
     
-    public AiService(WebClient.Builder webClientBuilder, ObjectMapper objectMapper) {
+    @Value("${gemini.api.key:your key}")
+    private String geminiApiKey;
+    
+    @Value("${gemini.api.url:https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent}")
+    private String geminiApiUrl;
+    
+    @Value("${gemini.api.requests-per-minute:15}")
+    private int geminiRequestsPerMinute;
+    
+    @Value("${gemini.api.burst:5}")
+    private int geminiBurst;
+    
+    @Value("${openai.api.requests-per-minute:500}")
+    private int openAiRequestsPerMinute;
+    
+    @Value("${openai.api.burst:20}")
+    private int openAiBurst;
+    
+    private final LlmProviderGuard guard;
+    
+    public AiService(WebClient.Builder webClientBuilder, ObjectMapper objectMapper, LlmProviderGuard guard) {
         this.webClient = webClientBuilder.build();
         this.objectMapper = objectMapper;
+        this.guard = guard;
     }
 
 
-    public QueryDto.QueryResponse generateSqlQuery(
+    /**
+     * Runs on WebClient so the Gemini call is cancellable: disposing the returned Mono (client
+     * disconnect or /query/cancel) aborts the HTTP exchange instead of waiting for the model.
+     * The call goes through {@link LlmProviderGuard}; when the key is rate limited or its breaker
+     * is open this fails with {@link LlmProviderGuard.ProviderUnavailableException} so the caller
+     * can fall back, rather than returning an error response.
+     */
+    @SuppressWarnings("try")
+    public Mono<QueryDto.QueryResponse> generateSqlQuery(
             String naturalLanguageQuery,
             DatabaseSchema schema,
             Map<String, Object> context) {
 
-        String GEMINI_API_KEY = "your key";
-        String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent";
+        String GEMINI_API_KEY = geminiApiKey;
+        String GEMINI_API_URL = geminiApiUrl;
 
         if (GEMINI_API_KEY == null || GEMINI_API_KEY.isBlank()) {
-            return createErrorResponse("Gemini API key not configured");
+            return Mono.just(createErrorResponse("Gemini API key not configured"));
         }
 
-        try {
+        return Mono.deferContextual(reactorContext -> {
+            PipelineEvents.Trace trace = PipelineEvents.fromContext(reactorContext);
+
             // ✅ Build prompt
-            String systemPrompt = buildSystemPrompt(schema);
-            String userPrompt = buildUserPrompt(naturalLanguageQuery, context);
-            String prompt = systemPrompt + "\n\n\n" + userPrompt;
+            String prompt;
+            try (PipelineEvents.Scope scope = PipelineEvents.bind(trace)) {
+                prompt = buildPrompt(naturalLanguageQuery, schema, context);
+            }
 
             // ✅ Build request body
             Map<String, Object> textPart = Map.of("text", prompt);
             Map<String, Object> partsItem = Map.of("parts", List.of(textPart));
             Map<String, Object> requestData = Map.of("contents", List.of(partsItem));
 
-            ObjectMapper mapper = new ObjectMapper();
-            String jsonBody = mapper.writeValueAsString(requestData);
-
-            // ✅ Build headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("x-goog-api-key", GEMINI_API_KEY);
-
-            HttpEntity<String> requestEntity = new HttpEntity<>(jsonBody, headers);
-
-            RestTemplate restTemplate = new RestTemplate();
-
             // ✅ Send POST request
-            ResponseEntity<String> responseEntity = restTemplate.exchange(
-                    GEMINI_API_URL,
-                    HttpMethod.POST,
-                    requestEntity,
-                    String.class
-            );
-
-            // ✅ Check for success
-            if (responseEntity.getStatusCode().is2xxSuccessful()) {
-                String responseBody = responseEntity.getBody();
-                System.out.println("✅ Gemini API Response: " + responseBody);
-
-                return parseGeminiResponse(responseBody);
-            } else {
-                System.err.println("❌ Gemini API returned error: " + responseEntity.getStatusCode());
-                return createErrorResponse("Gemini API returned status " + responseEntity.getStatusCodeValue());
-            }
+            Mono<ResponseEntity<String>> exchange = webClient.post()
+                    .uri(GEMINI_API_URL)
+                    .header("x-goog-api-key", GEMINI_API_KEY)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(requestData)
+                    .retrieve()
+                    .toEntity(String.class);
+
+            Mono<String> call = traced(exchange, "GEMINI", "GENERATE", prompt, trace);
+            return guard.call("GEMINI", GEMINI_API_KEY, new LlmProviderGuard.Quota(geminiRequestsPerMinute, geminiBurst), call)
+                    .map(responseBody -> {
+                        log.debug("Gemini API response: {}", responseBody);
+                        return parseGeminiResponse(responseBody);
+                    })
+                    .onErrorResume(WebClientResponseException.class, e -> {
+                        log.warn("Gemini API HTTP error: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
+                        return Mono.just(createErrorResponse("Gemini API error: " + e.getStatusCode() + " - " + e.getResponseBodyAsString()));
+                    })
+                    .onErrorResume(WebClientRequestException.class, e -> {
+                        log.warn("Gemini API timeout or connection error: {}", e.getMessage());
+                        return Mono.just(createErrorResponse("Gemini API timeout or connection error: " + e.getMessage()));
+                    })
+                    .onErrorResume(TimeoutException.class, e -> {
+                        log.warn("Gemini API call timed out");
+                        return Mono.just(createErrorResponse("Gemini API timed out"));
+                    })
+                    .onErrorResume(e -> !(e instanceof LlmProviderGuard.ProviderUnavailableException), e -> {
+                        log.warn("Gemini API call failed", e);
+                        return Mono.just(createErrorResponse("Unexpected error: " + e.getMessage()));
+                    });
+        });
+    }
 
-        } catch (HttpClientErrorException | HttpServerErrorException e) {
-            System.err.println("❌ Gemini API HTTP Error: " + e.getStatusCode() + " - " + e.getResponseBodyAsString());
-            return createErrorResponse("Gemini API error: " + e.getStatusCode() + " - " + e.getResponseBodyAsString());
-        } catch (ResourceAccessException e) {
-            System.err.println("⏰ Gemini API Timeout or Connection Error: " + e.getMessage());
-            return createErrorResponse("Gemini API timeout or connection error: " + e.getMessage());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return createErrorResponse("Unexpected error: " + e.getMessage());
-        }
+    /**
+     * Emits an LLM call event spanning the HTTP exchange (status 0 if it never got a response)
+     * and unwraps the body.
+     */
+    private Mono<String> traced(Mono<ResponseEntity<String>> exchange, String provider, String operation,
+                                String prompt, PipelineEvents.Trace trace) {
+        return Mono.defer(() -> {
+            PipelineEvents.LlmCall event = new PipelineEvents.LlmCall();
+            boolean sizes = event.isEnabled();
+            event.provider = provider;
+            event.operation = operation;
+            event.requestBytes = sizes ? prompt.getBytes(StandardCharsets.UTF_8).length : 0;
+            event.begin();
+
+            return exchange
+                .doOnNext(entity -> {
+                    event.status = entity.getStatusCode().value();
+                    event.responseBytes = sizes && entity.getBody() != null ? entity.getBody().getBytes(StandardCharsets.UTF_8).length : 0;
+                })
+                .doOnError(WebClientResponseException.class, e -> {
+                    event.status = e.getStatusCode().value();
+                    event.responseBytes = e.getResponseBodyAsByteArray().length;
+                })
+                .doFinally(signal -> event.commit(trace))
+                .map(entity -> entity.getBody() != null ? entity.getBody() : "");
+        });
     }
 
 
 
+    /**
+     * The full generation prompt: schema-aware system instructions followed by the user request.
+     */
+    public String buildPrompt(String naturalLanguageQuery, DatabaseSchema schema, Map<String, Object> context) {
+        PipelineEvents.PromptBuild event = new PipelineEvents.PromptBuild();
+        event.begin();
+        String prompt = buildSystemPrompt(schema) + "\n\n\n" + buildUserPrompt(naturalLanguageQuery, context);
+        if (event.isEnabled()) {
+            event.tables = schema.tables() != null ? schema.tables().size() : 0;
+            event.promptBytes = prompt.getBytes(StandardCharsets.UTF_8).length;
+        }
+        event.commit(PipelineEvents.current());
+        return prompt;
+    }
+    
     private String buildSystemPrompt(DatabaseSchema schema) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("You are a SQL query assistant. Generate safe, read-only SQL queries based on natural language requests.\n\n");
@@ -388,15 +461,20 @@ public class AiService {
             "max_tokens", 500
         );
         
-        return webClient.post()
+        Mono<ResponseEntity<String>> exchange = webClient.post()
             .uri(openAiBaseUrl + "/chat/completions")
             .header(HttpHeaders.AUTHORIZATION, "Bearer " + openAiApiKey)
             .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
             .bodyValue(requestBody)
             .retrieve()
-            .bodyToMono(String.class)
+            .toEntity(String.class);
+        
+        LlmProviderGuard.Quota quota = new LlmProviderGuard.Quota(openAiRequestsPerMinute, openAiBurst);
+        return Mono.deferContextual(context -> guard.call("OPENAI", openAiApiKey, quota,
+                traced(exchange, "OPENAI", "EXPLAIN", systemPrompt + userPrompt, PipelineEvents.fromContext(context))))
             .map(this::extractExplanationFromResponse)
-            .onErrorReturn("Unable to generate explanation");
+            .onErrorResume(e -> !(e instanceof LlmProviderGuard.ProviderUnavailableException),
+                e -> Mono.just(EXPLANATION_UNAVAILABLE));
     }
     
     private String extractExplanationFromResponse(String response) {
@@ -411,6 +489,6 @@ public class AiService {
             // Fall through to default return
         }
         
-        return "Unable to generate explanation";
+        return EXPLANATION_UNAVAILABLE;
     }
 }
\ No newline at end of file
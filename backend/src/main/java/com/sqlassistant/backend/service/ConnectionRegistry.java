@@ -0,0 +1,270 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Connection profiles registered once (POST /database/connections or /database/test-connection)
+ * and afterwards referenced by id, so requests no longer carry the DTO and its credentials.
+ * Profiles are validated, their JDBC URL built and the connection tested at registration.
+ *
+ * Ids are an HMAC-SHA256 of the dialect, URL and username under a server key: re-registering
+ * a profile returns the same id, different users never share one, and ids can't be guessed
+ * without the key. The key is {@code query.connections.id-secret}, or else a random key generated
+ * once and kept in {@code id-secret-file}, so ids (and the schema snapshots and history keyed by
+ * them) survive restarts. Snapshots written under a previous key are deleted at startup. Profiles
+ * are held in memory only and dropped after {@code idle-timeout-minutes} without use.
+ */
+@Service
+public class ConnectionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionRegistry.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int ID_BYTES = 16;
+    private static final int KEY_BYTES = 32;
+
+    /**
+     * @param jdbcUrl URL built from the profile at registration
+     */
+    public record RegisteredConnection(
+        String id,
+        DatabaseConnectionDto connection,
+        String jdbcUrl,
+        Instant registeredAt
+    ) {
+        /** The profile without credentials, for API responses. */
+        public Map<String, Object> describe() {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("connectionId", id);
+            description.put("type", connection.type());
+            description.put("host", connection.host());
+            description.put("port", connection.port());
+            description.put("database", connection.database());
+            description.put("username", connection.username());
+            description.put("registeredAt", registeredAt.toString());
+            return description;
+        }
+    }
+
+    /**
+     * The connection a request runs against, with the id that keys its schema cache, pools and
+     * history; for a legacy request this is the server-derived id, not the one the client sent.
+     */
+    public record ResolvedConnection(String id, DatabaseConnectionDto connection) {}
+
+    private record Entry(RegisteredConnection registered, long lastUsedMillis) {}
+
+    private final Map<String, Entry> connections = new ConcurrentHashMap<>();
+    private final DatabaseService databaseService;
+    private final JdbcConnectionPools connectionPools;
+    private final ReactiveQueryEngine reactiveQueryEngine;
+    private final SchemaSnapshotStore snapshotStore;
+    private final Validator validator;
+
+    @Value("${query.connections.id-secret:}")
+    private String idSecret;
+
+    @Value("${query.connections.id-secret-file:./data/connection-id.key}")
+    private String idSecretFile;
+
+    @Value("${query.connections.idle-timeout-minutes:720}")
+    private long idleTimeoutMinutes;
+
+    private SecretKeySpec idKey;
+
+    public ConnectionRegistry(DatabaseService databaseService, JdbcConnectionPools connectionPools,
+                              ReactiveQueryEngine reactiveQueryEngine, SchemaSnapshotStore snapshotStore,
+                              Validator validator) {
+        this.databaseService = databaseService;
+        this.connectionPools = connectionPools;
+        this.reactiveQueryEngine = reactiveQueryEngine;
+        this.snapshotStore = snapshotStore;
+        this.validator = validator;
+    }
+
+    @PostConstruct
+    public void init() {
+        byte[] key = idSecret != null && !idSecret.isBlank()
+            ? idSecret.getBytes(StandardCharsets.UTF_8)
+            : persistedKey();
+        idKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        // Runs before the snapshots are preloaded (on ApplicationReadyEvent)
+        snapshotStore.retainKey(hmacId("schema-snapshots"));
+    }
+
+    /**
+     * The generated key from {@code id-secret-file}, created on first start. If the file can't
+     * be written the key only lasts for this process, and ids change on the next restart.
+     */
+    private byte[] persistedKey() {
+        Path file = Path.of(idSecretFile);
+        try {
+            if (Files.exists(file)) {
+                byte[] key = Base64.getDecoder().decode(Files.readString(file, StandardCharsets.US_ASCII).trim());
+                if (key.length >= KEY_BYTES) {
+                    return key;
+                }
+                log.warn("Ignoring connection id key in {}: shorter than {} bytes", file, KEY_BYTES);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not read connection id key from {}: {}", file, e.getMessage());
+        }
+
+        byte[] key = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "connection-id", ".tmp");
+            try {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system; the directory's permissions apply
+            }
+            Files.writeString(temp, Base64.getEncoder().encodeToString(key), StandardCharsets.US_ASCII);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Generated a connection id key in {}; set query.connections.id-secret to manage it yourself", file);
+        } catch (IOException e) {
+            log.warn("Could not persist the connection id key to {} ({}); connection ids will change on restart",
+                file, e.getMessage());
+        }
+        return key;
+    }
+
+    /**
+     * Validates and tests the profile, then stores it. Registering the same dialect, URL and
+     * username again replaces the stored profile (e.g. a rotated password) under the same id.
+     *
+     * @throws IllegalArgumentException if the profile fails bean validation
+     * @throws SQLException             if the connection can't be opened
+     */
+    public RegisteredConnection register(DatabaseConnectionDto connectionDto) throws SQLException {
+        Set<ConstraintViolation<DatabaseConnectionDto>> violations = validator.validate(connectionDto);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; ")));
+        }
+
+        String jdbcUrl = connectionDto.buildConnectionUrl();
+        databaseService.testConnection(connectionDto);
+
+        String id = idFor(connectionDto.type(), jdbcUrl, connectionDto.username());
+        RegisteredConnection registered = new RegisteredConnection(id, connectionDto, jdbcUrl, Instant.now());
+        if (connections.put(id, new Entry(registered, System.currentTimeMillis())) != null) {
+            // Same profile re-registered, possibly with a new password; reopen pooled sessions with it
+            evictPools(id);
+        }
+
+        evictIdle();
+        return registered;
+    }
+
+    public Optional<RegisteredConnection> get(String connectionId) {
+        if (connectionId == null) {
+            return Optional.empty();
+        }
+
+        long now = System.currentTimeMillis();
+        Entry entry = connections.computeIfPresent(connectionId, (id, existing) ->
+            isIdle(existing, now) ? null : new Entry(existing.registered(), now)
+        );
+        return entry != null ? Optional.of(entry.registered()) : Optional.empty();
+    }
+
+    /**
+     * The registered profile for {@code connectionId}, or the DTO sent with the request by
+     * clients that predate registration. A legacy DTO is keyed by an id derived here from its
+     * dialect, URL and credentials, never by the id the client sent: otherwise any client could
+     * pick an id and share another user's cached schema and pooled sessions.
+     */
+    public Optional<ResolvedConnection> resolve(String connectionId, DatabaseConnectionDto legacyConnection) {
+        Optional<RegisteredConnection> registered = get(connectionId);
+        if (registered.isPresent()) {
+            return Optional.of(new ResolvedConnection(registered.get().id(), registered.get().connection()));
+        }
+        if (legacyConnection == null || !validator.validate(legacyConnection).isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResolvedConnection(legacyIdFor(legacyConnection), legacyConnection));
+    }
+
+    public boolean unregister(String connectionId) {
+        if (connections.remove(connectionId) == null) {
+            return false;
+        }
+        evictPools(connectionId);
+        return true;
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        connections.entrySet().removeIf(entry -> {
+            if (!isIdle(entry.getValue(), now)) {
+                return false;
+            }
+            evictPools(entry.getKey());
+            return true;
+        });
+    }
+
+    /** JDBC and R2DBC pools both hold sessions opened with the profile's credentials. */
+    private void evictPools(String connectionId) {
+        connectionPools.evict(connectionId);
+        reactiveQueryEngine.evict(connectionId);
+    }
+
+    private boolean isIdle(Entry entry, long now) {
+        return now - entry.lastUsedMillis() > idleTimeoutMinutes * 60_000;
+    }
+
+    private String idFor(DatabaseConnectionDto.DatabaseType type, String jdbcUrl, String username) {
+        return hmacId(type + "\n" + jdbcUrl + "\n" + (username != null ? username : ""));
+    }
+
+    /**
+     * Legacy DTOs were never tested at registration, so their id covers the password too: a
+     * wrong password gets an id (and pools) of its own instead of the ones another login opened.
+     */
+    private String legacyIdFor(DatabaseConnectionDto connectionDto) {
+        return hmacId("legacy\n" + connectionDto.type() + "\n" + connectionDto.buildConnectionUrl()
+            + "\n" + (connectionDto.username() != null ? connectionDto.username() : "")
+            + "\n" + (connectionDto.password() != null ? connectionDto.password() : ""));
+    }
+
+    private String hmacId(String identity) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(idKey);
+            byte[] digest = mac.doFinal(identity.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, ID_BYTES));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+}
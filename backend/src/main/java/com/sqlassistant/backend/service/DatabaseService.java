@@ -1,32 +1,86 @@
 package com.sqlassistant.backend.service;
 
+import com.sqlassistant.backend.dto.ColumnarRows;
 import com.sqlassistant.backend.dto.DatabaseConnectionDto;
 import com.sqlassistant.backend.dto.QueryDto;
 import com.sqlassistant.backend.model.DatabaseSchema;
+import com.sqlassistant.backend.model.SchemaDelta;
+import com.sqlassistant.backend.model.SchemaFingerprint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class DatabaseService {
     
+    private static final int MAX_RESULT_ROWS = 1000;
+    private static final int FINGERPRINT_HISTORY = 16;
+    
     private final Map<String, DataSource> activeConnections = new ConcurrentHashMap<>();
+    private final Map<String, CachedSchema> schemaCache = new ConcurrentHashMap<>();
     private final QueryValidationService validationService;
+    private final ReactiveQueryEngine reactiveQueryEngine;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    /** Recent fingerprints per connection, newest last, for /database/schema/delta. */
+    private final Map<String, List<SchemaFingerprint>> fingerprintHistory = new ConcurrentHashMap<>();
+    private final SchemaFingerprintProbe fingerprintProbe;
+    private final SchemaSnapshotStore snapshotStore;
+    private final QueryCostGate costGate;
+    private final ExecutionProfiles executionProfiles;
+    private final ResultExporter resultExporter;
+    private final JdbcConnectionPools connectionPools;
+    private final QueryShapeStats shapeStats;
+    private final ResultSnapshotStore resultSnapshots;
+    private final SchemaSearchIndex searchIndex;
+    private final EmbeddedDatabases embeddedDatabases;
+    private final Scheduler jdbcScheduler;
+    
+    @Value("${query.schema.revalidate-after-ms:5000}")
+    private long schemaRevalidateAfterMs;
     
-    public DatabaseService(QueryValidationService validationService) {
+    @Value("${query.export.timeout-seconds:3600}")
+    private int exportTimeoutSeconds;
+    
+    public DatabaseService(QueryValidationService validationService, ReactiveQueryEngine reactiveQueryEngine,
+                           SchemaFingerprintProbe fingerprintProbe, SchemaSnapshotStore snapshotStore,
+                           QueryCostGate costGate, ExecutionProfiles executionProfiles,
+                           ResultExporter resultExporter, JdbcConnectionPools connectionPools,
+                           QueryShapeStats shapeStats, ResultSnapshotStore resultSnapshots,
+                           SchemaSearchIndex searchIndex, EmbeddedDatabases embeddedDatabases,
+                           Scheduler jdbcScheduler) {
         this.validationService = validationService;
+        this.reactiveQueryEngine = reactiveQueryEngine;
+        this.fingerprintProbe = fingerprintProbe;
+        this.snapshotStore = snapshotStore;
+        this.costGate = costGate;
+        this.executionProfiles = executionProfiles;
+        this.resultExporter = resultExporter;
+        this.connectionPools = connectionPools;
+        this.shapeStats = shapeStats;
+        this.resultSnapshots = resultSnapshots;
+        this.searchIndex = searchIndex;
+        this.embeddedDatabases = embeddedDatabases;
+        this.jdbcScheduler = jdbcScheduler;
     }
     
-    public String testConnection(DatabaseConnectionDto connectionDto) throws SQLException {
-        String connectionId = generateConnectionId(connectionDto);
-        
+    public void testConnection(DatabaseConnectionDto connectionDto) throws SQLException {
         try (Connection connection = createConnection(connectionDto)) {
             if (connection.isValid(5)) {
-                return connectionId;
+                return;
             }
         }
         
@@ -34,60 +88,459 @@ public class DatabaseService {
     }
     
     public DatabaseSchema getSchema(String connectionId, DatabaseConnectionDto connectionDto) throws SQLException {
+        CachedSchema cached = schemaCache.get(connectionId);
+        if (cached == null) {
+            cached = loadSnapshot(connectionId);
+        }
+        
+        // Snapshots restored from disk are served immediately and confirmed against the database off the request path
+        if (cached != null && cached.fromSnapshot()) {
+            revalidateInBackground(connectionId, connectionDto);
+            return cached.schema();
+        }
+        
+        // An embedded file's schema can only change when the file does, so an unchanged file needs no probe
+        long fileStamp = embeddedDatabases.fileStamp(connectionDto);
+        if (cached != null && fileStamp >= 0) {
+            if (cached.fileStamp() == fileStamp) {
+                return cached.schema();
+            }
+        } else if (cached != null && System.currentTimeMillis() - cached.checkedAt() < schemaRevalidateAfterMs) {
+            return cached.schema();
+        }
+        
+        return refreshSchema(connectionId, connectionDto, cached);
+    }
+    
+    private DatabaseSchema refreshSchema(
+        String connectionId, DatabaseConnectionDto connectionDto, CachedSchema cached) throws SQLException {
+        
+        // Stamped before probing, so a write during introspection triggers another refresh
+        long fileStamp = embeddedDatabases.fileStamp(connectionDto);
+        
         try (Connection connection = createConnection(connectionDto)) {
-            DatabaseMetaData metaData = connection.getMetaData();
+            SchemaFingerprint previous = cached != null ? cached.fingerprint() : null;
+            SchemaFingerprint fingerprint = fingerprintProbe.probe(connection, connectionDto.type(), previous);
             
-            List<DatabaseSchema.TableInfo> tables = new ArrayList<>();
-            List<DatabaseSchema.ViewInfo> views = new ArrayList<>();
+            DatabaseSchema schema;
+            if (fingerprint == null || previous == null) {
+                schema = introspectSchema(connection);
+            } else if (fingerprint.version().equals(previous.version())) {
+                schema = cached.schema();
+            } else {
+                schema = refreshChangedTables(connection, cached.schema(), previous, fingerprint);
+            }
             
-            // Get tables
-            try (ResultSet tablesResultSet = metaData.getTables(
-                connection.getCatalog(), null, "%", new String[]{"TABLE"})) {
-                
-                while (tablesResultSet.next()) {
-                    String tableName = tablesResultSet.getString("TABLE_NAME");
-                    String schema = tablesResultSet.getString("TABLE_SCHEM");
-                    String tableType = tablesResultSet.getString("TABLE_TYPE");
-                    String comment = tablesResultSet.getString("REMARKS");
-                    
-                    List<DatabaseSchema.ColumnInfo> columns = getTableColumns(metaData, schema, tableName);
-                    List<DatabaseSchema.IndexInfo> indexes = getTableIndexes(metaData, schema, tableName);
-                    List<DatabaseSchema.ForeignKeyInfo> foreignKeys = getTableForeignKeys(metaData, schema, tableName);
-                    
-                    tables.add(new DatabaseSchema.TableInfo(
-                        tableName, schema, tableType, columns, indexes, foreignKeys, comment
-                    ));
+            schemaCache.put(connectionId, new CachedSchema(schema, fingerprint, System.currentTimeMillis(), fileStamp, false));
+            rememberFingerprint(connectionId, fingerprint);
+            if (cached == null || schema != cached.schema()) {
+                searchIndex.indexInBackground(connectionId, schema);
+            }
+            
+            if (fingerprint != null && (previous == null || !fingerprint.version().equals(previous.version()))) {
+                snapshotStore.saveInBackground(connectionId, schema, fingerprint);
+            }
+            return schema;
+        }
+    }
+    
+    /**
+     * The schema already cached (or snapshotted) for a connection, without introspecting.
+     */
+    public Optional<DatabaseSchema> cachedSchema(String connectionId) {
+        CachedSchema cached = schemaCache.get(connectionId);
+        if (cached == null) {
+            cached = loadSnapshot(connectionId);
+        }
+        return Optional.ofNullable(cached).map(CachedSchema::schema);
+    }
+    
+    /**
+     * Ranked matches for {@code query} across table, view and column names, types and comments,
+     * served from the index built when the schema was cached.
+     */
+    public SchemaSearchIndex.SearchResult searchSchema(String connectionId, DatabaseConnectionDto connectionDto,
+                                                       String query, String kind, int offset, int limit) throws SQLException {
+        DatabaseSchema schema = getSchema(connectionId, connectionDto);
+        return searchIndex.search(connectionId, schema, query, kind, offset, limit);
+    }
+    
+    /**
+     * @param version fingerprint version of {@code schema}, or null if the dialect probe failed
+     */
+    public record VersionedSchema(DatabaseSchema schema, String version) {}
+    
+    /**
+     * The schema plus its fingerprint version, which the controller exposes as the ETag.
+     */
+    public VersionedSchema getVersionedSchema(String connectionId, DatabaseConnectionDto connectionDto) throws SQLException {
+        DatabaseSchema schema = getSchema(connectionId, connectionDto);
+        CachedSchema cached = schemaCache.get(connectionId);
+        
+        // A concurrent refresh may have replaced the entry; only report the version that matches this schema
+        String version = cached != null && cached.schema() == schema && cached.fingerprint() != null
+            ? cached.fingerprint().version()
+            : null;
+        return new VersionedSchema(schema, version);
+    }
+    
+    /**
+     * Tables and views added, changed or dropped since the given version. Unknown versions
+     * (older than the retained history) produce a delta flagged for a full reload.
+     */
+    public SchemaDelta getSchemaDelta(
+        String connectionId, DatabaseConnectionDto connectionDto, String since) throws SQLException {
+        
+        VersionedSchema current = getVersionedSchema(connectionId, connectionDto);
+        CachedSchema cached = schemaCache.get(connectionId);
+        SchemaFingerprint currentFingerprint = cached != null && cached.schema() == current.schema() ? cached.fingerprint() : null;
+        
+        SchemaFingerprint base = fingerprintHistory.getOrDefault(connectionId, List.of()).stream()
+            .filter(fingerprint -> fingerprint.version().equals(since))
+            .findFirst()
+            .orElse(null);
+        
+        if (currentFingerprint == null || base == null) {
+            return new SchemaDelta(since, current.version(), true, null, null, null, null, null);
+        }
+        
+        List<DatabaseSchema.TableInfo> addedTables = new ArrayList<>();
+        List<DatabaseSchema.TableInfo> changedTables = new ArrayList<>();
+        List<DatabaseSchema.ViewInfo> addedViews = new ArrayList<>();
+        List<DatabaseSchema.ViewInfo> changedViews = new ArrayList<>();
+        
+        for (DatabaseSchema.TableInfo table : current.schema().tables()) {
+            String key = SchemaFingerprint.tableKey(table.schema(), table.name());
+            String before = base.tables().get(key);
+            if (before == null) {
+                addedTables.add(table);
+            } else if (!before.equals(currentFingerprint.tables().get(key))) {
+                changedTables.add(table);
+            }
+        }
+        for (DatabaseSchema.ViewInfo view : current.schema().views()) {
+            String key = SchemaFingerprint.tableKey(view.schema(), view.name());
+            String before = base.tables().get(key);
+            if (before == null) {
+                addedViews.add(view);
+            } else if (!before.equals(currentFingerprint.tables().get(key))) {
+                changedViews.add(view);
+            }
+        }
+        
+        List<String> dropped = base.tables().keySet().stream()
+            .filter(key -> !currentFingerprint.tables().containsKey(key))
+            .sorted()
+            .toList();
+        
+        return new SchemaDelta(
+            since, current.version(), false, addedTables, changedTables, addedViews, changedViews, dropped
+        );
+    }
+    
+    private void rememberFingerprint(String connectionId, SchemaFingerprint fingerprint) {
+        if (fingerprint == null) {
+            return;
+        }
+        
+        // Copy-on-write keeps readers lock-free; the list is tiny and only changes on DDL
+        fingerprintHistory.compute(connectionId, (id, history) -> {
+            if (history != null && !history.isEmpty()
+                && history.get(history.size() - 1).version().equals(fingerprint.version())) {
+                return history;
+            }
+            List<SchemaFingerprint> updated = new ArrayList<>(history != null ? history : List.of());
+            updated.removeIf(existing -> existing.version().equals(fingerprint.version()));
+            updated.add(fingerprint);
+            if (updated.size() > FINGERPRINT_HISTORY) {
+                updated.remove(0);
+            }
+            return List.copyOf(updated);
+        });
+    }
+    
+    private CachedSchema loadSnapshot(String connectionId) {
+        return snapshotStore.load(connectionId)
+            .map(snapshot -> {
+                CachedSchema restored = new CachedSchema(snapshot.schema(), snapshot.fingerprint(), 0, -1, true);
+                CachedSchema existing = schemaCache.putIfAbsent(connectionId, restored);
+                if (existing != null) {
+                    return existing;
                 }
+                rememberFingerprint(connectionId, restored.fingerprint());
+                searchIndex.indexInBackground(connectionId, restored.schema());
+                return restored;
+            })
+            .orElse(null);
+    }
+    
+    private void revalidateInBackground(String connectionId, DatabaseConnectionDto connectionDto) {
+        if (!revalidating.add(connectionId)) {
+            return;
+        }
+        
+        Mono.fromCallable(() -> refreshSchema(connectionId, connectionDto, schemaCache.get(connectionId)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .doFinally(signal -> revalidating.remove(connectionId))
+            .subscribe(schema -> { }, error -> { /* keep serving the snapshot; the next request retries */ });
+    }
+    
+    /**
+     * Maps persisted snapshots into the cache in the background after startup, so the first
+     * request per connection only pays for a fingerprint probe instead of a full introspection.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadSnapshots() {
+        Mono.fromRunnable(() -> snapshotStore.listConnectionIds().forEach(this::loadSnapshot))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe();
+    }
+    
+    private DatabaseSchema introspectSchema(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        
+        List<DatabaseSchema.TableInfo> tables = new ArrayList<>();
+        List<DatabaseSchema.ViewInfo> views = new ArrayList<>();
+        
+        // Get tables
+        try (ResultSet tablesResultSet = metaData.getTables(
+            connection.getCatalog(), null, "%", new String[]{"TABLE"})) {
+            
+            while (tablesResultSet.next()) {
+                tables.add(readTable(metaData, tablesResultSet));
             }
+        }
+        
+        // Get views
+        try (ResultSet viewsResultSet = metaData.getTables(
+            connection.getCatalog(), null, "%", new String[]{"VIEW"})) {
             
-            // Get views
-            try (ResultSet viewsResultSet = metaData.getTables(
-                connection.getCatalog(), null, "%", new String[]{"VIEW"})) {
+            while (viewsResultSet.next()) {
+                views.add(readView(metaData, viewsResultSet));
+            }
+        }
+        
+        return new DatabaseSchema(connection.getCatalog(), tables, views, readSchemaMetadata(metaData));
+    }
+    
+    /**
+     * Re-introspects only the tables whose fingerprint changed (or that are new) and merges them
+     * into the previous snapshot; unchanged tables are reused and dropped ones are removed.
+     */
+    private DatabaseSchema refreshChangedTables(
+        Connection connection,
+        DatabaseSchema snapshot,
+        SchemaFingerprint previous,
+        SchemaFingerprint current) throws SQLException {
+        
+        DatabaseMetaData metaData = connection.getMetaData();
+        
+        Map<String, DatabaseSchema.TableInfo> tables = new TreeMap<>();
+        for (DatabaseSchema.TableInfo table : snapshot.tables()) {
+            tables.put(SchemaFingerprint.tableKey(table.schema(), table.name()), table);
+        }
+        Map<String, DatabaseSchema.ViewInfo> views = new TreeMap<>();
+        for (DatabaseSchema.ViewInfo view : snapshot.views()) {
+            views.put(SchemaFingerprint.tableKey(view.schema(), view.name()), view);
+        }
+        
+        tables.keySet().retainAll(current.tables().keySet());
+        views.keySet().retainAll(current.tables().keySet());
+        
+        for (Map.Entry<String, String> entry : current.tables().entrySet()) {
+            String key = entry.getKey();
+            boolean unchanged = entry.getValue().equals(previous.tables().get(key))
+                && (tables.containsKey(key) || views.containsKey(key));
+            if (unchanged) {
+                continue;
+            }
+            
+            tables.remove(key);
+            views.remove(key);
+            
+            String escape = metaData.getSearchStringEscape();
+            int dot = key.indexOf('.');
+            String schemaName = dot >= 0 ? key.substring(0, dot) : null;
+            String tableName = dot >= 0 ? key.substring(dot + 1) : key;
+            
+            try (ResultSet resultSet = metaData.getTables(
+                connection.getCatalog(),
+                escapePattern(schemaName, escape),
+                escapePattern(tableName, escape),
+                new String[]{"TABLE", "VIEW"})) {
                 
-                while (viewsResultSet.next()) {
-                    String viewName = viewsResultSet.getString("TABLE_NAME");
-                    String schema = viewsResultSet.getString("TABLE_SCHEM");
-                    String comment = viewsResultSet.getString("REMARKS");
+                while (resultSet.next()) {
+                    if (!tableName.equals(resultSet.getString("TABLE_NAME"))) continue;
                     
-                    List<DatabaseSchema.ColumnInfo> columns = getTableColumns(metaData, schema, viewName);
-                    
-                    views.add(new DatabaseSchema.ViewInfo(
-                        viewName, schema, null, columns, comment
-                    ));
+                    if ("VIEW".equals(resultSet.getString("TABLE_TYPE"))) {
+                        views.put(key, readView(metaData, resultSet));
+                    } else {
+                        tables.put(key, readTable(metaData, resultSet));
+                    }
                 }
             }
-            
-            Map<String, Object> metadata = Map.of(
-                "databaseProductName", metaData.getDatabaseProductName(),
-                "databaseProductVersion", metaData.getDatabaseProductVersion(),
-                "driverName", metaData.getDriverName(),
-                "driverVersion", metaData.getDriverVersion(),
-                "catalogTerm", metaData.getCatalogTerm(),
-                "schemaTerm", metaData.getSchemaTerm()
-            );
-            
-            return new DatabaseSchema(connection.getCatalog(), tables, views, metadata);
         }
+        
+        return new DatabaseSchema(
+            snapshot.databaseName(),
+            new ArrayList<>(tables.values()),
+            new ArrayList<>(views.values()),
+            snapshot.metadata()
+        );
+    }
+    
+    private DatabaseSchema.TableInfo readTable(DatabaseMetaData metaData, ResultSet tablesResultSet) throws SQLException {
+        String tableName = tablesResultSet.getString("TABLE_NAME");
+        String schema = tablesResultSet.getString("TABLE_SCHEM");
+        String tableType = tablesResultSet.getString("TABLE_TYPE");
+        String comment = tablesResultSet.getString("REMARKS");
+        
+        PipelineEvents.SchemaTable event = new PipelineEvents.SchemaTable();
+        event.begin();
+        List<DatabaseSchema.ColumnInfo> columns = getTableColumns(metaData, schema, tableName);
+        List<DatabaseSchema.IndexInfo> indexes = getTableIndexes(metaData, schema, tableName);
+        List<DatabaseSchema.ForeignKeyInfo> foreignKeys = getTableForeignKeys(metaData, schema, tableName);
+        event.table = tableName;
+        event.columns = columns.size();
+        event.indexes = indexes.size();
+        event.foreignKeys = foreignKeys.size();
+        event.commit(PipelineEvents.current());
+        
+        return new DatabaseSchema.TableInfo(
+            tableName, schema, tableType, columns, indexes, foreignKeys, comment
+        );
+    }
+    
+    private DatabaseSchema.ViewInfo readView(DatabaseMetaData metaData, ResultSet viewsResultSet) throws SQLException {
+        String viewName = viewsResultSet.getString("TABLE_NAME");
+        String schema = viewsResultSet.getString("TABLE_SCHEM");
+        String comment = viewsResultSet.getString("REMARKS");
+        
+        List<DatabaseSchema.ColumnInfo> columns = getTableColumns(metaData, schema, viewName);
+        
+        return new DatabaseSchema.ViewInfo(
+            viewName, schema, null, columns, comment
+        );
+    }
+    
+    private Map<String, Object> readSchemaMetadata(DatabaseMetaData metaData) throws SQLException {
+        return Map.of(
+            "databaseProductName", metaData.getDatabaseProductName(),
+            "databaseProductVersion", metaData.getDatabaseProductVersion(),
+            "driverName", metaData.getDriverName(),
+            "driverVersion", metaData.getDriverVersion(),
+            "catalogTerm", metaData.getCatalogTerm(),
+            "schemaTerm", metaData.getSchemaTerm()
+        );
+    }
+    
+    private String escapePattern(String name, String escape) {
+        if (name == null || escape == null || escape.isEmpty()) {
+            return name;
+        }
+        return name.replace(escape, escape + escape)
+            .replace("_", escape + "_")
+            .replace("%", escape + "%");
+    }
+    
+    /**
+     * Schema introspection has no reactive equivalent (R2DBC exposes no DatabaseMetaData),
+     * so it is offloaded to the JDBC scheduler instead of blocking the caller.
+     */
+    @SuppressWarnings("try")
+    public Mono<DatabaseSchema> getSchemaAsync(String connectionId, DatabaseConnectionDto connectionDto) {
+        return Mono.deferContextual(context -> Mono.fromCallable(() -> {
+                try (PipelineEvents.Scope scope = PipelineEvents.bind(PipelineEvents.fromContext(context))) {
+                    return getSchema(connectionId, connectionDto);
+                }
+            }))
+            .subscribeOn(jdbcScheduler);
+    }
+    
+    /**
+     * Streams result rows with demand-driven fetching. Uses R2DBC where a driver exists and
+     * falls back to a JDBC cursor (on the bounded elastic scheduler) for SQLite. Both paths run
+     * the cost gate first and apply the execution profile's session settings; a stream has no
+     * response body for a COST_REJECTED status, so a rejection fails the stream instead.
+     */
+    public Flux<Map<String, Object>> streamQuery(
+        String connectionId,
+        DatabaseConnectionDto connectionDto,
+        QueryDto.QueryExecutionRequest request) {
+        
+        QueryDto.QueryValidationResponse validation = validationService.validateQuery(request.sql());
+        if (!validation.isValid()) {
+            return Flux.error(new SQLException("Query validation failed: " + String.join("; ", validation.errors())));
+        }
+        
+        int maxRows = request.limit() != null ? request.limit() : 1000;
+        String sql = validationService.pushDownRowLimit(request.sql(), maxRows, request.offset());
+        
+        ExecutionProfiles.Profile profile = executionProfiles.resolve(connectionDto);
+        
+        // Embedded files stream from their long-lived JDBC pool rather than opening the file again over R2DBC
+        if (!embeddedDatabases.supports(connectionDto) && reactiveQueryEngine.supports(connectionDto)) {
+            // EXPLAIN needs JDBC; the connection's pool saves a handshake per stream
+            Mono<Void> costCheck = Mono.fromCallable(() -> {
+                    try (Connection connection = connectionPools.getConnection(connectionId, connectionDto, profile)) {
+                        checkCost(connection, connectionDto.type(), sql);
+                    }
+                    return sql;
+                })
+                .subscribeOn(jdbcScheduler)
+                .then();
+            return recordShape(sql, costCheck.thenMany(
+                reactiveQueryEngine.streamQuery(connectionId, connectionDto, profile, sql, maxRows)));
+        }
+        
+        return recordShape(sql, Flux.using(
+                () -> {
+                    Connection connection = createConnection(connectionDto, profile);
+                    try {
+                        checkCost(connection, connectionDto.type(), sql);
+                    } catch (SQLException | RuntimeException e) {
+                        connection.close();
+                        throw e;
+                    }
+                    return new JdbcCursor(connection, executionProfiles, profile, sql, maxRows);
+                },
+                cursor -> Flux.<Map<String, Object>>generate(sink -> {
+                    try {
+                        Map<String, Object> row = cursor.next();
+                        if (row == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(row);
+                        }
+                    } catch (SQLException e) {
+                        sink.error(e);
+                    }
+                }),
+                JdbcCursor::close)
+            .subscribeOn(jdbcScheduler));
+    }
+    
+    /** Fails a stream, export or snapshot the cost gate rejects; WARN and UNAVAILABLE verdicts let it run. */
+    private void checkCost(Connection connection, DatabaseConnectionDto.DatabaseType type, String sql) throws SQLException {
+        if (!costGate.isEnabled()) {
+            return;
+        }
+        QueryDto.PlanSummary plan = costGate.evaluate(connection, type, sql);
+        if (QueryCostGate.VERDICT_REJECT.equals(plan.verdict())) {
+            throw new SQLException("Query rejected by the cost gate: " + String.join("; ", plan.warnings()));
+        }
+    }
+    
+    /** Counts a streamed query in the shape stats once it completes or fails; cancelled streams are skipped. */
+    private Flux<Map<String, Object>> recordShape(String sql, Flux<Map<String, Object>> rows) {
+        return Flux.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            AtomicLong rowCount = new AtomicLong();
+            return rows
+                .doOnNext(row -> rowCount.incrementAndGet())
+                .doOnComplete(() -> shapeStats.record(sql, System.currentTimeMillis() - startTime, rowCount.get(), false))
+                .doOnError(error -> shapeStats.record(sql, System.currentTimeMillis() - startTime, 0, true));
+        });
     }
     
     public QueryDto.QueryExecutionResponse executeQuery(
@@ -95,6 +548,43 @@ public class DatabaseService {
         DatabaseConnectionDto connectionDto, 
         QueryDto.QueryExecutionRequest request) throws SQLException {
         
+        return executeQuery(connectionId, connectionDto, request, null);
+    }
+    
+    /**
+     * @param operation in-flight registration for the request, or null; cancelling it calls
+     *                  {@code Statement.cancel()} so the database stops working on the query
+     */
+    public QueryDto.QueryExecutionResponse executeQuery(
+        String connectionId, 
+        DatabaseConnectionDto connectionDto, 
+        QueryDto.QueryExecutionRequest request,
+        InFlightOperationRegistry.Operation operation) throws SQLException {
+        
+        return executeQuery(connectionId, connectionDto, request, operation, false);
+    }
+    
+    /**
+     * Like {@link #executeQuery(String, DatabaseConnectionDto, QueryDto.QueryExecutionRequest,
+     * InFlightOperationRegistry.Operation)} but borrows from the connection's pool, which caps
+     * how many of these run at once per connection. Used for concurrent batch execution.
+     */
+    public QueryDto.QueryExecutionResponse executePooled(
+        String connectionId,
+        DatabaseConnectionDto connectionDto,
+        QueryDto.QueryExecutionRequest request,
+        InFlightOperationRegistry.Operation operation) throws SQLException {
+        
+        return executeQuery(connectionId, connectionDto, request, operation, true);
+    }
+    
+    private QueryDto.QueryExecutionResponse executeQuery(
+        String connectionId,
+        DatabaseConnectionDto connectionDto,
+        QueryDto.QueryExecutionRequest request,
+        InFlightOperationRegistry.Operation operation,
+        boolean pooled) throws SQLException {
+        
         // Validate query first
         QueryDto.QueryValidationResponse validation = validationService.validateQuery(request.sql());
         if (!validation.isValid()) {
@@ -110,7 +600,20 @@ public class DatabaseService {
             );
         }
         
+        // Push the row window into the SQL so the database plans for it (and EXPLAIN sees it)
+        int maxRows = request.limit() != null ? Math.min(request.limit(), MAX_RESULT_ROWS) : MAX_RESULT_ROWS;
+        String sql = validationService.pushDownRowLimit(request.sql(), maxRows, request.offset());
+        
         if (request.dryRun()) {
+            QueryDto.QueryMetadata metadata = createQueryMetadata(sql);
+            
+            // A dry run still reports the plan estimate; EXPLAIN never executes the query
+            if (costGate.isEnabled()) {
+                try (Connection connection = createConnection(connectionDto)) {
+                    metadata = metadata.withPlan(costGate.evaluate(connection, connectionDto.type(), sql));
+                }
+            }
+            
             return new QueryDto.QueryExecutionResponse(
                 Collections.emptyList(),
                 Collections.emptyList(),
@@ -119,62 +622,115 @@ public class DatabaseService {
                 0,
                 "DRY_RUN_SUCCESS",
                 null,
-                createQueryMetadata(request.sql())
+                metadata
             );
         }
         
         long startTime = System.currentTimeMillis();
+        QueryDto.PlanSummary plan = null;
+        
+        ExecutionProfiles.Profile profile = executionProfiles.resolve(connectionDto);
         
-        try (Connection connection = createConnection(connectionDto);
-             Statement statement = connection.createStatement()) {
+        // Embedded files already have a shared pool capped at query.embedded.max-connections
+        try (Connection connection = pooled && !embeddedDatabases.supports(connectionDto)
+                ? connectionPools.getConnection(connectionId, connectionDto, profile)
+                : createConnection(connectionDto, profile)) {
             
-            // Set query timeout and limits
-            statement.setQueryTimeout(30);
-            if (request.limit() != null) {
-                statement.setMaxRows(request.limit());
+            // Stop over-budget queries before they reach the database
+            if (costGate.isEnabled()) {
+                plan = costGate.evaluate(connection, connectionDto.type(), sql);
+                if (QueryCostGate.VERDICT_REJECT.equals(plan.verdict())) {
+                    return new QueryDto.QueryExecutionResponse(
+                        Collections.emptyList(),
+                        Collections.emptyList(),
+                        Collections.emptyList(),
+                        0,
+                        System.currentTimeMillis() - startTime,
+                        "COST_REJECTED",
+                        String.join("; ", plan.warnings()),
+                        createQueryMetadata(sql).withPlan(plan)
+                    );
+                }
             }
             
-            try (ResultSet resultSet = statement.executeQuery(request.sql())) {
-                ResultSetMetaData metaData = resultSet.getMetaData();
-                int columnCount = metaData.getColumnCount();
-                
-                List<String> columnNames = new ArrayList<>();
-                List<String> columnTypes = new ArrayList<>();
+            // Session settings go after EXPLAIN: a failed EXPLAIN would abort PostgreSQL's cursor transaction
+            executionProfiles.applySession(connection, profile);
+            
+            try (PreparedStatement statement = executionProfiles.prepare(connection, profile, sql)) {
+                statement.setMaxRows(maxRows);
                 
-                for (int i = 1; i <= columnCount; i++) {
-                    columnNames.add(metaData.getColumnName(i));
-                    columnTypes.add(metaData.getColumnTypeName(i));
+                if (operation != null) {
+                    operation.onCancel(() -> cancelQuietly(statement));
+                    if (operation.isCancelled()) {
+                        return cancelledResponse(sql, plan, System.currentTimeMillis() - startTime);
+                    }
                 }
                 
-                List<Map<String, Object>> results = new ArrayList<>();
-                int rowCount = 0;
+                PipelineEvents.Trace trace = PipelineEvents.current();
+                PipelineEvents.JdbcExecute executeEvent = new PipelineEvents.JdbcExecute();
+                executeEvent.dialect = connectionDto.type().name();
+                executeEvent.pooled = pooled;
+                executeEvent.sqlLength = sql.length();
+                executeEvent.begin();
                 
-                while (resultSet.next() && rowCount < 1000) { // Max 1000 rows
-                    Map<String, Object> row = new LinkedHashMap<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    executeEvent.commit(trace);
+                    
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+                    
+                    List<String> columnNames = new ArrayList<>();
+                    List<String> columnTypes = new ArrayList<>();
+                    
                     for (int i = 1; i <= columnCount; i++) {
-                        row.put(columnNames.get(i - 1), resultSet.getObject(i));
+                        columnNames.add(metaData.getColumnName(i));
+                        columnTypes.add(metaData.getColumnTypeName(i));
+                    }
+                    
+                    // Readers are chosen once per column; cells land in primitive buffers instead of boxed maps
+                    ColumnarRows results = ColumnarRows.forResultSet(
+                        metaData, maxRows, connectionDto.type() == DatabaseConnectionDto.DatabaseType.SQLITE
+                    );
+                    int rowCount = 0;
+                    
+                    PipelineEvents.Fetch fetchEvent = new PipelineEvents.Fetch();
+                    fetchEvent.begin();
+                    while (rowCount < maxRows && resultSet.next()) {
+                        results.readRow(resultSet);
+                        rowCount++;
                     }
-                    results.add(row);
-                    rowCount++;
+                    fetchEvent.rows = rowCount;
+                    fetchEvent.columns = columnCount;
+                    fetchEvent.commit(trace);
+                    // Serialization happens later on the response thread; the rows carry the ids there
+                    results.traceAs(trace);
+                    
+                    long executionTime = System.currentTimeMillis() - startTime;
+                    shapeStats.record(sql, executionTime, rowCount, false);
+                    
+                    return new QueryDto.QueryExecutionResponse(
+                        results,
+                        columnNames,
+                        columnTypes,
+                        rowCount,
+                        executionTime,
+                        "SUCCESS",
+                        null,
+                        createQueryMetadata(sql).withPlan(plan)
+                    );
                 }
-                
-                long executionTime = System.currentTimeMillis() - startTime;
-                
-                return new QueryDto.QueryExecutionResponse(
-                    results,
-                    columnNames,
-                    columnTypes,
-                    rowCount,
-                    executionTime,
-                    "SUCCESS",
-                    null,
-                    createQueryMetadata(request.sql())
-                );
+            } finally {
+                executionProfiles.endSession(connection, profile);
             }
             
         } catch (SQLException e) {
             long executionTime = System.currentTimeMillis() - startTime;
             
+            if (operation != null && operation.isCancelled()) {
+                return cancelledResponse(sql, plan, executionTime);
+            }
+            shapeStats.record(sql, executionTime, 0, true);
+            
             return new QueryDto.QueryExecutionResponse(
                 Collections.emptyList(),
                 Collections.emptyList(),
@@ -183,12 +739,129 @@ public class DatabaseService {
                 executionTime,
                 "ERROR",
                 e.getMessage(),
-                createQueryMetadata(request.sql())
+                createQueryMetadata(sql).withPlan(plan)
             );
         }
     }
     
+    /**
+     * Writes the full result of a validated SELECT to {@code out} without the 1000-row cap or the
+     * JSON response path. The request's limit/offset are honoured when given.
+     *
+     * @param operation in-flight registration of a spooled export, or null; cancelling it calls
+     *                  {@code Statement.cancel()}
+     */
+    public long exportQuery(
+        DatabaseConnectionDto connectionDto,
+        QueryDto.QueryExecutionRequest request,
+        ResultExporter.Format format,
+        OutputStream out,
+        InFlightOperationRegistry.Operation operation) throws SQLException, IOException {
+        
+        QueryDto.QueryValidationResponse validation = validationService.validateQuery(request.sql());
+        if (!validation.isValid()) {
+            throw new SQLException("Query validation failed: " + String.join("; ", validation.errors()));
+        }
+        
+        String sql = request.limit() != null || request.offset() != null
+            ? validationService.pushDownRowLimit(
+                request.sql(), request.limit() != null ? request.limit() : Integer.MAX_VALUE, request.offset())
+            : request.sql();
+        
+        ExecutionProfiles.Profile profile = executionProfiles.resolve(connectionDto);
+        
+        try (Connection connection = createConnection(connectionDto, profile)) {
+            // Before the session settings, as on the execute path
+            checkCost(connection, connectionDto.type(), sql);
+            executionProfiles.applySession(connection, profile);
+            
+            // Cursor fetching from the profile is what keeps the driver from buffering the whole result
+            try (PreparedStatement statement = executionProfiles.prepare(connection, profile, sql)) {
+                statement.setQueryTimeout(exportTimeoutSeconds);
+                if (operation != null) {
+                    operation.onCancel(() -> cancelQuietly(statement));
+                }
+                
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultExporter.write(resultSet, format, out);
+                }
+            } finally {
+                executionProfiles.endSession(connection, profile);
+            }
+        }
+    }
+    
+    /**
+     * Runs a validated SELECT once and captures its full result (up to the snapshot row limit)
+     * into a result snapshot that later pages are read from. The request's limit/offset are
+     * honoured when given.
+     */
+    public ResultSnapshotStore.Snapshot snapshotQuery(
+        String connectionId,
+        DatabaseConnectionDto connectionDto,
+        QueryDto.QueryExecutionRequest request) throws SQLException, IOException {
+        
+        QueryDto.QueryValidationResponse validation = validationService.validateQuery(request.sql());
+        if (!validation.isValid()) {
+            throw new SQLException("Query validation failed: " + String.join("; ", validation.errors()));
+        }
+        
+        String sql = request.limit() != null || request.offset() != null
+            ? validationService.pushDownRowLimit(
+                request.sql(), request.limit() != null ? request.limit() : Integer.MAX_VALUE, request.offset())
+            : request.sql();
+        
+        ExecutionProfiles.Profile profile = executionProfiles.resolve(connectionDto);
+        long startTime = System.currentTimeMillis();
+        
+        try (Connection connection = createConnection(connectionDto, profile)) {
+            // Before the session settings, as on the execute path
+            checkCost(connection, connectionDto.type(), sql);
+            executionProfiles.applySession(connection, profile);
+            
+            // Cursor fetching keeps the driver from buffering what is being written to disk
+            try (PreparedStatement statement = executionProfiles.prepare(connection, profile, sql)) {
+                statement.setQueryTimeout(exportTimeoutSeconds);
+                
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    ResultSnapshotStore.Snapshot snapshot = resultSnapshots.capture(
+                        connectionId, resultSet, connectionDto.type() == DatabaseConnectionDto.DatabaseType.SQLITE
+                    );
+                    shapeStats.record(sql, System.currentTimeMillis() - startTime, snapshot.rowCount(), false);
+                    return snapshot;
+                }
+            } finally {
+                executionProfiles.endSession(connection, profile);
+            }
+        }
+    }
+    
+    private QueryDto.QueryExecutionResponse cancelledResponse(String sql, QueryDto.PlanSummary plan, long executionTime) {
+        return new QueryDto.QueryExecutionResponse(
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            0,
+            executionTime,
+            "CANCELLED",
+            "Query was cancelled",
+            createQueryMetadata(sql).withPlan(plan)
+        );
+    }
+    
+    private static void cancelQuietly(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            // Statement already finished or closed; nothing left to stop
+        }
+    }
+    
     private Connection createConnection(DatabaseConnectionDto connectionDto) throws SQLException {
+        if (embeddedDatabases.supports(connectionDto)) {
+            return embeddedDatabases.getConnection(connectionDto);
+        }
+        
         String url = connectionDto.buildConnectionUrl();
         String username = connectionDto.username() != null ? connectionDto.username() : "";
         String password = connectionDto.password() != null ? connectionDto.password() : "";
@@ -196,10 +869,17 @@ public class DatabaseService {
         return DriverManager.getConnection(url, username, password);
     }
     
-    private String generateConnectionId(DatabaseConnectionDto connectionDto) {
-        return String.valueOf(
-            Objects.hash(connectionDto.type(), connectionDto.host(), 
-                        connectionDto.port(), connectionDto.database())
+    private Connection createConnection(DatabaseConnectionDto connectionDto, ExecutionProfiles.Profile profile) throws SQLException {
+        // No connect-time profile properties apply to SQLite or H2
+        if (embeddedDatabases.supports(connectionDto)) {
+            return embeddedDatabases.getConnection(connectionDto);
+        }
+        
+        String username = connectionDto.username() != null ? connectionDto.username() : "";
+        String password = connectionDto.password() != null ? connectionDto.password() : "";
+        
+        return DriverManager.getConnection(
+            connectionDto.buildConnectionUrl(), executionProfiles.driverProperties(profile, username, password)
         );
     }
     
@@ -352,4 +1032,71 @@ public class DatabaseService {
             LocalDateTime.now()
         );
     }
-}
\ No newline at end of file
+    
+    /**
+     * Last introspected schema for a connection, the fingerprint it was built from and when that
+     * fingerprint was last confirmed against the database. Entries restored from disk are
+     * unconfirmed until their first background revalidation.
+     *
+     * @param fileStamp {@link EmbeddedDatabases#fileStamp} taken before the refresh, or -1 for
+     *                  server databases
+     */
+    private record CachedSchema(
+        DatabaseSchema schema, SchemaFingerprint fingerprint, long checkedAt, long fileStamp, boolean fromSnapshot) {}
+    
+    /**
+     * Forward-only JDBC cursor used by the streaming fallback; one row is read per downstream request.
+     */
+    private static final class JdbcCursor implements AutoCloseable {
+        
+        private final Connection connection;
+        private final ExecutionProfiles profiles;
+        private final ExecutionProfiles.Profile profile;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final List<String> columnNames = new ArrayList<>();
+        
+        JdbcCursor(Connection connection, ExecutionProfiles profiles, ExecutionProfiles.Profile profile,
+                   String sql, int maxRows) throws SQLException {
+            this.connection = connection;
+            this.profiles = profiles;
+            this.profile = profile;
+            try {
+                profiles.applySession(connection, profile);
+                this.statement = profiles.prepare(connection, profile, sql);
+                statement.setMaxRows(maxRows);
+                this.resultSet = statement.executeQuery();
+                
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columnNames.add(metaData.getColumnName(i));
+                }
+            } catch (SQLException e) {
+                close();
+                throw e;
+            }
+        }
+        
+        Map<String, Object> next() throws SQLException {
+            if (!resultSet.next()) {
+                return null;
+            }
+            
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 1; i <= columnNames.size(); i++) {
+                row.put(columnNames.get(i - 1), resultSet.getObject(i));
+            }
+            return row;
+        }
+        
+        @Override
+        public void close() {
+            profiles.endSession(connection, profile);
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Closing the connection releases the statement and result set as well
+            }
+        }
+    }
+}
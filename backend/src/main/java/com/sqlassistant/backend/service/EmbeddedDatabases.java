@@ -0,0 +1,369 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Long-lived read-only connection pools for SQLite and H2 database files. Opening an embedded
+ * database reads the file header and parses its whole schema. When every request opened the
+ * file again, that cost more than the query itself. Here each file is opened once per pooled
+ * connection and kept open:
+ *
+ * <ul>
+ *   <li>SQLite opens the file read-only, with memory-mapped reads ({@code mmap_size}), a larger
+ *       page cache, in-memory temp storage for sorts and a busy timeout. The journal mode is a
+ *       property of the file and is left alone. In WAL mode these readers never block the
+ *       application writing the file, and SQLite picks up its commits at the next read.</li>
+ *   <li>H2 opens the file with {@code ACCESS_MODE_DATA=r} and, for admin logins, a larger
+ *       cache. A read-only H2 store doesn't see writes from another process. When the file
+ *       changes, the pool's connections are retired, so the next borrow opens it again.</li>
+ * </ul>
+ *
+ * Every connection id pointing at the same file with the same credentials shares one pool; the
+ * pool is keyed by a digest of the password too, so a wrong password never reaches a pool that
+ * another login opened. {@link #fileStamp} changes whenever the file (or SQLite's WAL) is
+ * written, so the schema cache only revalidates after a write. In-memory, server-mode and
+ * not-yet-existing databases aren't handled here and still open a connection per request, as do
+ * connections whose execution profile isn't read-only
+ * ({@code query.execution.read-only-sessions=false}).
+ */
+@Service
+public class EmbeddedDatabases {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedDatabases.class);
+
+    private static final int SQLITE_OPEN_READONLY = 0x01;
+    /** H2's ADMIN_RIGHTS_REQUIRED error code. */
+    private static final int H2_ADMIN_RIGHTS_REQUIRED = 90040;
+    /** H2 URL protocols that aren't a plain file ({@code mem:}, {@code tcp:}, {@code ssl:}, {@code zip:}, ...). */
+    private static final Pattern URL_PROTOCOL = Pattern.compile("^[A-Za-z][A-Za-z0-9]+:");
+
+    /** Engines by file and credentials, shared by every URL that resolves to them. */
+    private final Map<String, Engine> engines = new ConcurrentHashMap<>();
+    /** Connection URL and credentials to the engine they resolved to, so the hot path skips path resolution. */
+    private final Map<String, Engine> resolved = new ConcurrentHashMap<>();
+    private final ExecutionProfiles executionProfiles;
+
+    @Value("${query.embedded.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.embedded.max-connections:4}")
+    private int maxConnections;
+
+    @Value("${query.embedded.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    @Value("${query.embedded.idle-close-minutes:30}")
+    private long idleCloseMinutes;
+
+    @Value("${query.embedded.sqlite.mmap-size-mb:256}")
+    private long sqliteMmapSizeMb;
+
+    @Value("${query.embedded.sqlite.cache-size-kb:65536}")
+    private long sqliteCacheSizeKb;
+
+    @Value("${query.embedded.sqlite.busy-timeout-ms:5000}")
+    private int sqliteBusyTimeoutMs;
+
+    @Value("${query.embedded.h2.cache-size-kb:65536}")
+    private long h2CacheSizeKb;
+
+    public EmbeddedDatabases(ExecutionProfiles executionProfiles) {
+        this.executionProfiles = executionProfiles;
+    }
+
+    public boolean supports(DatabaseConnectionDto connectionDto) {
+        return engine(connectionDto) != null;
+    }
+
+    public Connection getConnection(DatabaseConnectionDto connectionDto) throws SQLException {
+        Engine engine = engine(connectionDto);
+        if (engine == null) {
+            throw new SQLException("Not an embedded database file: " + connectionDto.buildConnectionUrl());
+        }
+        return engine.borrow();
+    }
+
+    /**
+     * A token that changes whenever the database file, or SQLite's write-ahead log, is written.
+     * Returns -1 when the connection isn't an embedded file.
+     */
+    public long fileStamp(DatabaseConnectionDto connectionDto) {
+        Engine engine = engine(connectionDto);
+        return engine != null ? engine.readStamp() : -1;
+    }
+
+    private Engine engine(DatabaseConnectionDto connectionDto) {
+        DatabaseConnectionDto.DatabaseType type = connectionDto.type();
+        if (!enabled || (type != DatabaseConnectionDto.DatabaseType.SQLITE && type != DatabaseConnectionDto.DatabaseType.H2)) {
+            return null;
+        }
+        // The pools only hand out read-only connections; a read-write profile opens its own
+        if (!executionProfiles.resolve(connectionDto).readOnly()) {
+            return null;
+        }
+
+        String url = connectionDto.buildConnectionUrl();
+        String username = connectionDto.username() != null ? connectionDto.username() : "";
+        String password = connectionDto.password() != null ? connectionDto.password() : "";
+        String credentials = credentialDigest(username, password);
+        String resolvedKey = url + "\u0000" + credentials;
+
+        Engine engine = resolved.get(resolvedKey);
+        if (engine != null && !engine.closed) {
+            return engine;
+        }
+
+        Path file = databaseFile(type, url);
+        if (file == null) {
+            return null;
+        }
+
+        String engineKey = type + ":" + file + "\u0000" + credentials;
+        engine = engines.get(engineKey);
+        if (engine == null) {
+            closeIdle();
+            engine = engines.computeIfAbsent(engineKey, key -> open(type, file, url, username, password));
+            if (engine == null) {
+                // Login refused or the file unreadable; the per-request connection reports the driver's error
+                return null;
+            }
+        }
+        resolved.put(resolvedKey, engine);
+        return engine;
+    }
+
+    /** Username and password digest; a pool opened with one login is never reused by another. */
+    private static String credentialDigest(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(username.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * The existing database file behind a JDBC URL, or null for in-memory, server-mode or
+     * missing databases. A missing file is left to the driver, which creates it on a normal
+     * read-write open.
+     */
+    private static Path databaseFile(DatabaseConnectionDto.DatabaseType type, String url) {
+        if (url == null || !url.startsWith(type.getUrlPrefix())) {
+            return null;
+        }
+
+        String name = url.substring(type.getUrlPrefix().length());
+        String file;
+        if (type == DatabaseConnectionDto.DatabaseType.SQLITE) {
+            int query = name.indexOf('?');
+            if (query >= 0) {
+                if (name.substring(query).contains("mode=memory")) {
+                    return null;
+                }
+                name = name.substring(0, query);
+            }
+            if (name.startsWith("file:")) {
+                name = name.substring("file:".length());
+            }
+            // ":memory:" and ":resource:" databases
+            if (name.isEmpty() || name.startsWith(":")) {
+                return null;
+            }
+            file = name;
+        } else {
+            int settings = name.indexOf(';');
+            if (settings >= 0) {
+                name = name.substring(0, settings);
+            }
+            if (name.startsWith("file:")) {
+                name = name.substring("file:".length());
+            } else if (URL_PROTOCOL.matcher(name).find()) {
+                return null;
+            }
+            if (name.isEmpty()) {
+                return null;
+            }
+            file = name + ".mv.db";
+        }
+
+        if (file.startsWith("~")) {
+            file = System.getProperty("user.home") + file.substring(1);
+        }
+
+        try {
+            Path path = Paths.get(file);
+            return Files.isRegularFile(path) ? path.toRealPath() : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** A new engine, or null when the file refuses the credentials. */
+    private Engine open(DatabaseConnectionDto.DatabaseType type, Path file, String url, String username, String password) {
+        RuntimeException failure;
+        try {
+            return new Engine(type, file, createPool(type, file, url, username, password, true));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // The cache size is database-wide and H2 lets only admins set it; other logins keep the file's own
+        if (type == DatabaseConnectionDto.DatabaseType.H2
+                && failure.getCause() instanceof SQLException cause && cause.getErrorCode() == H2_ADMIN_RIGHTS_REQUIRED) {
+            try {
+                return new Engine(type, file, createPool(type, file, url, username, password, false));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        log.debug("Not pooling {}: {}", file, failure.getMessage());
+        return null;
+    }
+
+    private HikariDataSource createPool(DatabaseConnectionDto.DatabaseType type, Path file, String url,
+                                        String username, String password, boolean h2CacheSize) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("embedded-" + file.getFileName());
+        config.setUsername(username);
+        config.setPassword(password);
+        // Hikari sets the flag on every new connection; sqlite-jdbc refuses to flip it once open
+        config.setReadOnly(true);
+
+        if (type == DatabaseConnectionDto.DatabaseType.SQLITE) {
+            // sqlite-jdbc applies these as PRAGMAs on every new connection
+            config.setJdbcUrl(url);
+            config.addDataSourceProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+            config.addDataSourceProperty("mmap_size", String.valueOf(sqliteMmapSizeMb * 1024 * 1024));
+            config.addDataSourceProperty("cache_size", String.valueOf(-sqliteCacheSizeKb));
+            config.addDataSourceProperty("temp_store", "MEMORY");
+            config.addDataSourceProperty("busy_timeout", String.valueOf(sqliteBusyTimeoutMs));
+        } else {
+            String settings = url.toUpperCase(Locale.ROOT);
+            StringBuilder h2Url = new StringBuilder(url);
+            if (!settings.contains(";ACCESS_MODE_DATA=")) {
+                h2Url.append(";ACCESS_MODE_DATA=r");
+            }
+            if (h2CacheSize && !settings.contains(";CACHE_SIZE=")) {
+                h2Url.append(";CACHE_SIZE=").append(h2CacheSizeKb);
+            }
+            config.setJdbcUrl(h2Url.toString());
+        }
+
+        config.setMaximumPoolSize(maxConnections);
+        // One connection stays open so the file, its parsed schema and its page cache stay loaded
+        config.setMinimumIdle(1);
+        config.setMaxLifetime(0);
+        config.setConnectionTimeout(acquireTimeoutMs);
+        // Opens and authenticates the first connection now, so a wrong password never gets a pool
+        config.setInitializationFailTimeout(1);
+        return new HikariDataSource(config);
+    }
+
+    /** Closes pools nobody borrowed from recently; checked when a new file is opened. */
+    private void closeIdle() {
+        long idleNanos = Duration.ofMinutes(idleCloseMinutes).toNanos();
+        long now = System.nanoTime();
+        engines.values().removeIf(engine -> {
+            if (now - engine.lastUsedNanos < idleNanos || engine.pool.getHikariPoolMXBean().getActiveConnections() > 0) {
+                return false;
+            }
+            engine.close();
+            return true;
+        });
+        resolved.values().removeIf(engine -> engine.closed);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        engines.values().forEach(Engine::close);
+        engines.clear();
+        resolved.clear();
+    }
+
+    private static final class Engine {
+
+        final DatabaseConnectionDto.DatabaseType type;
+        final Path file;
+        final Path wal;
+        final HikariDataSource pool;
+        /** The file stamp the pooled H2 connections were opened against. */
+        final AtomicLong openedStamp;
+        volatile long lastUsedNanos = System.nanoTime();
+        volatile boolean closed;
+
+        Engine(DatabaseConnectionDto.DatabaseType type, Path file, HikariDataSource pool) {
+            this.type = type;
+            this.file = file;
+            this.wal = type == DatabaseConnectionDto.DatabaseType.SQLITE
+                ? file.resolveSibling(file.getFileName() + "-wal")
+                : null;
+            this.pool = pool;
+            this.openedStamp = new AtomicLong(readStamp());
+        }
+
+        Connection borrow() throws SQLException {
+            lastUsedNanos = System.nanoTime();
+            if (type == DatabaseConnectionDto.DatabaseType.H2) {
+                long current = readStamp();
+                long opened = openedStamp.get();
+                if (current != opened && openedStamp.compareAndSet(opened, current)) {
+                    // Idle connections close now, borrowed ones when returned; the last close releases the file
+                    pool.getHikariPoolMXBean().softEvictConnections();
+                    log.debug("{} changed on disk; reopening its read-only connections", file);
+                }
+            }
+            return pool.getConnection();
+        }
+
+        long readStamp() {
+            long stamp = stamp(17, file);
+            return wal != null ? stamp(stamp, wal) : stamp;
+        }
+
+        private static long stamp(long seed, Path path) {
+            long modified = 0;
+            long size = -1;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                modified = attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+                size = attributes.size();
+            } catch (IOException e) {
+                // Missing (no WAL yet, or the file was removed); that is a state of its own
+            }
+            return (seed * 31 + modified) * 31 + size;
+        }
+
+        void close() {
+            closed = true;
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Per-dialect session and fetch settings for query execution. Drivers default to buffering the
+ * whole result in memory; the profiles switch them to incremental fetching and read-only sessions:
+ *
+ * <ul>
+ *   <li>PostgreSQL only honours the fetch size inside a transaction, so autocommit is turned off
+ *       and the read-only transaction is rolled back afterwards.</li>
+ *   <li>MySQL needs {@code useCursorFetch} at connect time, and cursors are only used for server-side
+ *       prepared statements.</li>
+ *   <li>SQLite can't change the read-only flag on an open connection; {@code PRAGMA query_only}
+ *       is used instead.</li>
+ * </ul>
+ *
+ * Any field can be overridden per connection via {@link DatabaseConnectionDto.ExecutionOptions}.
+ * Overrides come from the client, so they can only tighten the safety settings: {@code readOnly}
+ * can be turned on but not off, and the statement timeout stays between one second and
+ * {@code query.execution.timeout-seconds}.
+ */
+@Component
+public class ExecutionProfiles {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionProfiles.class);
+
+    @Value("${query.execution.fetch-size:500}")
+    private int defaultFetchSize;
+
+    @Value("${query.execution.timeout-seconds:30}")
+    private int defaultTimeoutSeconds;
+
+    @Value("${query.execution.read-only-sessions:true}")
+    private boolean defaultReadOnly;
+
+    /**
+     * @param isolation a {@link Connection} TRANSACTION_* level, or null to keep the driver default
+     */
+    public record Profile(
+        DatabaseConnectionDto.DatabaseType type,
+        int fetchSize,
+        boolean cursorFetch,
+        boolean readOnly,
+        Integer isolation,
+        int queryTimeoutSeconds
+    ) {
+        /** PostgreSQL cursors only exist inside a transaction. */
+        boolean needsTransaction() {
+            return type == DatabaseConnectionDto.DatabaseType.POSTGRESQL && cursorFetch;
+        }
+    }
+
+    public Profile resolve(DatabaseConnectionDto connectionDto) {
+        Profile profile = switch (connectionDto.type()) {
+            case POSTGRESQL, MYSQL -> new Profile(
+                connectionDto.type(), defaultFetchSize, true, defaultReadOnly,
+                Connection.TRANSACTION_READ_COMMITTED, defaultTimeoutSeconds
+            );
+            // Embedded engines: nothing to stream over the wire, keep the driver's isolation
+            case H2, SQLITE -> new Profile(
+                connectionDto.type(), defaultFetchSize, false, defaultReadOnly, null, defaultTimeoutSeconds
+            );
+        };
+
+        DatabaseConnectionDto.ExecutionOptions overrides = connectionDto.execution();
+        if (overrides == null) {
+            return profile;
+        }
+
+        return new Profile(
+            profile.type(),
+            overrides.fetchSize() != null ? Math.max(overrides.fetchSize(), 0) : profile.fetchSize(),
+            overrides.cursorFetch() != null ? overrides.cursorFetch() : profile.cursorFetch(),
+            profile.readOnly() || Boolean.TRUE.equals(overrides.readOnly()),
+            overrides.isolation() != null ? parseIsolation(overrides.isolation(), profile.isolation()) : profile.isolation(),
+            overrides.queryTimeoutSeconds() != null ? clampTimeout(overrides.queryTimeoutSeconds()) : profile.queryTimeoutSeconds()
+        );
+    }
+
+    /** JDBC treats 0 as "no timeout", so an override never goes below one second or above the configured default. */
+    private int clampTimeout(int requestedSeconds) {
+        int clamped = Math.max(requestedSeconds, 1);
+        return defaultTimeoutSeconds > 0 ? Math.min(clamped, defaultTimeoutSeconds) : clamped;
+    }
+
+    /**
+     * Connect-time driver properties; these can't be changed once the connection is open.
+     */
+    public Properties driverProperties(Profile profile, String username, String password) {
+        Properties properties = new Properties();
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+
+        if (profile.type() == DatabaseConnectionDto.DatabaseType.MYSQL && profile.cursorFetch()) {
+            properties.setProperty("useCursorFetch", "true");
+        }
+        return properties;
+    }
+
+    public void applySession(Connection connection, Profile profile) throws SQLException {
+        if (profile.isolation() != null) {
+            connection.setTransactionIsolation(profile.isolation());
+        }
+
+        if (profile.readOnly()) {
+            if (profile.type() == DatabaseConnectionDto.DatabaseType.SQLITE) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA query_only = 1");
+                }
+            } else {
+                connection.setReadOnly(true);
+            }
+        }
+
+        if (profile.needsTransaction()) {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    public PreparedStatement prepare(Connection connection, Profile profile, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setQueryTimeout(profile.queryTimeoutSeconds());
+        if (profile.fetchSize() > 0) {
+            statement.setFetchSize(profile.fetchSize());
+        }
+        return statement;
+    }
+
+    /**
+     * Ends the read-only transaction opened for cursor fetching; nothing was written, so a
+     * rollback is the cheapest way out.
+     */
+    public void endSession(Connection connection, Profile profile) {
+        if (!profile.needsTransaction()) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            // The connection is closed right after; the server discards the transaction anyway
+        }
+    }
+
+    private Integer parseIsolation(String isolation, Integer fallback) {
+        return switch (isolation.trim().toUpperCase(Locale.ROOT).replace(' ', '_')) {
+            case "READ_UNCOMMITTED" -> Connection.TRANSACTION_READ_UNCOMMITTED;
+            case "READ_COMMITTED" -> Connection.TRANSACTION_READ_COMMITTED;
+            case "REPEATABLE_READ" -> Connection.TRANSACTION_REPEATABLE_READ;
+            case "SERIALIZABLE" -> Connection.TRANSACTION_SERIALIZABLE;
+            case "DEFAULT" -> null;
+            default -> {
+                log.warn("Ignoring unknown isolation level '{}'", isolation);
+                yield fallback;
+            }
+        };
+    }
+}
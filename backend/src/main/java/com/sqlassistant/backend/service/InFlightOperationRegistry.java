@@ -0,0 +1,135 @@
+package com.sqlassistant.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks in-flight generate/execute/explain requests by request id so abandoned work can be
+ * stopped: an explicit /query/cancel or a client disconnect cancels the operation, which fires
+ * its registered hooks (e.g. {@code Statement.cancel()}) and signals {@link Operation#whenCancelled()}
+ * so reactive pipelines dispose their upstream WebClient/R2DBC subscriptions.
+ */
+@Component
+public class InFlightOperationRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(InFlightOperationRegistry.class);
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestId client-supplied id (X-Request-Id), or null to generate one
+     * @return the registered operation, or null if an operation with that id is already in flight
+     */
+    public Operation register(String requestId, String kind, String connectionId) {
+        String id = requestId != null && !requestId.isBlank() ? requestId : UUID.randomUUID().toString();
+        Operation operation = new Operation(id, kind, connectionId);
+        return operations.putIfAbsent(id, operation) == null ? operation : null;
+    }
+
+    public void complete(Operation operation) {
+        operations.remove(operation.requestId(), operation);
+    }
+
+    /**
+     * Request ids are chosen by clients, so an operation is only found through the connection
+     * it runs on; another connection's operation with the same id is left alone.
+     *
+     * @return true if an in-flight operation on {@code connectionId} was found and cancelled
+     */
+    public boolean cancel(String connectionId, String requestId) {
+        Operation operation = operations.get(requestId);
+        if (operation == null || !operation.connectionId().equals(connectionId)) {
+            return false;
+        }
+        return operations.remove(requestId, operation) && operation.cancel();
+    }
+
+    public int inFlightCount() {
+        return operations.size();
+    }
+
+    public static final class Operation {
+
+        private final String requestId;
+        private final String kind;
+        private final String connectionId;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final Queue<Runnable> cancelHooks = new ConcurrentLinkedQueue<>();
+        private final Sinks.One<Boolean> cancelSignal = Sinks.one();
+
+        private Operation(String requestId, String kind, String connectionId) {
+            this.requestId = requestId;
+            this.kind = kind;
+            this.connectionId = connectionId;
+        }
+
+        public String requestId() {
+            return requestId;
+        }
+
+        public String kind() {
+            return kind;
+        }
+
+        public String connectionId() {
+            return connectionId;
+        }
+
+        public LocalDateTime startedAt() {
+            return startedAt;
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * Registers work to run on cancellation. A hook added after the operation was cancelled
+         * runs immediately, so a statement created late is still stopped.
+         */
+        public void onCancel(Runnable hook) {
+            cancelHooks.add(hook);
+            if (cancelled.get()) {
+                runHooks();
+            }
+        }
+
+        /** Emits once when the operation is cancelled; use with {@code takeUntilOther}. */
+        public Mono<Boolean> whenCancelled() {
+            return cancelSignal.asMono();
+        }
+
+        public boolean cancel() {
+            if (!cancelled.compareAndSet(false, true)) {
+                return false;
+            }
+            log.debug("Cancelling {} request {} on connection {}", kind, requestId, connectionId);
+            cancelSignal.tryEmitValue(Boolean.TRUE);
+            runHooks();
+            return true;
+        }
+
+        private void runHooks() {
+            Runnable hook;
+            while ((hook = cancelHooks.poll()) != null) {
+                try {
+                    hook.run();
+                } catch (RuntimeException e) {
+                    log.debug("Cancellation hook for request {} failed: {}", requestId, e.getMessage());
+                }
+            }
+        }
+    }
+}
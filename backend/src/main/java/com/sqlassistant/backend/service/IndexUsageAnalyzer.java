@@ -0,0 +1,600 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.IsNullExpression;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.ParenthesedSelect;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import net.sf.jsqlparser.statement.select.WithItem;
+
+import java.util.*;
+
+/**
+ * Checks a parsed SELECT against the indexes found by schema introspection. WHERE, JOIN and
+ * ORDER BY columns are resolved through table aliases to their tables. The analyzer reports:
+ * <ul>
+ *   <li>tables filtered only on columns no index can seek (including columns that are only a
+ *       later column of a composite index)</li>
+ *   <li>functions, arithmetic or leading-wildcard LIKE patterns that hide an indexed column</li>
+ *   <li>join conditions with no index on either side</li>
+ *   <li>ORDER BY on the driving table that no index returns in order</li>
+ * </ul>
+ *
+ * Columns that can't be resolved (derived tables, ambiguous unqualified names, tables missing
+ * from the schema) are skipped rather than guessed. One analyzer serves one statement.
+ */
+final class IndexUsageAnalyzer {
+
+    private static final int MAX_SUGGESTED_COLUMNS = 3;
+    private static final int MAX_EXPRESSION_LENGTH = 60;
+
+    private final Map<String, List<DatabaseSchema.TableInfo>> tablesByName = new HashMap<>();
+    private final Set<String> suggestions = new LinkedHashSet<>();
+
+    IndexUsageAnalyzer(DatabaseSchema schema) {
+        if (schema.tables() != null) {
+            for (DatabaseSchema.TableInfo table : schema.tables()) {
+                tablesByName.computeIfAbsent(lower(table.name()), name -> new ArrayList<>()).add(table);
+            }
+        }
+    }
+
+    List<String> analyze(Select select) {
+        analyzeSelect(select, null);
+        return List.copyOf(suggestions);
+    }
+
+    private void analyzeSelect(Select select, Scope parent) {
+        if (select.getWithItemsList() != null) {
+            for (WithItem withItem : select.getWithItemsList()) {
+                if (withItem.getSelect() != null) {
+                    analyzeSelect(withItem.getSelect(), parent);
+                }
+            }
+        }
+
+        if (select instanceof PlainSelect plainSelect) {
+            analyzePlainSelect(plainSelect, parent);
+        } else if (select instanceof SetOperationList setOperation) {
+            for (Select branch : setOperation.getSelects()) {
+                analyzeSelect(branch, parent);
+            }
+        } else if (select instanceof ParenthesedSelect parenthesed && parenthesed.getSelect() != null) {
+            analyzeSelect(parenthesed.getSelect(), parent);
+        }
+    }
+
+    private void analyzePlainSelect(PlainSelect select, Scope parent) {
+        Scope scope = new Scope(parent);
+        addFromItem(scope, select.getFromItem());
+        List<Join> joins = select.getJoins() != null ? select.getJoins() : List.of();
+        for (Join join : joins) {
+            addFromItem(scope, join.getRightItem());
+        }
+
+        PredicateVisitor predicates = new PredicateVisitor(scope);
+        if (select.getWhere() != null) {
+            select.getWhere().accept(predicates);
+        }
+        for (Join join : joins) {
+            if (join.getOnExpressions() != null) {
+                for (Expression on : join.getOnExpressions()) {
+                    on.accept(predicates);
+                }
+            }
+            if (join.getUsingColumns() != null) {
+                checkUsingJoin(scope, join);
+            }
+        }
+
+        checkFilteredTables(predicates);
+        checkOrderBy(select, scope, predicates);
+    }
+
+    private void addFromItem(Scope scope, FromItem item) {
+        if (item instanceof Table table) {
+            String key = item.getAlias() != null ? item.getAlias().getName() : table.getName();
+            scope.add(key, findTable(table));
+        } else if (item instanceof ParenthesedSelect derived) {
+            // Derived tables can't see their siblings, only enclosing queries
+            analyzeSelect(derived, scope.parent);
+            scope.add(derived.getAlias() != null ? derived.getAlias().getName() : null, null);
+        } else if (item != null) {
+            scope.add(item.getAlias() != null ? item.getAlias().getName() : null, null);
+        }
+    }
+
+    private DatabaseSchema.TableInfo findTable(Table table) {
+        List<DatabaseSchema.TableInfo> candidates = tablesByName.get(lower(table.getName()));
+        if (candidates == null) {
+            return null;
+        }
+        if (table.getSchemaName() != null) {
+            for (DatabaseSchema.TableInfo candidate : candidates) {
+                if (table.getSchemaName().equalsIgnoreCase(candidate.schema())) {
+                    return candidate;
+                }
+            }
+        }
+        return candidates.get(0);
+    }
+
+    // ---- checks ----
+
+    /** Tables whose WHERE/ON filters include no predicate an index can seek on, and no indexed join. */
+    private void checkFilteredTables(PredicateVisitor predicates) {
+        for (Map.Entry<String, List<Filter>> entry : predicates.filters.entrySet()) {
+            if (predicates.indexedJoins.contains(entry.getKey())) {
+                continue;
+            }
+            List<Filter> filters = entry.getValue();
+            Set<String> equalities = predicates.equalityColumns(entry.getKey());
+            DatabaseSchema.TableInfo table = filters.get(0).ref().table();
+
+            if (filters.stream().anyMatch(filter -> seekable(table, filter.ref().column(), equalities))) {
+                continue;
+            }
+
+            Optional<String> partial = filters.stream()
+                .map(filter -> partialIndexNote(table, filter.ref().column()))
+                .filter(Objects::nonNull)
+                .findFirst();
+            List<String> columns = new ArrayList<>();
+            filters.stream().filter(Filter::equality).map(filter -> filter.ref().column())
+                .forEach(column -> addDistinct(columns, column));
+            filters.stream().filter(filter -> !filter.equality()).map(filter -> filter.ref().column())
+                .findFirst().ifPresent(column -> addDistinct(columns, column));
+
+            suggestions.add(String.format(
+                "No index supports the filter on %s (%s), so the table will be scanned%s; consider an index on %s(%s)",
+                table.name(),
+                String.join(", ", filters.stream().map(filter -> filter.ref().column()).distinct().toList()),
+                partial.map(note -> " - " + note).orElse(""),
+                table.name(),
+                String.join(", ", columns.subList(0, Math.min(columns.size(), MAX_SUGGESTED_COLUMNS)))
+            ));
+        }
+    }
+
+    private void checkJoin(Scope scope, ColumnRef left, ColumnRef right, Expression condition, Set<String> indexedJoins) {
+        boolean leftIndexed = leadingIndex(left.table(), left.column()) != null;
+        boolean rightIndexed = leadingIndex(right.table(), right.column()) != null;
+        if (leftIndexed) {
+            indexedJoins.add(left.alias());
+        }
+        if (rightIndexed) {
+            indexedJoins.add(right.alias());
+        }
+        if (leftIndexed || rightIndexed) {
+            return;
+        }
+
+        // The side joined later is probed once per outer row, so it is the one to index
+        ColumnRef inner = scope.position(right.alias()) >= scope.position(left.alias()) ? right : left;
+        suggestions.add(String.format(
+            "Join condition %s has no index on either column, so each probe scans %s; consider an index on %s(%s)",
+            abbreviate(condition), inner.table().name(), inner.table().name(), inner.column()
+        ));
+    }
+
+    private void checkUsingJoin(Scope scope, Join join) {
+        if (!(join.getRightItem() instanceof Table table)) {
+            return;
+        }
+        DatabaseSchema.TableInfo joined = findTable(table);
+        if (joined == null) {
+            return;
+        }
+        for (Column using : join.getUsingColumns()) {
+            String column = columnName(joined, using.getColumnName());
+            if (column != null && leadingIndex(joined, column) == null) {
+                suggestions.add(String.format(
+                    "Join USING (%s) has no index on %s.%s; consider an index on %s(%s)",
+                    using.getColumnName(), joined.name(), column, joined.name(), column
+                ));
+            }
+        }
+    }
+
+    /** ORDER BY on the driving table that no index (after equality-filtered columns) returns in order. */
+    private void checkOrderBy(PlainSelect select, Scope scope, PredicateVisitor predicates) {
+        List<OrderByElement> orderBy = select.getOrderByElements();
+        if (orderBy == null || orderBy.isEmpty() || !(orderBy.get(0).getExpression() instanceof Column column)) {
+            return;
+        }
+        ColumnRef ref = scope.resolve(column);
+        if (ref == null || scope.position(ref.alias()) != 0) {
+            return;
+        }
+
+        // An index returns rows in order of its first column not pinned by an equality
+        Set<String> equalities = predicates.equalityColumns(ref.alias());
+        if (seekable(ref.table(), ref.column(), equalities)) {
+            return;
+        }
+
+        List<String> columns = new ArrayList<>(equalities);
+        columns.add(ref.column());
+        suggestions.add(String.format(
+            "ORDER BY %s.%s is not backed by an index, so every matching row is sorted%s; consider an index on %s(%s)",
+            ref.table().name(), ref.column(),
+            select.getLimit() != null ? " before the LIMIT applies" : "",
+            ref.table().name(), String.join(", ", columns)
+        ));
+    }
+
+    private void reportHiddenColumn(Expression expression, ColumnRef ref) {
+        String index = indexContaining(ref.table(), ref.column());
+        if (index != null) {
+            suggestions.add(String.format(
+                "%s wraps indexed column %s.%s, so %s can't be used; compare the bare column instead (or index the expression)",
+                abbreviate(expression), ref.table().name(), ref.column(), index
+            ));
+        }
+    }
+
+    private void reportLeadingWildcard(LikeExpression like, ColumnRef ref) {
+        String index = indexContaining(ref.table(), ref.column());
+        if (index != null) {
+            suggestions.add(String.format(
+                "%s starts with a wildcard, so %s on %s.%s can't be used and every row is compared",
+                abbreviate(like), index, ref.table().name(), ref.column()
+            ));
+        }
+    }
+
+    // ---- index lookups ----
+
+    /** Whether an index can seek on the column, given which columns are pinned by equality. */
+    private static boolean seekable(DatabaseSchema.TableInfo table, String column, Set<String> equalities) {
+        if (leadingIndex(table, column) != null) {
+            return true;
+        }
+        for (DatabaseSchema.IndexInfo index : indexes(table)) {
+            for (String indexColumn : index.columns()) {
+                if (indexColumn.equalsIgnoreCase(column)) {
+                    return true;
+                }
+                if (!containsIgnoreCase(equalities, indexColumn)) {
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String leadingIndex(DatabaseSchema.TableInfo table, String column) {
+        for (DatabaseSchema.IndexInfo index : indexes(table)) {
+            if (!index.columns().isEmpty() && column.equalsIgnoreCase(index.columns().get(0))) {
+                return describe(index);
+            }
+        }
+        List<DatabaseSchema.ColumnInfo> primaryKey = columns(table).stream().filter(DatabaseSchema.ColumnInfo::isPrimaryKey).toList();
+        if (primaryKey.size() == 1 && primaryKey.get(0).name().equalsIgnoreCase(column)) {
+            return "the primary key";
+        }
+        return null;
+    }
+
+    private static String indexContaining(DatabaseSchema.TableInfo table, String column) {
+        String leading = leadingIndex(table, column);
+        if (leading != null) {
+            return leading;
+        }
+        for (DatabaseSchema.IndexInfo index : indexes(table)) {
+            if (containsIgnoreCase(index.columns(), column)) {
+                return describe(index);
+            }
+        }
+        return null;
+    }
+
+    /** Explains why an index that contains the column still doesn't help a filter on it alone. */
+    private static String partialIndexNote(DatabaseSchema.TableInfo table, String column) {
+        for (DatabaseSchema.IndexInfo index : indexes(table)) {
+            for (int position = 1; position < index.columns().size(); position++) {
+                if (index.columns().get(position).equalsIgnoreCase(column)) {
+                    return String.format("%s is only column %d of %s, which needs %s filtered first",
+                        column, position + 1, describe(index), index.columns().get(0));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String describe(DatabaseSchema.IndexInfo index) {
+        return "index " + index.name();
+    }
+
+    private static List<DatabaseSchema.IndexInfo> indexes(DatabaseSchema.TableInfo table) {
+        return table.indexes() != null ? table.indexes() : List.of();
+    }
+
+    private static List<DatabaseSchema.ColumnInfo> columns(DatabaseSchema.TableInfo table) {
+        return table.columns() != null ? table.columns() : List.of();
+    }
+
+    /** The column's name as the schema spells it, or null if the table has no such column. */
+    private static String columnName(DatabaseSchema.TableInfo table, String name) {
+        for (DatabaseSchema.ColumnInfo column : columns(table)) {
+            if (column.name().equalsIgnoreCase(unquote(name))) {
+                return column.name();
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsIgnoreCase(Collection<String> values, String value) {
+        return values.stream().anyMatch(candidate -> candidate != null && candidate.equalsIgnoreCase(value));
+    }
+
+    private static void addDistinct(List<String> columns, String column) {
+        if (!containsIgnoreCase(columns, column)) {
+            columns.add(column);
+        }
+    }
+
+    private static String abbreviate(Expression expression) {
+        String text = expression.toString();
+        return text.length() > MAX_EXPRESSION_LENGTH ? text.substring(0, MAX_EXPRESSION_LENGTH - 3) + "..." : text;
+    }
+
+    private static String unquote(String identifier) {
+        if (identifier != null && identifier.length() > 1) {
+            char first = identifier.charAt(0);
+            if ((first == '"' || first == '`' || first == '[') && "\"`]".indexOf(identifier.charAt(identifier.length() - 1)) >= 0) {
+                return identifier.substring(1, identifier.length() - 1);
+            }
+        }
+        return identifier;
+    }
+
+    private static String lower(String name) {
+        return name == null ? null : unquote(name).toLowerCase(Locale.ROOT);
+    }
+
+    // ---- scopes and predicates ----
+
+    /** A resolved column: the alias it was reached through, its table and its schema spelling. */
+    private record ColumnRef(String alias, DatabaseSchema.TableInfo table, String column) {}
+
+    private record Filter(ColumnRef ref, boolean equality) {}
+
+    /**
+     * FROM items of one query block by alias, in join order. Items that aren't schema tables
+     * (derived tables, table functions) map to null and make unqualified names ambiguous.
+     */
+    private static final class Scope {
+        final Scope parent;
+        final Map<String, DatabaseSchema.TableInfo> tables = new LinkedHashMap<>();
+        boolean opaque;
+
+        Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        void add(String alias, DatabaseSchema.TableInfo table) {
+            if (alias == null || table == null) {
+                opaque = true;
+            }
+            if (alias != null) {
+                tables.put(lower(alias), table);
+            }
+        }
+
+        /** Join order of the alias in this block; enclosing blocks' aliases come before all of it. */
+        int position(String alias) {
+            int position = 0;
+            for (String key : tables.keySet()) {
+                if (key.equals(alias)) {
+                    return position;
+                }
+                position++;
+            }
+            return -1;
+        }
+
+        ColumnRef resolve(Column column) {
+            Table qualifier = column.getTable();
+            if (qualifier != null && qualifier.getName() != null) {
+                String alias = lower(qualifier.getName());
+                for (Scope scope = this; scope != null; scope = scope.parent) {
+                    if (scope.tables.containsKey(alias)) {
+                        DatabaseSchema.TableInfo table = scope.tables.get(alias);
+                        String name = table != null ? columnName(table, column.getColumnName()) : null;
+                        return name != null ? new ColumnRef(alias, table, name) : null;
+                    }
+                }
+                return null;
+            }
+
+            // Unqualified: the nearest block with the column decides, and it must be unambiguous there
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                ColumnRef match = null;
+                for (Map.Entry<String, DatabaseSchema.TableInfo> entry : scope.tables.entrySet()) {
+                    String name = entry.getValue() != null ? columnName(entry.getValue(), column.getColumnName()) : null;
+                    if (name != null) {
+                        if (match != null) {
+                            return null;
+                        }
+                        match = new ColumnRef(entry.getKey(), entry.getValue(), name);
+                    }
+                }
+                if (match != null) {
+                    return scope.opaque ? null : match;
+                }
+                if (scope.opaque) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Collects the resolvable columns referenced anywhere inside an expression. */
+    private static final class ColumnCollector extends ExpressionVisitorAdapter {
+        final Scope scope;
+        final List<ColumnRef> refs = new ArrayList<>();
+
+        ColumnCollector(Scope scope) {
+            this.scope = scope;
+        }
+
+        @Override
+        public void visit(Column column) {
+            ColumnRef ref = scope.resolve(column);
+            if (ref != null) {
+                refs.add(ref);
+            }
+        }
+    }
+
+    /**
+     * Walks a WHERE or ON condition. AND, OR, NOT and parentheses are traversed by the adapter;
+     * each comparison is classified as a join, a seekable filter, or an expression hiding a column.
+     */
+    private final class PredicateVisitor extends ExpressionVisitorAdapter {
+        final Scope scope;
+        /** Seekable filters per alias of this block; enclosing blocks' columns are checked there. */
+        final Map<String, List<Filter>> filters = new LinkedHashMap<>();
+        /** Aliases reachable through an index on their join column, so they aren't scanned. */
+        final Set<String> indexedJoins = new HashSet<>();
+
+        PredicateVisitor(Scope scope) {
+            this.scope = scope;
+        }
+
+        Set<String> equalityColumns(String alias) {
+            Set<String> columns = new LinkedHashSet<>();
+            for (Filter filter : filters.getOrDefault(alias, List.of())) {
+                if (filter.equality()) {
+                    columns.add(filter.ref().column());
+                }
+            }
+            return columns;
+        }
+
+        @Override
+        public void visit(EqualsTo expression) {
+            comparison(expression, true);
+        }
+
+        @Override
+        public void visit(GreaterThan expression) {
+            comparison(expression, false);
+        }
+
+        @Override
+        public void visit(GreaterThanEquals expression) {
+            comparison(expression, false);
+        }
+
+        @Override
+        public void visit(MinorThan expression) {
+            comparison(expression, false);
+        }
+
+        @Override
+        public void visit(MinorThanEquals expression) {
+            comparison(expression, false);
+        }
+
+        @Override
+        public void visit(InExpression expression) {
+            operand(expression.getLeftExpression(), true);
+            if (expression.getRightExpression() instanceof Select subquery) {
+                analyzeSelect(subquery, scope);
+            }
+        }
+
+        @Override
+        public void visit(Between expression) {
+            operand(expression.getLeftExpression(), false);
+        }
+
+        @Override
+        public void visit(IsNullExpression expression) {
+            if (expression.isNot()) {
+                return;
+            }
+            operand(expression.getLeftExpression(), true);
+        }
+
+        @Override
+        public void visit(LikeExpression expression) {
+            if (expression.isNot()) {
+                return;
+            }
+            boolean leadingWildcard = expression.getRightExpression() instanceof StringValue pattern
+                && (pattern.getValue().startsWith("%") || pattern.getValue().startsWith("_"));
+            if (leadingWildcard && expression.getLeftExpression() instanceof Column column) {
+                ColumnRef ref = scope.resolve(column);
+                if (ref != null) {
+                    reportLeadingWildcard(expression, ref);
+                }
+                return;
+            }
+            operand(expression.getLeftExpression(), false);
+        }
+
+        @Override
+        public void visit(ExistsExpression expression) {
+            if (expression.getRightExpression() instanceof Select subquery) {
+                analyzeSelect(subquery, scope);
+            }
+        }
+
+        private void comparison(BinaryExpression expression, boolean equality) {
+            Expression left = expression.getLeftExpression();
+            Expression right = expression.getRightExpression();
+            if (left instanceof Column leftColumn && right instanceof Column rightColumn) {
+                ColumnRef leftRef = scope.resolve(leftColumn);
+                ColumnRef rightRef = scope.resolve(rightColumn);
+                if (leftRef != null && rightRef != null && !leftRef.alias().equals(rightRef.alias())) {
+                    if (equality) {
+                        checkJoin(scope, leftRef, rightRef, expression, indexedJoins);
+                    }
+                    return;
+                }
+            }
+            operand(left, equality);
+            operand(right, equality);
+        }
+
+        private void operand(Expression expression, boolean equality) {
+            if (expression instanceof Select subquery) {
+                analyzeSelect(subquery, scope);
+            } else if (expression instanceof Column column) {
+                ColumnRef ref = scope.resolve(column);
+                if (ref != null && scope.position(ref.alias()) >= 0) {
+                    filters.computeIfAbsent(ref.alias(), alias -> new ArrayList<>()).add(new Filter(ref, equality));
+                }
+            } else if (expression != null) {
+                ColumnCollector collector = new ColumnCollector(scope);
+                expression.accept(collector);
+                for (ColumnRef ref : collector.refs) {
+                    reportHiddenColumn(expression, ref);
+                }
+            }
+        }
+    }
+}
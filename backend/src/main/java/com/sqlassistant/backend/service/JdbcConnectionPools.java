@@ -0,0 +1,91 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One small Hikari pool per registered connection id, used where a request runs several
+ * statements at once (/query/execute/batch). The pool size is the per-connection concurrency
+ * cap: further borrowers wait up to {@code acquire-timeout-ms} for a connection, so concurrent
+ * batches against one database never hold more than {@code max-per-connection} sessions.
+ *
+ * Idle connections are closed after {@code idle-timeout-ms}; Hikari restores read-only,
+ * auto-commit and isolation on return, so session settings from the execution profile don't leak.
+ */
+@Service
+public class JdbcConnectionPools {
+
+    private final Map<String, HikariDataSource> pools = new ConcurrentHashMap<>();
+    private final ExecutionProfiles executionProfiles;
+
+    @Value("${query.execution.pool.max-per-connection:4}")
+    private int maxPerConnection;
+
+    @Value("${query.execution.pool.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    @Value("${query.execution.pool.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    public JdbcConnectionPools(ExecutionProfiles executionProfiles) {
+        this.executionProfiles = executionProfiles;
+    }
+
+    public int maxPerConnection() {
+        return maxPerConnection;
+    }
+
+    public Connection getConnection(
+        String connectionId, DatabaseConnectionDto connectionDto, ExecutionProfiles.Profile profile) throws SQLException {
+
+        return pools.computeIfAbsent(connectionId, id -> createPool(id, connectionDto, profile)).getConnection();
+    }
+
+    /** Closes the pool for a connection that was removed or re-registered with new settings. */
+    public void evict(String connectionId) {
+        HikariDataSource pool = pools.remove(connectionId);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private HikariDataSource createPool(String connectionId, DatabaseConnectionDto connectionDto, ExecutionProfiles.Profile profile) {
+        String username = connectionDto.username() != null ? connectionDto.username() : "";
+        String password = connectionDto.password() != null ? connectionDto.password() : "";
+        Properties driverProperties = executionProfiles.driverProperties(profile, username, password);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("query-" + connectionId);
+        config.setJdbcUrl(connectionDto.buildConnectionUrl());
+        config.setUsername(username);
+        config.setPassword(password);
+        driverProperties.forEach((key, value) -> {
+            if (!"user".equals(key) && !"password".equals(key)) {
+                config.addDataSourceProperty(key.toString(), value);
+            }
+        });
+        config.setMaximumPoolSize(maxPerConnection);
+        config.setMinimumIdle(0);
+        config.setIdleTimeout(idleTimeoutMs);
+        config.setConnectionTimeout(acquireTimeoutMs);
+        // Don't open anything until the first borrow; a bad profile fails that request, not pool creation
+        config.setInitializationFailTimeout(-1);
+        return new HikariDataSource(config);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(HikariDataSource::close);
+        pools.clear();
+    }
+}
@@ -0,0 +1,483 @@
+package com.sqlassistant.backend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Protects outbound LLM calls so a slow or throttling provider can't back up every request.
+ * Each provider and API key gets:
+ * <ul>
+ *   <li>a token bucket matched to the key's quota. A call waits for a token for at most
+ *       {@code llm.max-queue-wait-ms} and is rejected otherwise, instead of being sent only to
+ *       get a 429.</li>
+ *   <li>a per-attempt timeout, and up to {@code llm.retry.max-retries} retries on 429, 5xx or
+ *       connection errors. Retries use exponential backoff with jitter and honour a short
+ *       {@code Retry-After}.</li>
+ *   <li>a circuit breaker over the last {@code llm.breaker.window-size} attempts. It opens when
+ *       the failure rate reaches the threshold and rejects calls immediately while open. After
+ *       {@code llm.breaker.open-seconds} it lets a few probe calls through, closes if they all
+ *       succeed and reopens if one fails.</li>
+ * </ul>
+ *
+ * Rejected calls fail with {@link ProviderUnavailableException}, which callers turn into a
+ * fallback or a fast 503. State is served by the {@code llmproviders} actuator endpoint and the
+ * {@code sqlassistant.llm.*} meters.
+ */
+@Component
+@Endpoint(id = "llmproviders")
+public class LlmProviderGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmProviderGuard.class);
+
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 500, 502, 503, 504);
+
+    public enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+    /** A key's request quota: sustained rate and how many calls may go out back to back. */
+    public record Quota(int requestsPerMinute, int burst) {}
+
+    /** The call was not sent: the key's rate limit is exhausted or its breaker is open. */
+    public static class ProviderUnavailableException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String reason;
+        private final long retryAfterMs;
+
+        ProviderUnavailableException(String provider, String reason, long retryAfterMs) {
+            super(provider + " is temporarily unavailable (" + reason + "); retry in " + Math.max(1, retryAfterMs / 1000) + "s");
+            this.reason = reason;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    private final Map<String, ProviderKey> keys = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Value("${llm.call-timeout-seconds:30}")
+    private long callTimeoutSeconds;
+
+    @Value("${llm.max-queue-wait-ms:2000}")
+    private long maxQueueWaitMs;
+
+    @Value("${llm.retry.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${llm.retry.initial-backoff-ms:250}")
+    private long initialBackoffMs;
+
+    @Value("${llm.retry.max-backoff-ms:2000}")
+    private long maxBackoffMs;
+
+    @Value("${llm.breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${llm.breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${llm.breaker.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${llm.breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${llm.breaker.half-open-calls:2}")
+    private int halfOpenCalls;
+
+    public LlmProviderGuard(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs {@code call} (a cold Mono, resubscribed per attempt) under the key's limiter and breaker.
+     */
+    public <T> Mono<T> call(String provider, String apiKey, Quota quota, Mono<T> call) {
+        // Masked ids collide for keys sharing a suffix, so state is keyed by a hash of the whole key
+        String keyId = keyId(apiKey);
+        ProviderKey key = keys.computeIfAbsent(provider + ":" + keyHash(apiKey), id -> register(provider, keyId, quota));
+        return Mono.defer(() -> attempt(key, call)).retryWhen(retries(key));
+    }
+
+    @ReadOperation
+    public Map<String, Object> providers() {
+        List<Map<String, Object>> providers = keys.values().stream()
+            .sorted(Comparator.comparing((ProviderKey key) -> key.provider).thenComparing(key -> key.keyId))
+            .map(ProviderKey::describe)
+            .toList();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("providers", providers);
+        result.put("callTimeoutSeconds", callTimeoutSeconds);
+        result.put("maxQueueWaitMs", maxQueueWaitMs);
+        result.put("maxRetries", maxRetries);
+        result.put("breakerWindowSize", windowSize);
+        result.put("breakerFailureRateThreshold", failureRateThreshold);
+        result.put("breakerOpenSeconds", openSeconds);
+        return result;
+    }
+
+    private <T> Mono<T> attempt(ProviderKey key, Mono<T> call) {
+        long now = System.nanoTime();
+        Permit permit = key.permit(now);
+        if (permit == Permit.REJECTED) {
+            return reject(key, "CIRCUIT_OPEN", key.openRemainingMs(now));
+        }
+
+        long waitNanos = key.reserveToken(now, Duration.ofMillis(maxQueueWaitMs).toNanos());
+        if (waitNanos < 0) {
+            if (permit == Permit.PROBE) {
+                key.releaseProbe();
+            }
+            return reject(key, "RATE_LIMITED", key.tokenWaitMs(now));
+        }
+
+        boolean probe = permit == Permit.PROBE;
+        Mono<T> timed = call.timeout(Duration.ofSeconds(callTimeoutSeconds));
+        return (waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then(timed) : timed)
+            .doOnSuccess(value -> key.record(false, probe))
+            .doOnError(e -> key.record(countsAsFailure(e), probe))
+            .doOnCancel(() -> {
+                if (probe) {
+                    key.releaseProbe();
+                }
+            });
+    }
+
+    private <T> Mono<T> reject(ProviderKey key, String reason, long retryAfterMs) {
+        meterRegistry.counter("sqlassistant.llm.rejected", "provider", key.provider, "reason", reason).increment();
+        (reason.equals("CIRCUIT_OPEN") ? key.rejectedOpen : key.rejectedRateLimited).increment();
+        return Mono.error(new ProviderUnavailableException(key.provider, reason, retryAfterMs));
+    }
+
+    /** Retries retryable failures after a jittered exponential backoff, or a Retry-After within the cap. */
+    private Retry retries(ProviderKey key) {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable failure = signal.failure();
+            if (signal.totalRetries() >= maxRetries || !retryable(failure)) {
+                return Mono.error(failure);
+            }
+
+            long retryAfterMs = retryAfterMs(failure);
+            if (retryAfterMs > maxBackoffMs) {
+                return Mono.error(failure);
+            }
+
+            // Equal jitter: half the exponential step is fixed, the other half random
+            long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(signal.totalRetries(), 20));
+            long delay = Math.max(retryAfterMs, backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            key.retries.increment();
+            meterRegistry.counter("sqlassistant.llm.retries", "provider", key.provider).increment();
+            return Mono.delay(Duration.ofMillis(delay));
+        }));
+    }
+
+    /** Timeouts aren't retried: the attempt already used its whole budget. */
+    private static boolean retryable(Throwable failure) {
+        if (failure instanceof WebClientResponseException response) {
+            return RETRYABLE_STATUSES.contains(response.getStatusCode().value());
+        }
+        return failure instanceof WebClientRequestException;
+    }
+
+    /** Provider-side trouble; a 4xx other than 429 means the provider answered, so it isn't counted. */
+    private static boolean countsAsFailure(Throwable failure) {
+        return retryable(failure) || failure instanceof TimeoutException;
+    }
+
+    private static long retryAfterMs(Throwable failure) {
+        if (failure instanceof WebClientResponseException response) {
+            String header = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+            if (header != null) {
+                try {
+                    return Long.parseLong(header.trim()) * 1000;
+                } catch (NumberFormatException e) {
+                    // HTTP-date form; fall back to our own backoff
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** Masked form for meter tags and the actuator endpoint. */
+    private static String keyId(String apiKey) {
+        return apiKey != null && apiKey.length() > 8 ? "..." + apiKey.substring(apiKey.length() - 4) : "****";
+    }
+
+    private static String keyHash(String apiKey) {
+        if (apiKey == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private ProviderKey register(String provider, String keyId, Quota quota) {
+        ProviderKey key = new ProviderKey(provider, keyId, quota);
+        Gauge.builder("sqlassistant.llm.breaker.open", key, k -> k.breaker.get().state() == BreakerState.CLOSED ? 0 : 1)
+            .description("1 while the provider's circuit breaker is open or half-open")
+            .tag("provider", provider)
+            .tag("key", keyId)
+            .register(meterRegistry);
+        return key;
+    }
+
+    private enum Permit { NORMAL, PROBE, REJECTED }
+
+    /** Immutable breaker state, swapped by CAS. */
+    private record Breaker(BreakerState state, long openedAtNanos, int probesStarted, int probesSucceeded) {
+
+        static final Breaker CLOSED = new Breaker(BreakerState.CLOSED, 0, 0, 0);
+
+        static Breaker openedAt(long nanos) {
+            return new Breaker(BreakerState.OPEN, nanos, 0, 0);
+        }
+    }
+
+    private final class ProviderKey {
+
+        private static final int EMPTY = 0;
+        private static final int SUCCESS = 1;
+        private static final int FAILURE = 2;
+
+        final String provider;
+        final String keyId;
+        final Quota quota;
+        /** Nanos between tokens, and how far ahead of now reservations may run (the burst). */
+        final long intervalNanos;
+        final long burstNanos;
+        /** Token bucket as its theoretical arrival time: when the bucket is next back to empty. */
+        final AtomicLong emptyAtNanos = new AtomicLong(System.nanoTime());
+
+        final AtomicReference<Breaker> breaker = new AtomicReference<>(Breaker.CLOSED);
+        final AtomicIntegerArray window = new AtomicIntegerArray(windowSize);
+        final AtomicLong windowPosition = new AtomicLong();
+
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder rejectedRateLimited = new LongAdder();
+        final LongAdder rejectedOpen = new LongAdder();
+        volatile long lastTransitionMillis = System.currentTimeMillis();
+
+        ProviderKey(String provider, String keyId, Quota quota) {
+            this.provider = provider;
+            this.keyId = keyId;
+            this.quota = quota;
+            this.intervalNanos = Duration.ofMinutes(1).toNanos() / Math.max(quota.requestsPerMinute(), 1);
+            this.burstNanos = intervalNanos * Math.max(quota.burst(), 1);
+        }
+
+        /**
+         * Reserves the next token, returning how long to wait for it, or -1 (reserving nothing) if
+         * that wait would exceed {@code maxWaitNanos}.
+         */
+        long reserveToken(long now, long maxWaitNanos) {
+            while (true) {
+                long emptyAt = emptyAtNanos.get();
+                long next = Math.max(emptyAt, now) + intervalNanos;
+                long wait = Math.max(0, next - burstNanos - now);
+                if (wait > maxWaitNanos) {
+                    return -1;
+                }
+                if (emptyAtNanos.compareAndSet(emptyAt, next)) {
+                    return wait;
+                }
+            }
+        }
+
+        long tokenWaitMs(long now) {
+            long wait = Math.max(emptyAtNanos.get(), now) + intervalNanos - burstNanos - now;
+            return Math.max(0, Duration.ofNanos(wait).toMillis());
+        }
+
+        int availableTokens(long now) {
+            long headroom = burstNanos - Math.max(0, emptyAtNanos.get() - now);
+            return (int) Math.max(0, headroom / intervalNanos);
+        }
+
+        Permit permit(long now) {
+            while (true) {
+                Breaker current = breaker.get();
+                switch (current.state()) {
+                    case CLOSED:
+                        return Permit.NORMAL;
+                    case OPEN:
+                        if (now - current.openedAtNanos() < Duration.ofSeconds(openSeconds).toNanos()) {
+                            return Permit.REJECTED;
+                        }
+                        if (transition(current, new Breaker(BreakerState.HALF_OPEN, current.openedAtNanos(), 1, 0))) {
+                            return Permit.PROBE;
+                        }
+                        break;
+                    default:
+                        if (current.probesStarted() >= halfOpenCalls) {
+                            return Permit.REJECTED;
+                        }
+                        if (breaker.compareAndSet(current, new Breaker(BreakerState.HALF_OPEN, current.openedAtNanos(),
+                                current.probesStarted() + 1, current.probesSucceeded()))) {
+                            return Permit.PROBE;
+                        }
+                }
+            }
+        }
+
+        long openRemainingMs(long now) {
+            Breaker current = breaker.get();
+            if (current.state() != BreakerState.OPEN) {
+                return 1000; // half-open: probes are in flight
+            }
+            long remaining = Duration.ofSeconds(openSeconds).toNanos() - (now - current.openedAtNanos());
+            return Math.max(0, Duration.ofNanos(remaining).toMillis());
+        }
+
+        void record(boolean failed, boolean probe) {
+            calls.increment();
+            if (failed) {
+                failures.increment();
+            }
+
+            if (probe) {
+                recordProbe(failed);
+                return;
+            }
+
+            int slot = (int) (windowPosition.getAndIncrement() % windowSize);
+            window.set(slot, failed ? FAILURE : SUCCESS);
+
+            Breaker current = breaker.get();
+            if (failed && current.state() == BreakerState.CLOSED) {
+                int[] counts = windowCounts();
+                int total = counts[SUCCESS] + counts[FAILURE];
+                if (total >= minimumCalls && counts[FAILURE] * 100 >= failureRateThreshold * total) {
+                    if (transition(current, Breaker.openedAt(System.nanoTime()))) {
+                        log.warn("Circuit opened for {} key {}: {} of the last {} calls failed", provider, keyId, counts[FAILURE], total);
+                    }
+                }
+            }
+        }
+
+        private void recordProbe(boolean failed) {
+            while (true) {
+                Breaker current = breaker.get();
+                if (current.state() != BreakerState.HALF_OPEN) {
+                    return;
+                }
+                if (failed) {
+                    if (transition(current, Breaker.openedAt(System.nanoTime()))) {
+                        log.warn("Circuit reopened for {} key {}: probe call failed", provider, keyId);
+                        return;
+                    }
+                } else if (current.probesSucceeded() + 1 >= halfOpenCalls) {
+                    if (transition(current, Breaker.CLOSED)) {
+                        clearWindow();
+                        log.info("Circuit closed for {} key {}", provider, keyId);
+                        return;
+                    }
+                } else if (breaker.compareAndSet(current, new Breaker(BreakerState.HALF_OPEN, current.openedAtNanos(),
+                        current.probesStarted(), current.probesSucceeded() + 1))) {
+                    return;
+                }
+            }
+        }
+
+        /** Frees the slot of a probe that never completed (cancelled, or rejected by the limiter). */
+        void releaseProbe() {
+            while (true) {
+                Breaker current = breaker.get();
+                if (current.state() != BreakerState.HALF_OPEN || current.probesStarted() == 0) {
+                    return;
+                }
+                if (breaker.compareAndSet(current, new Breaker(BreakerState.HALF_OPEN, current.openedAtNanos(),
+                        current.probesStarted() - 1, current.probesSucceeded()))) {
+                    return;
+                }
+            }
+        }
+
+        private boolean transition(Breaker from, Breaker to) {
+            if (breaker.compareAndSet(from, to)) {
+                lastTransitionMillis = System.currentTimeMillis();
+                return true;
+            }
+            return false;
+        }
+
+        private int[] windowCounts() {
+            int[] counts = new int[3];
+            for (int i = 0; i < windowSize; i++) {
+                counts[window.get(i)]++;
+            }
+            return counts;
+        }
+
+        private void clearWindow() {
+            for (int i = 0; i < windowSize; i++) {
+                window.set(i, EMPTY);
+            }
+        }
+
+        Map<String, Object> describe() {
+            long now = System.nanoTime();
+            int[] counts = windowCounts();
+            int windowCalls = counts[SUCCESS] + counts[FAILURE];
+            Breaker current = breaker.get();
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("provider", provider);
+            result.put("key", keyId);
+            result.put("state", current.state());
+            result.put("since", Instant.ofEpochMilli(lastTransitionMillis).toString());
+            if (current.state() == BreakerState.OPEN) {
+                result.put("retryAfterMs", openRemainingMs(now));
+            }
+            result.put("windowCalls", windowCalls);
+            result.put("windowFailureRate", windowCalls == 0 ? 0.0 : Math.round(counts[FAILURE] * 1000.0 / windowCalls) / 10.0);
+            result.put("requestsPerMinute", quota.requestsPerMinute());
+            result.put("burst", quota.burst());
+            result.put("availableTokens", availableTokens(now));
+            result.put("calls", calls.sum());
+            result.put("failures", failures.sum());
+            result.put("retries", retries.sum());
+            result.put("rejectedRateLimited", rejectedRateLimited.sum());
+            result.put("rejectedOpen", rejectedOpen.sum());
+            return result;
+        }
+    }
+}
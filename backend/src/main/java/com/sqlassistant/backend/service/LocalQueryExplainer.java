@@ -0,0 +1,303 @@
+package com.sqlassistant.backend.service;
+
+import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.NotExpression;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.IsNullExpression;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.NotEqualsTo;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.AllTableColumns;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.SelectItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Explains simple and medium SELECTs from the JSqlParser AST, without the LLM. The text
+ * covers the tables read and how they are joined, the filters, grouping, the returned
+ * columns, ordering and row limit, one line per clause.
+ *
+ * Statements it can't describe faithfully are declined, so the caller asks the LLM instead:
+ * subqueries, CTEs, set operations, window functions, more than {@link #MAX_JOINS} joins, and
+ * anything other than a single SELECT.
+ */
+final class LocalQueryExplainer {
+
+    private static final int MAX_JOINS = 4;
+    private static final Pattern SELECT_KEYWORD = Pattern.compile("\\bSELECT\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WINDOW_FUNCTION = Pattern.compile("\\bOVER\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    private LocalQueryExplainer() {
+    }
+
+    /** The explanation, or empty when the statement should go to the LLM. */
+    static Optional<String> explain(Statement statement) {
+        if (!(statement instanceof PlainSelect select) || select.getWithItemsList() != null
+                || select.getIntoTables() != null || select.getFetch() != null || select.getTop() != null) {
+            return Optional.empty();
+        }
+        if (select.getJoins() != null && select.getJoins().size() > MAX_JOINS) {
+            return Optional.empty();
+        }
+
+        // Nested SELECTs can sit inside any expression (CASE, function arguments), so check the whole text
+        String text = select.toString();
+        Matcher selects = SELECT_KEYWORD.matcher(text);
+        int count = 0;
+        while (selects.find()) {
+            count++;
+        }
+        if (count > 1 || WINDOW_FUNCTION.matcher(text).find()) {
+            return Optional.empty();
+        }
+
+        if (select.getFromItem() != null && !(select.getFromItem() instanceof Table)) {
+            return Optional.empty();
+        }
+        if (select.getJoins() != null && select.getJoins().stream().anyMatch(join -> !(join.getRightItem() instanceof Table))) {
+            return Optional.empty();
+        }
+
+        return Optional.of(describe(select));
+    }
+
+    private static String describe(PlainSelect select) {
+        List<String> lines = new ArrayList<>();
+        List<Join> joins = select.getJoins() != null ? select.getJoins() : List.of();
+
+        if (select.getFromItem() == null) {
+            lines.add("Computes " + selectItems(select) + " without reading any table.");
+            return String.join("\n", lines);
+        }
+
+        StringBuilder intro = new StringBuilder("Reads ").append(table(select.getFromItem()));
+        if (!joins.isEmpty()) {
+            List<String> joined = joins.stream().map(join -> table(join.getRightItem())).toList();
+            intro.append(", combined with ").append(joinWords(joined));
+        }
+        lines.add(intro.append('.').toString());
+
+        for (Join join : joins) {
+            lines.add("- " + join(join));
+        }
+        if (select.getWhere() != null) {
+            lines.add("- Keeps only rows where " + describe(select.getWhere()) + ".");
+        }
+        if (select.getGroupBy() != null && select.getGroupBy().getGroupByExpressionList() != null) {
+            List<String> groups = new ArrayList<>();
+            for (Object expression : select.getGroupBy().getGroupByExpressionList()) {
+                groups.add(describe((Expression) expression));
+            }
+            lines.add("- Groups the rows by " + joinWords(groups) + ", producing one row per group.");
+        }
+        if (select.getHaving() != null) {
+            lines.add("- Keeps only groups where " + describe(select.getHaving()) + ".");
+        }
+        lines.add("- Returns " + selectItems(select) + ".");
+        if (select.getDistinct() != null) {
+            lines.add("- Removes duplicate rows from the result.");
+        }
+        if (select.getOrderByElements() != null && !select.getOrderByElements().isEmpty()) {
+            List<String> order = new ArrayList<>();
+            for (OrderByElement element : select.getOrderByElements()) {
+                String direction = !element.isAscDescPresent() ? "" : element.isAsc() ? " (ascending)" : " (descending)";
+                order.add(describe(element.getExpression()) + direction);
+            }
+            lines.add("- Sorts by " + String.join(", then ", order) + ".");
+        }
+        String limit = limit(select);
+        if (limit != null) {
+            lines.add("- " + limit);
+        }
+        return String.join("\n", lines);
+    }
+
+    private static String join(Join join) {
+        String table = table(join.getRightItem());
+        String condition = "";
+        if (join.getOnExpressions() != null && !join.getOnExpressions().isEmpty()) {
+            List<String> conditions = new ArrayList<>();
+            for (Expression on : join.getOnExpressions()) {
+                conditions.add(describe(on));
+            }
+            condition = " where " + String.join(" and ", conditions);
+        } else if (join.getUsingColumns() != null && !join.getUsingColumns().isEmpty()) {
+            condition = " on equal " + joinWords(join.getUsingColumns().stream().map(Column::getColumnName).toList());
+        }
+
+        if (join.isSimple()) {
+            return "Pairs rows with " + table + " (listed in FROM; the WHERE conditions link them).";
+        }
+        if (join.isCross()) {
+            return "Pairs every row with every row of " + table + " (cross join).";
+        }
+        if (join.isNatural()) {
+            return "Matches rows of " + table + " on every column with the same name (natural join).";
+        }
+        if (join.isLeft()) {
+            return "Adds matching rows of " + table + condition + ", keeping rows without a match (left join).";
+        }
+        if (join.isRight()) {
+            return "Keeps every row of " + table + " and adds matching rows" + condition + " (right join).";
+        }
+        if (join.isFull()) {
+            return "Combines rows with " + table + condition + ", keeping unmatched rows from both sides (full join).";
+        }
+        return "Matches rows of " + table + condition + " (inner join).";
+    }
+
+    private static String selectItems(PlainSelect select) {
+        List<String> items = new ArrayList<>();
+        for (SelectItem<?> item : select.getSelectItems()) {
+            Expression expression = item.getExpression();
+            String described;
+            if (expression instanceof AllTableColumns tableColumns) {
+                described = "all columns of " + tableColumns.getTable().getFullyQualifiedName();
+            } else if (expression instanceof AllColumns) {
+                described = "all columns";
+            } else {
+                described = describe(expression);
+            }
+            items.add(item.getAlias() != null ? described + " as " + item.getAlias().getName() : described);
+        }
+        return joinWords(items);
+    }
+
+    private static String limit(PlainSelect select) {
+        Expression rows = select.getLimit() != null ? select.getLimit().getRowCount() : null;
+        Expression offset = select.getOffset() != null ? select.getOffset().getOffset()
+            : select.getLimit() != null ? select.getLimit().getOffset() : null;
+
+        if (rows == null && offset == null) {
+            return null;
+        }
+        if (rows == null) {
+            return "Skips the first " + describe(offset) + " rows.";
+        }
+        return "Returns at most " + describe(rows) + " rows" + (offset != null ? ", skipping the first " + describe(offset) : "") + ".";
+    }
+
+    private static String describe(Expression expression) {
+        if (expression instanceof AndExpression and) {
+            return describe(and.getLeftExpression()) + " and " + describe(and.getRightExpression());
+        }
+        if (expression instanceof OrExpression or) {
+            return describe(or.getLeftExpression()) + " or " + describe(or.getRightExpression());
+        }
+        // JSqlParser 4.7 parses a parenthesized condition as Parenthesis; single-item lists cover the rest
+        if (expression instanceof Parenthesis parenthesis) {
+            return "(" + describe(parenthesis.getExpression()) + ")";
+        }
+        if (expression instanceof ExpressionList<?> list && list.size() == 1) {
+            return "(" + describe(list.get(0)) + ")";
+        }
+        if (expression instanceof NotExpression not) {
+            return "not " + describe(not.getExpression());
+        }
+        if (expression instanceof EqualsTo comparison) {
+            return binary(comparison, "equals");
+        }
+        if (expression instanceof NotEqualsTo comparison) {
+            return binary(comparison, "is not");
+        }
+        if (expression instanceof GreaterThan comparison) {
+            return binary(comparison, "is greater than");
+        }
+        if (expression instanceof GreaterThanEquals comparison) {
+            return binary(comparison, "is at least");
+        }
+        if (expression instanceof MinorThan comparison) {
+            return binary(comparison, "is less than");
+        }
+        if (expression instanceof MinorThanEquals comparison) {
+            return binary(comparison, "is at most");
+        }
+        if (expression instanceof Between between) {
+            return describe(between.getLeftExpression()) + (between.isNot() ? " is not between " : " is between ")
+                + describe(between.getBetweenExpressionStart()) + " and " + describe(between.getBetweenExpressionEnd());
+        }
+        if (expression instanceof InExpression in && in.getRightExpression() instanceof ExpressionList<?> values) {
+            List<String> described = new ArrayList<>();
+            for (Expression value : values) {
+                described.add(describe(value));
+            }
+            return describe(in.getLeftExpression()) + (in.isNot() ? " is none of " : " is one of ") + String.join(", ", described);
+        }
+        if (expression instanceof IsNullExpression isNull) {
+            return describe(isNull.getLeftExpression()) + (isNull.isNot() ? " has a value" : " is missing (NULL)");
+        }
+        if (expression instanceof LikeExpression like) {
+            return describe(like.getLeftExpression()) + (like.isNot() ? " does not match the pattern " : " matches the pattern ")
+                + describe(like.getRightExpression());
+        }
+        if (expression instanceof Function function) {
+            return function(function);
+        }
+        // Columns, literals, arithmetic, CASE and scalar functions read fine as written
+        return expression.toString();
+    }
+
+    private static String binary(BinaryExpression expression, String operator) {
+        return describe(expression.getLeftExpression()) + " " + operator + " " + describe(expression.getRightExpression());
+    }
+
+    private static String function(Function function) {
+        String argument = null;
+        if (!function.isAllColumns() && function.getParameters() != null) {
+            ExpressionList<?> parameters = function.getParameters();
+            if (parameters.size() == 1 && !(parameters.get(0) instanceof AllColumns)) {
+                argument = describe(parameters.get(0));
+            } else if (parameters.size() > 1) {
+                return function.toString();
+            }
+        }
+        String distinct = function.isDistinct() ? "distinct " : "";
+
+        return switch (function.getName().toUpperCase(Locale.ROOT)) {
+            case "COUNT" -> argument == null ? "the number of rows"
+                : function.isDistinct() ? "the number of distinct " + argument : "the number of non-NULL " + argument + " values";
+            case "SUM" -> argument == null ? function.toString() : "the sum of " + distinct + argument;
+            case "AVG" -> argument == null ? function.toString() : "the average of " + distinct + argument;
+            case "MIN" -> argument == null ? function.toString() : "the smallest " + argument;
+            case "MAX" -> argument == null ? function.toString() : "the largest " + argument;
+            default -> function.toString();
+        };
+    }
+
+    private static String table(FromItem item) {
+        Table table = (Table) item;
+        String name = table.getFullyQualifiedName();
+        return item.getAlias() != null ? name + " (as " + item.getAlias().getName() + ")" : name;
+    }
+
+    private static String joinWords(List<String> words) {
+        if (words.size() <= 1) {
+            return words.isEmpty() ? "" : words.get(0);
+        }
+        return String.join(", ", words.subList(0, words.size() - 1)) + " and " + words.get(words.size() - 1);
+    }
+}
@@ -0,0 +1,206 @@
+package com.sqlassistant.backend.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * JDK Flight Recorder events for each stage of a request: schema introspection (per table),
+ * prompt build, LLM call, validation and parse, JDBC execute, fetch loop and serialization.
+ * Every event carries the connection id and request id, so a recording shows one request's
+ * timeline in JDK Mission Control. Events are filtered by {@code sqlassistant.*} name.
+ *
+ * Disabled events cost a single flag check, so they are always emitted; record with
+ * {@code -XX:StartFlightRecording=filename=app.jfr,settings=profile} or {@code jcmd <pid> JFR.start}.
+ *
+ * Blocking stages read the ids from the calling thread ({@link #bind}); the reactive generate
+ * and explain pipelines carry them in the Reactor context ({@link #context}).
+ */
+public final class PipelineEvents {
+
+    public record Trace(String connectionId, String requestId) {
+        static final Trace NONE = new Trace(null, null);
+    }
+
+    /**
+     * Closes a {@link #bind} scope; never throws. The try block that opens one never references
+     * it, so methods using it carry {@code @SuppressWarnings("try")}.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final String CONTEXT_KEY = PipelineEvents.class.getName();
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private PipelineEvents() {
+    }
+
+    /** Tags events emitted on this thread until the returned scope is closed. */
+    public static Scope bind(String connectionId, String requestId) {
+        return bind(new Trace(connectionId, requestId));
+    }
+
+    public static Scope bind(Trace trace) {
+        Trace previous = CURRENT.get();
+        CURRENT.set(trace);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    public static Trace current() {
+        Trace trace = CURRENT.get();
+        return trace != null ? trace : Trace.NONE;
+    }
+
+    /** Reactor context entry that tags events emitted by a reactive pipeline. */
+    public static Context context(String connectionId, String requestId) {
+        return Context.of(CONTEXT_KEY, new Trace(connectionId, requestId));
+    }
+
+    public static Trace fromContext(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, Trace.NONE);
+    }
+
+    @Category({"SQL Assistant", "Pipeline"})
+    @StackTrace(false)
+    public abstract static class PipelineEvent extends Event {
+
+        @Label("Connection Id")
+        public String connectionId;
+
+        @Label("Request Id")
+        public String requestId;
+
+        /** Applies the trace and commits if the event passed its threshold; ends it if not yet ended. */
+        public void commit(Trace trace) {
+            if (shouldCommit()) {
+                connectionId = trace.connectionId();
+                requestId = trace.requestId();
+                commit();
+            }
+        }
+    }
+
+    @Name("sqlassistant.SchemaTable")
+    @Label("Schema Table Introspection")
+    @Description("Reading one table's columns, indexes and foreign keys from database metadata")
+    public static final class SchemaTable extends PipelineEvent {
+
+        @Label("Table")
+        public String table;
+
+        @Label("Columns")
+        public int columns;
+
+        @Label("Indexes")
+        public int indexes;
+
+        @Label("Foreign Keys")
+        public int foreignKeys;
+    }
+
+    @Name("sqlassistant.PromptBuild")
+    @Label("Prompt Build")
+    public static final class PromptBuild extends PipelineEvent {
+
+        @Label("Tables")
+        public int tables;
+
+        @Label("Prompt Size")
+        @DataAmount
+        public long promptBytes;
+    }
+
+    @Name("sqlassistant.LlmCall")
+    @Label("LLM Call")
+    public static final class LlmCall extends PipelineEvent {
+
+        @Label("Provider")
+        public String provider;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("HTTP Status")
+        @Description("0 when no response was received (connection error, timeout or cancellation)")
+        public int status;
+
+        @Label("Request Size")
+        @DataAmount
+        public long requestBytes;
+
+        @Label("Response Size")
+        @DataAmount
+        public long responseBytes;
+    }
+
+    @Name("sqlassistant.Validation")
+    @Label("Validation and Parse")
+    public static final class Validation extends PipelineEvent {
+
+        @Label("SQL Length")
+        public int sqlLength;
+
+        @Label("Parsed")
+        public boolean parsed;
+
+        @Label("Valid")
+        public boolean valid;
+
+        @Label("Errors")
+        public int errors;
+    }
+
+    @Name("sqlassistant.JdbcExecute")
+    @Label("JDBC Execute")
+    @Description("Statement.executeQuery until the first result set is available")
+    public static final class JdbcExecute extends PipelineEvent {
+
+        @Label("Dialect")
+        public String dialect;
+
+        @Label("Pooled")
+        public boolean pooled;
+
+        @Label("SQL Length")
+        public int sqlLength;
+    }
+
+    @Name("sqlassistant.Fetch")
+    @Label("Fetch Loop")
+    public static final class Fetch extends PipelineEvent {
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Columns")
+        public int columns;
+    }
+
+    @Name("sqlassistant.Serialization")
+    @Label("Serialization")
+    public static final class Serialization extends PipelineEvent {
+
+        @Label("Format")
+        public String format;
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Columns")
+        public int columns;
+    }
+}
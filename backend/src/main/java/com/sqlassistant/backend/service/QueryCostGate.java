@@ -0,0 +1,223 @@
+package com.sqlassistant.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.sqlassistant.backend.dto.QueryDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pre-execution cost check. Runs the dialect's EXPLAIN for a validated query, summarizes the
+ * estimated cost, the largest row estimate and any full table scans, and decides whether the
+ * query stays within the configured budgets.
+ *
+ * PostgreSQL and MySQL report costs and row estimates; H2 and SQLite only expose the access
+ * path, so for them only full scans are reported.
+ */
+@Component
+public class QueryCostGate {
+
+    public static final String VERDICT_OK = "OK";
+    public static final String VERDICT_WARN = "WARN";
+    public static final String VERDICT_REJECT = "REJECT";
+    public static final String VERDICT_UNAVAILABLE = "UNAVAILABLE";
+
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\*\\s*([\\w.\"]+)\\.tableScan\\s*\\*/");
+    private static final Pattern SQLITE_SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\S+)(?!.*USING (?:COVERING )?INDEX)");
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${query.execution.cost-gate.enabled:true}")
+    private boolean enabled;
+
+    /** REJECT stops over-budget queries; WARN only reports them. */
+    @Value("${query.execution.cost-gate.mode:REJECT}")
+    private String mode;
+
+    @Value("${query.execution.cost-gate.max-estimated-rows:10000000}")
+    private long maxEstimatedRows;
+
+    @Value("${query.execution.cost-gate.max-cost:1000000}")
+    private double maxCost;
+
+    @Value("${query.execution.cost-gate.reject-full-scans:false}")
+    private boolean rejectFullScans;
+
+    public QueryCostGate(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the plan summary; never null. If EXPLAIN fails the verdict is UNAVAILABLE and the
+     *         query is allowed to run, since the 30s statement timeout still applies.
+     */
+    public QueryDto.PlanSummary evaluate(Connection connection, DatabaseConnectionDto.DatabaseType type, String sql) {
+        String query = stripTrailingSemicolon(sql);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(10);
+
+            PlanEstimate estimate = switch (type) {
+                case POSTGRESQL -> explainPostgres(statement, query);
+                case MYSQL -> explainMysql(statement, query);
+                case H2 -> explainH2(statement, query);
+                case SQLITE -> explainSqlite(statement, query);
+            };
+
+            return judge(type, estimate);
+
+        } catch (SQLException | RuntimeException e) {
+            return new QueryDto.PlanSummary(
+                type.name(), null, null, List.of(), VERDICT_UNAVAILABLE,
+                List.of("Execution plan unavailable: " + e.getMessage())
+            );
+        }
+    }
+
+    private QueryDto.PlanSummary judge(DatabaseConnectionDto.DatabaseType type, PlanEstimate estimate) {
+        List<String> warnings = new ArrayList<>();
+
+        if (estimate.rows != null && estimate.rows > maxEstimatedRows) {
+            warnings.add("Estimated " + estimate.rows + " rows exceeds the budget of " + maxEstimatedRows);
+        }
+        if (estimate.cost != null && estimate.cost > maxCost) {
+            warnings.add(String.format(Locale.ROOT, "Estimated cost %.0f exceeds the budget of %.0f", estimate.cost, maxCost));
+        }
+        boolean overBudget = !warnings.isEmpty();
+
+        for (String table : estimate.fullScans) {
+            warnings.add("Full table scan on " + table);
+        }
+        if (rejectFullScans && !estimate.fullScans.isEmpty()) {
+            overBudget = true;
+        }
+
+        String verdict;
+        if (overBudget) {
+            verdict = "WARN".equalsIgnoreCase(mode) ? VERDICT_WARN : VERDICT_REJECT;
+        } else {
+            verdict = warnings.isEmpty() ? VERDICT_OK : VERDICT_WARN;
+        }
+
+        return new QueryDto.PlanSummary(type.name(), estimate.cost, estimate.rows, estimate.fullScans, verdict, warnings);
+    }
+
+    private PlanEstimate explainPostgres(Statement statement, String sql) throws SQLException {
+        JsonNode root = explainJson(statement, "EXPLAIN (FORMAT JSON) " + sql);
+        JsonNode plan = root.path(0).path("Plan");
+
+        PlanEstimate estimate = new PlanEstimate();
+        estimate.cost = plan.path("Total Cost").isNumber() ? plan.path("Total Cost").asDouble() : null;
+        walkPostgres(plan, estimate);
+        return estimate;
+    }
+
+    private void walkPostgres(JsonNode node, PlanEstimate estimate) {
+        if (node.path("Plan Rows").isNumber()) {
+            estimate.observeRows(node.path("Plan Rows").asLong());
+        }
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            estimate.fullScans.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            walkPostgres(child, estimate);
+        }
+    }
+
+    private PlanEstimate explainMysql(Statement statement, String sql) throws SQLException {
+        JsonNode root = explainJson(statement, "EXPLAIN FORMAT=JSON " + sql);
+
+        PlanEstimate estimate = new PlanEstimate();
+        String queryCost = root.path("query_block").path("cost_info").path("query_cost").asText(null);
+        estimate.cost = queryCost != null ? Double.parseDouble(queryCost) : null;
+        walkMysql(root, estimate);
+        return estimate;
+    }
+
+    private void walkMysql(JsonNode node, PlanEstimate estimate) {
+        if (node.isObject()) {
+            JsonNode table = node.get("table");
+            if (table != null && table.isObject()) {
+                if (table.path("rows_examined_per_scan").canConvertToLong()) {
+                    estimate.observeRows(table.path("rows_examined_per_scan").asLong());
+                }
+                if ("ALL".equals(table.path("access_type").asText())) {
+                    estimate.fullScans.add(table.path("table_name").asText());
+                }
+            }
+            node.fields().forEachRemaining(field -> walkMysql(field.getValue(), estimate));
+        } else if (node.isArray()) {
+            node.forEach(child -> walkMysql(child, estimate));
+        }
+    }
+
+    private PlanEstimate explainH2(Statement statement, String sql) throws SQLException {
+        PlanEstimate estimate = new PlanEstimate();
+        try (ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql)) {
+            while (resultSet.next()) {
+                Matcher matcher = H2_TABLE_SCAN.matcher(resultSet.getString(1));
+                while (matcher.find()) {
+                    estimate.fullScans.add(matcher.group(1));
+                }
+            }
+        }
+        return estimate;
+    }
+
+    private PlanEstimate explainSqlite(Statement statement, String sql) throws SQLException {
+        PlanEstimate estimate = new PlanEstimate();
+        try (ResultSet resultSet = statement.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            while (resultSet.next()) {
+                Matcher matcher = SQLITE_SCAN.matcher(resultSet.getString("detail"));
+                if (matcher.find()) {
+                    estimate.fullScans.add(matcher.group(1));
+                }
+            }
+        }
+        return estimate;
+    }
+
+    private JsonNode explainJson(Statement statement, String explainSql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(explainSql)) {
+            if (!resultSet.next()) {
+                throw new SQLException("EXPLAIN returned no plan");
+            }
+            return objectMapper.readTree(resultSet.getString(1));
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            throw new SQLException("Unreadable EXPLAIN output: " + e.getOriginalMessage());
+        }
+    }
+
+    private String stripTrailingSemicolon(String sql) {
+        String trimmed = sql.trim();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    private static final class PlanEstimate {
+        Double cost;
+        Long rows;
+        final List<String> fullScans = new ArrayList<>();
+
+        void observeRows(long estimatedRows) {
+            rows = rows == null ? estimatedRows : Math.max(rows, estimatedRows);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Explains SQL for /query/explain. Simple and medium SELECTs are described locally from the
+ * parsed statement ({@link LocalQueryExplainer}). The rest go to the LLM, and its answers are
+ * cached by {@link QueryFingerprinter} fingerprint. The path that answered is returned with
+ * the explanation and counted in {@code sqlassistant.explain.requests{source=...}}.
+ *
+ * The LLM is given the fingerprint's normalized SQL, with literals replaced by {@code ?}. A
+ * cached explanation therefore never mentions values that differ between the queries that
+ * share it.
+ */
+@Service
+public class QueryExplanationService {
+
+    public static final String SOURCE_LOCAL = "LOCAL";
+    public static final String SOURCE_CACHE = "CACHE";
+    public static final String SOURCE_LLM = "LLM";
+
+    private final AiService aiService;
+    private final QueryFingerprinter fingerprinter;
+    private final MeterRegistry meterRegistry;
+    /** LLM explanations by query fingerprint. */
+    private final Map<String, String> explanations = new ConcurrentHashMap<>();
+
+    @Value("${query.explain.local-explainer:true}")
+    private boolean localExplainer;
+
+    @Value("${query.explain.cache-size:2000}")
+    private int cacheSize;
+
+    public QueryExplanationService(AiService aiService, QueryFingerprinter fingerprinter, MeterRegistry meterRegistry) {
+        this.aiService = aiService;
+        this.fingerprinter = fingerprinter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public record Explanation(String explanation, String source, String fingerprint) {}
+
+    /**
+     * @param schema the connection's schema, subscribed to only when the LLM is asked
+     */
+    public Mono<Explanation> explain(String sql, Mono<DatabaseSchema> schema) {
+        return Mono.defer(() -> {
+            QueryFingerprinter.Fingerprint fingerprint = fingerprinter.fingerprint(sql);
+
+            if (localExplainer) {
+                Optional<String> local = explainLocally(sql);
+                if (local.isPresent()) {
+                    meterRegistry.counter("sqlassistant.explain.requests", "source", SOURCE_LOCAL).increment();
+                    return Mono.just(new Explanation(local.get(), SOURCE_LOCAL, fingerprint.id()));
+                }
+            }
+
+            String cached = explanations.get(fingerprint.id());
+            if (cached != null) {
+                meterRegistry.counter("sqlassistant.explain.requests", "source", SOURCE_CACHE).increment();
+                return Mono.just(new Explanation(cached, SOURCE_CACHE, fingerprint.id()));
+            }
+
+            return schema.flatMap(loaded -> aiService.explainQuery(fingerprint.normalizedSql(), loaded))
+                .map(explanation -> {
+                    meterRegistry.counter("sqlassistant.explain.requests", "source", SOURCE_LLM).increment();
+                    remember(fingerprint.id(), explanation);
+                    return new Explanation(explanation, SOURCE_LLM, fingerprint.id());
+                });
+        });
+    }
+
+    private static Optional<String> explainLocally(String sql) {
+        String text = sql.trim();
+        while (text.endsWith(";")) {
+            text = text.substring(0, text.length() - 1).trim();
+        }
+        try {
+            return LocalQueryExplainer.explain(CCJSqlParserUtil.parse(text));
+        } catch (JSQLParserException | RuntimeException e) {
+            // Dialect syntax the parser doesn't know; the LLM can still read it
+            return Optional.empty();
+        }
+    }
+
+    private void remember(String fingerprint, String explanation) {
+        if (explanation == null || explanation.isBlank() || AiService.EXPLANATION_UNAVAILABLE.equals(explanation)) {
+            return;
+        }
+        if (explanations.size() >= cacheSize && !explanations.containsKey(fingerprint)) {
+            explanations.clear();
+        }
+        explanations.put(fingerprint, explanation);
+    }
+}
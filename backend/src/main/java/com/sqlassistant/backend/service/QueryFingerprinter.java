@@ -0,0 +1,125 @@
+package com.sqlassistant.backend.service;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.DoubleValue;
+import net.sf.jsqlparser.expression.HexValue;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.util.deparser.ExpressionDeParser;
+import net.sf.jsqlparser.util.deparser.SelectDeParser;
+import net.sf.jsqlparser.util.deparser.StatementDeParser;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a query to its shape: literals become {@code ?}, IN/VALUES lists collapse to one
+ * placeholder, and whitespace and case are canonicalized by re-printing the parsed statement.
+ * {@code SELECT * FROM t WHERE id = 7 LIMIT 50} and {@code select *  from T where id=12 limit 10}
+ * share one fingerprint. Statements JSqlParser can't parse are normalized lexically instead.
+ *
+ * Fingerprints are memoized per SQL text, since dashboards and retries resend identical strings.
+ */
+@Component
+public class QueryFingerprinter {
+
+    private static final int CACHE_LIMIT = 10_000;
+    private static final int FINGERPRINT_BYTES = 8;
+
+    private static final Pattern COMMENT = Pattern.compile("(--[^\r\n]*)|(/\\*[\\w\\W]*?\\*/)");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    /** Numbers not glued to an identifier (t_0, col2) or a placeholder. */
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w.$?])-?\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?(?![\\w.])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public record Fingerprint(String id, String normalizedSql) {}
+
+    private final Map<String, Fingerprint> cache = new ConcurrentHashMap<>();
+
+    public Fingerprint fingerprint(String sql) {
+        Fingerprint cached = cache.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+
+        String normalized = normalize(sql);
+        Fingerprint fingerprint = new Fingerprint(hash(normalized), normalized);
+        if (cache.size() >= CACHE_LIMIT) {
+            cache.clear();
+        }
+        cache.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    public String normalize(String sql) {
+        String text = COMMENT.matcher(sql).replaceAll(" ").trim();
+        while (text.endsWith(";")) {
+            text = text.substring(0, text.length() - 1).trim();
+        }
+
+        try {
+            text = deparse(CCJSqlParserUtil.parse(text));
+        } catch (JSQLParserException | RuntimeException e) {
+            // Unparseable or dialect-specific syntax: the lexical pass below still strips literals
+        }
+
+        // Catches literals the deparser prints verbatim (LIMIT/OFFSET counts, DATE '...' literals)
+        text = STRING_LITERAL.matcher(text).replaceAll("?");
+        text = NUMERIC_LITERAL.matcher(text).replaceAll("?");
+        text = PLACEHOLDER_LIST.matcher(text).replaceAll("(?+)");
+        return WHITESPACE.matcher(text).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String deparse(Statement statement) {
+        StringBuilder buffer = new StringBuilder();
+        ExpressionDeParser expressionDeParser = new LiteralMaskingDeParser();
+        SelectDeParser selectDeParser = new SelectDeParser(expressionDeParser, buffer);
+        expressionDeParser.setSelectVisitor(selectDeParser);
+        expressionDeParser.setBuffer(buffer);
+        statement.accept(new StatementDeParser(expressionDeParser, selectDeParser, buffer));
+        return buffer.toString();
+    }
+
+    private static String hash(String normalized) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(Arrays.copyOf(digest, FINGERPRINT_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static final class LiteralMaskingDeParser extends ExpressionDeParser {
+
+        @Override
+        public void visit(LongValue longValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(DoubleValue doubleValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(HexValue hexValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(StringValue stringValue) {
+            getBuffer().append('?');
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.QueryDto;
+import com.sqlassistant.backend.model.DatabaseSchema;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers natural-language questions, trying the local template matcher before the LLM.
+ * The path that answered is returned with the query and counted in
+ * {@code sqlassistant.generate.requests{source=...}}.
+ *
+ * When the LLM provider is rate limited or its circuit is open, the last LLM answer to the same
+ * question on the same connection is served instead (with a warning), then the template matcher.
+ * If neither answers, the {@link LlmProviderGuard.ProviderUnavailableException} propagates.
+ */
+@Service
+public class QueryGenerationService {
+
+    public static final String SOURCE_TEMPLATE = "TEMPLATE";
+    public static final String SOURCE_LLM = "LLM";
+    public static final String SOURCE_CACHE = "CACHE";
+
+    private final TemplateQueryMatcher templateMatcher;
+    private final AiService aiService;
+    private final MeterRegistry meterRegistry;
+    /** Successful LLM answers by connection id and normalized question, for provider outages. */
+    private final Map<String, QueryDto.QueryResponse> answers = new ConcurrentHashMap<>();
+
+    @Value("${query.generation.template-fast-path:true}")
+    private boolean templateFastPath;
+
+    @Value("${query.generation.fallback-cache-size:500}")
+    private int fallbackCacheSize;
+
+    public QueryGenerationService(TemplateQueryMatcher templateMatcher, AiService aiService, MeterRegistry meterRegistry) {
+        this.templateMatcher = templateMatcher;
+        this.aiService = aiService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public record GeneratedQuery(QueryDto.QueryResponse query, String source) {}
+
+    public Mono<GeneratedQuery> generate(
+        String connectionId,
+        String naturalLanguageQuery,
+        DatabaseSchema schema,
+        Map<String, Object> context) {
+
+        if (templateFastPath) {
+            Optional<QueryDto.QueryResponse> templated = templateMatcher.match(connectionId, naturalLanguageQuery, schema);
+            if (templated.isPresent()) {
+                meterRegistry.counter("sqlassistant.generate.requests", "source", SOURCE_TEMPLATE).increment();
+                return Mono.just(new GeneratedQuery(templated.get(), SOURCE_TEMPLATE));
+            }
+        }
+
+        String answerKey = connectionId + "\u0000" + normalize(naturalLanguageQuery);
+        return aiService.generateSqlQuery(naturalLanguageQuery, schema, context)
+            .map(query -> {
+                meterRegistry.counter("sqlassistant.generate.requests", "source", SOURCE_LLM).increment();
+                remember(answerKey, query);
+                return new GeneratedQuery(query, SOURCE_LLM);
+            })
+            .onErrorResume(LlmProviderGuard.ProviderUnavailableException.class,
+                e -> fallback(answerKey, connectionId, naturalLanguageQuery, schema, e));
+    }
+
+    private Mono<GeneratedQuery> fallback(String answerKey, String connectionId, String naturalLanguageQuery,
+                                          DatabaseSchema schema, LlmProviderGuard.ProviderUnavailableException cause) {
+        QueryDto.QueryResponse cached = answers.get(answerKey);
+        if (cached != null) {
+            List<String> warnings = new ArrayList<>(cached.warnings() != null ? cached.warnings() : List.of());
+            warnings.add("AI provider unavailable; showing the previous answer to this question");
+            meterRegistry.counter("sqlassistant.generate.requests", "source", SOURCE_CACHE).increment();
+            return Mono.just(new GeneratedQuery(new QueryDto.QueryResponse(cached.generatedSql(), cached.explanation(),
+                warnings, cached.isExecutable(), cached.metadata()), SOURCE_CACHE));
+        }
+
+        // With the fast path on, the matcher already declined this question
+        if (!templateFastPath) {
+            Optional<QueryDto.QueryResponse> templated = templateMatcher.match(connectionId, naturalLanguageQuery, schema);
+            if (templated.isPresent()) {
+                meterRegistry.counter("sqlassistant.generate.requests", "source", SOURCE_TEMPLATE).increment();
+                return Mono.just(new GeneratedQuery(templated.get(), SOURCE_TEMPLATE));
+            }
+        }
+        return Mono.error(cause);
+    }
+
+    private void remember(String answerKey, QueryDto.QueryResponse query) {
+        if (query.generatedSql() == null || query.generatedSql().isBlank()) {
+            return;
+        }
+        if (answers.size() >= fallbackCacheSize && !answers.containsKey(answerKey)) {
+            answers.clear();
+        }
+        answers.put(answerKey, query);
+    }
+
+    private static String normalize(String question) {
+        return question == null ? "" : question.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
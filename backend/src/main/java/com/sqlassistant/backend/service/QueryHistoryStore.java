@@ -0,0 +1,849 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.QueryDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segment-based store for query history.
+ *
+ * Request threads only enqueue entries; a single writer thread drains the queue in batches
+ * (group commit) into memory-mapped segment files. Each connectionId keeps an in-memory index
+ * of (timestamp, position) pairs in append order, so time-range reads are a binary search plus
+ * direct reads from the mapped segments. Prefix filters are served from per-connection postings
+ * keyed by the first {@value #PREFIX_KEY_LENGTH} lowercase characters of the SQL and the
+ * natural-language text, and every filtered read examines at most {@code max-scan-entries}
+ * entries.
+ *
+ * Record layout: {@code int length | int crc32 | payload}. The length is written last, so a
+ * partially written record is never visible and recovery stops at the first torn record.
+ * The active segment is sealed when full or once its oldest record is {@code segment-max-age-hours}
+ * old, so quiet stores still age out. Retention drops whole sealed segments past the cutoff;
+ * compaction merges runs of undersized sealed segments (left behind by restarts and age-based
+ * rolls) into dense ones, dropping expired records on the way.
+ */
+@Component
+public class QueryHistoryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryHistoryStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_TEXT_LENGTH = 32 * 1024;
+    private static final int PREFIX_KEY_LENGTH = 3;
+
+    @Value("${query.history.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.history.directory:./data/query-history}")
+    private String directory;
+
+    @Value("${query.history.segment-size-mb:16}")
+    private int segmentSizeMb;
+
+    @Value("${query.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${query.history.batch-size:512}")
+    private int batchSize;
+
+    @Value("${query.history.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${query.history.fsync:false}")
+    private boolean fsync;
+
+    @Value("${query.history.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${query.history.maintenance-interval-minutes:10}")
+    private long maintenanceIntervalMinutes;
+
+    @Value("${query.history.segment-max-age-hours:24}")
+    private long segmentMaxAgeHours;
+
+    @Value("${query.history.max-scan-entries:100000}")
+    private int maxScanEntries;
+
+    private BlockingQueue<PendingEntry> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+    private volatile StoreState state;
+
+    private final AtomicLong droppedEntries = new AtomicLong();
+    private long nextSeq = 1;
+    private long lastTimestamp;
+    private long lastMaintenance = System.currentTimeMillis();
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(64 * 1024);
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Files.createDirectories(Path.of(directory));
+        try (Stream<Path> leftovers = Files.list(Path.of(directory))) {
+            // Output of an interrupted compaction; the source segments are still intact
+            for (Path path : leftovers.filter(p -> p.toString().endsWith(COMPACT_SUFFIX)).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        state = recover();
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+
+        writerThread = new Thread(this::writeLoop, "query-history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled || writerThread == null) {
+            return;
+        }
+
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Enqueues a history entry without blocking. When the writer falls behind and the queue is
+     * full the entry is dropped, since history must never slow down the request path.
+     */
+    public void record(
+        String connectionId,
+        String kind,
+        String naturalLanguageQuery,
+        String sql,
+        String status,
+        Long executionTimeMs,
+        Integer rowCount,
+        String name) {
+
+        if (!enabled || connectionId == null) {
+            return;
+        }
+
+        PendingEntry entry = new PendingEntry(
+            System.currentTimeMillis(), connectionId, kind,
+            truncate(naturalLanguageQuery), truncate(sql), status,
+            executionTimeMs != null ? executionTimeMs : -1,
+            rowCount != null ? rowCount : -1,
+            truncate(name)
+        );
+
+        if (!queue.offer(entry)) {
+            droppedEntries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns entries for a connection, newest first.
+     *
+     * @param from   inclusive lower time bound, or null
+     * @param to     inclusive upper time bound, or null
+     * @param prefix case-insensitive prefix matched against the SQL or the natural-language text, or null
+     * @param kind   entry kind filter (GENERATE, EXECUTE, SAVED, EXPORT), or null
+     * @return a page with {@code hasMore} also set when the scan stopped at {@code max-scan-entries}
+     *         before filling it; a narrower time range or a longer prefix reaches further back
+     */
+    public QueryDto.QueryHistoryPage query(
+        String connectionId,
+        LocalDateTime from,
+        LocalDateTime to,
+        String prefix,
+        String kind,
+        int offset,
+        int limit) {
+
+        StoreState current = state;
+        if (!enabled || current == null) {
+            return new QueryDto.QueryHistoryPage(Collections.emptyList(), offset, limit, false);
+        }
+
+        ConnectionIndex index = current.indexes().get(connectionId);
+        if (index == null) {
+            return new QueryDto.QueryHistoryPage(Collections.emptyList(), offset, limit, false);
+        }
+
+        IndexView view = index.view;
+        long fromMillis = from != null ? toEpochMillis(from) : Long.MIN_VALUE;
+        long toMillis = to != null ? toEpochMillis(to) : Long.MAX_VALUE;
+        String normalizedPrefix = prefix != null && !prefix.isBlank() ? prefix.trim().toLowerCase() : null;
+
+        // A prefix at least as long as the key only visits entries whose text starts with its key
+        PostingsView postings = null;
+        if (normalizedPrefix != null && normalizedPrefix.length() >= PREFIX_KEY_LENGTH) {
+            postings = index.postings(normalizedPrefix.substring(0, PREFIX_KEY_LENGTH));
+            if (postings == null) {
+                return new QueryDto.QueryHistoryPage(Collections.emptyList(), offset, limit, false);
+            }
+        }
+
+        List<QueryDto.QueryHistoryEntry> entries = new ArrayList<>();
+        int skipped = 0;
+        int scanned = 0;
+        boolean hasMore = false;
+
+        int end = upperBound(view, toMillis);
+        int cursor = postings != null ? postings.lowerThan(end) : end;
+        while (--cursor >= 0) {
+            int i = postings != null ? postings.ordinals()[cursor] : cursor;
+            if (view.timestamps()[i] < fromMillis) {
+                break;
+            }
+            if (++scanned > maxScanEntries) {
+                hasMore = true;
+                break;
+            }
+
+            QueryDto.QueryHistoryEntry entry = readEntry(current, view.positions()[i]);
+            if (entry == null || !matches(entry, normalizedPrefix, kind)) {
+                continue;
+            }
+
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            if (entries.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            entries.add(entry);
+        }
+
+        return new QueryDto.QueryHistoryPage(entries, offset, limit, hasMore);
+    }
+
+    public long getDroppedEntries() {
+        return droppedEntries.get();
+    }
+
+    // Writer thread
+
+    private void writeLoop() {
+        List<PendingEntry> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEntry first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    appendBatch(batch);
+                    batch.clear();
+                }
+
+                if (System.currentTimeMillis() - lastMaintenance > TimeUnit.MINUTES.toMillis(maintenanceIntervalMinutes)) {
+                    lastMaintenance = System.currentTimeMillis();
+                    runMaintenance();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Query history write failed, {} entries lost: {}", batch.size(), e.getMessage());
+                batch.clear();
+            }
+        }
+
+        Segment active = activeSegment(state);
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    private void appendBatch(List<PendingEntry> batch) throws IOException {
+        StoreState current = state;
+
+        for (PendingEntry entry : batch) {
+            // Timestamps are kept monotonic within the log so index lookups can binary search
+            long timestamp = Math.max(entry.timestamp(), lastTimestamp);
+            lastTimestamp = timestamp;
+
+            int length = encode(nextSeq, timestamp, entry);
+            Segment active = activeSegment(current);
+            if (active == null || active.writePosition + RECORD_HEADER + length > active.buffer.capacity()
+                || isAged(active, timestamp)) {
+                active = rollSegment(current, nextSeq, length);
+            }
+
+            int position = active.writePosition;
+            active.buffer.put(position + RECORD_HEADER, encodeBuffer.array(), 0, length);
+            active.buffer.putInt(position + 4, crc(encodeBuffer.array(), length));
+            active.buffer.putInt(position, length);
+            active.writePosition = position + RECORD_HEADER + length;
+            active.observe(timestamp);
+
+            current.indexes()
+                .computeIfAbsent(entry.connectionId(), id -> new ConnectionIndex())
+                .append(timestamp, position(current.segments().size() - 1, position),
+                    entry.sql(), entry.naturalLanguageQuery());
+            nextSeq++;
+        }
+
+        // Group commit: one flush for the whole batch
+        if (fsync) {
+            activeSegment(current).buffer.force();
+        }
+    }
+
+    private Segment rollSegment(StoreState current, long baseSeq, int recordLength) throws IOException {
+        Segment previous = activeSegment(current);
+        if (previous != null) {
+            current.segments().set(current.segments().size() - 1, seal(previous));
+        }
+
+        int size = Math.max(segmentSizeMb * 1024 * 1024, RECORD_HEADER + recordLength);
+        Segment segment = Segment.create(segmentPath(baseSeq, SEGMENT_SUFFIX), baseSeq, size);
+        current.segments().add(segment);
+        return segment;
+    }
+
+    /** Whether the segment's oldest record is past the roll age; an empty segment never is. */
+    private boolean isAged(Segment segment, long now) {
+        return segment.writePosition > 0 && now - segment.minTimestamp >= TimeUnit.HOURS.toMillis(segmentMaxAgeHours);
+    }
+
+    private Segment seal(Segment segment) throws IOException {
+        segment.buffer.force();
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.truncate(segment.writePosition);
+        }
+        return Segment.openReadOnly(segment.path, segment.baseSeq, segment.writePosition,
+            segment.minTimestamp, segment.maxTimestamp);
+    }
+
+    // Retention and compaction
+
+    private void runMaintenance() throws IOException {
+        StoreState current = state;
+        List<Segment> segments = current.segments();
+
+        // Seal an aged active segment even without new writes, so retention can retire it
+        Segment active = activeSegment(current);
+        if (active != null && isAged(active, System.currentTimeMillis())) {
+            segments.set(segments.size() - 1, seal(active));
+            active = null;
+        }
+        List<Segment> sealed = active != null ? segments.subList(0, segments.size() - 1) : segments;
+        if (sealed.isEmpty()) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        int undersizedLimit = segmentSizeMb * 1024 * 512;
+
+        List<Segment> expired = new ArrayList<>();
+        List<Segment> retained = new ArrayList<>();
+        List<Segment> run = new ArrayList<>();
+        boolean compacted = false;
+
+        // Only adjacent undersized segments (left behind by restarts) are merged, so append order is preserved
+        for (Segment segment : sealed) {
+            if (segment.maxTimestamp < cutoff) {
+                expired.add(segment);
+            } else if (segment.writePosition < undersizedLimit) {
+                run.add(segment);
+            } else {
+                compacted |= flushRun(run, retained, expired, cutoff);
+                retained.add(segment);
+            }
+        }
+        compacted |= flushRun(run, retained, expired, cutoff);
+
+        if (expired.isEmpty() && !compacted) {
+            return;
+        }
+
+        List<Segment> replaced = new ArrayList<>(retained);
+        if (active != null) {
+            replaced.add(active);
+        }
+        state = rebuildState(replaced);
+
+        Set<Path> kept = new HashSet<>();
+        replaced.forEach(segment -> kept.add(segment.path));
+        for (Segment segment : expired) {
+            if (!kept.contains(segment.path)) {
+                Files.deleteIfExists(segment.path);
+            }
+        }
+
+        log.debug("Query history maintenance: {} segments retired, {} segments live", expired.size(), replaced.size());
+    }
+
+    private boolean flushRun(List<Segment> run, List<Segment> retained, List<Segment> retired, long cutoff)
+        throws IOException {
+
+        boolean merged = run.size() >= 2;
+        if (merged) {
+            retained.addAll(compact(run, cutoff));
+            retired.addAll(run);
+        } else {
+            retained.addAll(run);
+        }
+        run.clear();
+        return merged;
+    }
+
+    /**
+     * Copies the live records of the given adjacent sealed segments into dense segments of at most the
+     * configured size. Outputs are written under a temporary suffix and renamed into place only
+     * once complete; recovery skips records whose sequence number was already seen, so a crash
+     * between renames can't duplicate history.
+     */
+    private List<Segment> compact(List<Segment> sealed, long cutoff) throws IOException {
+        List<Segment> outputs = new ArrayList<>();
+        Segment output = null;
+        int maxSize = segmentSizeMb * 1024 * 1024;
+
+        for (Segment source : sealed) {
+            int position = 0;
+            while (position + RECORD_HEADER <= source.writePosition) {
+                int length = source.buffer.getInt(position);
+                if (length <= 0) break;
+
+                int recordStart = position + RECORD_HEADER;
+                long seq = source.buffer.getLong(recordStart);
+                long timestamp = source.buffer.getLong(recordStart + 8);
+                position = recordStart + length;
+
+                if (timestamp < cutoff) {
+                    continue;
+                }
+
+                if (output == null || output.writePosition + RECORD_HEADER + length > output.buffer.capacity()) {
+                    if (output != null) {
+                        outputs.add(seal(output));
+                    }
+                    output = Segment.create(segmentPath(seq, COMPACT_SUFFIX), seq,
+                        Math.max(maxSize, RECORD_HEADER + length));
+                }
+
+                byte[] record = new byte[RECORD_HEADER + length];
+                source.buffer.get(recordStart - RECORD_HEADER, record);
+                output.buffer.put(output.writePosition, record);
+                output.writePosition += record.length;
+                output.observe(timestamp);
+            }
+        }
+
+        if (output != null) {
+            outputs.add(seal(output));
+        }
+
+        List<Segment> renamed = new ArrayList<>();
+        for (Segment segment : outputs) {
+            Path target = segmentPath(segment.baseSeq, SEGMENT_SUFFIX);
+            Files.move(segment.path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            renamed.add(Segment.openReadOnly(target, segment.baseSeq, segment.writePosition,
+                segment.minTimestamp, segment.maxTimestamp));
+        }
+        return renamed;
+    }
+
+    // Recovery and indexing
+
+    private StoreState recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(Path.of(directory))) {
+            files = paths.filter(p -> p.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            long baseSeq = Long.parseLong(path.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            boolean last = i == files.size() - 1;
+            // Only the newest segment can still have room; older ones were sealed (truncated) on roll
+            segments.add(last ? Segment.openWritable(path, baseSeq) : Segment.openReadOnly(path, baseSeq, -1, 0, 0));
+        }
+
+        StoreState recovered = rebuildState(segments);
+        for (Segment segment : recovered.segments()) {
+            lastTimestamp = Math.max(lastTimestamp, segment.maxTimestamp);
+        }
+        return recovered;
+    }
+
+    /**
+     * Scans every segment to rebuild the per-connection indexes. Records with a sequence number
+     * at or below the highest one already seen are duplicates left by an interrupted compaction.
+     */
+    private StoreState rebuildState(List<Segment> segments) {
+        Map<String, ConnectionIndex> indexes = new ConcurrentHashMap<>();
+        long maxSeq = 0;
+
+        for (int ordinal = 0; ordinal < segments.size(); ordinal++) {
+            Segment segment = segments.get(ordinal);
+            ByteBuffer buffer = segment.buffer;
+            int position = 0;
+            long minTimestamp = Long.MAX_VALUE;
+            long maxTimestamp = Long.MIN_VALUE;
+
+            while (position + RECORD_HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_HEADER + length > buffer.capacity()) break;
+
+                byte[] payload = new byte[length];
+                buffer.get(position + RECORD_HEADER, payload);
+                if (crc(payload, length) != buffer.getInt(position + 4)) break;
+
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                long seq = record.getLong();
+                long timestamp = record.getLong();
+                record.get(); // kind
+                String connectionId = readString(record);
+                String naturalLanguageQuery = readString(record);
+                String sql = readString(record);
+
+                if (seq > maxSeq) {
+                    maxSeq = seq;
+                    indexes.computeIfAbsent(connectionId, id -> new ConnectionIndex())
+                        .append(timestamp, position(ordinal, position), sql, naturalLanguageQuery);
+                    minTimestamp = Math.min(minTimestamp, timestamp);
+                    maxTimestamp = Math.max(maxTimestamp, timestamp);
+                }
+                position += RECORD_HEADER + length;
+            }
+
+            segment.writePosition = position;
+            segment.minTimestamp = minTimestamp;
+            segment.maxTimestamp = maxTimestamp;
+        }
+
+        nextSeq = Math.max(nextSeq, maxSeq + 1);
+        return new StoreState(new CopyOnWriteArrayList<>(segments), indexes);
+    }
+
+    private Segment activeSegment(StoreState current) {
+        List<Segment> segments = current.segments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        Segment last = segments.get(segments.size() - 1);
+        return last.writable ? last : null;
+    }
+
+    // Encoding
+
+    private int encode(long seq, long timestamp, PendingEntry entry) {
+        while (true) {
+            try {
+                encodeBuffer.clear();
+                encodeBuffer.putLong(seq);
+                encodeBuffer.putLong(timestamp);
+                encodeBuffer.put(kindCode(entry.kind()));
+                writeString(encodeBuffer, entry.connectionId());
+                writeString(encodeBuffer, entry.naturalLanguageQuery());
+                writeString(encodeBuffer, entry.sql());
+                writeString(encodeBuffer, entry.status());
+                encodeBuffer.putLong(entry.executionTimeMs());
+                encodeBuffer.putInt(entry.rowCount());
+                writeString(encodeBuffer, entry.name());
+                return encodeBuffer.position();
+            } catch (java.nio.BufferOverflowException e) {
+                encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+            }
+        }
+    }
+
+    private QueryDto.QueryHistoryEntry readEntry(StoreState current, long position) {
+        int ordinal = (int) (position >>> 32);
+        int offset = (int) position;
+        if (ordinal >= current.segments().size()) {
+            return null;
+        }
+
+        ByteBuffer buffer = current.segments().get(ordinal).buffer;
+        int length = buffer.getInt(offset);
+        byte[] payload = new byte[length];
+        buffer.get(offset + RECORD_HEADER, payload);
+
+        ByteBuffer record = ByteBuffer.wrap(payload);
+        long seq = record.getLong();
+        long timestamp = record.getLong();
+        String kind = kindName(record.get());
+        String connectionId = readString(record);
+        String naturalLanguageQuery = readString(record);
+        String sql = readString(record);
+        String status = readString(record);
+        long executionTimeMs = record.getLong();
+        int rowCount = record.getInt();
+        String name = readString(record);
+
+        return new QueryDto.QueryHistoryEntry(
+            seq,
+            connectionId,
+            kind,
+            naturalLanguageQuery,
+            sql,
+            status,
+            executionTimeMs >= 0 ? executionTimeMs : null,
+            rowCount >= 0 ? rowCount : null,
+            name,
+            LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
+        );
+    }
+
+    private boolean matches(QueryDto.QueryHistoryEntry entry, String prefix, String kind) {
+        if (kind != null && !kind.equalsIgnoreCase(entry.kind())) {
+            return false;
+        }
+        if (prefix == null) {
+            return true;
+        }
+        return startsWithIgnoreCase(entry.sql(), prefix) || startsWithIgnoreCase(entry.naturalLanguageQuery(), prefix);
+    }
+
+    /** Postings key of a text: its first characters once trimmed and lowercased, or null if too short. */
+    private static String prefixKey(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.length() >= PREFIX_KEY_LENGTH
+            ? trimmed.substring(0, PREFIX_KEY_LENGTH).toLowerCase()
+            : null;
+    }
+
+    private boolean startsWithIgnoreCase(String value, String prefix) {
+        return value != null && value.trim().regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    private int upperBound(IndexView view, long toMillis) {
+        int low = 0;
+        int high = view.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (view.timestamps()[mid] <= toMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static long position(int ordinal, int offset) {
+        return ((long) ordinal << 32) | (offset & 0xffffffffL);
+    }
+
+    private static byte kindCode(String kind) {
+        return switch (kind) {
+            case "GENERATE" -> 1;
+            case "EXECUTE" -> 2;
+            case "SAVED" -> 3;
+            case "EXPORT" -> 4;
+            default -> 0;
+        };
+    }
+
+    private static String kindName(byte code) {
+        return switch (code) {
+            case 1 -> "GENERATE";
+            case 2 -> "EXECUTE";
+            case 3 -> "SAVED";
+            case 4 -> "EXPORT";
+            default -> "OTHER";
+        };
+    }
+
+    private static String truncate(String value) {
+        return value != null && value.length() > MAX_TEXT_LENGTH ? value.substring(0, MAX_TEXT_LENGTH) : value;
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private Path segmentPath(long baseSeq, String suffix) {
+        return Path.of(directory, String.format("%020d%s", baseSeq, suffix));
+    }
+
+    private record PendingEntry(
+        long timestamp,
+        String connectionId,
+        String kind,
+        String naturalLanguageQuery,
+        String sql,
+        String status,
+        long executionTimeMs,
+        int rowCount,
+        String name
+    ) {}
+
+    private record StoreState(List<Segment> segments, Map<String, ConnectionIndex> indexes) {}
+
+    private record IndexView(long[] timestamps, long[] positions, int size) {}
+
+    /** Ordinals into the {@link IndexView} arrays, ascending; like the view, never modified below its size. */
+    private record PostingsView(int[] ordinals, int size) {
+
+        /** Number of ordinals below {@code end}. */
+        int lowerThan(int end) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ordinals[mid] < end) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Append-order index for one connection. Only the writer thread appends; readers take the
+     * current {@link IndexView}, whose arrays are never modified below its size, and the
+     * prefix postings the same way.
+     */
+    private static final class ConnectionIndex {
+
+        private volatile IndexView view = new IndexView(new long[16], new long[16], 0);
+        private final Map<String, PostingsView> prefixes = new ConcurrentHashMap<>();
+
+        PostingsView postings(String key) {
+            return prefixes.get(key);
+        }
+
+        void append(long timestamp, long position, String sql, String naturalLanguageQuery) {
+            int ordinal = view.size();
+            appendPosition(timestamp, position);
+
+            String sqlKey = prefixKey(sql);
+            String textKey = prefixKey(naturalLanguageQuery);
+            if (sqlKey != null) {
+                appendPosting(sqlKey, ordinal);
+            }
+            if (textKey != null && !textKey.equals(sqlKey)) {
+                appendPosting(textKey, ordinal);
+            }
+        }
+
+        private void appendPosting(String key, int ordinal) {
+            PostingsView current = prefixes.getOrDefault(key, new PostingsView(new int[4], 0));
+            int[] ordinals = current.ordinals();
+            if (current.size() == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, ordinals.length * 2);
+            }
+            ordinals[current.size()] = ordinal;
+            prefixes.put(key, new PostingsView(ordinals, current.size() + 1));
+        }
+
+        private void appendPosition(long timestamp, long position) {
+            IndexView current = view;
+            long[] timestamps = current.timestamps();
+            long[] positions = current.positions();
+            if (current.size() == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            timestamps[current.size()] = timestamp;
+            positions[current.size()] = position;
+            view = new IndexView(timestamps, positions, current.size() + 1);
+        }
+    }
+
+    private static final class Segment {
+
+        final Path path;
+        final long baseSeq;
+        final MappedByteBuffer buffer;
+        final boolean writable;
+        int writePosition;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+
+        private Segment(Path path, long baseSeq, MappedByteBuffer buffer, boolean writable) {
+            this.path = path;
+            this.baseSeq = baseSeq;
+            this.buffer = buffer;
+            this.writable = writable;
+        }
+
+        static Segment create(Path path, long baseSeq, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(path, baseSeq, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), true);
+            }
+        }
+
+        static Segment openWritable(Path path, long baseSeq) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(path, baseSeq, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()), true);
+            }
+        }
+
+        static Segment openReadOnly(Path path, long baseSeq, int size, long minTimestamp, long maxTimestamp)
+            throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long length = size >= 0 ? size : channel.size();
+                Segment segment = new Segment(path, baseSeq, channel.map(FileChannel.MapMode.READ_ONLY, 0, length), false);
+                segment.writePosition = (int) length;
+                segment.minTimestamp = minTimestamp;
+                segment.maxTimestamp = maxTimestamp;
+                return segment;
+            }
+        }
+
+        void observe(long timestamp) {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+    }
+}
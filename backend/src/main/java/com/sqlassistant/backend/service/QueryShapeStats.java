@@ -0,0 +1,201 @@
+package com.sqlassistant.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-shape execution statistics, keyed by {@link QueryFingerprinter} fingerprint: executions,
+ * errors, total and max time, rows returned and a latency histogram. Counters are
+ * {@link LongAdder}s, which stripe their cells across threads, so concurrent executions of the
+ * same hot query never contend on a lock or a single CAS word.
+ *
+ * At most {@code query.stats.max-shapes} shapes are tracked; executions of further new shapes are
+ * only counted as untracked until the stats are reset.
+ */
+@Service
+public class QueryShapeStats {
+
+    /** Upper bounds (inclusive, ms) of the histogram buckets; the last bucket is open-ended. */
+    private static final long[] BUCKET_BOUNDS_MS = {
+        1, 2, 5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, Long.MAX_VALUE
+    };
+
+    public static final List<String> ORDERINGS = List.of("total", "mean", "max", "p99", "count", "rows");
+
+    private static final class Shape {
+        final String fingerprint;
+        final String normalizedSql;
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalMs = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAccumulator maxMs = new LongAccumulator(Math::max, 0);
+        final LongAdder[] histogram = new LongAdder[BUCKET_BOUNDS_MS.length];
+        volatile long lastSeenMillis;
+
+        Shape(QueryFingerprinter.Fingerprint fingerprint) {
+            this.fingerprint = fingerprint.id();
+            this.normalizedSql = fingerprint.normalizedSql();
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+    }
+
+    /** Point-in-time copy of a shape's counters, so ordering and output agree. */
+    private record Snapshot(Shape shape, long count, long errors, long totalMs, long maxMs, long rows, long[] buckets) {
+
+        double meanMs() {
+            return count == 0 ? 0 : (double) totalMs / count;
+        }
+
+        /** Upper bound of the bucket holding the quantile, capped at the observed max. */
+        long percentileMs(double quantile) {
+            long total = Arrays.stream(buckets).sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MS[i], maxMs);
+                }
+            }
+            return maxMs;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] > 0) {
+                    histogram.put(BUCKET_BOUNDS_MS[i] == Long.MAX_VALUE ? "inf" : "le" + BUCKET_BOUNDS_MS[i], buckets[i]);
+                }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("fingerprint", shape.fingerprint);
+            result.put("normalizedSql", shape.normalizedSql);
+            result.put("count", count);
+            result.put("errors", errors);
+            result.put("totalMs", totalMs);
+            result.put("meanMs", Math.round(meanMs() * 100) / 100.0);
+            result.put("maxMs", maxMs);
+            result.put("p50Ms", percentileMs(0.5));
+            result.put("p95Ms", percentileMs(0.95));
+            result.put("p99Ms", percentileMs(0.99));
+            result.put("rows", rows);
+            result.put("histogramMs", histogram);
+            result.put("lastSeen", Instant.ofEpochMilli(shape.lastSeenMillis).toString());
+            return result;
+        }
+    }
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final LongAdder untracked = new LongAdder();
+    private final QueryFingerprinter fingerprinter;
+
+    @Value("${query.stats.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.stats.max-shapes:5000}")
+    private int maxShapes;
+
+    public QueryShapeStats(QueryFingerprinter fingerprinter) {
+        this.fingerprinter = fingerprinter;
+    }
+
+    /**
+     * Records one execution of {@code sql}. Failed executions count towards time and errors but
+     * not rows.
+     */
+    public void record(String sql, long elapsedMs, long rows, boolean failed) {
+        if (!enabled || sql == null || sql.isBlank()) {
+            return;
+        }
+
+        QueryFingerprinter.Fingerprint fingerprint = fingerprinter.fingerprint(sql);
+        Shape shape = shapes.get(fingerprint.id());
+        if (shape == null) {
+            if (shapes.size() >= maxShapes) {
+                untracked.increment();
+                return;
+            }
+            shape = shapes.computeIfAbsent(fingerprint.id(), id -> new Shape(fingerprint));
+        }
+
+        long elapsed = Math.max(elapsedMs, 0);
+        shape.count.increment();
+        shape.totalMs.add(elapsed);
+        shape.maxMs.accumulate(elapsed);
+        shape.histogram[bucketFor(elapsed)].increment();
+        if (failed) {
+            shape.errors.increment();
+        } else {
+            shape.rows.add(rows);
+        }
+        shape.lastSeenMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * The {@code limit} slowest shapes by {@code orderBy} (one of {@link #ORDERINGS}), slowest first.
+     */
+    public List<Map<String, Object>> topShapes(int limit, String orderBy) {
+        Comparator<Snapshot> comparator = switch (orderBy) {
+            case "mean" -> Comparator.comparingDouble(Snapshot::meanMs);
+            case "max" -> Comparator.comparingLong(Snapshot::maxMs);
+            case "p99" -> Comparator.comparingLong(snapshot -> snapshot.percentileMs(0.99));
+            case "count" -> Comparator.comparingLong(Snapshot::count);
+            case "rows" -> Comparator.comparingLong(Snapshot::rows);
+            default -> Comparator.comparingLong(Snapshot::totalMs);
+        };
+
+        return shapes.values().stream()
+            .map(QueryShapeStats::snapshot)
+            .filter(snapshot -> snapshot.count() > 0)
+            .sorted(comparator.reversed())
+            .limit(limit)
+            .map(Snapshot::toMap)
+            .toList();
+    }
+
+    public int trackedShapes() {
+        return shapes.size();
+    }
+
+    public long untrackedExecutions() {
+        return untracked.sum();
+    }
+
+    public void reset() {
+        shapes.clear();
+        untracked.reset();
+    }
+
+    private static Snapshot snapshot(Shape shape) {
+        long[] buckets = new long[shape.histogram.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = shape.histogram[i].sum();
+        }
+        return new Snapshot(
+            shape, shape.count.sum(), shape.errors.sum(), shape.totalMs.sum(),
+            shape.maxMs.get(), shape.rows.sum(), buckets
+        );
+    }
+
+    private static int bucketFor(long elapsedMs) {
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (elapsedMs <= BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length - 1;
+    }
+}
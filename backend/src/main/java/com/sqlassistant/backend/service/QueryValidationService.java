@@ -1,13 +1,22 @@
 package com.sqlassistant.backend.service;
 
 import com.sqlassistant.backend.dto.QueryDto;
+import com.sqlassistant.backend.model.DatabaseSchema;
 import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.AllValue;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.NullValue;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.delete.Delete;
 import net.sf.jsqlparser.statement.drop.Drop;
 import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.Offset;
+import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SetOperationList;
 import net.sf.jsqlparser.statement.truncate.Truncate;
 import net.sf.jsqlparser.statement.update.Update;
 import org.springframework.stereotype.Service;
@@ -41,6 +50,15 @@ public class QueryValidationService {
     );
     
     public QueryDto.QueryValidationResponse validateQuery(String sql) {
+        return validateQuery(sql, null);
+    }
+    
+    /**
+     * With the connection's cached schema, performance suggestions for SELECTs come from the
+     * introspected indexes: unindexed filters and joins, and expressions that hide an indexed
+     * column. Without one, only the textual heuristics apply.
+     */
+    public QueryDto.QueryValidationResponse validateQuery(String sql, DatabaseSchema schema) {
         List<String> errors = new ArrayList<>();
         List<String> warnings = new ArrayList<>();
         List<String> suggestions = new ArrayList<>();
@@ -50,11 +68,16 @@ public class QueryValidationService {
             return new QueryDto.QueryValidationResponse(false, errors, warnings, suggestions, null);
         }
         
+        PipelineEvents.Validation event = new PipelineEvents.Validation();
+        event.begin();
+        
         String cleanedSql = cleanQuery(sql);
         
         // Basic syntax validation
+        Statement statement = null;
         try {
-            Statement statement = CCJSqlParserUtil.parse(cleanedSql);
+            statement = CCJSqlParserUtil.parse(cleanedSql);
+            event.parsed = true;
             validateStatementType(statement, errors, warnings);
             validateQueryComplexity(statement, warnings, suggestions);
             
@@ -67,11 +90,25 @@ public class QueryValidationService {
         validateDangerousOperations(cleanedSql, errors, warnings);
         
         // Performance suggestions
-        generatePerformanceSuggestions(cleanedSql, suggestions);
+        boolean indexAware = false;
+        if (schema != null && statement instanceof Select select) {
+            try {
+                suggestions.addAll(new IndexUsageAnalyzer(schema).analyze(select));
+                indexAware = true;
+            } catch (RuntimeException e) {
+                // Unusual AST shapes fall back to the textual checks
+            }
+        }
+        generatePerformanceSuggestions(cleanedSql, suggestions, indexAware);
         
         boolean isValid = errors.isEmpty();
         String sanitizedQuery = isValid ? sanitizeQuery(cleanedSql) : null;
         
+        event.sqlLength = sql.length();
+        event.valid = isValid;
+        event.errors = errors.size();
+        event.commit(PipelineEvents.current());
+        
         return new QueryDto.QueryValidationResponse(
             isValid, errors, warnings, suggestions, sanitizedQuery
         );
@@ -171,7 +208,11 @@ public class QueryValidationService {
         }
     }
     
-    private void generatePerformanceSuggestions(String sql, List<String> suggestions) {
+    /**
+     * @param indexAware whether index-aware suggestions were already made, which replace the
+     *                   function-in-WHERE and leading-wildcard guesses
+     */
+    private void generatePerformanceSuggestions(String sql, List<String> suggestions, boolean indexAware) {
         String upperSql = sql.toUpperCase();
         
         // Check for SELECT *
@@ -185,12 +226,12 @@ public class QueryValidationService {
         }
         
         // Check for functions in WHERE clause
-        if (upperSql.matches(".*WHERE.*\\w+\\([^)]*\\).*")) {
+        if (!indexAware && upperSql.matches(".*WHERE.*\\w+\\([^)]*\\).*")) {
             suggestions.add("Using functions in WHERE clause may prevent index usage");
         }
         
         // Check for LIKE with leading wildcard
-        if (upperSql.contains("LIKE '%") || upperSql.contains("LIKE \"'%")) {
+        if (!indexAware && (upperSql.contains("LIKE '%") || upperSql.contains("LIKE \"'%"))) {
             suggestions.add("LIKE patterns starting with wildcard (%) cannot use indexes efficiently");
         }
         
@@ -215,6 +256,85 @@ public class QueryValidationService {
         return sanitized;
     }
     
+    /**
+     * Pushes the effective row window into the SQL so the database can stop early and pick
+     * top-N plans, instead of computing the full result for the driver to discard.
+     *
+     * An existing literal LIMIT is kept when it is already smaller, and an existing OFFSET is
+     * combined with the requested one (paging applies to the query's own result). The rewrite is
+     * skipped, and the original SQL returned, when the window can't be merged without changing
+     * semantics: non-literal limits, FETCH/TOP clauses, SELECT INTO, or statements that don't parse.
+     * MySQL, PostgreSQL, H2 and SQLite all accept {@code LIMIT n OFFSET m}, so one form serves every dialect.
+     */
+    public String pushDownRowLimit(String sql, int maxRows, Integer offset) {
+        int requestedOffset = offset != null ? Math.max(offset, 0) : 0;
+        
+        try {
+            Statement statement = CCJSqlParserUtil.parse(cleanQuery(sql));
+            
+            Limit limit;
+            Offset existingOffset;
+            if (statement instanceof PlainSelect plainSelect) {
+                if (plainSelect.getFetch() != null || plainSelect.getTop() != null || plainSelect.getIntoTables() != null) {
+                    return sql;
+                }
+                limit = plainSelect.getLimit();
+                existingOffset = plainSelect.getOffset();
+            } else if (statement instanceof SetOperationList setOperation) {
+                if (setOperation.getFetch() != null) {
+                    return sql;
+                }
+                limit = setOperation.getLimit();
+                existingOffset = setOperation.getOffset();
+            } else {
+                return sql;
+            }
+            
+            // MySQL's "LIMIT offset, count" carries the offset inside the Limit node
+            Expression baseOffsetExpression = existingOffset != null ? existingOffset.getOffset()
+                : limit != null ? limit.getOffset() : null;
+            if (baseOffsetExpression != null && !(baseOffsetExpression instanceof LongValue)) {
+                return sql;
+            }
+            long baseOffset = baseOffsetExpression != null ? ((LongValue) baseOffsetExpression).getValue() : 0;
+            
+            long effectiveLimit = maxRows;
+            // LIMIT ALL and LIMIT NULL put no bound on the rows
+            if (limit != null && !(limit.getRowCount() instanceof AllValue) && !(limit.getRowCount() instanceof NullValue)) {
+                if (!(limit.getRowCount() instanceof LongValue rowCount)) {
+                    return sql;
+                }
+                long remaining = Math.max(rowCount.getValue() - requestedOffset, 0);
+                if (remaining <= maxRows && requestedOffset == 0) {
+                    return sql; // already tighter than the requested window
+                }
+                effectiveLimit = Math.min(remaining, maxRows);
+            }
+            
+            Limit newLimit = new Limit().withRowCount(new LongValue(effectiveLimit));
+            long totalOffset = baseOffset + requestedOffset;
+            Offset newOffset = null;
+            if (totalOffset > 0) {
+                newOffset = new Offset();
+                newOffset.setOffset(new LongValue(totalOffset));
+            }
+            
+            if (statement instanceof PlainSelect plainSelect) {
+                plainSelect.setLimit(newLimit);
+                plainSelect.setOffset(newOffset);
+            } else {
+                SetOperationList setOperation = (SetOperationList) statement;
+                setOperation.setLimit(newLimit);
+                setOperation.setOffset(newOffset);
+            }
+            
+            return statement.toString();
+            
+        } catch (JSQLParserException | RuntimeException e) {
+            return sql;
+        }
+    }
+    
     public boolean isReadOnlyQuery(String sql) {
         try {
             Statement statement = CCJSqlParserUtil.parse(sql);
@@ -0,0 +1,203 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.r2dbc.spi.ConnectionFactoryOptions.*;
+
+/**
+ * Non-blocking execution engine backed by R2DBC drivers.
+ *
+ * Rows are emitted as a backpressured {@link Flux}: the driver only fetches the next batch
+ * when downstream demand arrives, so a slow consumer never forces the full result into memory.
+ * SQLite has no R2DBC driver and is served by the JDBC path in {@link DatabaseService}.
+ *
+ * Each stream first applies the execution profile's statement timeout and read-only session,
+ * as the JDBC path does. Pools are keyed by connection id and closed when the registry drops or
+ * re-registers the connection ({@link #evict}), or after {@code idle-close-minutes} unused.
+ */
+@Service
+public class ReactiveQueryEngine {
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    @Value("${query.execution.reactive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.execution.reactive.fetch-size:256}")
+    private int fetchSize;
+
+    @Value("${query.execution.max-connections:10}")
+    private int maxConnections;
+
+    @Value("${query.execution.reactive.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${query.execution.reactive.idle-close-minutes:30}")
+    private long idleCloseMinutes;
+
+    public boolean supports(DatabaseConnectionDto connectionDto) {
+        if (!enabled || connectionDto.type() == DatabaseConnectionDto.DatabaseType.SQLITE) {
+            return false;
+        }
+        // A raw JDBC connection string can't be translated to R2DBC options reliably
+        String connectionString = connectionDto.connectionString();
+        return connectionString == null || connectionString.isBlank() || connectionString.startsWith("r2dbc:");
+    }
+
+    public Flux<Map<String, Object>> streamQuery(
+        String connectionId, DatabaseConnectionDto connectionDto, ExecutionProfiles.Profile profile, String sql, int maxRows) {
+
+        Pool pool = pools.get(connectionId);
+        if (pool == null) {
+            closeIdle();
+            pool = pools.computeIfAbsent(connectionId, id -> new Pool(createPool(connectionDto)));
+        }
+        pool.lastUsedNanos = System.nanoTime();
+
+        return Flux.usingWhen(
+                pool.pool.create(),
+                connection -> applySession(connection, profile)
+                    .thenMany(Flux.from(connection.createStatement(sql).fetchSize(fetchSize).execute()))
+                    .concatMap(result -> result.map((row, metadata) -> toRow(row, metadata))),
+                Connection::close)
+            .take(maxRows)
+            .limitRate(fetchSize);
+    }
+
+    /** Closes the pool of a connection that was removed or re-registered (e.g. a rotated password). */
+    public void evict(String connectionId) {
+        Pool pool = pools.remove(connectionId);
+        if (pool != null) {
+            pool.pool.dispose();
+        }
+    }
+
+    /**
+     * Statement timeout and read-only session from the execution profile. Pooled connections
+     * keep session state, so the read-only flag is set both ways rather than only when on.
+     */
+    private Mono<Void> applySession(Connection connection, ExecutionProfiles.Profile profile) {
+        Mono<Void> timeout = Mono.from(connection.setStatementTimeout(Duration.ofSeconds(profile.queryTimeoutSeconds())));
+        String access = profile.readOnly() ? "READ ONLY" : "READ WRITE";
+        String readOnly = switch (profile.type()) {
+            case POSTGRESQL -> "SET SESSION CHARACTERISTICS AS TRANSACTION " + access;
+            case MYSQL -> "SET SESSION TRANSACTION " + access;
+            // H2 has no read-only session; on the JDBC path its read-only flag is only a hint too
+            default -> null;
+        };
+        if (readOnly == null) {
+            return timeout;
+        }
+        return timeout.then(Flux.from(connection.createStatement(readOnly).execute())
+            .flatMap(Result::getRowsUpdated)
+            .then());
+    }
+
+    private ConnectionPool createPool(DatabaseConnectionDto connectionDto) {
+        ConnectionFactory connectionFactory = ConnectionFactories.get(buildOptions(connectionDto));
+
+        // Connections open on demand and close when idle; the pool itself goes in closeIdle()
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+            .initialSize(0)
+            .maxSize(maxConnections)
+            .maxIdleTime(Duration.ofMillis(idleTimeoutMs))
+            .build());
+    }
+
+    /** Disposes pools nobody streamed from recently; checked when a new pool is created. */
+    private void closeIdle() {
+        long idleNanos = Duration.ofMinutes(idleCloseMinutes).toNanos();
+        long now = System.nanoTime();
+        pools.values().removeIf(pool -> {
+            boolean inUse = pool.pool.getMetrics().map(PoolMetrics::acquiredSize).orElse(0) > 0;
+            if (inUse || now - pool.lastUsedNanos < idleNanos) {
+                return false;
+            }
+            pool.pool.dispose();
+            return true;
+        });
+    }
+
+    private ConnectionFactoryOptions buildOptions(DatabaseConnectionDto connectionDto) {
+        String connectionString = connectionDto.connectionString();
+        if (connectionString != null && connectionString.startsWith("r2dbc:")) {
+            return ConnectionFactoryOptions.parse(connectionString);
+        }
+
+        ConnectionFactoryOptions.Builder builder = ConnectionFactoryOptions.builder();
+
+        switch (connectionDto.type()) {
+            case MYSQL, POSTGRESQL -> {
+                int port = connectionDto.port() != null ? connectionDto.port() : connectionDto.type().getDefaultPort();
+                builder.option(DRIVER, connectionDto.type() == DatabaseConnectionDto.DatabaseType.MYSQL ? "mysql" : "postgresql")
+                    .option(HOST, connectionDto.host())
+                    .option(PORT, port)
+                    .option(DATABASE, connectionDto.database());
+            }
+            case H2 -> {
+                // JDBC-style H2 names: "mem:demo", "file:/data/demo" or a plain file path
+                String database = connectionDto.database();
+                boolean inMemory = database.startsWith("mem:");
+                builder.option(DRIVER, "h2")
+                    .option(PROTOCOL, inMemory ? "mem" : "file")
+                    .option(DATABASE, database.replaceFirst("^(mem|file):", ""));
+            }
+            default -> throw new IllegalArgumentException("No R2DBC driver for " + connectionDto.type());
+        }
+
+        if (connectionDto.username() != null) {
+            builder.option(USER, connectionDto.username());
+        }
+        if (connectionDto.password() != null) {
+            builder.option(PASSWORD, connectionDto.password());
+        }
+
+        return builder.build();
+    }
+
+    private Map<String, Object> toRow(Row row, RowMetadata metadata) {
+        List<? extends ColumnMetadata> columns = metadata.getColumnMetadatas();
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            values.put(columns.get(i).getName(), row.get(i));
+        }
+        return values;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(pool -> pool.pool.dispose());
+        pools.clear();
+    }
+
+    private static final class Pool {
+        final ConnectionPool pool;
+        volatile long lastUsedNanos = System.nanoTime();
+
+        Pool(ConnectionPool pool) {
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.sqlassistant.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.arrow.adapter.jdbc.ArrowVectorIterator;
+import org.apache.arrow.adapter.jdbc.JdbcFieldInfo;
+import org.apache.arrow.adapter.jdbc.JdbcToArrow;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowConfig;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowConfigBuilder;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowUtils;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.*;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes full query results as CSV or Arrow IPC streams without materializing them: rows go
+ * straight from the {@link ResultSet} cursor into a fixed-size write buffer (CSV) or into
+ * bounded record batches (Arrow), so memory stays constant regardless of the row count.
+ *
+ * Exports can also be spooled to a local file through a {@link FileChannel} and downloaded
+ * later by id; spool files expire after the configured retention. Each connection runs at most
+ * {@code spool-max-per-connection} spools at once, every spool is registered as an in-flight
+ * operation that /query/cancel stops, and all spool files together stay within
+ * {@code spool-max-disk-mb}: space is reserved in chunks while writing, as for result snapshots.
+ */
+@Component
+public class ResultExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultExporter.class);
+
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final long RESERVE_CHUNK_BYTES = 1024 * 1024;
+    private static final String PART_SUFFIX = ".part";
+
+    public enum Format {
+        CSV("text/csv", ".csv"),
+        ARROW("application/vnd.apache.arrow.stream", ".arrows");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() { return contentType; }
+        public String getExtension() { return extension; }
+
+        public static Optional<Format> parse(String value) {
+            return Arrays.stream(values()).filter(format -> format.name().equalsIgnoreCase(value)).findFirst();
+        }
+    }
+
+    /** Produces the export into the given stream and returns the number of rows written. */
+    @FunctionalInterface
+    public interface ExportBody {
+        long writeTo(OutputStream out) throws SQLException, IOException;
+    }
+
+    /**
+     * @param requestId in-flight operation id; POST /query/cancel with it stops the export
+     * @param state     RUNNING, COMPLETED, FAILED or CANCELLED
+     */
+    public record SpoolStatus(
+        String exportId,
+        String requestId,
+        Format format,
+        boolean gzip,
+        String state,
+        long rows,
+        long bytes,
+        String error,
+        Instant createdAt
+    ) {}
+
+    /** The spool would exceed the connection's concurrent spool limit. */
+    public static class SpoolLimitException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        SpoolLimitException(int limit) {
+            super("The connection already has " + limit + " exports spooling; wait for one to finish or cancel it");
+        }
+    }
+
+    private final Map<String, SpoolStatus> spools = new ConcurrentHashMap<>();
+    /** Running spools per connection id. */
+    private final Map<String, Integer> runningSpools = new ConcurrentHashMap<>();
+    /** Bytes of spool files on disk plus the reservations of running spools. */
+    private final AtomicLong spoolBytes = new AtomicLong();
+    private final InFlightOperationRegistry operations;
+    private final BufferAllocator rootAllocator;
+
+    @Value("${query.export.arrow-batch-rows:4096}")
+    private int arrowBatchRows;
+
+    @Value("${query.export.spool-directory:./data/exports}")
+    private String spoolDirectory;
+
+    @Value("${query.export.spool-retention-hours:24}")
+    private long spoolRetentionHours;
+
+    @Value("${query.export.spool-max-per-connection:2}")
+    private int spoolMaxPerConnection;
+
+    @Value("${query.export.spool-max-disk-mb:4096}")
+    private long spoolMaxDiskMb;
+
+    public ResultExporter(InFlightOperationRegistry operations,
+                          @Value("${query.export.arrow-memory-limit-mb:256}") long arrowMemoryLimitMb) {
+        this.operations = operations;
+        this.rootAllocator = new RootAllocator(arrowMemoryLimitMb * 1024 * 1024);
+    }
+
+    /** Counts spool files left by the previous run against the disk budget, then purges expired ones. */
+    @PostConstruct
+    public void init() {
+        Path directory = Path.of(spoolDirectory);
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(path -> spoolBytes.addAndGet(sizeOf(path)));
+            } catch (IOException e) {
+                log.warn("Could not read export spool {}: {}", directory, e.getMessage());
+            }
+        }
+        purgeExpiredSpools();
+    }
+
+    @PreDestroy
+    public void close() {
+        rootAllocator.close();
+    }
+
+    public long write(ResultSet resultSet, Format format, OutputStream out) throws SQLException, IOException {
+        // Exports fetch and encode row by row, so this one event spans both
+        PipelineEvents.Serialization event = new PipelineEvents.Serialization();
+        event.begin();
+        long rows = switch (format) {
+            case CSV -> writeCsv(resultSet, out);
+            case ARROW -> writeArrow(resultSet, out);
+        };
+        event.format = format.name();
+        event.rows = rows;
+        event.columns = resultSet.getMetaData().getColumnCount();
+        event.commit(PipelineEvents.current());
+        return rows;
+    }
+
+    /**
+     * Streams an export to the client, gzip-compressed if requested.
+     */
+    public long stream(OutputStream out, boolean gzip, ExportBody body) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, WRITE_BUFFER_BYTES) : out;
+        try {
+            long rows = body.writeTo(target);
+            if (target instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+            target.flush();
+            return rows;
+        } catch (SQLException e) {
+            throw new IOException("Export failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Spooling
+
+    /**
+     * Runs the export in the background into a spool file; poll {@link #spoolStatus(String)}
+     * until the state is COMPLETED, then download {@link #spoolFile(SpoolStatus)}. The spool
+     * completes {@code operation} when it ends; cancelling the operation stops the query, and
+     * {@code body} should register its statement with it.
+     *
+     * @throws SpoolLimitException if the connection already runs the maximum number of spools
+     * @throws IOException         if the spool disk budget is exhausted
+     */
+    public SpoolStatus spool(String connectionId, InFlightOperationRegistry.Operation operation,
+                             Format format, boolean gzip, ExportBody body) throws IOException {
+        purgeExpiredSpools();
+
+        boolean[] admitted = new boolean[1];
+        runningSpools.compute(connectionId, (id, running) -> {
+            int count = running != null ? running : 0;
+            admitted[0] = count < spoolMaxPerConnection;
+            return admitted[0] ? count + 1 : running;
+        });
+        if (!admitted[0]) {
+            throw new SpoolLimitException(spoolMaxPerConnection);
+        }
+
+        long reserved;
+        try {
+            // Fail the request, rather than the background job, when the budget is already spent
+            reserved = reserve();
+        } catch (IOException e) {
+            releaseSlot(connectionId);
+            throw e;
+        }
+
+        String exportId = UUID.randomUUID().toString();
+        SpoolStatus running = new SpoolStatus(exportId, operation.requestId(), format, gzip, "RUNNING", 0, 0, null, Instant.now());
+        spools.put(exportId, running);
+
+        Mono.fromRunnable(() -> spools.put(exportId, writeSpool(running, operation, reserved, body)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .doFinally(signal -> {
+                releaseSlot(connectionId);
+                operations.complete(operation);
+            })
+            .subscribe();
+
+        return running;
+    }
+
+    public Optional<SpoolStatus> spoolStatus(String exportId) {
+        return Optional.ofNullable(spools.get(exportId));
+    }
+
+    public Path spoolFile(SpoolStatus status) {
+        return Path.of(spoolDirectory, status.exportId() + status.format().getExtension() + (status.gzip() ? ".gz" : ""));
+    }
+
+    private SpoolStatus writeSpool(SpoolStatus running, InFlightOperationRegistry.Operation operation,
+                                   long initialReservation, ExportBody body) {
+        Path file = spoolFile(running);
+        Path temp = file.resolveSibling(file.getFileName() + PART_SUFFIX);
+        BudgetedOutputStream budgeted = null;
+
+        try {
+            if (operation.isCancelled()) {
+                throw new IOException("Export was cancelled");
+            }
+            Files.createDirectories(file.getParent());
+
+            long rows;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 BudgetedOutputStream out = new BudgetedOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_BYTES), initialReservation)) {
+                budgeted = out;
+                rows = stream(out, running.gzip(), body);
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(file);
+            spoolBytes.addAndGet(size - budgeted.reserved);
+            return new SpoolStatus(
+                running.exportId(), running.requestId(), running.format(), running.gzip(), "COMPLETED",
+                rows, size, null, running.createdAt()
+            );
+
+        } catch (IOException | RuntimeException e) {
+            spoolBytes.addAndGet(-(budgeted != null ? budgeted.reserved : initialReservation));
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Left for the next purge
+            }
+            if (operation.isCancelled()) {
+                return new SpoolStatus(
+                    running.exportId(), running.requestId(), running.format(), running.gzip(), "CANCELLED",
+                    0, 0, null, running.createdAt()
+                );
+            }
+            log.warn("Spooled export {} failed: {}", running.exportId(), e.getMessage());
+            return new SpoolStatus(
+                running.exportId(), running.requestId(), running.format(), running.gzip(), "FAILED",
+                0, 0, e.getMessage(), running.createdAt()
+            );
+        }
+    }
+
+    private void releaseSlot(String connectionId) {
+        runningSpools.computeIfPresent(connectionId, (id, running) -> running > 1 ? running - 1 : null);
+    }
+
+    /** Reserves one more chunk of the spool disk budget, purging expired spools once if it's exhausted. */
+    private long reserve() throws IOException {
+        long budget = spoolMaxDiskMb * 1024 * 1024;
+        if (spoolBytes.addAndGet(RESERVE_CHUNK_BYTES) <= budget) {
+            return RESERVE_CHUNK_BYTES;
+        }
+        spoolBytes.addAndGet(-RESERVE_CHUNK_BYTES);
+
+        purgeExpiredSpools();
+        if (spoolBytes.addAndGet(RESERVE_CHUNK_BYTES) <= budget) {
+            return RESERVE_CHUNK_BYTES;
+        }
+        spoolBytes.addAndGet(-RESERVE_CHUNK_BYTES);
+        throw new IOException("Export spool disk budget of " + spoolMaxDiskMb + " MB exhausted");
+    }
+
+    private void purgeExpiredSpools() {
+        Instant cutoff = Instant.now().minus(spoolRetentionHours, ChronoUnit.HOURS);
+
+        spools.values().removeIf(status -> !"RUNNING".equals(status.state()) && status.createdAt().isBefore(cutoff));
+
+        Path directory = Path.of(spoolDirectory);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        // A running spool's file is accounted by its reservation until it completes
+        Set<Path> running = new HashSet<>();
+        spools.values().stream()
+            .filter(status -> "RUNNING".equals(status.state()))
+            .forEach(status -> {
+                Path file = spoolFile(status);
+                running.add(file);
+                running.add(file.resolveSibling(file.getFileName() + PART_SUFFIX));
+            });
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> !running.contains(path)).filter(path -> {
+                try {
+                    return Files.getLastModifiedTime(path).toInstant().isBefore(cutoff);
+                } catch (IOException e) {
+                    return false;
+                }
+            }).forEach(path -> {
+                try {
+                    long size = sizeOf(path);
+                    if (Files.deleteIfExists(path)) {
+                        spoolBytes.addAndGet(-size);
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not delete expired export {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not purge export spool {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // CSV
+
+    private long writeCsv(ResultSet resultSet, OutputStream out) throws SQLException, IOException {
+        // The writer flushes whenever its buffer fills, so rows leave in fixed-size batches
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_BYTES);
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        boolean[] binary = new boolean[columnCount + 1];
+
+        for (int i = 1; i <= columnCount; i++) {
+            int type = metaData.getColumnType(i);
+            binary[i] = type == Types.BINARY || type == Types.VARBINARY || type == Types.LONGVARBINARY || type == Types.BLOB;
+            if (i > 1) {
+                writer.write(',');
+            }
+            writeCsvField(writer, metaData.getColumnLabel(i));
+        }
+        writer.write("\r\n");
+
+        long rows = 0;
+        while (resultSet.next()) {
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                String value;
+                if (binary[i]) {
+                    byte[] bytes = resultSet.getBytes(i);
+                    value = bytes != null ? Base64.getEncoder().encodeToString(bytes) : null;
+                } else {
+                    value = resultSet.getString(i);
+                }
+                if (value != null) {
+                    writeCsvField(writer, value);
+                }
+            }
+            writer.write("\r\n");
+            rows++;
+        }
+
+        writer.flush();
+        return rows;
+    }
+
+    private void writeCsvField(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    // Arrow IPC
+
+    private long writeArrow(ResultSet resultSet, OutputStream out) throws SQLException, IOException {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+        try (BufferAllocator allocator = rootAllocator.newChildAllocator("export", 0, rootAllocator.getLimit())) {
+            JdbcToArrowConfig config = new JdbcToArrowConfigBuilder(allocator, utc)
+                .setTargetBatchSize(arrowBatchRows)
+                .setBigDecimalRoundingMode(RoundingMode.HALF_UP)
+                .setJdbcToArrowTypeConverter(field -> arrowType(field, utc))
+                .build();
+
+            WritableByteChannel channel = Channels.newChannel(out);
+            long rows = 0;
+
+            // Each iterator batch is moved into the writer's root, so at most two batches are alive at once
+            try (ArrowVectorIterator batches = JdbcToArrow.sqlToArrowVectorIterator(resultSet, config);
+                 VectorSchemaRoot writerRoot = VectorSchemaRoot.create(
+                     JdbcToArrowUtils.jdbcToArrowSchema(resultSet.getMetaData(), config), allocator)) {
+
+                ArrowStreamWriter writer = new ArrowStreamWriter(writerRoot, null, channel);
+                writer.start();
+
+                VectorLoader loader = new VectorLoader(writerRoot);
+                while (batches.hasNext()) {
+                    try (VectorSchemaRoot batch = batches.next();
+                         ArrowRecordBatch recordBatch = new VectorUnloader(batch).getRecordBatch()) {
+                        loader.load(recordBatch);
+                        writer.writeBatch();
+                        rows += batch.getRowCount();
+                    }
+                }
+
+                writer.end();
+            }
+
+            return rows;
+        }
+    }
+
+    /**
+     * Types the adapter can't map (JSON, UUID, arrays, unbounded numerics) are exported as text.
+     */
+    private ArrowType arrowType(JdbcFieldInfo field, Calendar calendar) {
+        try {
+            ArrowType type = JdbcToArrowUtils.getArrowTypeFromJdbcType(field, calendar);
+            if (type instanceof ArrowType.Decimal decimal && (decimal.getPrecision() < 1 || decimal.getPrecision() > 38)) {
+                return ArrowType.Utf8.INSTANCE;
+            }
+            return type != null ? type : ArrowType.Utf8.INSTANCE;
+        } catch (UnsupportedOperationException e) {
+            return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    /** Reserves disk budget ahead of the bytes written; fails the write once the budget is spent. */
+    private final class BudgetedOutputStream extends FilterOutputStream {
+
+        long written;
+        long reserved;
+
+        BudgetedOutputStream(OutputStream out, long reserved) {
+            super(out);
+            this.reserved = reserved;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureBudget(1);
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureBudget(length);
+            out.write(bytes, offset, length);
+            written += length;
+        }
+
+        private void ensureBudget(int length) throws IOException {
+            while (written + length > reserved) {
+                reserved += reserve();
+            }
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.sqlassistant.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Captures a query's full result once into a temp file so a large result can be paged through
+ * without re-running the query or holding a cursor open on the source database.
+ *
+ * Rows are stored in a compact binary format: a null bitmap per row, then each non-null cell
+ * encoded by its column kind (zig-zag varints for integers and timestamps, raw doubles,
+ * length-prefixed UTF-8 strings and bytes, tagged values for untyped columns). The finished file
+ * is memory-mapped read-only, and a sparse index of every {@value #INDEX_STRIDE}th row offset
+ * lets a page request seek close to its offset and decode only the rows it returns.
+ *
+ * Snapshots expire {@code ttl-minutes} after their last read. All snapshot files together stay
+ * under {@code max-disk-mb}: space is reserved in chunks while writing, and a capture that would
+ * exceed the budget fails after expired snapshots have been purged. Snapshots are not kept
+ * across restarts; leftover files are removed at startup.
+ */
+@Component
+public class ResultSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultSnapshotStore.class);
+
+    private static final int INDEX_STRIDE = 256;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final long RESERVE_CHUNK_BYTES = 1024 * 1024;
+    private static final String FILE_SUFFIX = ".rows";
+
+    /** How a column's cells are encoded; chosen once per column from the result set metadata. */
+    private enum Kind { LONG, DOUBLE, BOOLEAN, DECIMAL, TIMESTAMP, STRING, BYTES, TAGGED }
+
+    private static final byte TAG_LONG = 0;
+    private static final byte TAG_DOUBLE = 1;
+    private static final byte TAG_STRING = 2;
+    private static final byte TAG_BYTES = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_DECIMAL = 5;
+
+    public record Snapshot(
+        String snapshotId,
+        String connectionId,
+        List<String> columnNames,
+        List<String> columnTypes,
+        long rowCount,
+        boolean truncated,
+        long sizeBytes,
+        Instant createdAt
+    ) {}
+
+    public record Page(List<Map<String, Object>> rows, long offset, long rowCount, boolean hasMore) {}
+
+    private static final class Entry {
+        final Snapshot snapshot;
+        final Path file;
+        final Kind[] kinds;
+        final long[] index;
+        final MappedByteBuffer data;
+        volatile long lastAccessMillis = System.currentTimeMillis();
+
+        Entry(Snapshot snapshot, Path file, Kind[] kinds, long[] index, MappedByteBuffer data) {
+            this.snapshot = snapshot;
+            this.file = file;
+            this.kinds = kinds;
+            this.index = index;
+            this.data = data;
+        }
+    }
+
+    private final Map<String, Entry> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    @Value("${query.snapshot.directory:./data/result-snapshots}")
+    private String directory;
+
+    @Value("${query.snapshot.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Value("${query.snapshot.max-disk-mb:2048}")
+    private long maxDiskMb;
+
+    @Value("${query.snapshot.max-rows:5000000}")
+    private long maxRows;
+
+    @PostConstruct
+    public void init() {
+        Path root = Path.of(directory);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            files.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX))
+                .forEach(ResultSnapshotStore::deleteQuietly);
+        } catch (IOException e) {
+            log.warn("Could not clear result snapshots in {}: {}", root, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the whole result set (up to {@code max-rows}) into a new snapshot.
+     *
+     * @param dynamicTyping true for engines where declared column types don't bind stored values
+     *                      (SQLite); every cell is then stored with its own type tag
+     * @throws IOException if the file can't be written or the disk budget is exhausted
+     */
+    public Snapshot capture(String connectionId, ResultSet resultSet, boolean dynamicTyping) throws SQLException, IOException {
+        purgeExpired();
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        List<String> columnNames = new ArrayList<>(columnCount);
+        List<String> columnTypes = new ArrayList<>(columnCount);
+        Kind[] kinds = new Kind[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            columnNames.add(metaData.getColumnLabel(i));
+            columnTypes.add(metaData.getColumnTypeName(i));
+            kinds[i - 1] = dynamicTyping ? Kind.TAGGED : kindFor(metaData, i);
+        }
+
+        String snapshotId = UUID.randomUUID().toString();
+        Path root = Path.of(directory);
+        Files.createDirectories(root);
+        Path file = root.resolve(snapshotId + FILE_SUFFIX);
+
+        long reserved = 0;
+        try {
+            long[] index = new long[64];
+            long rows = 0;
+            boolean truncated = false;
+
+            try (CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)),
+                    WRITE_BUFFER_BYTES));
+                 DataOutputStream out = new DataOutputStream(counter)) {
+
+                byte[] nulls = new byte[(columnCount + 7) / 8];
+                Object[] values = new Object[columnCount];
+
+                while (resultSet.next()) {
+                    if (rows == maxRows) {
+                        truncated = true;
+                        break;
+                    }
+                    if (rows % INDEX_STRIDE == 0) {
+                        int slot = (int) (rows / INDEX_STRIDE);
+                        if (slot == index.length) {
+                            index = Arrays.copyOf(index, index.length * 2);
+                        }
+                        index[slot] = counter.count;
+                    }
+
+                    writeRow(resultSet, kinds, nulls, values, out);
+                    rows++;
+
+                    while (counter.count > reserved) {
+                        reserved += reserve();
+                    }
+                }
+            }
+
+            long size = Files.size(file);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds 2 GB; narrow the query or add a LIMIT");
+            }
+            diskBytes.addAndGet(size - reserved);
+            reserved = size;
+
+            MappedByteBuffer data;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            Snapshot snapshot = new Snapshot(
+                snapshotId, connectionId, List.copyOf(columnNames), List.copyOf(columnTypes),
+                rows, truncated, size, Instant.now()
+            );
+            snapshots.put(snapshotId, new Entry(
+                snapshot, file, kinds, Arrays.copyOf(index, (int) ((rows + INDEX_STRIDE - 1) / INDEX_STRIDE)), data
+            ));
+            return snapshot;
+
+        } catch (SQLException | IOException | RuntimeException e) {
+            diskBytes.addAndGet(-reserved);
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    public Optional<Snapshot> get(String snapshotId) {
+        return entry(snapshotId).map(entry -> entry.snapshot);
+    }
+
+    /**
+     * Decodes up to {@code limit} rows starting at {@code offset}; empty if the snapshot is
+     * unknown or expired.
+     */
+    public Optional<Page> page(String snapshotId, long offset, int limit) {
+        return entry(snapshotId).map(entry -> {
+            long rowCount = entry.snapshot.rowCount();
+            long start = Math.min(Math.max(offset, 0), rowCount);
+            int count = (int) Math.min(Math.max(limit, 0), rowCount - start);
+
+            List<Map<String, Object>> rows = new ArrayList<>(count);
+            if (count > 0) {
+                // Each reader gets its own position over the shared mapping
+                ByteBuffer buffer = entry.data.duplicate();
+                buffer.position((int) entry.index[(int) (start / INDEX_STRIDE)]);
+                for (long skip = start % INDEX_STRIDE; skip > 0; skip--) {
+                    readRow(buffer, entry.kinds, null);
+                }
+                List<String> names = entry.snapshot.columnNames();
+                for (int i = 0; i < count; i++) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    Object[] values = new Object[entry.kinds.length];
+                    readRow(buffer, entry.kinds, values);
+                    for (int column = 0; column < values.length; column++) {
+                        row.put(names.get(column), values[column]);
+                    }
+                    rows.add(row);
+                }
+            }
+            return new Page(rows, start, rowCount, start + count < rowCount);
+        });
+    }
+
+    public boolean delete(String snapshotId) {
+        Entry entry = snapshots.remove(snapshotId);
+        if (entry == null) {
+            return false;
+        }
+        release(entry);
+        return true;
+    }
+
+    public long diskBytes() {
+        return diskBytes.get();
+    }
+
+    private Optional<Entry> entry(String snapshotId) {
+        Entry entry = snapshots.get(snapshotId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            if (snapshots.remove(snapshotId, entry)) {
+                release(entry);
+            }
+            return Optional.empty();
+        }
+        entry.lastAccessMillis = System.currentTimeMillis();
+        return Optional.of(entry);
+    }
+
+    /** Reserves one more chunk of the disk budget, purging expired snapshots once if it's exhausted. */
+    private long reserve() throws IOException {
+        long budget = maxDiskMb * 1024 * 1024;
+        if (diskBytes.addAndGet(RESERVE_CHUNK_BYTES) <= budget) {
+            return RESERVE_CHUNK_BYTES;
+        }
+        diskBytes.addAndGet(-RESERVE_CHUNK_BYTES);
+
+        purgeExpired();
+        if (diskBytes.addAndGet(RESERVE_CHUNK_BYTES) <= budget) {
+            return RESERVE_CHUNK_BYTES;
+        }
+        diskBytes.addAndGet(-RESERVE_CHUNK_BYTES);
+        throw new IOException("Result snapshot disk budget of " + maxDiskMb + " MB exhausted");
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        snapshots.entrySet().removeIf(mapping -> {
+            if (!isExpired(mapping.getValue(), now)) {
+                return false;
+            }
+            release(mapping.getValue());
+            return true;
+        });
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.lastAccessMillis > ttlMinutes * 60_000;
+    }
+
+    private void release(Entry entry) {
+        // The mapping itself is unmapped when the buffer is collected; Linux frees the blocks then
+        deleteQuietly(entry.file);
+        diskBytes.addAndGet(-entry.snapshot.sizeBytes());
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Could not delete result snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    // Encoding
+
+    private static Kind kindFor(ResultSetMetaData metaData, int column) throws SQLException {
+        String typeName = metaData.getColumnTypeName(column);
+        boolean unsigned = typeName != null && typeName.toUpperCase(Locale.ROOT).contains("UNSIGNED");
+
+        return switch (metaData.getColumnType(column)) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER -> Kind.LONG;
+            case Types.BIGINT -> unsigned ? Kind.DECIMAL : Kind.LONG;
+            case Types.DOUBLE, Types.FLOAT, Types.REAL -> Kind.DOUBLE;
+            case Types.DECIMAL, Types.NUMERIC -> Kind.DECIMAL;
+            case Types.BOOLEAN -> Kind.BOOLEAN;
+            case Types.BIT -> metaData.getPrecision(column) <= 1 ? Kind.BOOLEAN : Kind.TAGGED;
+            case Types.CHAR, Types.VARCHAR, Types.LONGVARCHAR, Types.NCHAR, Types.NVARCHAR,
+                 Types.LONGNVARCHAR, Types.CLOB, Types.NCLOB -> Kind.STRING;
+            case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> Kind.BYTES;
+            case Types.TIMESTAMP -> Kind.TIMESTAMP;
+            default -> Kind.TAGGED;
+        };
+    }
+
+    private static void writeRow(ResultSet resultSet, Kind[] kinds, byte[] nulls, Object[] values,
+                                 DataOutputStream out) throws SQLException, IOException {
+        Arrays.fill(nulls, (byte) 0);
+        for (int i = 0; i < kinds.length; i++) {
+            int column = i + 1;
+            Object value = switch (kinds[i]) {
+                case LONG -> {
+                    long v = resultSet.getLong(column);
+                    yield resultSet.wasNull() ? null : v;
+                }
+                case DOUBLE -> {
+                    double v = resultSet.getDouble(column);
+                    yield resultSet.wasNull() ? null : v;
+                }
+                case BOOLEAN -> {
+                    boolean v = resultSet.getBoolean(column);
+                    yield resultSet.wasNull() ? null : v;
+                }
+                case DECIMAL -> resultSet.getBigDecimal(column);
+                case TIMESTAMP -> resultSet.getTimestamp(column);
+                case STRING -> resultSet.getString(column);
+                case BYTES -> resultSet.getBytes(column);
+                case TAGGED -> resultSet.getObject(column);
+            };
+            values[i] = value;
+            if (value == null) {
+                nulls[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+
+        out.write(nulls);
+        for (int i = 0; i < kinds.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            switch (kinds[i]) {
+                case LONG -> writeVarLong(out, (Long) value);
+                case DOUBLE -> out.writeDouble((Double) value);
+                case BOOLEAN -> out.writeBoolean((Boolean) value);
+                case DECIMAL -> writeString(out, ((BigDecimal) value).toString());
+                case TIMESTAMP -> writeVarLong(out, ((Timestamp) value).getTime());
+                case STRING -> writeString(out, (String) value);
+                case BYTES -> writeBytes(out, (byte[]) value);
+                case TAGGED -> writeTagged(out, value);
+            }
+        }
+    }
+
+    private static void writeTagged(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            writeVarLong(out, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal decimal) {
+            out.writeByte(TAG_DECIMAL);
+            writeString(out, decimal.toString());
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(bool);
+        } else if (value instanceof byte[] bytes) {
+            out.writeByte(TAG_BYTES);
+            writeBytes(out, bytes);
+        } else {
+            // Dates, times, UUIDs, arrays: kept in their JDBC string form, as the JSON response shows them
+            out.writeByte(TAG_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        writeVarLong(out, value.length);
+        out.write(value);
+    }
+
+    /** Zig-zag LEB128: small magnitudes of either sign take one or two bytes. */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    // Decoding
+
+    /** Decodes one row into {@code values}, or only advances past it when {@code values} is null. */
+    private static void readRow(ByteBuffer buffer, Kind[] kinds, Object[] values) {
+        byte[] nulls = new byte[(kinds.length + 7) / 8];
+        buffer.get(nulls);
+
+        for (int i = 0; i < kinds.length; i++) {
+            if ((nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                continue;
+            }
+            Object value = switch (kinds[i]) {
+                case LONG -> readVarLong(buffer);
+                case DOUBLE -> buffer.getDouble();
+                case BOOLEAN -> buffer.get() != 0;
+                case DECIMAL -> {
+                    String text = readString(buffer, values != null);
+                    yield text != null ? new BigDecimal(text) : null;
+                }
+                case TIMESTAMP -> new Timestamp(readVarLong(buffer));
+                case STRING -> readString(buffer, values != null);
+                case BYTES -> readBytes(buffer, values != null);
+                case TAGGED -> readTagged(buffer, values != null);
+            };
+            if (values != null) {
+                values[i] = value;
+            }
+        }
+    }
+
+    private static Object readTagged(ByteBuffer buffer, boolean materialize) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case TAG_LONG -> readVarLong(buffer);
+            case TAG_DOUBLE -> buffer.getDouble();
+            case TAG_BOOLEAN -> buffer.get() != 0;
+            case TAG_BYTES -> readBytes(buffer, materialize);
+            case TAG_DECIMAL -> {
+                String text = readString(buffer, materialize);
+                yield text != null ? new BigDecimal(text) : null;
+            }
+            default -> readString(buffer, materialize);
+        };
+    }
+
+    private static String readString(ByteBuffer buffer, boolean materialize) {
+        byte[] bytes = readBytes(buffer, materialize);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, boolean materialize) {
+        int length = (int) readVarLong(buffer);
+        if (!materialize) {
+            buffer.position(buffer.position() + length);
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long zigZag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /** Tracks the write position so the row index records file offsets without flushing. */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
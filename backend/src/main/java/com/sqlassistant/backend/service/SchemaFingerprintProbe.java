@@ -0,0 +1,176 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.sqlassistant.backend.model.SchemaFingerprint;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes schema fingerprints with a single catalog query per dialect, so staleness of a cached
+ * {@link com.sqlassistant.backend.model.DatabaseSchema} can be checked without full introspection.
+ *
+ * Each dialect query returns {@code (schema, table, token)} rows; tokens are folded into one
+ * fingerprint per table, and table fingerprints into the schema version. Tokens cover columns,
+ * indexes and outgoing foreign keys, the parts of a table that introspection reports.
+ */
+@Component
+public class SchemaFingerprintProbe {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Catalog row xmin changes on every ALTER; attribute, index and constraint rows carry their own xmin
+    private static final String POSTGRES_QUERY = """
+        SELECT n.nspname, c.relname,
+               md5(c.oid::text || ':' || c.xmin::text || ':' || c.relkind::text
+                   || ':' || COALESCE(obj_description(c.oid, 'pg_class'), '')
+                   || ':' || COALESCE((SELECT string_agg(a.attnum::text || a.attname || a.atttypid::text
+                                                         || a.atttypmod::text || a.attnotnull::text || a.xmin::text,
+                                                         ',' ORDER BY a.attnum)
+                                       FROM pg_attribute a
+                                       WHERE a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped), '')
+                   || ':' || COALESCE((SELECT string_agg(i.indexrelid::text || i.xmin::text, ',' ORDER BY i.indexrelid)
+                                       FROM pg_index i WHERE i.indrelid = c.oid), '')
+                   || ':' || COALESCE((SELECT string_agg(f.conname || f.xmin::text || f.confrelid::text || f.conkey::text
+                                                         || f.confkey::text || f.confupdtype::text || f.confdeltype::text,
+                                                         ',' ORDER BY f.conname)
+                                       FROM pg_constraint f WHERE f.conrelid = c.oid AND f.contype = 'f'), ''))
+        FROM pg_class c
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE c.relkind IN ('r', 'v')
+          AND n.nspname NOT IN ('pg_catalog', 'information_schema')
+          AND n.nspname NOT LIKE 'pg_toast%'
+        """;
+
+    // CREATE_TIME moves on table rebuilds; column, index and foreign key checksums catch in-place (instant) DDL
+    private static final String MYSQL_QUERY = """
+        SELECT NULL, t.TABLE_NAME,
+               CONCAT_WS(':', t.TABLE_TYPE, t.CREATE_TIME, t.TABLE_COMMENT,
+                   (SELECT COUNT(*) FROM information_schema.COLUMNS c
+                    WHERE c.TABLE_SCHEMA = t.TABLE_SCHEMA AND c.TABLE_NAME = t.TABLE_NAME),
+                   (SELECT SUM(CRC32(CONCAT_WS('|', c.ORDINAL_POSITION, c.COLUMN_NAME, c.COLUMN_TYPE,
+                                               c.IS_NULLABLE, c.COLUMN_KEY, c.COLUMN_DEFAULT, c.COLUMN_COMMENT)))
+                    FROM information_schema.COLUMNS c
+                    WHERE c.TABLE_SCHEMA = t.TABLE_SCHEMA AND c.TABLE_NAME = t.TABLE_NAME),
+                   COALESCE((SELECT SUM(CRC32(CONCAT_WS('|', s.INDEX_NAME, s.SEQ_IN_INDEX, s.COLUMN_NAME, s.NON_UNIQUE)))
+                             FROM information_schema.STATISTICS s
+                             WHERE s.TABLE_SCHEMA = t.TABLE_SCHEMA AND s.TABLE_NAME = t.TABLE_NAME), 0),
+                   COALESCE((SELECT SUM(CRC32(CONCAT_WS('|', k.CONSTRAINT_NAME, k.ORDINAL_POSITION, k.COLUMN_NAME,
+                                                        k.REFERENCED_TABLE_SCHEMA, k.REFERENCED_TABLE_NAME,
+                                                        k.REFERENCED_COLUMN_NAME, r.UPDATE_RULE, r.DELETE_RULE)))
+                             FROM information_schema.KEY_COLUMN_USAGE k
+                             JOIN information_schema.REFERENTIAL_CONSTRAINTS r
+                               ON r.CONSTRAINT_SCHEMA = k.CONSTRAINT_SCHEMA AND r.CONSTRAINT_NAME = k.CONSTRAINT_NAME
+                              AND r.TABLE_NAME = k.TABLE_NAME
+                             WHERE k.TABLE_SCHEMA = t.TABLE_SCHEMA AND k.TABLE_NAME = t.TABLE_NAME
+                               AND k.REFERENCED_TABLE_NAME IS NOT NULL), 0))
+        FROM information_schema.TABLES t
+        WHERE t.TABLE_SCHEMA = DATABASE()
+        """;
+
+    private static final String H2_QUERY = """
+        SELECT c.TABLE_SCHEMA, c.TABLE_NAME,
+               CONCAT_WS('|', 'C', c.ORDINAL_POSITION, c.COLUMN_NAME, c.DATA_TYPE, c.IS_NULLABLE, c.COLUMN_DEFAULT)
+        FROM INFORMATION_SCHEMA.COLUMNS c
+        WHERE c.TABLE_SCHEMA <> 'INFORMATION_SCHEMA'
+        UNION ALL
+        SELECT i.TABLE_SCHEMA, i.TABLE_NAME,
+               CONCAT_WS('|', 'I', i.INDEX_NAME, i.ORDINAL_POSITION, i.COLUMN_NAME)
+        FROM INFORMATION_SCHEMA.INDEX_COLUMNS i
+        WHERE i.TABLE_SCHEMA <> 'INFORMATION_SCHEMA'
+        UNION ALL
+        SELECT k.TABLE_SCHEMA, k.TABLE_NAME,
+               CONCAT_WS('|', 'F', k.CONSTRAINT_NAME, k.ORDINAL_POSITION, k.COLUMN_NAME,
+                         u.TABLE_SCHEMA, u.TABLE_NAME, u.COLUMN_NAME, r.UPDATE_RULE, r.DELETE_RULE)
+        FROM INFORMATION_SCHEMA.REFERENTIAL_CONSTRAINTS r
+        JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE k
+          ON k.CONSTRAINT_SCHEMA = r.CONSTRAINT_SCHEMA AND k.CONSTRAINT_NAME = r.CONSTRAINT_NAME
+        JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE u
+          ON u.CONSTRAINT_SCHEMA = r.UNIQUE_CONSTRAINT_SCHEMA AND u.CONSTRAINT_NAME = r.UNIQUE_CONSTRAINT_NAME
+         AND u.ORDINAL_POSITION = k.POSITION_IN_UNIQUE_CONSTRAINT
+        ORDER BY 1, 2, 3
+        """;
+
+    // Foreign keys are part of the CREATE TABLE text, and any ALTER rewrites it
+    private static final String SQLITE_QUERY = """
+        SELECT NULL, tbl_name, type || ':' || name || ':' || COALESCE(sql, '')
+        FROM sqlite_master
+        WHERE type IN ('table', 'view', 'index') AND name NOT LIKE 'sqlite_%'
+        ORDER BY tbl_name, type, name
+        """;
+
+    /**
+     * Probes the current fingerprint. When the dialect exposes a global DDL counter and it matches
+     * {@code previous}, the per-table query is skipped and {@code previous} is returned as-is.
+     *
+     * @return the fingerprint, or null if the dialect or the connected user does not allow probing
+     */
+    public SchemaFingerprint probe(
+        Connection connection,
+        DatabaseConnectionDto.DatabaseType type,
+        SchemaFingerprint previous) {
+
+        try (Statement statement = connection.createStatement()) {
+            String quickToken = null;
+
+            if (type == DatabaseConnectionDto.DatabaseType.SQLITE) {
+                try (ResultSet resultSet = statement.executeQuery("PRAGMA schema_version")) {
+                    quickToken = resultSet.next() ? resultSet.getString(1) : null;
+                }
+                if (previous != null && quickToken != null && quickToken.equals(previous.quickToken())) {
+                    return previous;
+                }
+            }
+
+            Map<String, Long> hashes = new TreeMap<>();
+            try (ResultSet resultSet = statement.executeQuery(queryFor(type))) {
+                while (resultSet.next()) {
+                    String key = SchemaFingerprint.tableKey(resultSet.getString(1), resultSet.getString(2));
+                    long hash = hashes.getOrDefault(key, FNV_OFFSET);
+                    hashes.put(key, fold(hash, resultSet.getString(3)));
+                }
+            }
+
+            Map<String, String> tables = new TreeMap<>();
+            long version = FNV_OFFSET;
+            for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+                String tableFingerprint = Long.toHexString(entry.getValue());
+                tables.put(entry.getKey(), tableFingerprint);
+                version = fold(fold(version, entry.getKey()), tableFingerprint);
+            }
+
+            return new SchemaFingerprint(Long.toHexString(version), quickToken, tables);
+
+        } catch (SQLException e) {
+            // Missing catalog privileges or an unexpected server version; callers fall back to full introspection
+            return null;
+        }
+    }
+
+    private String queryFor(DatabaseConnectionDto.DatabaseType type) {
+        return switch (type) {
+            case POSTGRESQL -> POSTGRES_QUERY;
+            case MYSQL -> MYSQL_QUERY;
+            case H2 -> H2_QUERY;
+            case SQLITE -> SQLITE_QUERY;
+        };
+    }
+
+    private static long fold(long hash, String token) {
+        if (token == null) {
+            return (hash ^ 0xff) * FNV_PRIME;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            hash ^= token.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        // Token separator so ("ab", "c") and ("a", "bc") fold differently
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,496 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-side search over a schema's tables, views and columns for catalogs too large to filter
+ * on the client. Names are split into terms (snake_case, camelCase and digit boundaries, plus the
+ * whole name), alongside data type and comment words. Terms go into a prefix trie for
+ * as-you-type matches and a trigram index for misspellings.
+ *
+ * A query matches a document when every query word matches one of its terms. Exact name matches
+ * rank above prefixes, prefixes above fuzzy matches, and name matches above type or comment
+ * matches. A lookup walks the trie path, a bounded set of completions and the query's trigram
+ * postings, then the postings of its most selective word only, so its cost follows the number
+ * of matches rather than the size of the catalog.
+ *
+ * Indexes are built per connection when a new schema version is cached, and rebuilt on demand
+ * if a search sees a schema the index wasn't built from.
+ */
+@Component
+public class SchemaSearchIndex {
+
+    public static final String KIND_TABLE = "TABLE";
+    public static final String KIND_VIEW = "VIEW";
+    public static final String KIND_COLUMN = "COLUMN";
+
+    /** Completions expanded per query word; a prefix with more is too short to be selective. */
+    private static final int MAX_PREFIX_TERMS = 256;
+    private static final int MAX_FUZZY_TERMS = 64;
+    private static final double MIN_TRIGRAM_SIMILARITY = 0.3;
+
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_TYPE = 1;
+    private static final int FIELD_COMMENT = 2;
+    private static final double[] FIELD_WEIGHTS = {1.0, 0.4, 0.3};
+
+    private static final double SCORE_EXACT = 100;
+    private static final double SCORE_PREFIX = 70;
+    private static final double SCORE_FUZZY = 50;
+    /** Added when the query spells out the object's entire name rather than some of its parts. */
+    private static final double FULL_NAME_BONUS = 20;
+
+    public record Hit(
+        String kind,
+        String table,
+        String schema,
+        String column,
+        String dataType,
+        String comment,
+        double score
+    ) {}
+
+    public record SearchResult(List<Hit> hits, int total, int offset, int limit) {}
+
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+
+    /** Builds the index for a newly cached schema off the caller's thread. */
+    public void indexInBackground(String connectionId, DatabaseSchema schema) {
+        Mono.fromRunnable(() -> indexFor(connectionId, schema))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe();
+    }
+
+    /**
+     * @param kind TABLE, VIEW or COLUMN to restrict the results, or null for all
+     */
+    public SearchResult search(String connectionId, DatabaseSchema schema, String query, String kind, int offset, int limit) {
+        Index index = indexFor(connectionId, schema);
+        List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return new SearchResult(List.of(), 0, offset, limit);
+        }
+
+        Map<Integer, Float> scores = index.score(words);
+
+        // Min-heap of the best offset + limit documents; the root is the weakest of those kept
+        int[] heap = new int[Math.max(Math.min(offset + limit, scores.size()), 1)];
+        int size = 0;
+        int total = 0;
+        for (Map.Entry<Integer, Float> match : scores.entrySet()) {
+            int document = match.getKey();
+            if (kind != null && !index.documents[document].kind.equals(kind)) {
+                continue;
+            }
+            total++;
+            if (size < heap.length) {
+                heap[size++] = document;
+                siftUp(heap, size - 1, scores, index.nameOrder);
+            } else if (ranksAbove(document, heap[0], scores, index.nameOrder)) {
+                heap[0] = document;
+                siftDown(heap, size, scores, index.nameOrder);
+            }
+        }
+
+        Integer[] ranked = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            ranked[i] = heap[i];
+        }
+        Arrays.sort(ranked, (a, b) -> ranksAbove(a, b, scores, index.nameOrder) ? -1 : a.equals(b) ? 0 : 1);
+        List<Hit> hits = Arrays.stream(ranked)
+            .skip(offset)
+            .map(document -> index.documents[document].toHit(Math.round(scores.get(document) * 10) / 10.0))
+            .toList();
+        return new SearchResult(hits, total, offset, limit);
+    }
+
+    /** Higher score first; equal scores in table.column order. */
+    private static boolean ranksAbove(int document, int other, Map<Integer, Float> scores, int[] nameOrder) {
+        float score = scores.get(document);
+        float otherScore = scores.get(other);
+        return score != otherScore ? score > otherScore : nameOrder[document] < nameOrder[other];
+    }
+
+    private static void siftUp(int[] heap, int position, Map<Integer, Float> scores, int[] nameOrder) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!ranksAbove(heap[parent], heap[position], scores, nameOrder)) {
+                return;
+            }
+            swap(heap, parent, position);
+            position = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, Map<Integer, Float> scores, int[] nameOrder) {
+        int position = 0;
+        while (true) {
+            int weakest = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < size; child++) {
+                if (ranksAbove(heap[weakest], heap[child], scores, nameOrder)) {
+                    weakest = child;
+                }
+            }
+            if (weakest == position) {
+                return;
+            }
+            swap(heap, weakest, position);
+            position = weakest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int swapped = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swapped;
+    }
+
+    private Index indexFor(String connectionId, DatabaseSchema schema) {
+        Index index = indexes.get(connectionId);
+        if (index == null || index.schema != schema) {
+            index = new Index(schema);
+            indexes.put(connectionId, index);
+        }
+        return index;
+    }
+
+    /** Lowercase words of a name or text, split at separators, camelCase humps and letter/digit changes. */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+
+        StringBuilder word = new StringBuilder();
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                flush(word, words);
+            } else {
+                boolean boundary = word.length() > 0 && (
+                    (Character.isUpperCase(c) && Character.isLowerCase(previous))
+                        || (Character.isDigit(c) != Character.isDigit(previous))
+                );
+                if (boundary) {
+                    flush(word, words);
+                }
+                word.append(Character.toLowerCase(c));
+            }
+            previous = c;
+        }
+        flush(word, words);
+        return words;
+    }
+
+    private static void flush(StringBuilder word, List<String> words) {
+        if (word.length() > 0) {
+            words.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static final class Document {
+        final String kind;
+        final String table;
+        final String schema;
+        final String column;
+        final String dataType;
+        final String comment;
+        /** Name words run together, so {@code orderid} and {@code order_id} both find {@code orderId}. */
+        final String joinedName;
+        final String sortKey;
+
+        Document(String kind, String table, String schema, String column, String dataType, String comment) {
+            this.kind = kind;
+            this.table = table;
+            this.schema = schema;
+            this.column = column;
+            this.dataType = dataType;
+            this.comment = comment;
+            this.joinedName = String.join("", tokenize(name()));
+            this.sortKey = (table + "." + (column != null ? column : "")).toLowerCase(Locale.ROOT);
+        }
+
+        String name() {
+            return column != null ? column : table;
+        }
+
+        Hit toHit(double score) {
+            return new Hit(kind, table, schema, column, dataType, comment, score);
+        }
+    }
+
+    /**
+     * Trie node; children are parallel arrays sorted by character to keep large catalogs compact.
+     * Term ids follow sorted term order, so a node's completions are the id range [first, end).
+     */
+    private static final class TrieNode {
+        char[] keys = new char[0];
+        TrieNode[] children = new TrieNode[0];
+        int first = -1;
+        int end = -1;
+
+        TrieNode child(char c) {
+            int position = Arrays.binarySearch(keys, c);
+            return position >= 0 ? children[position] : null;
+        }
+
+        TrieNode childOrCreate(char c) {
+            int position = Arrays.binarySearch(keys, c);
+            if (position >= 0) {
+                return children[position];
+            }
+            int insert = -position - 1;
+            char[] newKeys = new char[keys.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            newChildren[insert] = new TrieNode();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insert];
+        }
+    }
+
+    /** Immutable once built; safely shared by concurrent searches. */
+    private static final class Index {
+        final DatabaseSchema schema;
+        final Document[] documents;
+        /** Per document: position in table.column order, the tie-break between equal scores. */
+        final int[] nameOrder;
+        final String[] terms;
+        /** Per term: postings encoded as {@code document << 2 | field}. */
+        final int[][] postings;
+        /** Per document: its terms encoded as {@code term << 2 | field}. */
+        final int[][] documentTerms;
+        final TrieNode root = new TrieNode();
+        final Map<Integer, int[]> trigrams;
+        final int[] trigramCounts;
+
+        Index(DatabaseSchema schema) {
+            this.schema = schema;
+
+            List<Document> documentList = new ArrayList<>();
+            Map<String, Integer> termIds = new HashMap<>();
+            List<List<Integer>> postingLists = new ArrayList<>();
+
+            for (DatabaseSchema.TableInfo table : schema.tables() != null ? schema.tables() : List.<DatabaseSchema.TableInfo>of()) {
+                addDocument(documentList, termIds, postingLists,
+                    new Document(KIND_TABLE, table.name(), table.schema(), null, null, table.comment()));
+                for (DatabaseSchema.ColumnInfo column : table.columns() != null ? table.columns() : List.<DatabaseSchema.ColumnInfo>of()) {
+                    addDocument(documentList, termIds, postingLists,
+                        new Document(KIND_COLUMN, table.name(), table.schema(), column.name(), column.dataType(), column.comment()));
+                }
+            }
+            for (DatabaseSchema.ViewInfo view : schema.views() != null ? schema.views() : List.<DatabaseSchema.ViewInfo>of()) {
+                addDocument(documentList, termIds, postingLists,
+                    new Document(KIND_VIEW, view.name(), view.schema(), null, null, view.comment()));
+                for (DatabaseSchema.ColumnInfo column : view.columns() != null ? view.columns() : List.<DatabaseSchema.ColumnInfo>of()) {
+                    addDocument(documentList, termIds, postingLists,
+                        new Document(KIND_COLUMN, view.name(), view.schema(), column.name(), column.dataType(), column.comment()));
+                }
+            }
+
+            documents = documentList.toArray(new Document[0]);
+            Integer[] byName = new Integer[documents.length];
+            Arrays.setAll(byName, i -> i);
+            Arrays.sort(byName, Comparator.comparing(i -> documents[i].sortKey));
+            nameOrder = new int[documents.length];
+            for (int i = 0; i < byName.length; i++) {
+                nameOrder[byName[i]] = i;
+            }
+            terms = termIds.keySet().toArray(new String[0]);
+            Arrays.sort(terms);
+            postings = new int[terms.length][];
+            int[] termCounts = new int[documents.length];
+            for (int i = 0; i < terms.length; i++) {
+                postings[i] = postingLists.get(termIds.get(terms[i])).stream().mapToInt(Integer::intValue).toArray();
+                for (int posting : postings[i]) {
+                    termCounts[posting >>> 2]++;
+                }
+            }
+            documentTerms = new int[documents.length][];
+            for (int i = 0; i < documents.length; i++) {
+                documentTerms[i] = new int[termCounts[i]];
+                termCounts[i] = 0;
+            }
+            for (int i = 0; i < terms.length; i++) {
+                for (int posting : postings[i]) {
+                    int document = posting >>> 2;
+                    documentTerms[document][termCounts[document]++] = i << 2 | posting & 3;
+                }
+            }
+
+            Map<Integer, List<Integer>> trigramLists = new HashMap<>();
+            trigramCounts = new int[terms.length];
+            for (int id = 0; id < terms.length; id++) {
+                insert(terms[id], id);
+                Set<Integer> termTrigrams = trigramsOf(terms[id]);
+                trigramCounts[id] = termTrigrams.size();
+                for (int trigram : termTrigrams) {
+                    trigramLists.computeIfAbsent(trigram, key -> new ArrayList<>()).add(id);
+                }
+            }
+            trigrams = new HashMap<>(trigramLists.size() * 2);
+            trigramLists.forEach((trigram, ids) -> trigrams.put(trigram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        private static void addDocument(List<Document> documents, Map<String, Integer> termIds,
+                                        List<List<Integer>> postingLists, Document document) {
+            int id = documents.size();
+            documents.add(document);
+
+            Set<String> nameTerms = new LinkedHashSet<>(tokenize(document.name()));
+            nameTerms.add(document.joinedName);
+            addTerms(termIds, postingLists, nameTerms, id, FIELD_NAME);
+            addTerms(termIds, postingLists, new LinkedHashSet<>(tokenize(document.dataType)), id, FIELD_TYPE);
+            addTerms(termIds, postingLists, new LinkedHashSet<>(tokenize(document.comment)), id, FIELD_COMMENT);
+        }
+
+        private static void addTerms(Map<String, Integer> termIds, List<List<Integer>> postingLists,
+                                     Set<String> words, int document, int field) {
+            for (String word : words) {
+                int termId = termIds.computeIfAbsent(word, key -> {
+                    postingLists.add(new ArrayList<>());
+                    return postingLists.size() - 1;
+                });
+                postingLists.get(termId).add(document << 2 | field);
+            }
+        }
+
+        /** Called in ascending id order, so each node's range only ever grows at the end. */
+        private void insert(String term, int id) {
+            TrieNode node = root;
+            for (int i = 0; i < term.length(); i++) {
+                node = node.childOrCreate(term.charAt(i));
+                if (node.first < 0) {
+                    node.first = id;
+                }
+                node.end = id + 1;
+            }
+        }
+
+        /**
+         * Each matching document with the sum of its best per-word scores. Postings are walked
+         * only for the most selective word; the surviving candidates are then checked against
+         * their own terms for the other words. Scores are kept per candidate, so a lookup
+         * allocates in proportion to its matches, not to the catalog.
+         */
+        Map<Integer, Float> score(List<String> words) {
+            List<Map<Integer, Double>> wordTerms = new ArrayList<>();
+            for (String word : words) {
+                wordTerms.add(matchTerms(word));
+            }
+            List<Integer> order = new ArrayList<>();
+            for (int w = 0; w < words.size(); w++) {
+                order.add(w);
+            }
+            order.sort(Comparator.comparingLong(w -> postingCount(wordTerms.get(w))));
+
+            Map<Integer, Float> scores = new HashMap<>();
+            for (Map.Entry<Integer, Double> entry : wordTerms.get(order.get(0)).entrySet()) {
+                for (int posting : postings[entry.getKey()]) {
+                    scores.merge(posting >>> 2, postingScore(entry.getValue(), posting), Math::max);
+                }
+            }
+
+            for (int w : order.subList(1, order.size())) {
+                Map<Integer, Double> termScores = wordTerms.get(w);
+                scores.entrySet().removeIf(candidate -> {
+                    float best = 0;
+                    for (int posting : documentTerms[candidate.getKey()]) {
+                        Double termScore = termScores.get(posting >>> 2);
+                        if (termScore != null) {
+                            best = Math.max(best, postingScore(termScore, posting));
+                        }
+                    }
+                    candidate.setValue(candidate.getValue() + best);
+                    return best == 0;
+                });
+            }
+
+            String joined = String.join("", words);
+            scores.replaceAll((document, score) ->
+                documents[document].joinedName.equals(joined) ? score + (float) FULL_NAME_BONUS : score);
+            return scores;
+        }
+
+        private float postingScore(double termScore, int posting) {
+            return (float) (termScore * FIELD_WEIGHTS[posting & 3]);
+        }
+
+        private long postingCount(Map<Integer, Double> termScores) {
+            long count = 0;
+            for (int term : termScores.keySet()) {
+                count += postings[term].length;
+            }
+            return count;
+        }
+
+        /** Trie completions and fuzzy matches of one query word, with their term-level scores. */
+        private Map<Integer, Double> matchTerms(String word) {
+            Map<Integer, Double> termScores = new HashMap<>();
+
+            TrieNode node = root;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.child(word.charAt(i));
+            }
+            if (node != null) {
+                // The word itself sorts first, followed by its completions in sorted order
+                for (int term = node.first; term < node.end && term < node.first + MAX_PREFIX_TERMS; term++) {
+                    termScores.put(term, terms[term].length() == word.length()
+                        ? SCORE_EXACT
+                        : SCORE_PREFIX * word.length() / terms[term].length() + SCORE_PREFIX / 2);
+                }
+            }
+
+            if (word.length() >= 3) {
+                fuzzy(word, termScores);
+            }
+            return termScores;
+        }
+
+        /** Terms sharing enough trigrams with the word (Jaccard similarity), for typos and transpositions. */
+        private void fuzzy(String word, Map<Integer, Double> termScores) {
+            Set<Integer> wordTrigrams = trigramsOf(word);
+            Map<Integer, Integer> shared = new HashMap<>();
+            for (int trigram : wordTrigrams) {
+                int[] ids = trigrams.get(trigram);
+                if (ids != null) {
+                    for (int id : ids) {
+                        shared.merge(id, 1, Integer::sum);
+                    }
+                }
+            }
+
+            shared.entrySet().stream()
+                .filter(entry -> !termScores.containsKey(entry.getKey()))
+                .map(entry -> Map.entry(entry.getKey(),
+                    (double) entry.getValue() / (wordTrigrams.size() + trigramCounts[entry.getKey()] - entry.getValue())))
+                .filter(entry -> entry.getValue() >= MIN_TRIGRAM_SIMILARITY)
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                .limit(MAX_FUZZY_TERMS)
+                .forEach(entry -> termScores.put(entry.getKey(), SCORE_FUZZY * entry.getValue()));
+        }
+
+        /** Trigrams of the word padded with boundary markers, packed three chars to an int. */
+        private static Set<Integer> trigramsOf(String term) {
+            String padded = "\u0001" + term + "\u0002";
+            Set<Integer> result = new HashSet<>();
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                result.add((padded.charAt(i) & 0x3FF) << 20 | (padded.charAt(i + 1) & 0x3FF) << 10 | (padded.charAt(i + 2) & 0x3FF));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import com.sqlassistant.backend.model.SchemaFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Persists schema snapshots on local disk so a restart doesn't force a full introspection of
+ * every customer database.
+ *
+ * One file per connection in a compact length-prefixed binary format; files are read whole on
+ * load and replaced atomically on save. The fingerprint is stored alongside the schema so the
+ * snapshot can be re-validated with a cheap probe instead of being trusted blindly.
+ *
+ * Snapshot files are named after connection ids, which are HMACs under the registry's key. At
+ * startup {@link #retainKey} deletes every snapshot written under another key (no request can
+ * resolve to those ids again) and every snapshot not refreshed for {@code max-age-days}.
+ */
+@Component
+public class SchemaSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaSnapshotStore.class);
+
+    private static final int MAGIC = 0x47515353; // "GQSS"
+    private static final short FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".snap";
+    /** Holds the id of the connection id key the snapshots in the directory were written under. */
+    private static final String KEY_MARKER = "id-key";
+
+    @Value("${query.schema.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.schema.snapshot.directory:./data/schema-snapshots}")
+    private String directory;
+
+    @Value("${query.schema.snapshot.max-age-days:30}")
+    private long maxAgeDays;
+
+    public record Snapshot(DatabaseSchema schema, SchemaFingerprint fingerprint, long savedAt) {}
+
+    /**
+     * Deletes snapshots orphaned by a change of connection id key, and snapshots older than
+     * {@code max-age-days}; then records {@code keyId} as the key of the directory.
+     */
+    public void retainKey(String keyId) {
+        if (!enabled) {
+            return;
+        }
+
+        Path root = Path.of(directory);
+        Path marker = root.resolve(KEY_MARKER);
+        boolean sameKey;
+        try {
+            sameKey = Files.exists(marker) && keyId.equals(Files.readString(marker, StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            sameKey = false;
+        }
+
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            log.warn("Could not create schema snapshot directory {}: {}", directory, e.getMessage());
+            return;
+        }
+
+        long oldest = System.currentTimeMillis() - maxAgeDays * 86_400_000L;
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path file : (Iterable<Path>) files.filter(path -> path.getFileName().toString().endsWith(SUFFIX))::iterator) {
+                if (!sameKey || Files.getLastModifiedTime(file).toMillis() < oldest) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            }
+            if (!sameKey) {
+                Files.writeString(marker, keyId, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            log.warn("Could not prune schema snapshots in {}: {}", directory, e.getMessage());
+        }
+
+        if (deleted > 0) {
+            log.info("Deleted {} schema snapshots {}", deleted,
+                sameKey ? "older than " + maxAgeDays + " days" : "written under another connection id key");
+        }
+    }
+
+    public List<String> listConnectionIds() {
+        if (!enabled || !Files.isDirectory(Path.of(directory))) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.list(Path.of(directory))) {
+            return files
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SUFFIX))
+                .map(name -> new String(
+                    Base64.getUrlDecoder().decode(name.substring(0, name.length() - SUFFIX.length())),
+                    StandardCharsets.UTF_8))
+                .toList();
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not list schema snapshots in {}: {}", directory, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    public Optional<Snapshot> load(String connectionId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        Path file = snapshotFile(connectionId);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        try {
+            // Read into the heap rather than mapped: a live mapping keeps Windows from replacing the file on save
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+            if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            if (!connectionId.equals(readString(buffer))) {
+                return Optional.empty();
+            }
+
+            long savedAt = buffer.getLong();
+            SchemaFingerprint fingerprint = readFingerprint(buffer);
+            DatabaseSchema schema = readSchema(buffer);
+
+            return Optional.of(new Snapshot(schema, fingerprint, savedAt));
+
+        } catch (IOException | RuntimeException e) {
+            // Truncated or foreign file; the next introspection overwrites it
+            log.warn("Discarding unreadable schema snapshot {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void saveInBackground(String connectionId, DatabaseSchema schema, SchemaFingerprint fingerprint) {
+        if (!enabled) {
+            return;
+        }
+
+        Mono.fromRunnable(() -> save(connectionId, schema, fingerprint))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe();
+    }
+
+    public void save(String connectionId, DatabaseSchema schema, SchemaFingerprint fingerprint) {
+        Path file = snapshotFile(connectionId);
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "snapshot", ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                writeString(out, connectionId);
+                out.writeLong(System.currentTimeMillis());
+                writeFingerprint(out, fingerprint);
+                writeSchema(out, schema);
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            log.warn("Could not persist schema snapshot for {}: {}", connectionId, e.getMessage());
+        }
+    }
+
+    private Path snapshotFile(String connectionId) {
+        String fileName = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(connectionId.getBytes(StandardCharsets.UTF_8));
+        return Path.of(directory, fileName + SUFFIX);
+    }
+
+    // Encoding
+
+    private void writeFingerprint(DataOutputStream out, SchemaFingerprint fingerprint) throws IOException {
+        writeString(out, fingerprint.version());
+        writeString(out, fingerprint.quickToken());
+        out.writeInt(fingerprint.tables().size());
+        for (Map.Entry<String, String> entry : fingerprint.tables().entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private void writeSchema(DataOutputStream out, DatabaseSchema schema) throws IOException {
+        writeString(out, schema.databaseName());
+
+        out.writeInt(schema.tables().size());
+        for (DatabaseSchema.TableInfo table : schema.tables()) {
+            writeString(out, table.name());
+            writeString(out, table.schema());
+            writeString(out, table.type());
+            writeString(out, table.comment());
+            writeColumns(out, table.columns());
+
+            out.writeInt(table.indexes().size());
+            for (DatabaseSchema.IndexInfo index : table.indexes()) {
+                writeString(out, index.name());
+                out.writeBoolean(index.isUnique());
+                writeString(out, index.type());
+                out.writeInt(index.columns().size());
+                for (String column : index.columns()) {
+                    writeString(out, column);
+                }
+            }
+
+            out.writeInt(table.foreignKeys().size());
+            for (DatabaseSchema.ForeignKeyInfo fk : table.foreignKeys()) {
+                writeString(out, fk.name());
+                writeString(out, fk.columnName());
+                writeString(out, fk.referencedTable());
+                writeString(out, fk.referencedColumn());
+                writeString(out, fk.onUpdate());
+                writeString(out, fk.onDelete());
+            }
+        }
+
+        out.writeInt(schema.views().size());
+        for (DatabaseSchema.ViewInfo view : schema.views()) {
+            writeString(out, view.name());
+            writeString(out, view.schema());
+            writeString(out, view.definition());
+            writeString(out, view.comment());
+            writeColumns(out, view.columns());
+        }
+
+        out.writeInt(schema.metadata().size());
+        for (Map.Entry<String, Object> entry : schema.metadata().entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue() != null ? entry.getValue().toString() : null);
+        }
+    }
+
+    private void writeColumns(DataOutputStream out, List<DatabaseSchema.ColumnInfo> columns) throws IOException {
+        out.writeInt(columns.size());
+        for (DatabaseSchema.ColumnInfo column : columns) {
+            writeString(out, column.name());
+            writeString(out, column.dataType());
+            writeString(out, column.columnType());
+            out.writeBoolean(column.nullable());
+            out.writeBoolean(column.isPrimaryKey());
+            out.writeBoolean(column.isAutoIncrement());
+            writeString(out, column.defaultValue() != null ? column.defaultValue().toString() : null);
+            writeString(out, column.comment());
+            writeInteger(out, column.maxLength());
+            writeInteger(out, column.precision());
+            writeInteger(out, column.scale());
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    // Decoding
+
+    private SchemaFingerprint readFingerprint(ByteBuffer buffer) {
+        String version = readString(buffer);
+        String quickToken = readString(buffer);
+        int count = buffer.getInt();
+        Map<String, String> tables = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            tables.put(readString(buffer), readString(buffer));
+        }
+        return new SchemaFingerprint(version, quickToken, tables);
+    }
+
+    private DatabaseSchema readSchema(ByteBuffer buffer) {
+        String databaseName = readString(buffer);
+
+        int tableCount = buffer.getInt();
+        List<DatabaseSchema.TableInfo> tables = new ArrayList<>(tableCount);
+        for (int i = 0; i < tableCount; i++) {
+            String name = readString(buffer);
+            String schema = readString(buffer);
+            String type = readString(buffer);
+            String comment = readString(buffer);
+            List<DatabaseSchema.ColumnInfo> columns = readColumns(buffer);
+
+            int indexCount = buffer.getInt();
+            List<DatabaseSchema.IndexInfo> indexes = new ArrayList<>(indexCount);
+            for (int j = 0; j < indexCount; j++) {
+                String indexName = readString(buffer);
+                boolean unique = buffer.get() != 0;
+                String indexType = readString(buffer);
+                int columnCount = buffer.getInt();
+                List<String> indexColumns = new ArrayList<>(columnCount);
+                for (int k = 0; k < columnCount; k++) {
+                    indexColumns.add(readString(buffer));
+                }
+                indexes.add(new DatabaseSchema.IndexInfo(indexName, unique, indexColumns, indexType));
+            }
+
+            int fkCount = buffer.getInt();
+            List<DatabaseSchema.ForeignKeyInfo> foreignKeys = new ArrayList<>(fkCount);
+            for (int j = 0; j < fkCount; j++) {
+                foreignKeys.add(new DatabaseSchema.ForeignKeyInfo(
+                    readString(buffer), readString(buffer), readString(buffer),
+                    readString(buffer), readString(buffer), readString(buffer)
+                ));
+            }
+
+            tables.add(new DatabaseSchema.TableInfo(name, schema, type, columns, indexes, foreignKeys, comment));
+        }
+
+        int viewCount = buffer.getInt();
+        List<DatabaseSchema.ViewInfo> views = new ArrayList<>(viewCount);
+        for (int i = 0; i < viewCount; i++) {
+            String name = readString(buffer);
+            String schema = readString(buffer);
+            String definition = readString(buffer);
+            String comment = readString(buffer);
+            views.add(new DatabaseSchema.ViewInfo(name, schema, definition, readColumns(buffer), comment));
+        }
+
+        int metadataCount = buffer.getInt();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < metadataCount; i++) {
+            metadata.put(readString(buffer), readString(buffer));
+        }
+
+        return new DatabaseSchema(databaseName, tables, views, metadata);
+    }
+
+    private List<DatabaseSchema.ColumnInfo> readColumns(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<DatabaseSchema.ColumnInfo> columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            columns.add(new DatabaseSchema.ColumnInfo(
+                readString(buffer),
+                readString(buffer),
+                readString(buffer),
+                buffer.get() != 0,
+                buffer.get() != 0,
+                buffer.get() != 0,
+                readString(buffer),
+                readString(buffer),
+                readInteger(buffer),
+                readInteger(buffer),
+                readInteger(buffer)
+            ));
+        }
+        return columns;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Integer readInteger(ByteBuffer buffer) {
+        return buffer.get() != 0 ? buffer.getInt() : null;
+    }
+}
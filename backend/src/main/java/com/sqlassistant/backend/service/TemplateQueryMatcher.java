@@ -0,0 +1,286 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.QueryDto;
+import com.sqlassistant.backend.model.DatabaseSchema;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Deterministic NL-to-SQL for formulaic questions ("how many rows in X", "top 10 Y by Z",
+ * "list columns of T"). Entity names are resolved against an index of the schema's table and
+ * column names; a template only answers when every entity resolves unambiguously, otherwise
+ * the question goes to the LLM.
+ */
+@Component
+public class TemplateQueryMatcher {
+
+    private static final int DEFAULT_ROW_LIMIT = 100;
+    private static final int MAX_ROW_LIMIT = 1000;
+
+    private static final Pattern COUNT_PATTERN = Pattern.compile(
+        "^(?:how many|count(?: of)?(?: the)?|number of|total number of)\\s+" +
+        "(?:(?:rows|records|entries)\\s+(?:are\\s+there\\s+)?(?:in|of)\\s+)?" +
+        "(?:the\\s+)?(?<table>[\\w .-]+?)(?:\\s+table)?(?:\\s+(?:are there|do we have|exist))?$",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern TOP_N_PATTERN = Pattern.compile(
+        "^(?:(?:show|list|get|find|give)(?:\\s+me)?\\s+)?(?:the\\s+)?(?<direction>top|bottom)\\s+(?<n>\\d{1,4})\\s+" +
+        "(?<table>[\\w .-]+?)\\s+by\\s+(?:the\\s+)?(?<column>[\\w .-]+?)$",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern COLUMNS_PATTERN = Pattern.compile(
+        "^(?:(?:list|show|describe|what are)(?:\\s+me)?\\s+)?(?:the\\s+|all\\s+)?(?:columns|fields)\\s+" +
+        "(?:of|in|for)\\s+(?:the\\s+)?(?<table>[\\w .-]+?)(?:\\s+table)?$",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern SHOW_ROWS_PATTERN = Pattern.compile(
+        "^(?:show|list|display|get)(?:\\s+me)?\\s+(?:all\\s+)?(?:the\\s+)?(?:first\\s+(?<n>\\d{1,4})\\s+)?" +
+        "(?<table>[\\w .-]+?)(?:\\s+table)?$",
+        Pattern.CASE_INSENSITIVE
+    );
+
+    private final Map<String, SchemaIndex> indexes = new ConcurrentHashMap<>();
+
+    public Optional<QueryDto.QueryResponse> match(String connectionId, String naturalLanguageQuery, DatabaseSchema schema) {
+        if (naturalLanguageQuery == null || schema == null) {
+            return Optional.empty();
+        }
+
+        String question = naturalLanguageQuery.trim().replaceAll("[?.!]+$", "").replaceAll("\\s+", " ");
+        SchemaIndex index = indexFor(connectionId, schema);
+
+        Matcher matcher = TOP_N_PATTERN.matcher(question);
+        if (matcher.matches()) {
+            return topN(index, matcher);
+        }
+
+        matcher = COUNT_PATTERN.matcher(question);
+        if (matcher.matches()) {
+            return index.table(matcher.group("table")).map(table -> response(
+                "SELECT COUNT(*) AS row_count FROM " + index.qualified(table),
+                "Counts the rows in " + table.name() + ".",
+                table, true
+            ));
+        }
+
+        matcher = COLUMNS_PATTERN.matcher(question);
+        if (matcher.matches()) {
+            return index.table(matcher.group("table")).map(table -> response(
+                index.columnsQuery(table),
+                "Lists the columns of " + table.name() + ": " +
+                    table.columns().stream().map(DatabaseSchema.ColumnInfo::name).collect(Collectors.joining(", ")) + ".",
+                table, false
+            ));
+        }
+
+        matcher = SHOW_ROWS_PATTERN.matcher(question);
+        if (matcher.matches()) {
+            int limit = rowLimit(matcher.group("n"));
+            return index.table(matcher.group("table")).map(table -> response(
+                "SELECT * FROM " + index.qualified(table) + " LIMIT " + limit,
+                "Returns up to " + limit + " rows from " + table.name() + ".",
+                table, false
+            ));
+        }
+
+        return Optional.empty();
+    }
+
+    private Optional<QueryDto.QueryResponse> topN(SchemaIndex index, Matcher matcher) {
+        Optional<DatabaseSchema.TableInfo> table = index.table(matcher.group("table"));
+        if (table.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Optional<DatabaseSchema.ColumnInfo> column = index.column(table.get(), matcher.group("column"));
+        if (column.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int limit = rowLimit(matcher.group("n"));
+        boolean descending = "top".equalsIgnoreCase(matcher.group("direction"));
+        String sql = "SELECT * FROM " + index.qualified(table.get()) +
+            " ORDER BY " + index.quote(column.get().name()) + (descending ? " DESC" : " ASC") +
+            " LIMIT " + limit;
+
+        return Optional.of(response(
+            sql,
+            "Returns the " + limit + " rows of " + table.get().name() + " with the " +
+                (descending ? "highest" : "lowest") + " " + column.get().name() + ".",
+            table.get(), false
+        ));
+    }
+
+    private int rowLimit(String requested) {
+        if (requested == null) {
+            return DEFAULT_ROW_LIMIT;
+        }
+        return Math.max(1, Math.min(Integer.parseInt(requested), MAX_ROW_LIMIT));
+    }
+
+    private QueryDto.QueryResponse response(
+        String sql, String explanation, DatabaseSchema.TableInfo table, boolean hasAggregations) {
+
+        return new QueryDto.QueryResponse(
+            sql,
+            explanation,
+            Collections.emptyList(),
+            true,
+            new QueryDto.QueryMetadata(
+                "SELECT",
+                List.of(table.name()),
+                false,
+                false,
+                hasAggregations,
+                "TEMPLATE",
+                LocalDateTime.now()
+            )
+        );
+    }
+
+    /**
+     * The schema cache hands out the same instance until the schema changes, so an identity
+     * check is enough to reuse the index.
+     */
+    private SchemaIndex indexFor(String connectionId, DatabaseSchema schema) {
+        if (connectionId == null) {
+            return new SchemaIndex(schema);
+        }
+
+        SchemaIndex index = indexes.get(connectionId);
+        if (index == null || index.schema != schema) {
+            index = new SchemaIndex(schema);
+            indexes.put(connectionId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Normalized-name lookup over tables and views. Names are matched case-insensitively with
+     * underscores treated as spaces and simple singular/plural variants; a name that maps to
+     * more than one object is ambiguous and never resolves.
+     */
+    private static final class SchemaIndex {
+
+        private final DatabaseSchema schema;
+        private final String dialect;
+        private final Map<String, List<DatabaseSchema.TableInfo>> tables = new HashMap<>();
+        private final Map<String, List<DatabaseSchema.TableInfo>> tableVariants = new HashMap<>();
+        private final Map<DatabaseSchema.TableInfo, Map<String, List<DatabaseSchema.ColumnInfo>>> columns = new IdentityHashMap<>();
+        private final Map<DatabaseSchema.TableInfo, Map<String, List<DatabaseSchema.ColumnInfo>>> columnVariants = new IdentityHashMap<>();
+
+        SchemaIndex(DatabaseSchema schema) {
+            this.schema = schema;
+            Object product = schema.metadata() != null ? schema.metadata().get("databaseProductName") : null;
+            this.dialect = product != null ? product.toString().toLowerCase() : "";
+
+            List<DatabaseSchema.TableInfo> all = new ArrayList<>(schema.tables());
+            // Views are addressable by name too; expose them through the same TableInfo shape
+            for (DatabaseSchema.ViewInfo view : schema.views()) {
+                all.add(new DatabaseSchema.TableInfo(
+                    view.name(), view.schema(), "VIEW", view.columns(),
+                    Collections.emptyList(), Collections.emptyList(), view.comment()
+                ));
+            }
+
+            for (DatabaseSchema.TableInfo table : all) {
+                tables.computeIfAbsent(normalize(table.name()), k -> new ArrayList<>()).add(table);
+                for (String variant : variants(table.name())) {
+                    tableVariants.computeIfAbsent(variant, k -> new ArrayList<>()).add(table);
+                }
+
+                Map<String, List<DatabaseSchema.ColumnInfo>> exactColumns = new HashMap<>();
+                Map<String, List<DatabaseSchema.ColumnInfo>> variantColumns = new HashMap<>();
+                for (DatabaseSchema.ColumnInfo column : table.columns()) {
+                    exactColumns.computeIfAbsent(normalize(column.name()), k -> new ArrayList<>()).add(column);
+                    for (String variant : variants(column.name())) {
+                        variantColumns.computeIfAbsent(variant, k -> new ArrayList<>()).add(column);
+                    }
+                }
+                columns.put(table, exactColumns);
+                columnVariants.put(table, variantColumns);
+            }
+        }
+
+        // An exact name wins over a singular/plural variant, so "user" and "users" tables can coexist
+
+        Optional<DatabaseSchema.TableInfo> table(String phrase) {
+            String normalized = normalize(phrase);
+            return unique(tables.get(normalized)).or(() -> unique(tableVariants.get(normalized)));
+        }
+
+        Optional<DatabaseSchema.ColumnInfo> column(DatabaseSchema.TableInfo table, String phrase) {
+            String normalized = normalize(phrase);
+            return unique(columns.getOrDefault(table, Map.of()).get(normalized))
+                .or(() -> unique(columnVariants.getOrDefault(table, Map.of()).get(normalized)));
+        }
+
+        String qualified(DatabaseSchema.TableInfo table) {
+            return table.schema() != null && !table.schema().isEmpty()
+                ? quote(table.schema()) + "." + quote(table.name())
+                : quote(table.name());
+        }
+
+        String quote(String identifier) {
+            return dialect.contains("mysql")
+                ? "`" + identifier.replace("`", "``") + "`"
+                : "\"" + identifier.replace("\"", "\"\"") + "\"";
+        }
+
+        String columnsQuery(DatabaseSchema.TableInfo table) {
+            String name = table.name().replace("'", "''");
+            if (dialect.contains("sqlite")) {
+                return "SELECT name AS column_name, type AS data_type FROM pragma_table_info('" + name + "')";
+            }
+
+            String query = "SELECT column_name, data_type FROM information_schema.columns WHERE table_name = '" + name + "'";
+            if (table.schema() != null && !table.schema().isEmpty()) {
+                query += " AND table_schema = '" + table.schema().replace("'", "''") + "'";
+            } else if (dialect.contains("mysql")) {
+                query += " AND table_schema = DATABASE()";
+            }
+            return query + " ORDER BY ordinal_position";
+        }
+
+        private static <T> Optional<T> unique(List<T> candidates) {
+            if (candidates == null || candidates.isEmpty()) {
+                return Optional.empty();
+            }
+            T first = candidates.get(0);
+            return candidates.stream().allMatch(candidate -> candidate == first) ? Optional.of(first) : Optional.empty();
+        }
+
+        private static Set<String> variants(String name) {
+            String normalized = normalize(name);
+            Set<String> variants = new HashSet<>();
+            variants.add(normalized);
+            if (normalized.endsWith("ies")) {
+                variants.add(normalized.substring(0, normalized.length() - 3) + "y");
+            } else if (normalized.endsWith("es")) {
+                variants.add(normalized.substring(0, normalized.length() - 2));
+                variants.add(normalized.substring(0, normalized.length() - 1));
+            } else if (normalized.endsWith("s")) {
+                variants.add(normalized.substring(0, normalized.length() - 1));
+            } else if (normalized.endsWith("y")) {
+                variants.add(normalized.substring(0, normalized.length() - 1) + "ies");
+            } else {
+                variants.add(normalized + "s");
+                variants.add(normalized + "es");
+            }
+            return variants;
+        }
+
+        private static String normalize(String phrase) {
+            return phrase.toLowerCase().replaceAll("[^a-z0-9]+", " ").trim();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.sqlassistant.backend.model.DatabaseSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Startup warm-up that gates readiness. After the application is ready it registers each connection
+ * listed under {@code query.warmup.connections}, preloads its schema (and template index), then
+ * runs synthetic validate / row-limit / template / prompt-build iterations so JSqlParser and the
+ * hot request paths are loaded and JIT-compiled before real traffic arrives.
+ *
+ * Registered as the {@code warmup} health indicator, which is OUT_OF_SERVICE until the warm-up
+ * finishes and is part of the readiness group, so rollouts only route traffic to warm instances.
+ * A failing connection is logged and skipped; a warm-up that exceeds its timeout still reports UP.
+ */
+@Service("warmup")
+public class WarmupService implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupService.class);
+
+    private static final String SYNTHETIC_CONNECTION_ID = "__warmup__";
+
+    /** Statement shapes covering the validator's visitors: joins, subqueries, CTEs, set operations and a rejected write. */
+    private static final List<String> SYNTHETIC_SQL = List.of(
+        "SELECT id, name FROM customers WHERE created_at > '2024-01-01' ORDER BY name LIMIT 50",
+        "SELECT c.name, COUNT(o.id) AS orders FROM customers c JOIN orders o ON o.customer_id = c.id GROUP BY c.name HAVING COUNT(o.id) > 3",
+        "SELECT * FROM orders WHERE customer_id IN (SELECT id FROM customers WHERE country = 'DE')",
+        "WITH recent AS (SELECT * FROM orders WHERE total > 100) SELECT customer_id, SUM(total) FROM recent GROUP BY customer_id",
+        "SELECT id FROM customers UNION ALL SELECT customer_id FROM orders LIMIT 10 OFFSET 5",
+        "SELECT * FROM orders",
+        "DELETE FROM orders WHERE id = 1"
+    );
+
+    private static final List<String> SYNTHETIC_QUESTIONS = List.of(
+        "how many rows in orders",
+        "top 10 orders by total",
+        "list columns of customers",
+        "show first 20 customers",
+        "which customers spent the most last quarter"
+    );
+
+    private final DatabaseService databaseService;
+    private final ConnectionRegistry connectionRegistry;
+    private final QueryValidationService validationService;
+    private final TemplateQueryMatcher templateMatcher;
+    private final AiService aiService;
+    private final Environment environment;
+
+    @Value("${query.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${query.warmup.iterations:2000}")
+    private int iterations;
+
+    @Value("${query.warmup.timeout-seconds:120}")
+    private int timeoutSeconds;
+
+    private volatile String phase = "PENDING";
+    private volatile Map<String, Object> summary = Map.of();
+
+    public WarmupService(DatabaseService databaseService, ConnectionRegistry connectionRegistry,
+                         QueryValidationService validationService, TemplateQueryMatcher templateMatcher,
+                         AiService aiService, Environment environment) {
+        this.databaseService = databaseService;
+        this.connectionRegistry = connectionRegistry;
+        this.validationService = validationService;
+        this.templateMatcher = templateMatcher;
+        this.aiService = aiService;
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            phase = "SKIPPED";
+            return;
+        }
+
+        phase = "RUNNING";
+        long started = System.nanoTime();
+
+        Mono.fromRunnable(this::runWarmup)
+            .subscribeOn(Schedulers.boundedElastic())
+            .timeout(Duration.ofSeconds(timeoutSeconds))
+            .subscribe(
+                ignored -> { },
+                error -> {
+                    log.warn("Warm-up did not finish within {}s ({}); reporting ready anyway", timeoutSeconds, error.toString());
+                    phase = "TIMED_OUT";
+                },
+                () -> {
+                    log.info("Warm-up finished in {} ms: {}", (System.nanoTime() - started) / 1_000_000, summary);
+                    phase = "COMPLETE";
+                }
+            );
+    }
+
+    private void runWarmup() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<DatabaseSchema> schemas = new ArrayList<>();
+
+        long started = System.nanoTime();
+        int failed = 0;
+        for (DatabaseConnectionDto connection : configuredConnections()) {
+            try {
+                // Registered like a client connection, so requests using the same profile find the warm cache
+                String connectionId = connectionRegistry.register(connection).id();
+                DatabaseSchema schema = databaseService.getSchema(connectionId, connection);
+                // Builds the per-connection template index as a side effect
+                templateMatcher.match(connectionId, SYNTHETIC_QUESTIONS.get(0), schema);
+                schemas.add(schema);
+            } catch (Exception e) {
+                failed++;
+                log.warn("Warm-up could not load {} connection {}: {}", connection.type(), connection.database(), e.getMessage());
+            }
+        }
+        result.put("connections", schemas.size());
+        result.put("failedConnections", failed);
+        result.put("connectionsMs", (System.nanoTime() - started) / 1_000_000);
+
+        if (schemas.isEmpty()) {
+            schemas.add(syntheticSchema());
+        }
+
+        started = System.nanoTime();
+        int completed = 0;
+        for (; completed < iterations && !Thread.currentThread().isInterrupted(); completed++) {
+            String sql = SYNTHETIC_SQL.get(completed % SYNTHETIC_SQL.size());
+            String question = SYNTHETIC_QUESTIONS.get(completed % SYNTHETIC_QUESTIONS.size());
+            DatabaseSchema schema = schemas.get(completed % schemas.size());
+
+            validationService.validateQuery(sql);
+            validationService.pushDownRowLimit(sql, 1000, null);
+            templateMatcher.match(SYNTHETIC_CONNECTION_ID, question, schema);
+            aiService.buildPrompt(question, schema, null);
+        }
+        result.put("iterations", completed);
+        result.put("iterationsMs", (System.nanoTime() - started) / 1_000_000);
+
+        summary = Collections.unmodifiableMap(result);
+    }
+
+    private List<DatabaseConnectionDto> configuredConnections() {
+        // A list of records can't be injected with @Value, so bind it directly
+        return Binder.get(environment)
+            .bind("query.warmup.connections", Bindable.listOf(DatabaseConnectionDto.class))
+            .orElse(List.of());
+    }
+
+    /** Stand-in schema for the prompt and template iterations when no connection is configured. */
+    private static DatabaseSchema syntheticSchema() {
+        DatabaseSchema.ColumnInfo id = column("id", "INTEGER", true);
+        DatabaseSchema.TableInfo customers = new DatabaseSchema.TableInfo(
+            "customers", null, "TABLE",
+            List.of(id, column("name", "VARCHAR", false), column("country", "VARCHAR", false), column("created_at", "TIMESTAMP", false)),
+            List.of(new DatabaseSchema.IndexInfo("pk_customers", true, List.of("id"), "BTREE")),
+            List.of(), null
+        );
+        DatabaseSchema.TableInfo orders = new DatabaseSchema.TableInfo(
+            "orders", null, "TABLE",
+            List.of(id, column("customer_id", "INTEGER", false), column("total", "DECIMAL", false)),
+            List.of(new DatabaseSchema.IndexInfo("pk_orders", true, List.of("id"), "BTREE")),
+            List.of(new DatabaseSchema.ForeignKeyInfo("fk_orders_customer", "customer_id", "customers", "id", null, null)),
+            null
+        );
+        return new DatabaseSchema("warmup", List.of(customers, orders), List.of(), Map.of());
+    }
+
+    private static DatabaseSchema.ColumnInfo column(String name, String type, boolean primaryKey) {
+        return new DatabaseSchema.ColumnInfo(name, type, type, !primaryKey, primaryKey, false, null, null, null, null, null);
+    }
+
+    @Override
+    public Health health() {
+        String current = phase;
+        Health.Builder builder = current.equals("PENDING") || current.equals("RUNNING")
+            ? Health.outOfService()
+            : Health.up();
+        return builder.withDetail("phase", current).withDetails(summary).build();
+    }
+}
@@ -0,0 +1,190 @@
+package com.sqlassistant.backend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.sqlassistant.backend.dto.QueryDto;
+import com.sqlassistant.backend.service.ConnectionRegistry;
+import com.sqlassistant.backend.service.DatabaseService;
+import com.sqlassistant.backend.service.InFlightOperationRegistry;
+import com.sqlassistant.backend.service.JdbcConnectionPools;
+import com.sqlassistant.backend.service.QueryExplanationService;
+import com.sqlassistant.backend.service.QueryGenerationService;
+import com.sqlassistant.backend.service.QueryHistoryStore;
+import com.sqlassistant.backend.service.QueryShapeStats;
+import com.sqlassistant.backend.service.QueryValidationService;
+import com.sqlassistant.backend.service.ResultExporter;
+import com.sqlassistant.backend.service.ResultSnapshotStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class QueryControllerTest {
+
+    private static final String CONNECTION_ID = "conn-1";
+    private static final DatabaseConnectionDto CONNECTION = new DatabaseConnectionDto(
+        DatabaseConnectionDto.DatabaseType.H2, null, null, "mem:controller", "sa", "", null, null);
+
+    private final DatabaseService databaseService = mock(DatabaseService.class);
+    private final ConnectionRegistry connectionRegistry = mock(ConnectionRegistry.class);
+    private final QueryValidationService validationService = mock(QueryValidationService.class);
+    private final JdbcConnectionPools connectionPools = mock(JdbcConnectionPools.class);
+    private final InFlightOperationRegistry operations = new InFlightOperationRegistry();
+    private final Scheduler jdbcScheduler = Schedulers.newBoundedElastic(16, 100, "test-jdbc");
+
+    private QueryController controller;
+
+    @BeforeEach
+    void configure() {
+        controller = new QueryController(
+            mock(QueryExplanationService.class), databaseService, connectionRegistry, validationService,
+            mock(QueryHistoryStore.class), mock(QueryGenerationService.class), operations, connectionPools,
+            mock(ResultExporter.class), mock(QueryShapeStats.class), mock(ResultSnapshotStore.class),
+            new ObjectMapper(), jdbcScheduler);
+        ReflectionTestUtils.setField(controller, "maxBatchQueries", 50);
+
+        when(connectionRegistry.resolve(eq(CONNECTION_ID), any()))
+            .thenReturn(Optional.of(new ConnectionRegistry.ResolvedConnection(CONNECTION_ID, CONNECTION)));
+        when(validationService.validateQuery(anyString()))
+            .thenReturn(new QueryDto.QueryValidationResponse(true, List.of(), List.of(), List.of(), null));
+    }
+
+    @AfterEach
+    void close() {
+        jdbcScheduler.dispose();
+    }
+
+    private static QueryDto.QueryBatchRequest batch(int size) {
+        return new QueryDto.QueryBatchRequest(
+            IntStream.range(0, size)
+                .mapToObj(i -> new QueryDto.QueryExecutionRequest("SELECT " + i, null, null, null, null, false))
+                .toList(),
+            null);
+    }
+
+    private static QueryDto.QueryExecutionResponse success() {
+        return new QueryDto.QueryExecutionResponse(List.of(), List.of(), List.of(), 0, 1, "SUCCESS", null, null);
+    }
+
+    private List<Map<String, Object>> run(ResponseEntity<Flux<Map<String, Object>>> response) {
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return response.getBody().collectList().block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void batchRunsEveryQueryWithAtMostThePoolSizeInFlight() throws Exception {
+        when(connectionPools.maxPerConnection()).thenReturn(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(databaseService.executePooled(eq(CONNECTION_ID), eq(CONNECTION), any(), any())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } finally {
+                running.decrementAndGet();
+            }
+            return success();
+        });
+
+        List<Map<String, Object>> lines = run(controller.executeBatch(batch(10), CONNECTION_ID, "batch-1"));
+
+        assertThat(lines).hasSize(11);
+        assertThat(lines.subList(0, 10)).extracting(line -> line.get("index"))
+            .containsExactlyInAnyOrderElementsOf(IntStream.range(0, 10).boxed().toList());
+        assertThat(lines.get(10)).containsEntry("status", "COMPLETE").containsEntry("queries", 10);
+        assertThat(peak.get()).isEqualTo(3);
+        assertThat(operations.inFlightCount()).isZero();
+    }
+
+    @Test
+    void aFailingQueryIsReportedOnItsLineAndTheRestStillRun() throws Exception {
+        when(connectionPools.maxPerConnection()).thenReturn(2);
+        when(databaseService.executePooled(eq(CONNECTION_ID), eq(CONNECTION), any(), any())).thenReturn(success());
+        when(databaseService.executePooled(
+                eq(CONNECTION_ID), eq(CONNECTION), argThat(query -> query != null && query.sql().equals("SELECT 1")), any()))
+            .thenThrow(new SQLException("boom"));
+
+        List<Map<String, Object>> lines = run(controller.executeBatch(batch(3), CONNECTION_ID, null));
+
+        assertThat(lines).filteredOn(line -> Integer.valueOf(1).equals(line.get("index")))
+            .singleElement()
+            .satisfies(line -> assertThat(line).containsEntry("status", "ERROR")
+                .containsEntry("message", "Query execution failed: boom"));
+        assertThat(lines).filteredOn(line -> "SUCCESS".equals(line.get("status"))).hasSize(2);
+        assertThat(lines.get(lines.size() - 1)).containsEntry("status", "COMPLETE");
+    }
+
+    @Test
+    void invalidQueriesStopTheWholeBatch() throws Exception {
+        when(validationService.validateQuery("SELECT 2"))
+            .thenReturn(new QueryDto.QueryValidationResponse(false, List.of("bad"), List.of(), List.of(), null));
+
+        ResponseEntity<Flux<Map<String, Object>>> response = controller.executeBatch(batch(3), CONNECTION_ID, null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().collectList().block()).singleElement()
+            .satisfies(line -> assertThat(line).containsEntry("message", "Query validation failed"));
+        verifyNoInteractions(databaseService);
+    }
+
+    @Test
+    void cancelStopsAnOperationOnTheSameConnection() {
+        InFlightOperationRegistry.Operation operation = operations.register("req-1", "EXECUTE", CONNECTION_ID);
+
+        ResponseEntity<?> response = controller.cancelQuery(CONNECTION_ID, "req-1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(operation.isCancelled()).isTrue();
+        assertThat(operations.inFlightCount()).isZero();
+    }
+
+    @Test
+    void cancelFromAnotherConnectionIsNotFoundAndLeavesTheOperationRunning() {
+        when(connectionRegistry.resolve(eq("conn-2"), any()))
+            .thenReturn(Optional.of(new ConnectionRegistry.ResolvedConnection("conn-2", CONNECTION)));
+        InFlightOperationRegistry.Operation operation = operations.register("req-1", "EXECUTE", CONNECTION_ID);
+
+        ResponseEntity<?> response = controller.cancelQuery("conn-2", "req-1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        // The same answer as for an id nobody is using
+        assertThat(response.getBody()).isEqualTo(Map.of("status", "ERROR", "message", "No in-flight request with id req-1"));
+        assertThat(operation.isCancelled()).isFalse();
+        assertThat(operations.inFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelOnAnUnknownConnectionIsNotFound() {
+        when(connectionRegistry.resolve(eq("expired"), any())).thenReturn(Optional.empty());
+        InFlightOperationRegistry.Operation operation = operations.register("req-1", "EXECUTE", CONNECTION_ID);
+
+        ResponseEntity<?> response = controller.cancelQuery("expired", "req-1");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(response.getBody()).isInstanceOf(Map.class);
+        assertThat(((Map<?, ?>) response.getBody()).get("error")).isEqualTo("UNKNOWN_CONNECTION");
+        assertThat(operation.isCancelled()).isFalse();
+    }
+}
@@ -0,0 +1,150 @@
+package com.sqlassistant.backend.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarRowsTest {
+
+    private static final String QUERY = "SELECT id, name, price, ratio, active, created_at, payload FROM t ORDER BY id";
+
+    private static Connection connection;
+
+    /** Configured like Spring Boot's own mapper: dates as ISO strings, java.time supported. */
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+    private TimeZone defaultZone;
+
+    @BeforeAll
+    static void createTable() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:columnar-rows", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE t (id BIGINT, name VARCHAR(20), price DOUBLE, ratio REAL, active BOOLEAN, "
+                + "created_at TIMESTAMP(6), payload VARBINARY(4))");
+            statement.execute("INSERT INTO t VALUES (1, 'a', 1.5, 0.1, TRUE, TIMESTAMP '2024-03-31 02:30:00.123456', X'0102'), "
+                + "(2, NULL, NULL, NULL, NULL, NULL, NULL), "
+                + "(3, 'c', -2.25, 3.5, FALSE, TIMESTAMP '1999-12-31 23:59:59', X'')");
+        }
+    }
+
+    @AfterAll
+    static void closeConnection() throws SQLException {
+        connection.close();
+    }
+
+    /** A zone with a DST gap at 02:30 on the test date, so any zone conversion shows up. */
+    @BeforeEach
+    void useNonUtcZone() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+    }
+
+    @AfterEach
+    void restoreZone() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    /** What /query/execute returned before the column buffers: one getObject map per row. */
+    private static List<Map<String, Object>> rowMaps(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        while (resultSet.next()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                row.put(metaData.getColumnName(i), resultSet.getObject(i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static ColumnarRows columnar(ResultSet resultSet) throws SQLException {
+        ColumnarRows rows = ColumnarRows.forResultSet(resultSet.getMetaData(), 1000, false);
+        while (resultSet.next()) {
+            rows.readRow(resultSet);
+        }
+        return rows;
+    }
+
+    /**
+     * Makes TIMESTAMP columns behave like MySQL Connector/J's DATETIME: reported and returned
+     * from {@code getObject} as {@link LocalDateTime}.
+     */
+    private static ResultSet asDatetime(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        ResultSetMetaData reportingLocalDateTime = (ResultSetMetaData) Proxy.newProxyInstance(
+            ResultSetMetaData.class.getClassLoader(), new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) ->
+                method.getName().equals("getColumnClassName")
+                    && metaData.getColumnType((Integer) args[0]) == Types.TIMESTAMP
+                    ? LocalDateTime.class.getName()
+                    : method.invoke(metaData, args));
+        return (ResultSet) Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getMetaData")) {
+                    return reportingLocalDateTime;
+                }
+                if (method.getName().equals("getObject") && args.length == 1 && args[0] instanceof Integer index
+                        && metaData.getColumnType(index) == Types.TIMESTAMP) {
+                    return resultSet.getObject(index, LocalDateTime.class);
+                }
+                return method.invoke(resultSet, args);
+            });
+    }
+
+    @Test
+    void serializesLikeTheRowMapsItReplaces() throws Exception {
+        String expected;
+        String actual;
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(QUERY)) {
+                expected = objectMapper.writeValueAsString(rowMaps(resultSet));
+            }
+            try (ResultSet resultSet = statement.executeQuery(QUERY)) {
+                actual = objectMapper.writeValueAsString(columnar(resultSet));
+            }
+        }
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void localDateTimeColumnsKeepTheirWallClockValue() throws Exception {
+        String expected;
+        ColumnarRows rows;
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = asDatetime(statement.executeQuery(QUERY))) {
+                expected = objectMapper.writeValueAsString(rowMaps(resultSet));
+            }
+            try (ResultSet resultSet = asDatetime(statement.executeQuery(QUERY))) {
+                rows = columnar(resultSet);
+            }
+        }
+
+        assertThat(objectMapper.writeValueAsString(rows)).isEqualTo(expected).contains("\"2024-03-31T02:30:00.123456\"");
+        assertThat(rows.get(0).get("CREATED_AT")).isEqualTo(LocalDateTime.of(2024, 3, 31, 2, 30, 0, 123_456_000));
+        assertThat(rows.get(1).get("CREATED_AT")).isNull();
+    }
+}
@@ -0,0 +1,176 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ConnectionRegistryTest {
+
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @TempDir
+    Path directory;
+
+    private final DatabaseService databaseService = mock(DatabaseService.class);
+    private final JdbcConnectionPools connectionPools = mock(JdbcConnectionPools.class);
+    private final ReactiveQueryEngine reactiveQueryEngine = mock(ReactiveQueryEngine.class);
+    private final SchemaSnapshotStore snapshotStore = mock(SchemaSnapshotStore.class);
+
+    private String idSecret = "";
+    private long idleTimeoutMinutes = 720;
+
+    private ConnectionRegistry open() {
+        ConnectionRegistry registry = new ConnectionRegistry(
+            databaseService, connectionPools, reactiveQueryEngine, snapshotStore, VALIDATOR);
+        ReflectionTestUtils.setField(registry, "idSecret", idSecret);
+        ReflectionTestUtils.setField(registry, "idSecretFile", directory.resolve("connection-id.key").toString());
+        ReflectionTestUtils.setField(registry, "idleTimeoutMinutes", idleTimeoutMinutes);
+        registry.init();
+        return registry;
+    }
+
+    private static DatabaseConnectionDto postgres(String username, String password) {
+        return new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.POSTGRESQL, "db.internal", 5432, "shop", username, password, null, null);
+    }
+
+    @Test
+    void sameProfileGetsTheSameIdAndDifferentUsersDoNot() throws Exception {
+        ConnectionRegistry registry = open();
+
+        String id = registry.register(postgres("alice", "a")).id();
+
+        assertThat(registry.register(postgres("alice", "a")).id()).isEqualTo(id);
+        assertThat(registry.register(postgres("bob", "b")).id()).isNotEqualTo(id);
+        assertThat(registry.get(id)).get().extracting(ConnectionRegistry.RegisteredConnection::jdbcUrl)
+            .isEqualTo("jdbc:postgresql://db.internal:5432/shop");
+    }
+
+    @Test
+    void reRegisteringWithANewPasswordKeepsTheIdAndReopensPools() throws Exception {
+        ConnectionRegistry registry = open();
+        String id = registry.register(postgres("alice", "old")).id();
+        verify(connectionPools, never()).evict(id);
+
+        ConnectionRegistry.RegisteredConnection rotated = registry.register(postgres("alice", "new"));
+
+        assertThat(rotated.id()).isEqualTo(id);
+        assertThat(registry.get(id)).get().extracting(registered -> registered.connection().password()).isEqualTo("new");
+        verify(connectionPools).evict(id);
+        verify(reactiveQueryEngine).evict(id);
+    }
+
+    @Test
+    void idsSurviveARestartThroughTheGeneratedKeyFile() throws Exception {
+        String id = open().register(postgres("alice", "a")).id();
+
+        assertThat(directory.resolve("connection-id.key")).exists();
+        assertThat(open().register(postgres("alice", "a")).id()).isEqualTo(id);
+
+        Files.delete(directory.resolve("connection-id.key"));
+        assertThat(open().register(postgres("alice", "a")).id()).isNotEqualTo(id);
+
+        // Snapshots are kept for the first two keys, which match, and pruned for the new one
+        ArgumentCaptor<String> snapshotKeys = ArgumentCaptor.forClass(String.class);
+        verify(snapshotStore, times(3)).retainKey(snapshotKeys.capture());
+        assertThat(snapshotKeys.getAllValues().get(1)).isEqualTo(snapshotKeys.getAllValues().get(0));
+        assertThat(snapshotKeys.getAllValues().get(2)).isNotEqualTo(snapshotKeys.getAllValues().get(0));
+    }
+
+    @Test
+    void configuredSecretTakesPrecedenceOverTheKeyFile() throws Exception {
+        idSecret = "configured-secret";
+        String id = open().register(postgres("alice", "a")).id();
+
+        assertThat(directory.resolve("connection-id.key")).doesNotExist();
+        assertThat(open().register(postgres("alice", "a")).id()).isEqualTo(id);
+
+        idSecret = "another-secret";
+        assertThat(open().register(postgres("alice", "a")).id()).isNotEqualTo(id);
+    }
+
+    @Test
+    void legacyRequestsGetAServerDerivedIdThatCoversThePassword() throws Exception {
+        ConnectionRegistry registry = open();
+        String registeredId = registry.register(postgres("alice", "a")).id();
+
+        ConnectionRegistry.ResolvedConnection legacy = registry.resolve("client-chosen-id", postgres("alice", "a")).orElseThrow();
+
+        assertThat(legacy.id()).isNotEqualTo("client-chosen-id").isNotEqualTo(registeredId);
+        assertThat(registry.resolve("other-client-id", postgres("alice", "a"))).get()
+            .extracting(ConnectionRegistry.ResolvedConnection::id).isEqualTo(legacy.id());
+        assertThat(registry.resolve("client-chosen-id", postgres("alice", "wrong"))).get()
+            .extracting(ConnectionRegistry.ResolvedConnection::id).isNotEqualTo(legacy.id());
+        // A registered id still resolves to its stored profile, whatever DTO comes with it
+        assertThat(registry.resolve(registeredId, postgres("bob", "b"))).get()
+            .extracting(ConnectionRegistry.ResolvedConnection::id).isEqualTo(registeredId);
+    }
+
+    @Test
+    void unknownIdsWithoutAValidLegacyProfileDoNotResolve() throws Exception {
+        ConnectionRegistry registry = open();
+
+        assertThat(registry.resolve("missing", null)).isEmpty();
+        assertThat(registry.resolve("missing", new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.POSTGRESQL, "", null, "shop", null, null, null, null))).isEmpty();
+    }
+
+    @Test
+    void invalidOrUnreachableProfilesAreNotRegistered() throws Exception {
+        ConnectionRegistry registry = open();
+
+        assertThatThrownBy(() -> registry.register(new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.POSTGRESQL, "", null, "shop", null, null, null, null)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("host");
+
+        doThrow(new SQLException("Connection refused")).when(databaseService).testConnection(any());
+        assertThatThrownBy(() -> registry.register(postgres("alice", "a"))).isInstanceOf(SQLException.class);
+        assertThat(registry.resolve(null, null)).isEmpty();
+    }
+
+    @Test
+    void idleProfilesAreDroppedAndTheirPoolsClosed() throws Exception {
+        idleTimeoutMinutes = 0;
+        ConnectionRegistry registry = open();
+        String idle = registry.register(postgres("alice", "a")).id();
+        Thread.sleep(5);
+
+        // Registering another profile sweeps idle ones
+        registry.register(postgres("bob", "b"));
+
+        verify(connectionPools).evict(idle);
+        verify(reactiveQueryEngine).evict(idle);
+        assertThat(registry.get(idle)).isEmpty();
+    }
+
+    @Test
+    void usedProfilesStayRegistered() throws Exception {
+        idleTimeoutMinutes = 1;
+        ConnectionRegistry registry = open();
+        String id = registry.register(postgres("alice", "a")).id();
+
+        assertThat(registry.get(id)).isPresent();
+        assertThat(registry.unregister(id)).isTrue();
+        assertThat(registry.get(id)).isEmpty();
+        assertThat(registry.unregister(id)).isFalse();
+        verify(connectionPools).evict(id);
+    }
+}
@@ -0,0 +1,186 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddedDatabasesTest {
+
+    @TempDir
+    Path directory;
+
+    private final ExecutionProfiles executionProfiles = new ExecutionProfiles();
+    private final EmbeddedDatabases databases = new EmbeddedDatabases(executionProfiles);
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(executionProfiles, "defaultFetchSize", 100);
+        ReflectionTestUtils.setField(executionProfiles, "defaultTimeoutSeconds", 5);
+        ReflectionTestUtils.setField(executionProfiles, "defaultReadOnly", true);
+        ReflectionTestUtils.setField(databases, "enabled", true);
+        ReflectionTestUtils.setField(databases, "maxConnections", 2);
+        ReflectionTestUtils.setField(databases, "acquireTimeoutMs", 2_000L);
+        ReflectionTestUtils.setField(databases, "idleCloseMinutes", 30L);
+        ReflectionTestUtils.setField(databases, "sqliteMmapSizeMb", 16L);
+        ReflectionTestUtils.setField(databases, "sqliteCacheSizeKb", 1024L);
+        ReflectionTestUtils.setField(databases, "sqliteBusyTimeoutMs", 1_000);
+        ReflectionTestUtils.setField(databases, "h2CacheSizeKb", 1024L);
+    }
+
+    @AfterEach
+    void close() {
+        databases.shutdown();
+    }
+
+    /** An H2 file owned by "sa" with a second login that can read it; closed again before the test uses it. */
+    private String h2File() throws SQLException {
+        String database = directory.resolve("shop").toString();
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:" + database, "sa", "secret");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(20))");
+            statement.execute("INSERT INTO items VALUES (1, 'one'), (2, 'two')");
+            statement.execute("CREATE USER reader PASSWORD 'r'");
+            statement.execute("GRANT SELECT ON items TO reader");
+        }
+        return database;
+    }
+
+    private static DatabaseConnectionDto h2(String database, String username, String password) {
+        return new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.H2, null, null, database, username, password, null, null);
+    }
+
+    private String sqliteFile() throws SQLException {
+        String database = directory.resolve("shop.db").toString();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INTEGER PRIMARY KEY, name TEXT)");
+            statement.execute("INSERT INTO items VALUES (1, 'one')");
+        }
+        return database;
+    }
+
+    private static DatabaseConnectionDto sqlite(String database) {
+        return new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.SQLITE, null, null, database, null, null, null, null);
+    }
+
+    private int pools() {
+        return ((Map<?, ?>) ReflectionTestUtils.getField(databases, "engines")).size();
+    }
+
+    private static long count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM items")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @Test
+    void h2FilesAreServedReadOnlyFromOnePoolPerLogin() throws Exception {
+        String database = h2File();
+
+        try (Connection connection = databases.getConnection(h2(database, "sa", "secret"))) {
+            assertThat(count(connection)).isEqualTo(2);
+            assertThat(connection.isReadOnly()).isTrue();
+            try (Statement statement = connection.createStatement()) {
+                assertThatThrownBy(() -> statement.execute("INSERT INTO items VALUES (3, 'three')"))
+                    .isInstanceOf(SQLException.class);
+            }
+        }
+        // Same file and login through another spelling of the URL
+        try (Connection connection = databases.getConnection(h2("file:" + database, "sa", "secret"))) {
+            assertThat(count(connection)).isEqualTo(2);
+        }
+        assertThat(pools()).isEqualTo(1);
+
+        try (Connection connection = databases.getConnection(h2(database, "reader", "r"))) {
+            assertThat(count(connection)).isEqualTo(2);
+        }
+        assertThat(pools()).isEqualTo(2);
+    }
+
+    @Test
+    void aWrongPasswordNeverReachesThePoolAnotherLoginOpened() throws Exception {
+        String database = h2File();
+        assertThat(databases.supports(h2(database, "sa", "secret"))).isTrue();
+
+        DatabaseConnectionDto wrong = h2(database, "sa", "guess");
+
+        assertThat(databases.supports(wrong)).isFalse();
+        assertThatThrownBy(() -> databases.getConnection(wrong)).isInstanceOf(SQLException.class);
+        assertThat(pools()).isEqualTo(1);
+        // Still refused once the right password has been used again
+        try (Connection connection = databases.getConnection(h2(database, "sa", "secret"))) {
+            assertThat(count(connection)).isEqualTo(2);
+        }
+        assertThat(databases.supports(wrong)).isFalse();
+    }
+
+    @Test
+    void sqliteFilesAreServedFromAReadOnlyPool() throws Exception {
+        String database = sqliteFile();
+
+        try (Connection connection = databases.getConnection(sqlite(database))) {
+            assertThat(count(connection)).isEqualTo(1);
+            try (Statement statement = connection.createStatement()) {
+                assertThatThrownBy(() -> statement.execute("INSERT INTO items VALUES (2, 'two')"))
+                    .isInstanceOf(SQLException.class);
+            }
+        }
+    }
+
+    @Test
+    void theFileStampChangesWhenTheFileIsWritten() throws Exception {
+        String database = sqliteFile();
+        long before = databases.fileStamp(sqlite(database));
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database);
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO items VALUES (2, 'two'), (3, 'three')");
+        }
+
+        assertThat(databases.fileStamp(sqlite(database))).isNotEqualTo(before);
+        try (Connection connection = databases.getConnection(sqlite(database))) {
+            assertThat(count(connection)).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void readWriteProfilesAndNonFileDatabasesAreNotPooled() throws Exception {
+        String database = sqliteFile();
+
+        ReflectionTestUtils.setField(executionProfiles, "defaultReadOnly", false);
+        assertThat(databases.supports(sqlite(database))).isFalse();
+        assertThat(databases.fileStamp(sqlite(database))).isEqualTo(-1);
+
+        ReflectionTestUtils.setField(executionProfiles, "defaultReadOnly", true);
+        assertThat(databases.supports(sqlite(database))).isTrue();
+        assertThat(databases.supports(sqlite(":memory:"))).isFalse();
+        assertThat(databases.supports(sqlite(directory.resolve("missing.db").toString()))).isFalse();
+        assertThat(databases.supports(h2("mem:shop", "sa", ""))).isFalse();
+        assertThat(databases.supports(h2("tcp://localhost/shop", "sa", ""))).isFalse();
+    }
+
+    @Test
+    void nothingIsPooledWhenDisabled() throws Exception {
+        ReflectionTestUtils.setField(databases, "enabled", false);
+
+        assertThat(databases.supports(sqlite(sqliteFile()))).isFalse();
+    }
+}
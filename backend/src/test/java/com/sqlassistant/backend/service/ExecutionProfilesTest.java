@@ -0,0 +1,53 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExecutionProfilesTest {
+
+    private final ExecutionProfiles profiles = new ExecutionProfiles();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(profiles, "defaultFetchSize", 500);
+        ReflectionTestUtils.setField(profiles, "defaultTimeoutSeconds", 30);
+        ReflectionTestUtils.setField(profiles, "defaultReadOnly", true);
+    }
+
+    private static DatabaseConnectionDto connection(DatabaseConnectionDto.ExecutionOptions execution) {
+        return new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.POSTGRESQL, "localhost", 5432, "shop", "user", "secret", null, execution);
+    }
+
+    private ExecutionProfiles.Profile resolve(Boolean readOnly, Integer queryTimeoutSeconds) {
+        return profiles.resolve(connection(
+            new DatabaseConnectionDto.ExecutionOptions(null, null, readOnly, null, queryTimeoutSeconds)));
+    }
+
+    @Test
+    void overridesCannotTurnOffReadOnlySessions() {
+        assertThat(resolve(false, null).readOnly()).isTrue();
+        assertThat(resolve(true, null).readOnly()).isTrue();
+    }
+
+    @Test
+    void overridesCanTurnOnReadOnlySessions() {
+        ReflectionTestUtils.setField(profiles, "defaultReadOnly", false);
+
+        assertThat(resolve(null, null).readOnly()).isFalse();
+        assertThat(resolve(true, null).readOnly()).isTrue();
+    }
+
+    @Test
+    void timeoutOverridesStayWithinTheConfiguredLimit() {
+        assertThat(resolve(null, 0).queryTimeoutSeconds()).isEqualTo(1);
+        assertThat(resolve(null, -5).queryTimeoutSeconds()).isEqualTo(1);
+        assertThat(resolve(null, 10).queryTimeoutSeconds()).isEqualTo(10);
+        assertThat(resolve(null, 3600).queryTimeoutSeconds()).isEqualTo(30);
+        assertThat(resolve(null, null).queryTimeoutSeconds()).isEqualTo(30);
+    }
+}
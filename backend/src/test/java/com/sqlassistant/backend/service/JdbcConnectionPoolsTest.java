@@ -0,0 +1,116 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JdbcConnectionPoolsTest {
+
+    private static final DatabaseConnectionDto H2 = new DatabaseConnectionDto(
+        DatabaseConnectionDto.DatabaseType.H2, null, null, "mem:pools;DB_CLOSE_DELAY=-1", "sa", "", null, null);
+
+    private final ExecutionProfiles executionProfiles = new ExecutionProfiles();
+    private final JdbcConnectionPools pools = new JdbcConnectionPools(executionProfiles);
+    private ExecutionProfiles.Profile profile;
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(executionProfiles, "defaultFetchSize", 100);
+        ReflectionTestUtils.setField(executionProfiles, "defaultTimeoutSeconds", 5);
+        ReflectionTestUtils.setField(executionProfiles, "defaultReadOnly", true);
+        ReflectionTestUtils.setField(pools, "maxPerConnection", 2);
+        ReflectionTestUtils.setField(pools, "acquireTimeoutMs", 250L);
+        ReflectionTestUtils.setField(pools, "idleTimeoutMs", 60_000L);
+        profile = executionProfiles.resolve(H2);
+    }
+
+    @AfterEach
+    void close() {
+        pools.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private HikariDataSource pool(String connectionId) {
+        return ((Map<String, HikariDataSource>) ReflectionTestUtils.getField(pools, "pools")).get(connectionId);
+    }
+
+    @Test
+    void borrowersBeyondTheCapWaitAndThenTimeOut() throws Exception {
+        try (Connection first = pools.getConnection("a", H2, profile);
+             Connection second = pools.getConnection("a", H2, profile)) {
+
+            long started = System.nanoTime();
+            assertThatThrownBy(() -> pools.getConnection("a", H2, profile)).isInstanceOf(SQLException.class);
+            assertThat((System.nanoTime() - started) / 1_000_000).isGreaterThanOrEqualTo(200);
+        }
+
+        // Returned connections are handed out again
+        try (Connection again = pools.getConnection("a", H2, profile)) {
+            assertThat(again.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    void eachConnectionIdHasItsOwnCap() throws Exception {
+        try (Connection first = pools.getConnection("a", H2, profile);
+             Connection second = pools.getConnection("a", H2, profile);
+             Connection other = pools.getConnection("b", H2, profile)) {
+
+            assertThat(other.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    void evictClosesThePoolAndTheNextBorrowOpensANewOne() throws Exception {
+        pools.getConnection("a", H2, profile).close();
+        HikariDataSource evicted = pool("a");
+
+        pools.evict("a");
+
+        assertThat(evicted.isClosed()).isTrue();
+        try (Connection fresh = pools.getConnection("a", H2, profile)) {
+            assertThat(fresh.isValid(1)).isTrue();
+        }
+        assertThat(pool("a")).isNotSameAs(evicted);
+        pools.evict("unknown");
+    }
+
+    @Test
+    void sessionSettingsAreResetWhenAConnectionIsReturned() throws Exception {
+        ReflectionTestUtils.setField(pools, "maxPerConnection", 1);
+        // Hikari replaces a connection returned dirty in the background, which can take longer than 250 ms
+        ReflectionTestUtils.setField(pools, "acquireTimeoutMs", 5_000L);
+
+        try (Connection connection = pools.getConnection("a", H2, profile)) {
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+        }
+
+        try (Connection connection = pools.getConnection("a", H2, profile);
+             Statement statement = connection.createStatement()) {
+            assertThat(connection.isReadOnly()).isFalse();
+            assertThat(connection.getAutoCommit()).isTrue();
+            assertThat(statement.execute("SELECT 1")).isTrue();
+        }
+    }
+
+    @Test
+    void aBadConnectionFailsTheBorrowNotPoolCreation() {
+        DatabaseConnectionDto missing = new DatabaseConnectionDto(
+            DatabaseConnectionDto.DatabaseType.H2, null, null, "mem:missing;IFEXISTS=TRUE", "sa", "", null, null);
+
+        assertThatThrownBy(() -> pools.getConnection("missing", missing, executionProfiles.resolve(missing)))
+            .isInstanceOf(SQLException.class);
+    }
+}
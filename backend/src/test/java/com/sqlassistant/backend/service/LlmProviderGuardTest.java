@@ -0,0 +1,209 @@
+package com.sqlassistant.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmProviderGuardTest {
+
+    private static final String PROVIDER = "gemini";
+    private static final String API_KEY = "test-api-key-1234";
+    private static final LlmProviderGuard.Quota UNLIMITED = new LlmProviderGuard.Quota(1_000_000, 1_000);
+
+    private final LlmProviderGuard guard = new LlmProviderGuard(new SimpleMeterRegistry());
+    /** Subscriptions that reached the provider. */
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(guard, "callTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(guard, "maxQueueWaitMs", 0L);
+        ReflectionTestUtils.setField(guard, "maxRetries", 0);
+        ReflectionTestUtils.setField(guard, "initialBackoffMs", 1L);
+        ReflectionTestUtils.setField(guard, "maxBackoffMs", 10L);
+        ReflectionTestUtils.setField(guard, "windowSize", 4);
+        ReflectionTestUtils.setField(guard, "minimumCalls", 4);
+        ReflectionTestUtils.setField(guard, "failureRateThreshold", 50);
+        ReflectionTestUtils.setField(guard, "openSeconds", 60L);
+        ReflectionTestUtils.setField(guard, "halfOpenCalls", 2);
+    }
+
+    private Mono<String> succeeding() {
+        return Mono.fromCallable(() -> {
+            sent.incrementAndGet();
+            return "ok";
+        });
+    }
+
+    private Mono<String> failing(int status) {
+        return Mono.defer(() -> {
+            sent.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(status, "status " + status, HttpHeaders.EMPTY, new byte[0], null));
+        });
+    }
+
+    private String call(Mono<String> call) {
+        return guard.call(PROVIDER, API_KEY, UNLIMITED, call).block(Duration.ofSeconds(5));
+    }
+
+    private void callFailing(int status) {
+        assertThatThrownBy(() -> call(failing(status))).isInstanceOf(WebClientResponseException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> describe() {
+        List<Map<String, Object>> providers = (List<Map<String, Object>>) guard.providers().get("providers");
+        return providers.get(0);
+    }
+
+    private LlmProviderGuard.BreakerState state() {
+        return (LlmProviderGuard.BreakerState) describe().get("state");
+    }
+
+    private void open() {
+        call(succeeding());
+        call(succeeding());
+        callFailing(503);
+        callFailing(503);
+        assertThat(state()).isEqualTo(LlmProviderGuard.BreakerState.OPEN);
+    }
+
+    /** Lets the open period pass, so the next call is a probe. */
+    private void elapseOpenPeriod() {
+        ReflectionTestUtils.setField(guard, "openSeconds", 0L);
+    }
+
+    @Test
+    void opensWhenTheFailureRateReachesTheThresholdAndRejectsWithoutCalling() {
+        open();
+        int sentBefore = sent.get();
+
+        assertThatThrownBy(() -> call(succeeding()))
+            .isInstanceOf(LlmProviderGuard.ProviderUnavailableException.class)
+            .extracting(e -> ((LlmProviderGuard.ProviderUnavailableException) e).getReason())
+            .isEqualTo("CIRCUIT_OPEN");
+        assertThat(sent.get()).isEqualTo(sentBefore);
+        assertThat(describe().get("rejectedOpen")).isEqualTo(1L);
+    }
+
+    @Test
+    void staysClosedBelowTheMinimumNumberOfCalls() {
+        callFailing(503);
+        callFailing(503);
+        callFailing(503);
+
+        assertThat(state()).isEqualTo(LlmProviderGuard.BreakerState.CLOSED);
+    }
+
+    @Test
+    void clientErrorsOtherThan429DoNotCountAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            callFailing(400);
+        }
+
+        assertThat(state()).isEqualTo(LlmProviderGuard.BreakerState.CLOSED);
+        assertThat(describe().get("failures")).isEqualTo(0L);
+    }
+
+    @Test
+    void successfulProbesCloseTheBreakerAndClearTheWindow() {
+        open();
+        elapseOpenPeriod();
+
+        assertThat(call(succeeding())).isEqualTo("ok");
+        assertThat(state()).isEqualTo(LlmProviderGuard.BreakerState.HALF_OPEN);
+
+        assertThat(call(succeeding())).isEqualTo("ok");
+        assertThat(state()).isEqualTo(LlmProviderGuard.BreakerState.CLOSED);
+        assertThat(describe().get("windowCalls")).isEqualTo(0);
+    }
+
+    @Test
+    void failedProbeReopensTheBreaker() {
+        open();
+        elapseOpenPeriod();
+        call(succeeding());
+
+        ReflectionTestUtils.setField(guard, "openSeconds", 60L);
+        callFailing(503);
+
+        assertThat(state()).isEqualTo(LlmProviderGuard.BreakerState.OPEN);
+        assertThatThrownBy(() -> call(succeeding())).isInstanceOf(LlmProviderGuard.ProviderUnavailableException.class);
+    }
+
+    @Test
+    void halfOpenAdmitsOnlyTheConfiguredProbesAndFreesCancelledOnes() {
+        open();
+        elapseOpenPeriod();
+
+        Disposable first = guard.call(PROVIDER, API_KEY, UNLIMITED, Mono.never()).subscribe();
+        Disposable second = guard.call(PROVIDER, API_KEY, UNLIMITED, Mono.never()).subscribe();
+        assertThatThrownBy(() -> call(succeeding())).isInstanceOf(LlmProviderGuard.ProviderUnavailableException.class);
+
+        first.dispose();
+        assertThat(call(succeeding())).isEqualTo("ok");
+        second.dispose();
+    }
+
+    @Test
+    void keysSharingAMaskedIdKeepSeparateState() {
+        open();
+
+        // Same last four characters, and two keys too short to show any
+        for (String otherKey : List.of("other-api-key-1234", "short", "tiny")) {
+            assertThat(guard.call(PROVIDER, otherKey, UNLIMITED, succeeding()).block(Duration.ofSeconds(5))).isEqualTo("ok");
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> providers = (List<Map<String, Object>>) guard.providers().get("providers");
+        assertThat(providers).hasSize(4);
+        assertThat(providers).extracting(provider -> provider.get("key"))
+            .containsExactlyInAnyOrder("...1234", "...1234", "****", "****");
+    }
+
+    @Test
+    void callsBeyondTheBurstAreRejectedWhenTheyCannotWait() {
+        LlmProviderGuard.Quota quota = new LlmProviderGuard.Quota(60, 1);
+
+        assertThat(guard.call(PROVIDER, API_KEY, quota, succeeding()).block(Duration.ofSeconds(5))).isEqualTo("ok");
+        assertThatThrownBy(() -> guard.call(PROVIDER, API_KEY, quota, succeeding()).block(Duration.ofSeconds(5)))
+            .isInstanceOf(LlmProviderGuard.ProviderUnavailableException.class)
+            .extracting(e -> ((LlmProviderGuard.ProviderUnavailableException) e).getReason())
+            .isEqualTo("RATE_LIMITED");
+        assertThat(sent.get()).isEqualTo(1);
+    }
+
+    @Test
+    void retryableFailuresAreRetriedUpToTheLimit() {
+        ReflectionTestUtils.setField(guard, "maxRetries", 2);
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> flaky = Mono.defer(() -> attempts.incrementAndGet() < 3 ? failing(503) : succeeding());
+
+        assertThat(call(flaky)).isEqualTo("ok");
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(describe().get("retries")).isEqualTo(2L);
+    }
+
+    @Test
+    void nonRetryableFailuresAreNotRetried() {
+        ReflectionTestUtils.setField(guard, "maxRetries", 2);
+
+        callFailing(400);
+
+        assertThat(sent.get()).isEqualTo(1);
+        assertThat(describe().get("retries")).isEqualTo(0L);
+    }
+}
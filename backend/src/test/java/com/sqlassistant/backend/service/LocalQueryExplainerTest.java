@@ -0,0 +1,59 @@
+package com.sqlassistant.backend.service;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalQueryExplainerTest {
+
+    private static Optional<String> explain(String sql) throws Exception {
+        return LocalQueryExplainer.explain(CCJSqlParserUtil.parse(sql));
+    }
+
+    @Test
+    void describesEachClauseOnItsOwnLine() throws Exception {
+        String explanation = explain("SELECT c.name, COUNT(o.id) AS orders FROM customers c "
+            + "LEFT JOIN orders o ON o.customer_id = c.id "
+            + "WHERE c.country IN ('DE', 'FR') AND o.total >= 10 "
+            + "GROUP BY c.name HAVING COUNT(o.id) > 2 ORDER BY orders DESC LIMIT 5").orElseThrow();
+
+        assertThat(explanation.lines()).containsExactly(
+            "Reads customers (as c), combined with orders (as o).",
+            "- Adds matching rows of orders (as o) where o.customer_id equals c.id, keeping rows without a match (left join).",
+            "- Keeps only rows where c.country is one of 'DE', 'FR' and o.total is at least 10.",
+            "- Groups the rows by c.name, producing one row per group.",
+            "- Keeps only groups where the number of non-NULL o.id values is greater than 2.",
+            "- Returns c.name and the number of non-NULL o.id values as orders.",
+            "- Sorts by orders (descending).",
+            "- Returns at most 5 rows.");
+    }
+
+    @Test
+    void describesParenthesizedConditionsAndOffsets() throws Exception {
+        String explanation = explain("SELECT * FROM orders WHERE (status = 'open' OR total > 100) LIMIT 10 OFFSET 20")
+            .orElseThrow();
+
+        assertThat(explanation).contains("Keeps only rows where (status equals 'open' or total is greater than 100).");
+        assertThat(explanation).contains("Returns at most 10 rows, skipping the first 20.");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "SELECT * FROM orders WHERE customer_id IN (SELECT id FROM customers)",
+        "WITH recent AS (SELECT * FROM orders) SELECT * FROM recent",
+        "SELECT id FROM orders UNION SELECT id FROM refunds",
+        "SELECT id, ROW_NUMBER() OVER (ORDER BY total) FROM orders",
+        "SELECT * FROM (SELECT id FROM orders) o",
+        "SELECT * FROM a JOIN b ON a.id = b.id JOIN c ON b.id = c.id JOIN d ON c.id = d.id "
+            + "JOIN e ON d.id = e.id JOIN f ON e.id = f.id",
+        "UPDATE orders SET total = 0"
+    })
+    void declinesStatementsItCannotDescribeFaithfully(String sql) throws Exception {
+        assertThat(explain(sql)).isEmpty();
+    }
+}
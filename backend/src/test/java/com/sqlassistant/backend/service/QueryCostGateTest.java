@@ -0,0 +1,96 @@
+package com.sqlassistant.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.sqlassistant.backend.dto.QueryDto;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryCostGateTest {
+
+    private static Connection h2;
+    private static Connection sqlite;
+
+    private final QueryCostGate costGate = new QueryCostGate(new ObjectMapper());
+
+    @BeforeAll
+    static void createTables() throws SQLException {
+        h2 = DriverManager.getConnection("jdbc:h2:mem:cost-gate", "sa", "");
+        sqlite = DriverManager.getConnection("jdbc:sqlite::memory:");
+        for (Connection connection : new Connection[] {h2, sqlite}) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE orders (id INT PRIMARY KEY, customer_id INT, total DECIMAL(10, 2))");
+                statement.execute("CREATE INDEX idx_orders_customer ON orders (customer_id)");
+            }
+        }
+    }
+
+    @AfterAll
+    static void closeConnections() throws SQLException {
+        h2.close();
+        sqlite.close();
+    }
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(costGate, "enabled", true);
+        ReflectionTestUtils.setField(costGate, "mode", "REJECT");
+        ReflectionTestUtils.setField(costGate, "maxEstimatedRows", 10_000_000L);
+        ReflectionTestUtils.setField(costGate, "maxCost", 1_000_000d);
+        ReflectionTestUtils.setField(costGate, "rejectFullScans", false);
+    }
+
+    @Test
+    void fullScanIsReportedAsAWarning() {
+        QueryDto.PlanSummary h2Plan = costGate.evaluate(h2, DatabaseConnectionDto.DatabaseType.H2,
+            "SELECT * FROM orders WHERE total > 10;");
+        QueryDto.PlanSummary sqlitePlan = costGate.evaluate(sqlite, DatabaseConnectionDto.DatabaseType.SQLITE,
+            "SELECT * FROM orders WHERE total > 10");
+
+        assertThat(h2Plan.verdict()).isEqualTo(QueryCostGate.VERDICT_WARN);
+        assertThat(h2Plan.fullScans()).singleElement().asString().containsIgnoringCase("orders");
+        assertThat(sqlitePlan.verdict()).isEqualTo(QueryCostGate.VERDICT_WARN);
+        assertThat(sqlitePlan.fullScans()).containsExactly("orders");
+    }
+
+    @Test
+    void indexedLookupPasses() {
+        String sql = "SELECT * FROM orders WHERE customer_id = 7";
+
+        assertThat(costGate.evaluate(h2, DatabaseConnectionDto.DatabaseType.H2, sql).verdict())
+            .isEqualTo(QueryCostGate.VERDICT_OK);
+        assertThat(costGate.evaluate(sqlite, DatabaseConnectionDto.DatabaseType.SQLITE, sql).verdict())
+            .isEqualTo(QueryCostGate.VERDICT_OK);
+    }
+
+    @Test
+    void fullScanIsRejectedWhenConfigured() {
+        ReflectionTestUtils.setField(costGate, "rejectFullScans", true);
+        String sql = "SELECT * FROM orders";
+
+        assertThat(costGate.evaluate(h2, DatabaseConnectionDto.DatabaseType.H2, sql).verdict())
+            .isEqualTo(QueryCostGate.VERDICT_REJECT);
+
+        ReflectionTestUtils.setField(costGate, "mode", "WARN");
+        assertThat(costGate.evaluate(sqlite, DatabaseConnectionDto.DatabaseType.SQLITE, sql).verdict())
+            .isEqualTo(QueryCostGate.VERDICT_WARN);
+    }
+
+    @Test
+    void failedExplainLetsTheQueryRun() {
+        QueryDto.PlanSummary plan = costGate.evaluate(h2, DatabaseConnectionDto.DatabaseType.H2, "SELECT * FROM missing");
+
+        assertThat(plan.verdict()).isEqualTo(QueryCostGate.VERDICT_UNAVAILABLE);
+        assertThat(plan.warnings()).singleElement().asString().startsWith("Execution plan unavailable");
+    }
+}
@@ -0,0 +1,88 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueryExplanationServiceTest {
+
+    /** Too complex for the local explainer, so it goes to the LLM. */
+    private static final String CTE = "WITH big AS (SELECT * FROM orders WHERE total > %d) SELECT COUNT(*) FROM big";
+
+    private final AiService aiService = mock(AiService.class);
+    private final QueryExplanationService service =
+        new QueryExplanationService(aiService, new QueryFingerprinter(), new SimpleMeterRegistry());
+    private final AtomicInteger schemaLoads = new AtomicInteger();
+    private final Mono<DatabaseSchema> schema = Mono.fromCallable(() -> {
+        schemaLoads.incrementAndGet();
+        return new DatabaseSchema("shop", List.of(), List.of(), Map.of());
+    });
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(service, "localExplainer", true);
+        ReflectionTestUtils.setField(service, "cacheSize", 2000);
+        when(aiService.explainQuery(anyString(), any())).thenReturn(Mono.just("Counts large orders."));
+    }
+
+    private QueryExplanationService.Explanation explain(String sql) {
+        return service.explain(sql, schema).block();
+    }
+
+    @Test
+    void simpleQueriesAreExplainedLocallyWithoutLoadingTheSchema() {
+        QueryExplanationService.Explanation explanation = explain("SELECT id FROM orders WHERE total > 10");
+
+        assertThat(explanation.source()).isEqualTo(QueryExplanationService.SOURCE_LOCAL);
+        assertThat(schemaLoads).hasValue(0);
+        verify(aiService, never()).explainQuery(anyString(), any());
+    }
+
+    @Test
+    void llmAnswersAreCachedPerShapeAndSentWithoutLiterals() {
+        QueryExplanationService.Explanation first = explain(CTE.formatted(100));
+        QueryExplanationService.Explanation second = explain(CTE.formatted(5000));
+
+        assertThat(first.source()).isEqualTo(QueryExplanationService.SOURCE_LLM);
+        assertThat(second.source()).isEqualTo(QueryExplanationService.SOURCE_CACHE);
+        assertThat(second.explanation()).isEqualTo("Counts large orders.");
+        assertThat(second.fingerprint()).isEqualTo(first.fingerprint());
+        verify(aiService, times(1)).explainQuery(
+            argThat(sql -> !sql.contains("100") && sql.contains("?")), any());
+    }
+
+    @Test
+    void failedExplanationsAreNotCached() {
+        when(aiService.explainQuery(anyString(), any())).thenReturn(Mono.just(AiService.EXPLANATION_UNAVAILABLE));
+
+        explain(CTE.formatted(1));
+        QueryExplanationService.Explanation retried = explain(CTE.formatted(1));
+
+        assertThat(retried.source()).isEqualTo(QueryExplanationService.SOURCE_LLM);
+        verify(aiService, times(2)).explainQuery(anyString(), any());
+    }
+
+    @Test
+    void localExplainerCanBeTurnedOff() {
+        ReflectionTestUtils.setField(service, "localExplainer", false);
+
+        assertThat(explain("SELECT id FROM orders").source()).isEqualTo(QueryExplanationService.SOURCE_LLM);
+    }
+}
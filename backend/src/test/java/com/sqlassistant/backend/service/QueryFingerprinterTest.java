@@ -0,0 +1,74 @@
+package com.sqlassistant.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryFingerprinterTest {
+
+    private final QueryFingerprinter fingerprinter = new QueryFingerprinter();
+
+    private String id(String sql) {
+        return fingerprinter.fingerprint(sql).id();
+    }
+
+    @Test
+    void literalsCaseAndWhitespaceDoNotChangeTheShape() {
+        assertThat(id("SELECT * FROM orders WHERE id = 7 LIMIT 50"))
+            .isEqualTo(id("select *  from ORDERS\n where id=12 limit 10;"));
+        assertThat(id("SELECT name FROM customers WHERE email = 'a@example.com'"))
+            .isEqualTo(id("SELECT name FROM customers WHERE email = 'it''s@example.com'"));
+    }
+
+    @Test
+    void differentShapesGetDifferentFingerprints() {
+        assertThat(id("SELECT * FROM orders WHERE id = 7"))
+            .isNotEqualTo(id("SELECT * FROM orders WHERE customer_id = 7"));
+        assertThat(id("SELECT * FROM orders"))
+            .isNotEqualTo(id("SELECT * FROM order_items"));
+    }
+
+    @Test
+    void inListsCollapseToOnePlaceholder() {
+        assertThat(id("SELECT * FROM orders WHERE id IN (1, 2, 3)"))
+            .isEqualTo(id("SELECT * FROM orders WHERE id IN (4, 5)"));
+        assertThat(fingerprinter.normalize("SELECT * FROM orders WHERE id IN (1, 2, 3)"))
+            .isEqualTo("select * from orders where id in (?+)");
+    }
+
+    @Test
+    void normalizedSqlKeepsNoLiteralValues() {
+        String normalized = fingerprinter.normalize(
+            "SELECT * FROM orders WHERE total > 99.5 AND status = 'shipped' AND placed_at > DATE '2024-01-01' LIMIT 20");
+
+        assertThat(normalized).doesNotContain("99.5", "shipped", "2024", "20");
+        assertThat(normalized).contains("orders", "total", "status", "placed_at");
+    }
+
+    @Test
+    void commentsAreIgnored() {
+        assertThat(id("SELECT id FROM orders -- recent first\nORDER BY id DESC"))
+            .isEqualTo(id("/* dashboard */ SELECT id FROM orders ORDER BY id DESC"));
+    }
+
+    @Test
+    void numbersInsideIdentifiersAreKept() {
+        assertThat(fingerprinter.normalize("SELECT c_2 FROM t_0 WHERE c_2 = 5"))
+            .isEqualTo("select c_2 from t_0 where c_2 = ?");
+    }
+
+    @Test
+    void unparseableStatementsAreNormalizedLexically() {
+        String dialect = "SELECT * FROM orders WHERE id = 7 QUALIFY ROW_NUMBER() OVER () = 1";
+
+        assertThat(fingerprinter.normalize(dialect)).doesNotContain("7").startsWith("select * from orders");
+        assertThat(id(dialect)).isEqualTo(id(dialect.replace("id = 7", "id = 8")));
+    }
+
+    @Test
+    void repeatedTextIsServedFromTheCache() {
+        String sql = "SELECT * FROM orders WHERE id = 1";
+
+        assertThat(fingerprinter.fingerprint(sql)).isSameAs(fingerprinter.fingerprint(sql));
+    }
+}
@@ -0,0 +1,258 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.QueryDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class QueryHistoryStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<QueryHistoryStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() throws InterruptedException {
+        for (QueryHistoryStore store : opened) {
+            store.close();
+        }
+    }
+
+    private long segmentMaxAgeHours = 24;
+    private long maintenanceIntervalMinutes = 10;
+    private int retentionDays = 30;
+    private int maxScanEntries = 100_000;
+
+    private QueryHistoryStore open() throws Exception {
+        QueryHistoryStore store = new QueryHistoryStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(store, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(store, "batchSize", 64);
+        ReflectionTestUtils.setField(store, "flushIntervalMs", 10L);
+        ReflectionTestUtils.setField(store, "retentionDays", retentionDays);
+        ReflectionTestUtils.setField(store, "maintenanceIntervalMinutes", maintenanceIntervalMinutes);
+        ReflectionTestUtils.setField(store, "segmentMaxAgeHours", segmentMaxAgeHours);
+        ReflectionTestUtils.setField(store, "maxScanEntries", maxScanEntries);
+        store.open();
+        opened.add(store);
+        return store;
+    }
+
+    /** Closing drains the writer queue, so everything recorded is on disk for the next open. */
+    private QueryHistoryStore reopen(QueryHistoryStore store) throws Exception {
+        store.close();
+        opened.remove(store);
+        return open();
+    }
+
+    private static List<QueryDto.QueryHistoryEntry> all(QueryHistoryStore store, String connectionId) {
+        return store.query(connectionId, null, null, null, null, 0, 500).entries();
+    }
+
+    private static List<String> sqlWithPrefix(QueryHistoryStore store, String prefix) {
+        return store.query("c1", null, null, prefix, null, 0, 500).entries().stream()
+            .map(QueryDto.QueryHistoryEntry::sql)
+            .toList();
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /** Offset just past the last complete record of a segment file, following the length headers. */
+    private static int endOfRecords(Path segment) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int position = 0;
+        while (position + 8 <= buffer.limit() && buffer.getInt(position) > 0) {
+            position += 8 + buffer.getInt(position);
+        }
+        return position;
+    }
+
+    @Test
+    void everyKindSurvivesARoundTrip() throws Exception {
+        QueryHistoryStore store = open();
+        for (String kind : List.of("GENERATE", "EXECUTE", "SAVED", "EXPORT")) {
+            store.record("c1", kind, null, "SELECT 1", "SUCCESS", 5L, 1, null);
+        }
+
+        store = reopen(store);
+
+        assertThat(all(store, "c1")).extracting(QueryDto.QueryHistoryEntry::kind)
+            .containsExactly("EXPORT", "SAVED", "EXECUTE", "GENERATE");
+        assertThat(store.query("c1", null, null, null, "EXPORT", 0, 10).entries()).hasSize(1);
+    }
+
+    @Test
+    void recoveryStopsAtATornRecordAndAppendsAfterTheLastGoodOne() throws Exception {
+        QueryHistoryStore store = open();
+        for (int i = 0; i < 3; i++) {
+            store.record("c1", "EXECUTE", null, "SELECT " + i, "SUCCESS", 1L, 1, null);
+        }
+        store.close();
+        opened.remove(store);
+
+        // A crash mid-write: the length landed, the payload and checksum didn't
+        Path active = segments().get(segments().size() - 1);
+        int end = endOfRecords(active);
+        try (var channel = Files.newByteChannel(active, StandardOpenOption.WRITE)) {
+            channel.position(end);
+            channel.write(ByteBuffer.allocate(8).putInt(0, 64).putInt(4, 12345));
+        }
+
+        store = open();
+        assertThat(all(store, "c1")).extracting(QueryDto.QueryHistoryEntry::sql)
+            .containsExactly("SELECT 2", "SELECT 1", "SELECT 0");
+
+        store.record("c1", "EXECUTE", null, "SELECT 3", "SUCCESS", 1L, 1, null);
+        store = reopen(store);
+
+        List<QueryDto.QueryHistoryEntry> entries = all(store, "c1");
+        assertThat(entries).extracting(QueryDto.QueryHistoryEntry::sql)
+            .containsExactly("SELECT 3", "SELECT 2", "SELECT 1", "SELECT 0");
+        assertThat(entries).extracting(QueryDto.QueryHistoryEntry::id).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void recoverySkipsRecordsDuplicatedByAnInterruptedCompaction() throws Exception {
+        segmentMaxAgeHours = 0; // every record rolls into a segment of its own
+        QueryHistoryStore store = open();
+        for (int i = 0; i < 4; i++) {
+            store.record("c1", "EXECUTE", null, "SELECT " + i, "SUCCESS", 1L, 1, null);
+        }
+        store.close();
+        opened.remove(store);
+
+        // Compaction output renamed over the first source while the other sources still exist
+        List<Path> sealed = segments().subList(0, segments().size() - 1);
+        assertThat(sealed).hasSizeGreaterThanOrEqualTo(3);
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        for (Path segment : sealed) {
+            merged.write(Files.readAllBytes(segment));
+        }
+        Files.write(sealed.get(0), merged.toByteArray());
+
+        segmentMaxAgeHours = 24;
+        store = open();
+
+        List<QueryDto.QueryHistoryEntry> entries = all(store, "c1");
+        assertThat(entries).extracting(QueryDto.QueryHistoryEntry::sql)
+            .containsExactly("SELECT 3", "SELECT 2", "SELECT 1", "SELECT 0");
+        assertThat(entries).extracting(QueryDto.QueryHistoryEntry::id).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void compactionMergesSmallSegmentsWithoutDuplicatingSequenceNumbers() throws Exception {
+        segmentMaxAgeHours = 0;
+        maintenanceIntervalMinutes = 0; // maintenance after every batch
+        QueryHistoryStore store = open();
+        for (int i = 0; i < 40; i++) {
+            store.record("c" + i % 2, "EXECUTE", null, "SELECT " + i, "SUCCESS", 1L, 1, null);
+            Thread.sleep(2);
+        }
+
+        store = reopen(store);
+
+        List<QueryDto.QueryHistoryEntry> entries = new ArrayList<>(all(store, "c0"));
+        entries.addAll(all(store, "c1"));
+        assertThat(entries).hasSize(40);
+        assertThat(entries).extracting(QueryDto.QueryHistoryEntry::id).doesNotHaveDuplicates();
+        assertThat(all(store, "c0")).extracting(QueryDto.QueryHistoryEntry::id).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+        assertThat(segments().size()).isLessThan(40);
+    }
+
+    @Test
+    void agedActiveSegmentIsSealedAndRetiredWithoutNewWrites() throws Exception {
+        segmentMaxAgeHours = 0;
+        maintenanceIntervalMinutes = 0;
+        retentionDays = 0;
+        QueryHistoryStore store = open();
+        store.record("c1", "EXECUTE", null, "SELECT 1", "SUCCESS", 1L, 1, null);
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            assertThat(all(store, "c1")).isEmpty();
+            assertThat(segments()).isEmpty();
+        });
+    }
+
+    @Test
+    void prefixMatchesSqlOrQuestionCaseInsensitively() throws Exception {
+        QueryHistoryStore store = open();
+        store.record("c1", "EXECUTE", null, "SELECT * FROM orders", "SUCCESS", 1L, 1, null);
+        store.record("c1", "EXECUTE", null, "  select id from customers", "SUCCESS", 1L, 1, null);
+        store.record("c1", "GENERATE", "Show top customers", "SELECT name FROM customers", "SUCCESS", null, null, null);
+        store.record("c1", "EXECUTE", null, "UPDATE orders SET total = 0", "SUCCESS", 1L, 1, null);
+        store.record("c2", "EXECUTE", null, "SELECT * FROM orders", "SUCCESS", 1L, 1, null);
+
+        // Indexed as written
+        QueryHistoryStore live = store;
+        await().atMost(Duration.ofSeconds(10))
+            .untilAsserted(() -> assertThat(sqlWithPrefix(live, "upd")).containsExactly("UPDATE orders SET total = 0"));
+
+        for (int pass = 0; pass < 2; pass++) {
+            // The postings are rebuilt from the segments on open
+            store = reopen(store);
+            assertThat(sqlWithPrefix(store, "select")).containsExactly(
+                "SELECT name FROM customers", "  select id from customers", "SELECT * FROM orders");
+            assertThat(sqlWithPrefix(store, "SELECT * from")).containsExactly("SELECT * FROM orders");
+            assertThat(sqlWithPrefix(store, "show top")).containsExactly("SELECT name FROM customers");
+            assertThat(sqlWithPrefix(store, "s")).hasSize(3);
+            assertThat(sqlWithPrefix(store, "delete")).isEmpty();
+        }
+    }
+
+    @Test
+    void filteredReadsStopAtTheScanLimit() throws Exception {
+        maxScanEntries = 5;
+        QueryHistoryStore store = open();
+        store.record("c1", "GENERATE", "oldest", "SELECT 0", "SUCCESS", null, null, null);
+        for (int i = 1; i <= 20; i++) {
+            store.record("c1", "EXECUTE", null, "SELECT " + i, "SUCCESS", 1L, 1, null);
+        }
+        store = reopen(store);
+
+        QueryDto.QueryHistoryPage page = store.query("c1", null, null, null, "GENERATE", 0, 10);
+        assertThat(page.entries()).isEmpty();
+        assertThat(page.hasMore()).isTrue();
+
+        QueryDto.QueryHistoryPage unfiltered = store.query("c1", null, null, null, null, 0, 3);
+        assertThat(unfiltered.entries()).hasSize(3);
+    }
+
+    @Test
+    void pagesWalkBackwardsWithoutGapsOrOverlap() throws Exception {
+        QueryHistoryStore store = open();
+        for (int i = 0; i < 10; i++) {
+            store.record("c1", "EXECUTE", null, "SELECT " + i, "SUCCESS", 1L, 1, null);
+        }
+        store = reopen(store);
+
+        QueryDto.QueryHistoryPage first = store.query("c1", null, null, "sel", null, 0, 4);
+        QueryDto.QueryHistoryPage last = store.query("c1", null, null, "sel", null, 8, 4);
+
+        assertThat(first.entries()).extracting(QueryDto.QueryHistoryEntry::sql)
+            .containsExactly("SELECT 9", "SELECT 8", "SELECT 7", "SELECT 6");
+        assertThat(first.hasMore()).isTrue();
+        assertThat(last.entries()).extracting(QueryDto.QueryHistoryEntry::sql).containsExactly("SELECT 1", "SELECT 0");
+        assertThat(last.hasMore()).isFalse();
+    }
+}
@@ -0,0 +1,118 @@
+package com.sqlassistant.backend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryValidationServiceTest {
+
+    private static Connection connection;
+
+    private final QueryValidationService validationService = new QueryValidationService();
+
+    @BeforeAll
+    static void createTable() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:row-limit", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE t (id INT PRIMARY KEY)");
+            statement.execute("INSERT INTO t SELECT x FROM SYSTEM_RANGE(1, 100)");
+        }
+    }
+
+    @AfterAll
+    static void dropTable() throws SQLException {
+        connection.close();
+    }
+
+    private static List<Integer> ids(String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    void addsTheWindowToAnUnboundedSelect() {
+        assertThat(validationService.pushDownRowLimit("SELECT * FROM t", 100, null))
+            .isEqualTo("SELECT * FROM t LIMIT 100");
+        assertThat(validationService.pushDownRowLimit("SELECT * FROM t", 100, 20))
+            .isEqualTo("SELECT * FROM t LIMIT 100 OFFSET 20");
+    }
+
+    @Test
+    void keepsAnExistingLimitThatIsAlreadyTighter() {
+        String sql = "SELECT * FROM t ORDER BY id LIMIT 10";
+
+        assertThat(validationService.pushDownRowLimit(sql, 100, null)).isSameAs(sql);
+        assertThat(validationService.pushDownRowLimit(sql, 100, 0)).isSameAs(sql);
+    }
+
+    @Test
+    void replacesALimitThatPutsNoBoundOnTheRows() {
+        assertThat(validationService.pushDownRowLimit("SELECT * FROM t LIMIT ALL", 100, null))
+            .isEqualTo("SELECT * FROM t LIMIT 100");
+        assertThat(validationService.pushDownRowLimit("SELECT * FROM t LIMIT NULL", 100, null))
+            .isEqualTo("SELECT * FROM t LIMIT 100");
+    }
+
+    @Test
+    void limitsAUnionAsAWhole() {
+        assertThat(validationService.pushDownRowLimit("SELECT id FROM t UNION SELECT id FROM t", 5, null))
+            .endsWith("LIMIT 5");
+    }
+
+    @Test
+    void leavesStatementsItCannotMergeUnchanged() {
+        for (String sql : List.of(
+            "SELECT * FROM t FETCH FIRST 5 ROWS ONLY",
+            "SELECT TOP 5 * FROM t",
+            "SELECT * INTO copy FROM t",
+            "SELECT * FROM t LIMIT ?",
+            "UPDATE t SET id = id + 1",
+            "SELECT * FROM WHERE")) {
+            assertThat(validationService.pushDownRowLimit(sql, 10, 5)).as(sql).isSameAs(sql);
+        }
+    }
+
+    /**
+     * The rewritten query returns exactly the rows the original would after skipping
+     * {@code offset} and keeping {@code maxRows}, for every way the query's own window combines
+     * with the requested one.
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "SELECT id FROM t ORDER BY id                       | 10  |",
+        "SELECT id FROM t ORDER BY id                       | 10  | 95",
+        "SELECT id FROM t ORDER BY id LIMIT 50              | 10  |",
+        "SELECT id FROM t ORDER BY id LIMIT 50              | 100 | 45",
+        "SELECT id FROM t ORDER BY id LIMIT 50              | 20  | 30",
+        "SELECT id FROM t ORDER BY id LIMIT 10              | 5   | 20",
+        "SELECT id FROM t ORDER BY id LIMIT 50 OFFSET 10    | 20  | 30",
+        "SELECT id FROM t ORDER BY id LIMIT 50 OFFSET 10    | 100 |",
+        "SELECT id FROM t ORDER BY id OFFSET 90 ROWS        | 5   | 3",
+        "SELECT id FROM t ORDER BY id LIMIT 5, 20           | 10  | 4",
+        "SELECT id FROM t ORDER BY id LIMIT 5, 20           | 100 |",
+    })
+    void rewrittenQueryReturnsTheRequestedWindowOfTheOriginal(String sql, int maxRows, Integer offset) throws SQLException {
+        List<Integer> all = ids(sql);
+        int skip = offset != null ? offset : 0;
+        List<Integer> expected = all.subList(Math.min(skip, all.size()), Math.min(skip + maxRows, all.size()));
+
+        assertThat(ids(validationService.pushDownRowLimit(sql, maxRows, offset))).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,228 @@
+package com.sqlassistant.backend.service;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class ResultExporterTest {
+
+    @TempDir
+    Path directory;
+
+    private final InFlightOperationRegistry operations = new InFlightOperationRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ResultExporter exporter;
+
+    @BeforeEach
+    void createExporter() {
+        exporter = new ResultExporter(operations, 16);
+        ReflectionTestUtils.setField(exporter, "spoolDirectory", directory.toString());
+        ReflectionTestUtils.setField(exporter, "spoolRetentionHours", 24L);
+        ReflectionTestUtils.setField(exporter, "spoolMaxPerConnection", 2);
+        ReflectionTestUtils.setField(exporter, "spoolMaxDiskMb", 8L);
+        exporter.init();
+    }
+
+    @AfterEach
+    void closeExporter() {
+        release.countDown();
+        exporter.close();
+    }
+
+    private ResultExporter.SpoolStatus spool(String connectionId, ResultExporter.ExportBody body) throws IOException {
+        return exporter.spool(connectionId, operations.register(null, "EXPORT", connectionId),
+            ResultExporter.Format.CSV, false, body);
+    }
+
+    /** A body that holds its slot until the test releases it, then writes one line. */
+    private ResultExporter.ExportBody blocking() {
+        return out -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.write("a\r\n".getBytes());
+            return 1;
+        };
+    }
+
+    private ResultExporter.SpoolStatus awaitDone(String exportId) {
+        await().atMost(Duration.ofSeconds(10))
+            .until(() -> !"RUNNING".equals(exporter.spoolStatus(exportId).orElseThrow().state()));
+        return exporter.spoolStatus(exportId).orElseThrow();
+    }
+
+    private long filesInSpool() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void arrowExportReadsBackWithTheSameRows() throws Exception {
+        ReflectionTestUtils.setField(exporter, "arrowBatchRows", 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written;
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:arrow-export", "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE t (id INT PRIMARY KEY, name VARCHAR(20), price DECIMAL(10, 2))");
+            statement.execute("INSERT INTO t SELECT x, 'item ' || x, CASE WHEN x % 3 = 0 THEN NULL ELSE x * 1.5 END "
+                + "FROM SYSTEM_RANGE(1, 10)");
+            try (ResultSet resultSet = statement.executeQuery("SELECT id, name, price FROM t ORDER BY id")) {
+                written = exporter.write(resultSet, ResultExporter.Format.ARROW, out);
+            }
+        }
+
+        List<Object> ids = new ArrayList<>();
+        List<Object> names = new ArrayList<>();
+        List<Object> prices = new ArrayList<>();
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema().getFields()).extracting(field -> field.getName().toLowerCase())
+                .containsExactly("id", "name", "price");
+            while (reader.loadNextBatch()) {
+                for (int row = 0; row < root.getRowCount(); row++) {
+                    ids.add(root.getVector(0).getObject(row));
+                    names.add(String.valueOf(root.getVector(1).getObject(row)));
+                    prices.add(root.getVector(2).getObject(row));
+                }
+            }
+        }
+
+        assertThat(written).isEqualTo(10);
+        assertThat(ids).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        assertThat(names.get(9)).isEqualTo("item 10");
+        assertThat(prices.get(0)).isEqualTo(new BigDecimal("1.50"));
+        assertThat(prices.get(2)).isNull();
+    }
+
+    @Test
+    void completedSpoolIsDownloadableAndCompletesItsOperation() throws Exception {
+        ResultExporter.SpoolStatus started = spool("c1", out -> {
+            out.write("id\r\n1\r\n".getBytes());
+            return 1;
+        });
+
+        ResultExporter.SpoolStatus done = awaitDone(started.exportId());
+
+        assertThat(done.state()).isEqualTo("COMPLETED");
+        assertThat(done.rows()).isEqualTo(1);
+        assertThat(Files.readString(exporter.spoolFile(done))).isEqualTo("id\r\n1\r\n");
+        await().atMost(Duration.ofSeconds(5)).until(() -> operations.inFlightCount() == 0);
+    }
+
+    @Test
+    void connectionRunsAtMostTheConfiguredNumberOfSpools() throws Exception {
+        ResultExporter.SpoolStatus first = spool("c1", blocking());
+        spool("c1", blocking());
+
+        assertThatThrownBy(() -> spool("c1", blocking())).isInstanceOf(ResultExporter.SpoolLimitException.class);
+        // Other connections have slots of their own
+        spool("c2", blocking());
+
+        release.countDown();
+        awaitDone(first.exportId());
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(spool("c1", out -> 0)).isNotNull());
+    }
+
+    @Test
+    void cancellingTheOperationStopsTheSpoolAndDeletesThePartialFile() throws Exception {
+        InFlightOperationRegistry.Operation operation = operations.register("export-1", "EXPORT", "c1");
+        CountDownLatch writing = new CountDownLatch(1);
+        ResultExporter.SpoolStatus started = exporter.spool("c1", operation, ResultExporter.Format.CSV, false, out -> {
+            CountDownLatch cancelled = new CountDownLatch(1);
+            operation.onCancel(cancelled::countDown);
+            out.write("partial".getBytes());
+            out.flush();
+            writing.countDown();
+            try {
+                cancelled.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new SQLException("Statement was cancelled");
+        });
+        assertThat(started.requestId()).isEqualTo("export-1");
+
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(operations.cancel("c1", "export-1")).isTrue();
+
+        ResultExporter.SpoolStatus done = awaitDone(started.exportId());
+        assertThat(done.state()).isEqualTo("CANCELLED");
+        assertThat(filesInSpool()).isZero();
+    }
+
+    @Test
+    void spoolFailsOnceItWouldExceedTheDiskBudget() throws Exception {
+        ReflectionTestUtils.setField(exporter, "spoolMaxDiskMb", 1L);
+        byte[] chunk = new byte[64 * 1024];
+
+        ResultExporter.SpoolStatus started = spool("c1", out -> {
+            for (int i = 0; i < 32; i++) {
+                out.write(chunk);
+            }
+            return 32;
+        });
+
+        ResultExporter.SpoolStatus done = awaitDone(started.exportId());
+        assertThat(done.state()).isEqualTo("FAILED");
+        assertThat(done.error()).contains("disk budget");
+        assertThat(filesInSpool()).isZero();
+
+        // The failed spool's reservation was returned
+        ResultExporter.SpoolStatus small = spool("c1", out -> {
+            out.write(chunk);
+            return 1;
+        });
+        assertThat(awaitDone(small.exportId()).state()).isEqualTo("COMPLETED");
+    }
+
+    @Test
+    void newSpoolIsRefusedWhileTheBudgetIsSpent() throws Exception {
+        ReflectionTestUtils.setField(exporter, "spoolMaxDiskMb", 1L);
+        spool("c1", blocking());
+
+        assertThatThrownBy(() -> spool("c2", blocking()))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("disk budget");
+    }
+
+    @Test
+    void filesFromAPreviousRunCountAgainstTheBudget() throws Exception {
+        Files.write(directory.resolve("old.csv"), new byte[1024 * 1024]);
+        createExporter();
+        ReflectionTestUtils.setField(exporter, "spoolMaxDiskMb", 1L);
+
+        assertThatThrownBy(() -> spool("c1", out -> 0)).isInstanceOf(IOException.class);
+    }
+}
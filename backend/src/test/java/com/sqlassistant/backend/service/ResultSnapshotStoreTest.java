@@ -0,0 +1,211 @@
+package com.sqlassistant.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResultSnapshotStoreTest {
+
+    /** 1000 rows spanning several index strides, with a NULL in every third row. */
+    private static final String ROWS = """
+        SELECT X AS id,
+               CASE WHEN MOD(X, 3) = 0 THEN NULL ELSE 'name ' || X END AS name,
+               CAST(X AS DECIMAL(10, 2)) / 4 AS price,
+               CAST(X AS DOUBLE) / 8 AS ratio,
+               MOD(X, 2) = 0 AS even,
+               TIMESTAMP '2024-01-01 00:00:00' + X * INTERVAL '1' MINUTE AS created,
+               CAST(CAST(X AS INTEGER) AS BINARY(4)) AS raw
+        FROM SYSTEM_RANGE(1, 1000)
+        """;
+
+    @TempDir
+    Path directory;
+
+    private final ResultSnapshotStore store = new ResultSnapshotStore();
+    private Connection connection;
+
+    @BeforeEach
+    void open() throws SQLException {
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "ttlMinutes", 30L);
+        ReflectionTestUtils.setField(store, "maxDiskMb", 64L);
+        ReflectionTestUtils.setField(store, "maxRows", 5_000_000L);
+        connection = DriverManager.getConnection("jdbc:h2:mem:snapshots", "sa", "");
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        connection.close();
+    }
+
+    private ResultSnapshotStore.Snapshot capture(String sql) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return store.capture("conn-1", resultSet, false);
+        }
+    }
+
+    private long snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void pagesDecodeTheRowsAtTheirOffsetAcrossIndexStrides() throws Exception {
+        ResultSnapshotStore.Snapshot snapshot = capture(ROWS);
+
+        assertThat(snapshot.rowCount()).isEqualTo(1000);
+        assertThat(snapshot.truncated()).isFalse();
+        assertThat(snapshot.columnNames()).containsExactly("ID", "NAME", "PRICE", "RATIO", "EVEN", "CREATED", "RAW");
+
+        // Starts just before the second stride and crosses into it
+        ResultSnapshotStore.Page page = store.page(snapshot.snapshotId(), 254, 4).orElseThrow();
+        assertThat(page.offset()).isEqualTo(254);
+        assertThat(page.hasMore()).isTrue();
+        assertThat(page.rows()).extracting(row -> row.get("ID")).containsExactly(255L, 256L, 257L, 258L);
+
+        Map<String, Object> row = page.rows().get(0);
+        assertThat(row.get("NAME")).isNull();
+        assertThat((BigDecimal) row.get("PRICE")).isEqualByComparingTo("63.75");
+        assertThat(row.get("RATIO")).isEqualTo(255 / 8.0);
+        assertThat(row.get("EVEN")).isEqualTo(false);
+        assertThat(row.get("CREATED")).isEqualTo(Timestamp.valueOf("2024-01-01 04:15:00"));
+        assertThat(row.get("RAW")).isEqualTo(new byte[] {0, 0, 0, (byte) 255});
+        assertThat(page.rows().get(1).get("NAME")).isEqualTo("name 256");
+    }
+
+    @Test
+    void pagesAreClampedToTheSnapshot() throws Exception {
+        ResultSnapshotStore.Snapshot snapshot = capture(ROWS);
+
+        ResultSnapshotStore.Page last = store.page(snapshot.snapshotId(), 995, 100).orElseThrow();
+        assertThat(last.rows()).extracting(row -> row.get("ID")).containsExactly(996L, 997L, 998L, 999L, 1000L);
+        assertThat(last.hasMore()).isFalse();
+
+        ResultSnapshotStore.Page past = store.page(snapshot.snapshotId(), 5000, 10).orElseThrow();
+        assertThat(past.rows()).isEmpty();
+        assertThat(past.offset()).isEqualTo(1000);
+
+        assertThat(store.page(snapshot.snapshotId(), -3, 1).orElseThrow().rows())
+            .extracting(row -> row.get("ID")).containsExactly(1L);
+        assertThat(store.page("unknown", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void capturesStopAtMaxRowsAndAreMarkedTruncated() throws Exception {
+        ReflectionTestUtils.setField(store, "maxRows", 300L);
+
+        ResultSnapshotStore.Snapshot snapshot = capture(ROWS);
+
+        assertThat(snapshot.rowCount()).isEqualTo(300);
+        assertThat(snapshot.truncated()).isTrue();
+        assertThat(store.page(snapshot.snapshotId(), 299, 10).orElseThrow().rows())
+            .extracting(row -> row.get("ID")).containsExactly(300L);
+    }
+
+    @Test
+    void dynamicTypingKeepsEachCellsOwnType() throws Exception {
+        try (Connection sqlite = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement statement = sqlite.createStatement()) {
+            statement.execute("CREATE TABLE mixed (value ANY)");
+            statement.execute("INSERT INTO mixed VALUES (1), ('two'), (3.5), (NULL), (X'CAFE')");
+
+            ResultSnapshotStore.Snapshot snapshot;
+            try (ResultSet resultSet = statement.executeQuery("SELECT value FROM mixed ORDER BY rowid")) {
+                snapshot = store.capture("conn-1", resultSet, true);
+            }
+
+            assertThat(store.page(snapshot.snapshotId(), 0, 10).orElseThrow().rows())
+                .extracting(row -> row.get("value"))
+                .containsExactly(1L, "two", 3.5, null, new byte[] {(byte) 0xCA, (byte) 0xFE});
+        }
+    }
+
+    @Test
+    void snapshotsExpireAfterTheirLastReadAndFreeTheirFile() throws Exception {
+        ResultSnapshotStore.Snapshot snapshot = capture(ROWS);
+        assertThat(store.diskBytes()).isEqualTo(snapshot.sizeBytes());
+        assertThat(snapshotFiles()).isEqualTo(1);
+
+        ReflectionTestUtils.setField(store, "ttlMinutes", 0L);
+        Thread.sleep(5);
+
+        assertThat(store.get(snapshot.snapshotId())).isEmpty();
+        assertThat(store.diskBytes()).isZero();
+        assertThat(snapshotFiles()).isZero();
+    }
+
+    @Test
+    void deleteFreesTheFileAndItsShareOfTheBudget() throws Exception {
+        ResultSnapshotStore.Snapshot snapshot = capture(ROWS);
+
+        assertThat(store.delete(snapshot.snapshotId())).isTrue();
+
+        assertThat(store.delete(snapshot.snapshotId())).isFalse();
+        assertThat(store.page(snapshot.snapshotId(), 0, 1)).isEmpty();
+        assertThat(store.diskBytes()).isZero();
+        assertThat(snapshotFiles()).isZero();
+    }
+
+    @Test
+    void aCaptureBeyondTheDiskBudgetFailsAndLeavesNothingBehind() throws Exception {
+        ReflectionTestUtils.setField(store, "maxDiskMb", 1L);
+        String large = "SELECT X AS id, REPEAT('x', 1000) AS filler FROM SYSTEM_RANGE(1, 2000)";
+
+        assertThatThrownBy(() -> capture(large))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("disk budget of 1 MB exhausted");
+
+        assertThat(store.diskBytes()).isZero();
+        assertThat(snapshotFiles()).isZero();
+
+        // Smaller results still fit afterwards
+        assertThat(capture("SELECT X AS id FROM SYSTEM_RANGE(1, 10)").rowCount()).isEqualTo(10);
+    }
+
+    @Test
+    void expiredSnapshotsAreDroppedToMakeRoomForANewCapture() throws Exception {
+        ReflectionTestUtils.setField(store, "maxDiskMb", 1L);
+        String half = "SELECT X AS id, REPEAT('x', 1000) AS filler FROM SYSTEM_RANGE(1, 600)";
+        ResultSnapshotStore.Snapshot first = capture(half);
+
+        ReflectionTestUtils.setField(store, "ttlMinutes", 0L);
+        Thread.sleep(5);
+        ResultSnapshotStore.Snapshot second = capture(half);
+
+        assertThat(store.diskBytes()).isEqualTo(second.sizeBytes());
+        ReflectionTestUtils.setField(store, "ttlMinutes", 30L);
+        assertThat(store.get(first.snapshotId())).isEmpty();
+        assertThat(store.get(second.snapshotId())).isPresent();
+    }
+
+    @Test
+    void leftoverFilesAreRemovedAtStartup() throws Exception {
+        Files.writeString(directory.resolve("stale.rows"), "old");
+        Files.writeString(directory.resolve("keep.txt"), "other");
+
+        store.init();
+
+        assertThat(directory.resolve("stale.rows")).doesNotExist();
+        assertThat(directory.resolve("keep.txt")).exists();
+    }
+}
@@ -0,0 +1,104 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.DatabaseConnectionDto;
+import com.sqlassistant.backend.model.SchemaFingerprint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaFingerprintProbeTest {
+
+    private static final String ORDERS = "PUBLIC.ORDERS";
+    private static final String CUSTOMERS = "PUBLIC.CUSTOMERS";
+
+    private final SchemaFingerprintProbe probe = new SchemaFingerprintProbe();
+    private Connection connection;
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:fingerprint-" + System.nanoTime(), "sa", "");
+        execute("CREATE TABLE customers (id INT PRIMARY KEY, name VARCHAR(64))");
+        execute("CREATE TABLE orders (id INT PRIMARY KEY, customer_id INT, total DECIMAL(10, 2))");
+    }
+
+    @AfterEach
+    void closeConnection() throws SQLException {
+        connection.close();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private SchemaFingerprint fingerprint() {
+        return probe.probe(connection, DatabaseConnectionDto.DatabaseType.H2, null);
+    }
+
+    @Test
+    void unchangedSchemaKeepsItsVersion() {
+        assertThat(fingerprint()).isEqualTo(fingerprint());
+    }
+
+    @Test
+    void addingAColumnChangesOnlyThatTable() throws SQLException {
+        SchemaFingerprint before = fingerprint();
+
+        execute("ALTER TABLE orders ADD COLUMN note VARCHAR(200)");
+        SchemaFingerprint after = fingerprint();
+
+        assertThat(after.version()).isNotEqualTo(before.version());
+        assertThat(after.tables().get(ORDERS)).isNotEqualTo(before.tables().get(ORDERS));
+        assertThat(after.tables().get(CUSTOMERS)).isEqualTo(before.tables().get(CUSTOMERS));
+    }
+
+    @Test
+    void addingAForeignKeyChangesTheReferencingTable() throws SQLException {
+        SchemaFingerprint before = fingerprint();
+
+        execute("ALTER TABLE orders ADD CONSTRAINT fk_orders_customer FOREIGN KEY (customer_id) REFERENCES customers (id)");
+        SchemaFingerprint after = fingerprint();
+
+        assertThat(after.version()).isNotEqualTo(before.version());
+        assertThat(after.tables().get(ORDERS)).isNotEqualTo(before.tables().get(ORDERS));
+    }
+
+    @Test
+    void changingAForeignKeyRuleChangesTheFingerprint() throws SQLException {
+        execute("CREATE INDEX idx_orders_customer ON orders (customer_id)");
+        execute("ALTER TABLE orders ADD CONSTRAINT fk_orders_customer FOREIGN KEY (customer_id) REFERENCES customers (id)");
+        SchemaFingerprint before = fingerprint();
+
+        execute("ALTER TABLE orders DROP CONSTRAINT fk_orders_customer");
+        execute("ALTER TABLE orders ADD CONSTRAINT fk_orders_customer FOREIGN KEY (customer_id) REFERENCES customers (id) "
+            + "ON DELETE CASCADE");
+        SchemaFingerprint after = fingerprint();
+
+        assertThat(after.tables().get(ORDERS)).isNotEqualTo(before.tables().get(ORDERS));
+    }
+
+    @Test
+    void sqliteSkipsTheTableQueryWhileTheSchemaVersionIsUnchanged() throws SQLException {
+        try (Connection sqlite = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement statement = sqlite.createStatement()) {
+            statement.execute("CREATE TABLE customers (id INTEGER PRIMARY KEY)");
+            SchemaFingerprint first = probe.probe(sqlite, DatabaseConnectionDto.DatabaseType.SQLITE, null);
+
+            assertThat(probe.probe(sqlite, DatabaseConnectionDto.DatabaseType.SQLITE, first)).isSameAs(first);
+
+            statement.execute("CREATE TABLE orders (id INTEGER PRIMARY KEY, customer_id INTEGER REFERENCES customers (id))");
+            SchemaFingerprint second = probe.probe(sqlite, DatabaseConnectionDto.DatabaseType.SQLITE, first);
+
+            assertThat(second.version()).isNotEqualTo(first.version());
+            assertThat(second.tables()).containsKey("orders");
+        }
+    }
+}
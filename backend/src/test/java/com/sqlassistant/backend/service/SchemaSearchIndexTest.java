@@ -0,0 +1,121 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaSearchIndexTest {
+
+    private final SchemaSearchIndex index = new SchemaSearchIndex();
+
+    private static DatabaseSchema.ColumnInfo column(String name, String dataType, String comment) {
+        return new DatabaseSchema.ColumnInfo(name, dataType, dataType, true, false, false, null, comment, null, null, null);
+    }
+
+    private static DatabaseSchema.TableInfo table(String name, DatabaseSchema.ColumnInfo... columns) {
+        return new DatabaseSchema.TableInfo(name, "public", "TABLE", List.of(columns), List.of(), List.of(), null);
+    }
+
+    private final DatabaseSchema schema = new DatabaseSchema("shop", List.of(
+        table("customers",
+            column("id", "integer", null),
+            column("customer_name", "varchar", null),
+            column("email", "varchar", "primary contact address")),
+        table("orders",
+            column("id", "integer", null),
+            column("customerId", "integer", null),
+            column("order_total", "numeric", null)),
+        table("order_items",
+            column("order_id", "integer", null),
+            column("quantity", "integer", null))
+    ), List.of(
+        new DatabaseSchema.ViewInfo("customer_orders", "public", "select 1", List.of(), null)
+    ), Map.of());
+
+    @Test
+    void exactNameRanksAbovePrefixAndPartialMatches() {
+        SchemaSearchIndex.SearchResult result = index.search("c", schema, "orders", null, 0, 10);
+
+        assertThat(result.hits()).isNotEmpty();
+        assertThat(result.hits().get(0).table()).isEqualTo("orders");
+        assertThat(result.hits().get(0).kind()).isEqualTo(SchemaSearchIndex.KIND_TABLE);
+    }
+
+    @Test
+    void everyQueryWordMustMatch() {
+        SchemaSearchIndex.SearchResult result = index.search("c", schema, "customer name", null, 0, 10);
+
+        assertThat(result.hits()).extracting(SchemaSearchIndex.Hit::column).containsExactly("customer_name");
+        assertThat(result.total()).isEqualTo(1);
+    }
+
+    @Test
+    void joinedAndCamelCaseNamesMatchEachOther() {
+        SchemaSearchIndex.SearchResult result = index.search("c", schema, "customer_id", SchemaSearchIndex.KIND_COLUMN, 0, 10);
+
+        assertThat(result.hits().get(0).column()).isEqualTo("customerId");
+    }
+
+    @Test
+    void misspelledWordsMatchThroughTrigrams() {
+        SchemaSearchIndex.SearchResult result = index.search("c", schema, "custmers", null, 0, 10);
+
+        assertThat(result.hits()).extracting(SchemaSearchIndex.Hit::table).contains("customers");
+    }
+
+    @Test
+    void nameMatchesRankAboveCommentMatches() {
+        List<SchemaSearchIndex.Hit> hits = index.search("c", schema, "address", null, 0, 10).hits();
+
+        assertThat(hits).extracting(SchemaSearchIndex.Hit::column).containsExactly("email");
+        assertThat(hits.get(0).score()).isLessThan(100);
+    }
+
+    @Test
+    void kindFiltersResultsAndTotal() {
+        SchemaSearchIndex.SearchResult result = index.search("c", schema, "customer", SchemaSearchIndex.KIND_VIEW, 0, 10);
+
+        assertThat(result.hits()).extracting(SchemaSearchIndex.Hit::table).containsExactly("customer_orders");
+        assertThat(result.total()).isEqualTo(1);
+    }
+
+    @Test
+    void pagesAreDisjointAndFollowRanking() {
+        SchemaSearchIndex.SearchResult all = index.search("c", schema, "order", null, 0, 50);
+        SchemaSearchIndex.SearchResult first = index.search("c", schema, "order", null, 0, 2);
+        SchemaSearchIndex.SearchResult second = index.search("c", schema, "order", null, 2, 2);
+
+        assertThat(first.total()).isEqualTo(all.total());
+        List<SchemaSearchIndex.Hit> paged = new ArrayList<>(first.hits());
+        paged.addAll(second.hits());
+        assertThat(paged).containsExactlyElementsOf(all.hits().subList(0, paged.size()));
+    }
+
+    @Test
+    void offsetPastTheMatchesReturnsNoHits() {
+        SchemaSearchIndex.SearchResult result = index.search("c", schema, "order", null, 10_000, 200);
+
+        assertThat(result.hits()).isEmpty();
+        assertThat(result.total()).isPositive();
+    }
+
+    @Test
+    void blankQueryMatchesNothing() {
+        assertThat(index.search("c", schema, "  _ ", null, 0, 10).hits()).isEmpty();
+    }
+
+    @Test
+    void rebuildsWhenTheSchemaChanges() {
+        index.search("c", schema, "orders", null, 0, 10);
+        DatabaseSchema renamed = new DatabaseSchema("shop", List.of(table("invoices", column("id", "integer", null))),
+            List.of(), Map.of());
+
+        assertThat(index.search("c", renamed, "orders", null, 0, 10).hits()).isEmpty();
+        assertThat(index.search("c", renamed, "invoices", null, 0, 10).hits()).hasSize(1);
+    }
+}
@@ -0,0 +1,112 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.model.DatabaseSchema;
+import com.sqlassistant.backend.model.SchemaFingerprint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaSnapshotStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final SchemaSnapshotStore store = new SchemaSnapshotStore();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "maxAgeDays", 30L);
+    }
+
+    private static DatabaseSchema schema() {
+        DatabaseSchema.TableInfo customers = new DatabaseSchema.TableInfo(
+            "customers", "public", "TABLE",
+            List.of(
+                new DatabaseSchema.ColumnInfo("id", "integer", "int4", false, true, true, null, null, null, 32, 0),
+                new DatabaseSchema.ColumnInfo("name", "varchar", "varchar(100)", true, false, false,
+                    "'anonymous'", "Display name, ünïcode", 100, null, null)
+            ),
+            List.of(new DatabaseSchema.IndexInfo("customers_name_idx", false, List.of("name"), "btree")),
+            List.of(),
+            null
+        );
+        DatabaseSchema.TableInfo orders = new DatabaseSchema.TableInfo(
+            "orders", null, "TABLE",
+            List.of(
+                new DatabaseSchema.ColumnInfo("id", "bigint", "int8", false, true, false, null, null, null, null, null),
+                new DatabaseSchema.ColumnInfo("customer_id", "integer", "int4", false, false, false, null, null, null, null, null),
+                new DatabaseSchema.ColumnInfo("total", "numeric", "numeric(12,2)", true, false, false, "0", null, null, 12, 2)
+            ),
+            List.of(
+                new DatabaseSchema.IndexInfo("orders_pkey", true, List.of("id"), null),
+                new DatabaseSchema.IndexInfo("orders_customer_total_idx", false, List.of("customer_id", "total"), "btree")
+            ),
+            List.of(new DatabaseSchema.ForeignKeyInfo(
+                "orders_customer_fk", "customer_id", "customers", "id", null, "CASCADE")),
+            "Placed orders"
+        );
+        DatabaseSchema.ViewInfo view = new DatabaseSchema.ViewInfo(
+            "big_orders", "public", "SELECT * FROM orders WHERE total > 100",
+            List.of(new DatabaseSchema.ColumnInfo("id", "bigint", null, true, false, false, null, null, null, null, null)),
+            null
+        );
+        return new DatabaseSchema("shop", List.of(customers, orders), List.of(view), Map.of("dialect", "postgresql"));
+    }
+
+    private static SchemaFingerprint fingerprint() {
+        return new SchemaFingerprint("v1", null, Map.of("public.customers", "a1", "orders", "b2"));
+    }
+
+    @Test
+    void aSavedSnapshotLoadsBackEqual() {
+        store.save("conn-1", schema(), fingerprint());
+
+        SchemaSnapshotStore.Snapshot snapshot = store.load("conn-1").orElseThrow();
+
+        assertThat(snapshot.schema()).isEqualTo(schema());
+        assertThat(snapshot.fingerprint()).isEqualTo(fingerprint());
+        assertThat(snapshot.savedAt()).isPositive();
+        assertThat(store.listConnectionIds()).containsExactly("conn-1");
+    }
+
+    @Test
+    void savingAgainReplacesTheSnapshotThatWasLoaded() {
+        store.save("conn-1", schema(), fingerprint());
+        store.load("conn-1").orElseThrow();
+
+        DatabaseSchema changed = new DatabaseSchema("shop", List.of(), List.of(), Map.of());
+        store.save("conn-1", changed, fingerprint());
+
+        assertThat(store.load("conn-1").orElseThrow().schema()).isEqualTo(changed);
+    }
+
+    @Test
+    void truncatedOrForeignFilesAreDiscarded() throws Exception {
+        store.save("conn-1", schema(), fingerprint());
+        Path file;
+        try (Stream<Path> files = Files.list(directory)) {
+            file = files.filter(path -> path.toString().endsWith(".snap")).findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThat(store.load("conn-1")).isEmpty();
+
+        Files.write(file, "not a snapshot".getBytes());
+        assertThat(store.load("conn-1")).isEmpty();
+
+        assertThat(store.load("conn-2")).isEmpty();
+    }
+}
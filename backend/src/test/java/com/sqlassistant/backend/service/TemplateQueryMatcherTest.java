@@ -0,0 +1,137 @@
+package com.sqlassistant.backend.service;
+
+import com.sqlassistant.backend.dto.QueryDto;
+import com.sqlassistant.backend.model.DatabaseSchema;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TemplateQueryMatcherTest {
+
+    private final TemplateQueryMatcher matcher = new TemplateQueryMatcher();
+
+    private static DatabaseSchema.ColumnInfo column(String name) {
+        return new DatabaseSchema.ColumnInfo(name, "integer", null, true, false, false, null, null, null, null, null);
+    }
+
+    private static DatabaseSchema.TableInfo table(String schema, String name, String... columns) {
+        return new DatabaseSchema.TableInfo(
+            name, schema, "TABLE", Arrays.stream(columns).map(TemplateQueryMatcherTest::column).toList(),
+            List.of(), List.of(), null);
+    }
+
+    /** A small shop schema as the given engine reports it. */
+    private static DatabaseSchema shop(String product, String schema) {
+        return new DatabaseSchema(
+            "shop",
+            List.of(
+                table(schema, "customers", "id", "full_name", "created_at"),
+                table(schema, "order_items", "id", "unit_price", "quantity"),
+                table(schema, "categories", "id", "name"),
+                table(schema, "odd`na\"me", "id")
+            ),
+            List.of(new DatabaseSchema.ViewInfo("big_spenders", schema, "SELECT ...", List.of(column("total")), null)),
+            Map.of("databaseProductName", product)
+        );
+    }
+
+    private static final DatabaseSchema POSTGRES = shop("PostgreSQL", "public");
+    private static final DatabaseSchema MYSQL = shop("MySQL", "shop");
+    private static final DatabaseSchema SQLITE = shop("SQLite", null);
+
+    private Optional<String> sql(String question, DatabaseSchema schema) {
+        return matcher.match(null, question, schema).map(QueryDto.QueryResponse::generatedSql);
+    }
+
+    @Test
+    void countsAreAnsweredWithTheTableQuotedForEachDialect() {
+        assertThat(sql("How many customers are there?", POSTGRES))
+            .contains("SELECT COUNT(*) AS row_count FROM \"public\".\"customers\"");
+        assertThat(sql("How many customers are there?", MYSQL))
+            .contains("SELECT COUNT(*) AS row_count FROM `shop`.`customers`");
+        assertThat(sql("How many customers are there?", SQLITE))
+            .contains("SELECT COUNT(*) AS row_count FROM \"customers\"");
+    }
+
+    @Test
+    void quoteCharactersInsideNamesAreEscaped() {
+        assertThat(sql("count of odd na me", POSTGRES)).contains("SELECT COUNT(*) AS row_count FROM \"public\".\"odd`na\"\"me\"");
+        assertThat(sql("count of odd na me", MYSQL)).contains("SELECT COUNT(*) AS row_count FROM `shop`.`odd``na\"me`");
+    }
+
+    @Test
+    void topNOrdersByTheResolvedColumn() {
+        assertThat(sql("show me the top 5 customers by created at", POSTGRES))
+            .contains("SELECT * FROM \"public\".\"customers\" ORDER BY \"created_at\" DESC LIMIT 5");
+        assertThat(sql("bottom 3 order item by unit prices", MYSQL))
+            .contains("SELECT * FROM `shop`.`order_items` ORDER BY `unit_price` ASC LIMIT 3");
+        assertThat(sql("top 5000 customers by id", SQLITE))
+            .contains("SELECT * FROM \"customers\" ORDER BY \"id\" DESC LIMIT 1000");
+    }
+
+    @Test
+    void columnListingsUseTheDialectsCatalog() {
+        assertThat(sql("list the columns of categories", SQLITE))
+            .contains("SELECT name AS column_name, type AS data_type FROM pragma_table_info('categories')");
+        assertThat(sql("list the columns of categories", MYSQL)).contains(
+            "SELECT column_name, data_type FROM information_schema.columns WHERE table_name = 'categories'"
+                + " AND table_schema = 'shop' ORDER BY ordinal_position");
+        assertThat(sql("describe columns of the category table", POSTGRES)).contains(
+            "SELECT column_name, data_type FROM information_schema.columns WHERE table_name = 'categories'"
+                + " AND table_schema = 'public' ORDER BY ordinal_position");
+    }
+
+    @Test
+    void rowListingsAndViewsAreLimited() {
+        assertThat(sql("show the first 20 big spenders", POSTGRES))
+            .contains("SELECT * FROM \"public\".\"big_spenders\" LIMIT 20");
+        assertThat(sql("list categories", SQLITE)).contains("SELECT * FROM \"categories\" LIMIT 100");
+
+        QueryDto.QueryResponse response = matcher.match(null, "list categories", SQLITE).orElseThrow();
+        assertThat(response.isExecutable()).isTrue();
+        assertThat(response.metadata().complexity()).isEqualTo("TEMPLATE");
+        assertThat(response.metadata().tablesInvolved()).containsExactly("categories");
+    }
+
+    @Test
+    void questionsThatArentFormulaicFallThroughToTheLlm() {
+        assertThat(sql("Which customers spent the most on order items last month?", POSTGRES)).isEmpty();
+        assertThat(sql("What is the average unit price per category?", POSTGRES)).isEmpty();
+        assertThat(sql("show me revenue trends", POSTGRES)).isEmpty();
+        // Formulaic, but naming something the schema doesn't have
+        assertThat(sql("how many invoices are there", POSTGRES)).isEmpty();
+        assertThat(sql("top 10 customers by lifetime value", POSTGRES)).isEmpty();
+        assertThat(matcher.match(null, null, POSTGRES)).isEmpty();
+    }
+
+    @Test
+    void ambiguousNamesFallThroughToTheLlm() {
+        DatabaseSchema twoSchemas = new DatabaseSchema(
+            "shop",
+            List.of(table("sales", "orders", "id"), table("archive", "orders", "id"), table(null, "user", "id"),
+                table(null, "users", "id")),
+            List.of(),
+            Map.of("databaseProductName", "PostgreSQL")
+        );
+
+        assertThat(sql("how many orders", twoSchemas)).isEmpty();
+        // An exact name wins over a plural variant of another table
+        assertThat(sql("how many users", twoSchemas)).contains("SELECT COUNT(*) AS row_count FROM \"users\"");
+        assertThat(sql("how many user", twoSchemas)).contains("SELECT COUNT(*) AS row_count FROM \"user\"");
+    }
+
+    @Test
+    void aChangedSchemaIsReindexedForTheConnection() {
+        assertThat(matcher.match("conn-1", "how many invoices", POSTGRES)).isEmpty();
+
+        DatabaseSchema withInvoices = new DatabaseSchema(
+            "shop", List.of(table("public", "invoices", "id")), List.of(), Map.of("databaseProductName", "PostgreSQL"));
+
+        assertThat(matcher.match("conn-1", "how many invoices", withInvoices)).isPresent();
+    }
+}
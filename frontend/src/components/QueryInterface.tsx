@@ -34,7 +34,7 @@ export function QueryInterface({ connectionId, connection }: QueryInterfaceProps
 
   const generateQueryMutation = useMutation({
     mutationFn: (query: string) => queryApi.generate(
-      { naturalLanguageQuery: query, connectionDto : connection },
+      { naturalLanguageQuery: query },
       connectionId,
       connection
     ),
@@ -75,7 +75,7 @@ export function QueryInterface({ connectionId, connection }: QueryInterfaceProps
 
   const executeQueryMutation = useMutation({
     mutationFn: (sql: string) => queryApi.execute(
-      { sql, dryRun: false, limit: 100, connectionDto: connection },
+      { sql, dryRun: false, limit: 100 },
       connectionId,
       connection
     ),
@@ -1,7 +1,7 @@
 'use client';
 
-import { useState } from 'react';
-import { useQuery } from '@tanstack/react-query';
+import { useEffect, useState } from 'react';
+import { keepPreviousData, useQuery } from '@tanstack/react-query';
 import {
   Database,
   Table,
@@ -117,10 +117,29 @@ export function SchemaViewer({ connectionId, connection }: SchemaViewerProps) {
 
   const schema = data?.schema;
 
-  const filteredTables = schema?.tables.filter(table =>
-    table.name.toLowerCase().includes(searchTerm.toLowerCase()) ||
-    table.columns.some(col => col.name.toLowerCase().includes(searchTerm.toLowerCase()))
-  ) || [];
+  // Search runs on the server once typing pauses; the full schema is too large to filter per keystroke
+  const [debouncedTerm, setDebouncedTerm] = useState('');
+  useEffect(() => {
+    const timer = setTimeout(() => setDebouncedTerm(searchTerm.trim()), 250);
+    return () => clearTimeout(timer);
+  }, [searchTerm]);
+
+  const { data: searchData } = useQuery({
+    queryKey: ['database', 'schema-search', connectionId, debouncedTerm],
+    queryFn: () =>
+      databaseApi.searchSchema(connectionId, connection, debouncedTerm, { limit: 200 }).then(res => res.data),
+    enabled: debouncedTerm.length > 0,
+    placeholderData: keepPreviousData,
+  });
+
+  // Tables in the order of their best-ranked hit, whether the table itself or one of its columns matched
+  let filteredTables = schema?.tables ?? [];
+  if (debouncedTerm && searchData) {
+    const tablesByName = new Map(filteredTables.map(table => [table.name, table]));
+    filteredTables = [...new Set(searchData.hits.filter(hit => hit.kind !== 'VIEW').map(hit => hit.table))]
+      .map(name => tablesByName.get(name))
+      .filter((table): table is TableInfo => table !== undefined);
+  }
 
   if (isLoading) {
     return (
@@ -99,10 +99,19 @@ export interface ViewInfo {
   comment?: string;
 }
 
+export interface SchemaSearchHit {
+  kind: 'TABLE' | 'VIEW' | 'COLUMN';
+  table: string;
+  schema?: string;
+  column?: string;
+  dataType?: string;
+  comment?: string;
+  score: number;
+}
+
 export interface QueryRequest {
   naturalLanguageQuery: string;
   connectionId?: string;
-  connectionDto: DatabaseConnection
   context?: Record<string, any>;
 }
 
@@ -120,7 +129,6 @@ export interface QueryExecutionRequest {
   limit?: number;
   offset?: number;
   dryRun?: boolean;
-  connectionDto: DatabaseConnection;
 }
 
 export interface QueryExecutionResponse {
@@ -152,15 +160,88 @@ export interface QueryValidationResponse {
   sanitizedQuery?: string;
 }
 
+type SchemaResponse = {connectionId: string; schema: DatabaseSchema; status: string};
+type RegisterResponse = {connectionId: string; status: string; message: string};
+type SchemaSearchResponse = {
+  connectionId: string;
+  hits: SchemaSearchHit[];
+  total: number;
+  offset: number;
+  limit: number;
+  status: string;
+};
+
+const schemaCache = new Map<string, {etag: string; data: SchemaResponse}>();
+
+// Ids issued by re-registration after a backend restart, keyed by the id the caller holds
+const reregisteredIds = new Map<string, string>();
+
+const isUnknownConnection = (error: unknown) =>
+  axios.isAxiosError(error) &&
+  error.response?.status === 404 &&
+  error.response.data?.error === 'UNKNOWN_CONNECTION';
+
+// Calls only send the connection id; registrations live in backend memory, so register again and retry once if it's gone
+async function withConnection<T>(
+  connectionId: string,
+  connection: DatabaseConnection,
+  call: (id: string) => Promise<T>,
+): Promise<T> {
+  const id = reregisteredIds.get(connectionId) ?? connectionId;
+  try {
+    return await call(id);
+  } catch (error) {
+    if (!isUnknownConnection(error)) throw error;
+    const registered = await api.post<RegisterResponse>('/database/connections', connection);
+    reregisteredIds.set(connectionId, registered.data.connectionId);
+    return call(registered.data.connectionId);
+  }
+}
+
 // API functions
 export const databaseApi = {
+  // Registers the connection server-side; later calls reference the returned id
   testConnection: (connection: DatabaseConnection) =>
-    api.post<{connectionId: string; status: string; message: string}>('/database/test-connection', connection),
+    api.post<RegisterResponse>('/database/test-connection', connection),
   
-  getSchema: (connection: DatabaseConnection, connectionId?: string) =>
-    api.post<{connectionId: string; schema: DatabaseSchema; status: string}>('/database/schema', connection, {
-      params: connectionId ? { connectionId } : undefined
-    }),
+  // Conditional fetch: the backend answers 304 when the schema fingerprint still matches our ETag
+  getSchema: async (connection: DatabaseConnection, connectionId?: string) => {
+    if (!connectionId) {
+      return api.post<SchemaResponse>('/database/schema', connection);
+    }
+
+    const cached = schemaCache.get(connectionId);
+    const response = await withConnection(connectionId, connection, (id) =>
+      api.post<SchemaResponse>('/database/schema', undefined, {
+        params: { connectionId: id },
+        headers: cached ? { 'If-None-Match': cached.etag } : undefined,
+        validateStatus: (status) => (status >= 200 && status < 300) || status === 304,
+      }),
+    );
+
+    if (response.status === 304 && cached) {
+      return { ...response, status: 200, data: cached.data };
+    }
+
+    const etag = response.headers['etag'];
+    if (etag && response.data) {
+      schemaCache.set(connectionId, { etag, data: response.data });
+    }
+    return response;
+  },
+  
+  // Ranked server-side search; large catalogs are too slow to filter in the browser
+  searchSchema: (
+    connectionId: string,
+    connection: DatabaseConnection,
+    q: string,
+    options?: {kind?: SchemaSearchHit['kind']; offset?: number; limit?: number},
+  ) =>
+    withConnection(connectionId, connection, (id) =>
+      api.get<SchemaSearchResponse>('/database/schema/search', {
+        params: { connectionId: id, q, ...options },
+      }),
+    ),
   
   getSupportedTypes: () =>
     api.get<{supportedTypes: string[]; status: string}>('/database/supported-types'),
@@ -171,23 +252,33 @@ export const databaseApi = {
 
 export const queryApi = {
   generate: (request: QueryRequest, connectionId: string, connection: DatabaseConnection) =>
-    api.post<{query: QueryResponse; status: string}>('/query/generate', request, {
-      params: { connectionId },
-      // Note: The backend expects connection info too, this might need adjustment
-    }),
+    withConnection(connectionId, connection, (id) =>
+      api.post<{query: QueryResponse; status: string}>('/query/generate', request, {
+        params: { connectionId: id },
+      }),
+    ),
   
-  validate: (sql: string) =>
-    api.post<{validation: QueryValidationResponse; status: string}>('/query/validate', { sql }),
+  // With a connectionId whose schema is loaded, suggestions are checked against the real indexes
+  validate: (sql: string, connectionId?: string) =>
+    api.post<{validation: QueryValidationResponse; indexAware: boolean; status: string}>(
+      '/query/validate',
+      { sql },
+      { params: connectionId ? { connectionId } : undefined },
+    ),
   
   execute: (request: QueryExecutionRequest, connectionId: string, connection: DatabaseConnection) =>
-    api.post<{execution: QueryExecutionResponse; status: string}>('/query/execute', request, {
-      params: { connectionId }
-    }),
+    withConnection(connectionId, connection, (id) =>
+      api.post<{execution: QueryExecutionResponse; status: string}>('/query/execute', request, {
+        params: { connectionId: id },
+      }),
+    ),
   
   explain: (sql: string, connectionId: string, connection: DatabaseConnection) =>
-    api.post<{explanation: string; status: string}>('/query/explain', { sql }, {
-      params: { connectionId }
-    }),
+    withConnection(connectionId, connection, (id) =>
+      api.post<{explanation: string; source: 'LOCAL' | 'CACHE' | 'LLM'; fingerprint: string; status: string}>('/query/explain', { sql }, {
+        params: { connectionId: id },
+      }),
+    ),
   
   getHistory: (connectionId: string) =>
     api.get<{history: any[]; status: string; message: string}>('/query/history', {
@@ -0,0 +1,117 @@
+package com.sqlassistant.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Random;
+
+/**
+ * Creates {@code t_0 .. t_N} with a fixed column pattern (integer, text, double, timestamp,
+ * repeating) plus an indexed {@code c_1} and a {@code ref_id} foreign key to the previous table,
+ * then fills them with deterministic pseudo-random rows.
+ */
+final class DatabaseSeeder {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final int tables;
+    private final int columns;
+    private final int rows;
+    private final long seed;
+
+    DatabaseSeeder(LoadTestOptions options) {
+        this.tables = options.tables();
+        this.columns = options.columns();
+        this.rows = options.rows();
+        this.seed = options.seed();
+    }
+
+    void seed(String jdbcUrl, boolean sqlite) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, "sa", "")) {
+            if (sqlite) {
+                // The journal mode can't change inside a transaction, so set it before autocommit goes off
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA journal_mode = WAL");
+                    statement.execute("PRAGMA synchronous = OFF");
+                }
+            }
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                for (int t = tables - 1; t >= 0; t--) {
+                    statement.execute("DROP TABLE IF EXISTS t_" + t);
+                }
+                for (int t = 0; t < tables; t++) {
+                    statement.execute(createTable(t, sqlite));
+                    statement.execute("CREATE INDEX idx_t_" + t + "_c_1 ON t_" + t + " (c_1)");
+                }
+            }
+            connection.commit();
+
+            Random random = new Random(seed);
+            for (int t = 0; t < tables; t++) {
+                insertRows(connection, t, random);
+            }
+        }
+    }
+
+    private String createTable(int table, boolean sqlite) {
+        StringBuilder ddl = new StringBuilder("CREATE TABLE t_").append(table).append(" (id INTEGER PRIMARY KEY");
+        for (int c = 1; c < columns; c++) {
+            ddl.append(", c_").append(c).append(' ').append(columnType(c, sqlite));
+        }
+        ddl.append(", ref_id INTEGER");
+        if (table > 0) {
+            ddl.append(", FOREIGN KEY (ref_id) REFERENCES t_").append(table - 1).append("(id)");
+        }
+        return ddl.append(')').toString();
+    }
+
+    private String columnType(int column, boolean sqlite) {
+        return switch (column % 4) {
+            case 1 -> "INTEGER";
+            case 2 -> sqlite ? "TEXT" : "VARCHAR(64)";
+            case 3 -> sqlite ? "REAL" : "DOUBLE PRECISION";
+            default -> sqlite ? "TEXT" : "TIMESTAMP";
+        };
+    }
+
+    private void insertRows(Connection connection, int table, Random random) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO t_").append(table).append(" VALUES (?");
+        for (int c = 1; c <= columns; c++) {
+            sql.append(", ?");
+        }
+        sql.append(')');
+
+        long baseTime = 1_700_000_000_000L;
+        try (PreparedStatement insert = connection.prepareStatement(sql.toString())) {
+            for (int row = 0; row < rows; row++) {
+                insert.setInt(1, row);
+                for (int c = 1; c < columns; c++) {
+                    switch (c % 4) {
+                        case 1 -> insert.setInt(c + 1, random.nextInt(10_000));
+                        case 2 -> insert.setString(c + 1, "value_" + random.nextInt(1_000));
+                        case 3 -> insert.setDouble(c + 1, random.nextDouble() * 1_000);
+                        default -> insert.setTimestamp(c + 1, new Timestamp(baseTime + random.nextInt(1_000_000_000)));
+                    }
+                }
+                if (table > 0) {
+                    insert.setInt(columns + 1, random.nextInt(rows));
+                } else {
+                    insert.setNull(columns + 1, java.sql.Types.INTEGER);
+                }
+                insert.addBatch();
+
+                if ((row + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+    }
+}
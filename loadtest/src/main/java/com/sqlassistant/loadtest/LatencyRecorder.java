@@ -0,0 +1,74 @@
+package com.sqlassistant.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Raw latency samples for one endpoint. Every sample is kept (8 bytes each) so percentiles
+ * are exact; a run at a few hundred requests per second for minutes is only a few MB.
+ */
+final class LatencyRecorder {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long[] samples = new long[4096];
+    private int count;
+
+    void record(long latencyNanos, boolean success) {
+        lock.lock();
+        try {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+            samples[count++] = latencyNanos;
+        } finally {
+            lock.unlock();
+        }
+        if (!success) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /** A request that was due but not sent because the in-flight limit was reached. */
+    void drop() {
+        dropped.incrementAndGet();
+    }
+
+    Map<String, Object> summarize(double elapsedSeconds) {
+        long[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(samples, count);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", sorted.length);
+        summary.put("errors", errors.get());
+        summary.put("dropped", dropped.get());
+        summary.put("throughputPerSecond", round(sorted.length / elapsedSeconds));
+        summary.put("p50Ms", percentileMs(sorted, 0.50));
+        summary.put("p99Ms", percentileMs(sorted, 0.99));
+        summary.put("p999Ms", percentileMs(sorted, 0.999));
+        summary.put("maxMs", sorted.length == 0 ? 0.0 : round(sorted[sorted.length - 1] / 1e6));
+        return summary;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,226 @@
+package com.sqlassistant.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * End-to-end load test that needs no network: seeds embedded H2/SQLite databases, starts a stub
+ * LLM server, launches the backend jar against both, drives a mixed request load at a fixed
+ * rate and reports throughput and p50/p99/p999 latency per endpoint.
+ *
+ * <pre>
+ *   cd backend && mvn -DskipTests package
+ *   cd ../loadtest && mvn -q compile exec:java -Dexec.args="--rate=100 --duration=120 --rows=50000"
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Files.createDirectories(options.workDir());
+
+        List<Map<String, Object>> connections = seedDatabases(options);
+
+        Process backend = null;
+        try (StubLlmServer llm = new StubLlmServer(options)) {
+            String baseUrl;
+            if (options.backendUrl() != null) {
+                baseUrl = options.backendUrl();
+                System.out.println("Using running backend at " + baseUrl + "; point its gemini.api.url at " + llm.geminiUrl());
+            } else {
+                backend = launchBackend(options, llm);
+                baseUrl = "http://127.0.0.1:" + options.backendPort() + "/api";
+            }
+
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            awaitHealthy(client, baseUrl, backend);
+
+            List<TrafficDriver.Target> targets = new ArrayList<>();
+            for (Map<String, Object> connection : connections) {
+                targets.add(new TrafficDriver.Target(
+                    (String) connection.get("type"), connection, connect(client, objectMapper, baseUrl, connection)
+                ));
+            }
+
+            TrafficDriver driver = new TrafficDriver(client, objectMapper, baseUrl, targets, options);
+            if (options.warmupSeconds() > 0) {
+                System.out.printf("Warming up for %ds at %.0f req/s%n", options.warmupSeconds(), options.rate());
+                driver.run(Duration.ofSeconds(options.warmupSeconds()), null);
+            }
+
+            Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+            options.mix().keySet().forEach(endpoint -> recorders.put(endpoint, new LatencyRecorder()));
+
+            System.out.printf("Measuring for %ds at %.0f req/s%n", options.durationSeconds(), options.rate());
+            long llmCallsBefore = llm.requestCount();
+            long started = System.nanoTime();
+            driver.run(Duration.ofSeconds(options.durationSeconds()), recorders);
+            double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+            report(options, objectMapper, recorders, elapsedSeconds, llm.requestCount() - llmCallsBefore);
+        } finally {
+            if (backend != null) {
+                backend.destroy();
+                backend.waitFor();
+            }
+        }
+    }
+
+    private static List<Map<String, Object>> seedDatabases(LoadTestOptions options) throws Exception {
+        DatabaseSeeder seeder = new DatabaseSeeder(options);
+        List<Map<String, Object>> connections = new ArrayList<>();
+
+        for (String engine : options.engines()) {
+            long started = System.nanoTime();
+            Map<String, Object> connection = new LinkedHashMap<>();
+            // host is required by the connection DTO even for file databases
+            connection.put("host", "localhost");
+            connection.put("username", "sa");
+            connection.put("password", "");
+
+            if (engine.equals("h2")) {
+                Path file = options.workDir().resolve("h2").resolve("loadtest");
+                Files.createDirectories(file.getParent());
+                seeder.seed("jdbc:h2:file:" + file, false);
+                connection.put("type", "H2");
+                connection.put("database", "file:" + file);
+            } else {
+                Path file = options.workDir().resolve("sqlite").resolve("loadtest.db");
+                Files.createDirectories(file.getParent());
+                seeder.seed("jdbc:sqlite:" + file, true);
+                connection.put("type", "SQLITE");
+                connection.put("database", file.toString());
+            }
+
+            System.out.printf("Seeded %s: %d tables x %d rows in %.1fs%n",
+                engine, options.tables(), options.rows(), (System.nanoTime() - started) / 1e9);
+            connections.add(connection);
+        }
+        return connections;
+    }
+
+    private static Process launchBackend(LoadTestOptions options, StubLlmServer llm) throws IOException {
+        if (!Files.isRegularFile(options.backendJar())) {
+            throw new IllegalStateException("Backend jar not found at " + options.backendJar()
+                + "; build it with 'mvn -DskipTests package' in backend/ or pass --backend-jar / --backend-url");
+        }
+
+        Path data = options.workDir().resolve("backend-data");
+        List<String> command = List.of(
+            Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+            // Arrow exports need this at runtime, as in the backend's spring-boot:run configuration
+            "--add-opens=java.base/java.nio=ALL-UNNAMED",
+            "-jar", options.backendJar().toString(),
+            "--server.port=" + options.backendPort(),
+            "--gemini.api.key=loadtest",
+            "--gemini.api.url=" + llm.geminiUrl(),
+            // The stub has no quota; the free-tier default would turn most LLM-bound requests into 503s
+            "--gemini.api.requests-per-minute=100000",
+            "--gemini.api.burst=1000",
+            "--openai.api.key=loadtest",
+            "--openai.api.base-url=" + llm.openAiBaseUrl(),
+            "--query.history.directory=" + data.resolve("query-history"),
+            "--query.schema.snapshot.directory=" + data.resolve("schema-snapshots"),
+            "--query.export.spool-directory=" + data.resolve("exports"),
+            "--logging.level.com.sqlassistant=INFO"
+        );
+
+        Path log = options.workDir().resolve("backend.log");
+        System.out.println("Starting backend on port " + options.backendPort() + " (log: " + log + ")");
+        return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(log.toFile())
+            .start();
+    }
+
+    private static void awaitHealthy(HttpClient client, String baseUrl, Process backend) throws InterruptedException {
+        Instant deadline = Instant.now().plus(STARTUP_TIMEOUT);
+        HttpRequest health = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health"))
+            .timeout(Duration.ofSeconds(5))
+            .build();
+
+        while (Instant.now().isBefore(deadline)) {
+            if (backend != null && !backend.isAlive()) {
+                throw new IllegalStateException("Backend exited with code " + backend.exitValue() + " during startup");
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Backend not healthy after " + STARTUP_TIMEOUT.toSeconds() + "s");
+    }
+
+    private static String connect(HttpClient client, ObjectMapper objectMapper, String baseUrl,
+                                  Map<String, Object> connection) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/database/test-connection"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(connection)))
+            .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        JsonNode body = objectMapper.readTree(response.body());
+        if (response.statusCode() != 200 || !body.hasNonNull("connectionId")) {
+            throw new IllegalStateException("Could not connect to " + connection.get("type") + ": " + response.body());
+        }
+        return body.get("connectionId").asText();
+    }
+
+    private static void report(LoadTestOptions options, ObjectMapper objectMapper, Map<String, LatencyRecorder> recorders,
+                               double elapsedSeconds, long llmCalls) throws IOException {
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.println();
+        System.out.printf("%-10s %9s %7s %8s %10s %9s %9s %9s %9s%n",
+            "endpoint", "requests", "errors", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+
+        for (Map.Entry<String, LatencyRecorder> entry : recorders.entrySet()) {
+            Map<String, Object> summary = entry.getValue().summarize(elapsedSeconds);
+            endpoints.put(entry.getKey(), summary);
+            System.out.printf("%-10s %9d %7d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                entry.getKey(), summary.get("requests"), summary.get("errors"), summary.get("dropped"),
+                summary.get("throughputPerSecond"), summary.get("p50Ms"), summary.get("p99Ms"),
+                summary.get("p999Ms"), summary.get("maxMs"));
+        }
+        System.out.printf("%nStub LLM calls: %d over %.1fs%n", llmCalls, elapsedSeconds);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("options", Map.of(
+            "engines", options.engines(),
+            "tables", options.tables(),
+            "columns", options.columns(),
+            "rows", options.rows(),
+            "rate", options.rate(),
+            "durationSeconds", options.durationSeconds(),
+            "llmLatencyMs", options.llmLatencyMs(),
+            "templateShare", options.templateShare(),
+            "mix", options.mix()
+        ));
+        report.put("elapsedSeconds", Math.round(elapsedSeconds * 100) / 100.0);
+        report.put("llmCalls", llmCalls);
+        report.put("endpoints", endpoints);
+
+        Path file = options.workDir().resolve("report.json");
+        objectMapper.writeValue(file.toFile(), report);
+        System.out.println("Report written to " + file);
+    }
+}
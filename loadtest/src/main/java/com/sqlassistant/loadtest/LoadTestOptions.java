@@ -0,0 +1,83 @@
+package com.sqlassistant.loadtest;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Command-line options, given as {@code --name=value}. Every option has a default so a bare
+ * run works against a freshly built backend jar.
+ */
+public record LoadTestOptions(
+    Path backendJar,
+    String backendUrl,
+    int backendPort,
+    Path workDir,
+    List<String> engines,
+    int tables,
+    int columns,
+    int rows,
+    double rate,
+    int durationSeconds,
+    int warmupSeconds,
+    int maxInFlight,
+    long llmLatencyMs,
+    long llmJitterMs,
+    double templateShare,
+    Map<String, Integer> mix,
+    long seed
+) {
+
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions(
+            Path.of(values.getOrDefault("backend-jar", "../backend/target/backend-0.0.1-SNAPSHOT.jar")).toAbsolutePath(),
+            values.get("backend-url"),
+            Integer.parseInt(values.getOrDefault("port", "18080")),
+            Path.of(values.getOrDefault("work-dir", "target/loadtest")).toAbsolutePath(),
+            List.of(values.getOrDefault("engines", "h2,sqlite").toLowerCase(Locale.ROOT).split(",")),
+            Integer.parseInt(values.getOrDefault("tables", "20")),
+            Integer.parseInt(values.getOrDefault("columns", "8")),
+            Integer.parseInt(values.getOrDefault("rows", "10000")),
+            Double.parseDouble(values.getOrDefault("rate", "50")),
+            Integer.parseInt(values.getOrDefault("duration", "60")),
+            Integer.parseInt(values.getOrDefault("warmup", "10")),
+            Integer.parseInt(values.getOrDefault("max-in-flight", "256")),
+            Long.parseLong(values.getOrDefault("llm-latency-ms", "300")),
+            Long.parseLong(values.getOrDefault("llm-jitter-ms", "100")),
+            Double.parseDouble(values.getOrDefault("template-share", "0.5")),
+            parseMix(values.getOrDefault("mix", "schema=1,generate=2,validate=4,execute=3")),
+            Long.parseLong(values.getOrDefault("seed", "42"))
+        );
+
+        for (String engine : options.engines()) {
+            if (!engine.equals("h2") && !engine.equals("sqlite")) {
+                throw new IllegalArgumentException("Unsupported engine " + engine + " (use h2 and/or sqlite)");
+            }
+        }
+        if (options.columns() < 2) {
+            throw new IllegalArgumentException("--columns must be at least 2");
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.split("=");
+            String endpoint = pair[0].trim();
+            if (!TrafficDriver.ENDPOINTS.contains(endpoint)) {
+                throw new IllegalArgumentException("Unknown endpoint in --mix: " + endpoint);
+            }
+            mix.put(endpoint, Integer.parseInt(pair[1].trim()));
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,112 @@
+package com.sqlassistant.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the Gemini and OpenAI endpoints. Every request is answered with a valid SELECT
+ * over the seeded tables after {@code latency +- jitter} milliseconds. The delay is scheduled
+ * rather than slept, so slow answers don't cap how many calls the stub holds open.
+ */
+final class StubLlmServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final AtomicLong requests = new AtomicLong();
+    private final HttpServer server;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final int tables;
+
+    StubLlmServer(LoadTestOptions options) throws IOException {
+        this.latencyMs = options.llmLatencyMs();
+        this.jitterMs = options.llmJitterMs();
+        this.tables = options.tables();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String geminiUrl() {
+        return baseUrl() + "/v1beta/models/stub:generateContent";
+    }
+
+    String openAiBaseUrl() {
+        return baseUrl() + "/v1";
+    }
+
+    long requestCount() {
+        return requests.get();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        exchange.getRequestBody().readAllBytes();
+
+        String path = exchange.getRequestURI().getPath();
+        String answer = objectMapper.writeValueAsString(Map.of(
+            "sql", randomQuery(),
+            "explanation", "Stubbed answer from the load-test LLM server."
+        ));
+        Object body = path.endsWith("/chat/completions")
+            ? Map.of("choices", List.of(Map.of("message", Map.of("role", "assistant", "content", answer))))
+            : Map.of("candidates", List.of(Map.of("content", Map.of("parts", List.of(Map.of("text", answer))))));
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+
+        long delay = latencyMs;
+        if (jitterMs > 0) {
+            delay += ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1);
+        }
+        scheduler.schedule(() -> respond(exchange, bytes), Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private void respond(HttpExchange exchange, byte[] bytes) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // The backend gave up on the call (timeout or cancel); nothing to report
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String randomQuery() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int table = random.nextInt(tables);
+        return switch (random.nextInt(3)) {
+            case 0 -> "SELECT id, c_1 FROM t_" + table + " WHERE c_1 > " + random.nextInt(10_000) + " ORDER BY c_1 DESC LIMIT 20";
+            case 1 -> "SELECT c_1, COUNT(*) AS total FROM t_" + table + " GROUP BY c_1 ORDER BY total DESC LIMIT 10";
+            default -> "SELECT * FROM t_" + table + " WHERE id = " + random.nextInt(1_000);
+        };
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+}
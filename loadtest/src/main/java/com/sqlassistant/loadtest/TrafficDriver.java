@@ -0,0 +1,198 @@
+package com.sqlassistant.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open-loop traffic at a fixed rate: requests are issued on schedule whether or not earlier
+ * ones have answered, and latency is measured from the scheduled send time. A slow backend
+ * therefore shows up as queueing in the percentiles instead of silently lowering the offered
+ * load (coordinated omission). Requests beyond {@code max-in-flight} are counted as dropped.
+ */
+final class TrafficDriver {
+
+    static final List<String> ENDPOINTS = List.of("schema", "generate", "validate", "execute");
+
+    /** A seeded database and the id it was registered under; requests send only the id. */
+    record Target(String engine, Map<String, Object> connection, String connectionId) {}
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client;
+    private final ObjectMapper objectMapper;
+    private final String baseUrl;
+    private final List<Target> targets;
+    private final LoadTestOptions options;
+    private final String[] weightedEndpoints;
+    private final Map<String, String> schemaETags = new ConcurrentHashMap<>();
+
+    TrafficDriver(HttpClient client, ObjectMapper objectMapper, String baseUrl, List<Target> targets, LoadTestOptions options) {
+        this.client = client;
+        this.objectMapper = objectMapper;
+        this.baseUrl = baseUrl;
+        this.targets = targets;
+        this.options = options;
+
+        List<String> weighted = new ArrayList<>();
+        options.mix().forEach((endpoint, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(endpoint);
+            }
+        });
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("--mix has no positive weights");
+        }
+        this.weightedEndpoints = weighted.toArray(String[]::new);
+    }
+
+    /**
+     * Runs the mix for {@code duration}, then waits for in-flight requests to finish.
+     *
+     * @param recorders per-endpoint recorders, or null to discard samples (warm-up)
+     */
+    void run(Duration duration, Map<String, LatencyRecorder> recorders) throws InterruptedException {
+        long intervalNanos = (long) (1_000_000_000L / options.rate());
+        long start = System.nanoTime();
+        long totalRequests = duration.toNanos() / intervalNanos;
+        Semaphore inFlight = new Semaphore(options.maxInFlight());
+
+        for (long i = 0; i < totalRequests; i++) {
+            long intended = start + i * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            String endpoint = weightedEndpoints[ThreadLocalRandom.current().nextInt(weightedEndpoints.length)];
+            LatencyRecorder recorder = recorders != null ? recorders.get(endpoint) : null;
+            if (!inFlight.tryAcquire()) {
+                if (recorder != null) {
+                    recorder.drop();
+                }
+                continue;
+            }
+
+            Target target = targets.get(ThreadLocalRandom.current().nextInt(targets.size()));
+            HttpRequest request;
+            try {
+                request = buildRequest(endpoint, target);
+            } catch (IOException e) {
+                inFlight.release();
+                throw new IllegalStateException("Could not build " + endpoint + " request", e);
+            }
+
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                long latency = System.nanoTime() - intended;
+                boolean success = error == null && isSuccess(endpoint, response);
+                if (success && endpoint.equals("schema")) {
+                    response.headers().firstValue("ETag").ifPresent(tag -> schemaETags.put(target.connectionId(), tag));
+                }
+                if (recorder != null) {
+                    recorder.record(latency, success);
+                }
+                inFlight.release();
+            });
+        }
+
+        // Drain: everything issued during the window counts toward it
+        if (!inFlight.tryAcquire(options.maxInFlight(), REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            System.err.println("Timed out waiting for in-flight requests to finish");
+        } else {
+            inFlight.release(options.maxInFlight());
+        }
+    }
+
+    private HttpRequest buildRequest(String endpoint, Target target) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String connectionParam = "?connectionId=" + URLEncoder.encode(target.connectionId(), StandardCharsets.UTF_8);
+
+        return switch (endpoint) {
+            case "schema" -> {
+                HttpRequest.Builder builder = post("/database/schema" + connectionParam, null);
+                // Repeat loads revalidate like the frontend cache does, so most answers are 304s
+                String eTag = schemaETags.get(target.connectionId());
+                if (eTag != null) {
+                    builder.header("If-None-Match", eTag);
+                }
+                yield builder.build();
+            }
+            case "generate" -> post("/query/generate" + connectionParam, Map.of(
+                "naturalLanguageQuery", randomQuestion(random)
+            )).build();
+            case "validate" -> post("/query/validate", Map.of("sql", randomSql(random))).build();
+            case "execute" -> post("/query/execute" + connectionParam, Map.of(
+                "sql", randomSql(random),
+                "limit", 100
+            )).build();
+            default -> throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+        };
+    }
+
+    private HttpRequest.Builder post(String path, Object body) throws IOException {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(REQUEST_TIMEOUT)
+            .header("Content-Type", "application/json")
+            .POST(body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+    }
+
+    /**
+     * HTTP errors count as failures, and so does an execution the backend reports as ERROR
+     * inside a 200 body. Invalid SQL from /query/validate is a normal answer, not a failure.
+     */
+    private static boolean isSuccess(String endpoint, HttpResponse<String> response) {
+        int status = response.statusCode();
+        if (status == 304) {
+            return true;
+        }
+        if (status >= 400) {
+            return false;
+        }
+        return !endpoint.equals("execute") || !response.body().contains("\"status\":\"ERROR\"");
+    }
+
+    /** Template-shaped questions take the local fast path; the rest go to the (stub) LLM. */
+    private String randomQuestion(ThreadLocalRandom random) {
+        int table = random.nextInt(options.tables());
+        if (random.nextDouble() < options.templateShare()) {
+            return switch (random.nextInt(3)) {
+                case 0 -> "how many rows in t_" + table;
+                case 1 -> "top " + (1 + random.nextInt(20)) + " t_" + table + " by c_1";
+                default -> "show first " + (1 + random.nextInt(50)) + " t_" + table;
+            };
+        }
+        return switch (random.nextInt(3)) {
+            case 0 -> "which t_" + table + " rows have an unusually high c_1 compared to the average";
+            case 1 -> "find t_" + table + " entries whose ref_id points at rows updated recently";
+            default -> "summarise the distribution of c_2 values in t_" + table;
+        };
+    }
+
+    private String randomSql(ThreadLocalRandom random) {
+        int table = random.nextInt(options.tables());
+        int rows = Math.max(1, options.rows());
+        return switch (random.nextInt(4)) {
+            case 0 -> "SELECT * FROM t_" + table + " WHERE id = " + random.nextInt(rows);
+            case 1 -> "SELECT id, c_1 FROM t_" + table + " WHERE c_1 BETWEEN " + random.nextInt(5_000)
+                + " AND " + (5_000 + random.nextInt(5_000)) + " ORDER BY c_1 LIMIT 50";
+            case 2 -> "SELECT c_1, COUNT(*) AS total FROM t_" + table + " GROUP BY c_1 ORDER BY total DESC LIMIT 10";
+            default -> table == 0
+                ? "SELECT COUNT(*) FROM t_0"
+                : "SELECT a.id, b.c_1 FROM t_" + table + " a JOIN t_" + (table - 1) + " b ON a.ref_id = b.id WHERE a.id < " + (1 + random.nextInt(rows));
+        };
+    }
+}